@@ -0,0 +1,90 @@
+package org.cache2k;
+
+/*
+ * #%L
+ * cache2k API
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.io.AsyncCacheLoader;
+import org.cache2k.processor.EntryProcessor;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non blocking variants of the cache operations, available via
+ * {@code cache.requestInterface(AsyncCache.class)}. The operations return a
+ * {@link CompletableFuture} instead of waiting for the result.
+ *
+ * <p>If an {@link AsyncCacheLoader} is configured, a load is started in the calling
+ * thread and the future completes when the loader calls back, no thread waits for the
+ * load to finish. An operation on an entry that is currently loaded is queued and
+ * executed after the load completes. If a synchronous loader or a writer
+ * is configured, operations that may call it are executed via the loader executor,
+ * see {@link Cache2kBuilder#loaderExecutor(java.util.concurrent.Executor)}.
+ * A value present in the cache is returned by {@link #getAsync} immediately.
+ *
+ * <p>Dependent stages of the future are executed by the thread completing it,
+ * which may be the thread of the loader. Use the async variants of
+ * {@link CompletableFuture} to continue in a different executor.
+ *
+ * @author Jens Wilke
+ * @since 2
+ */
+public interface AsyncCache<K, V> {
+
+  /**
+   * Returns the value associated with the key and starts a load if no value is present.
+   *
+   * @return future completing with the value or exceptionally with a
+   *         {@link org.cache2k.io.CacheLoaderException}
+   * @throws NullPointerException if the specified key is {@code null}
+   * @see Cache#get(Object)
+   */
+  CompletableFuture<V> getAsync(K key);
+
+  /**
+   * Retrieve the values of the keys, loading the missing ones in parallel.
+   *
+   * @return future completing with the map of keys and values, which has the same
+   *         semantics as the map of {@link Cache#getAll(Iterable)}
+   * @see Cache#getAll(Iterable)
+   */
+  CompletableFuture<Map<K, V>> getAllAsync(Iterable<? extends K> keys);
+
+  /**
+   * Invoke the entry processor on the entry. A load requested by the processor
+   * does not block.
+   *
+   * @return future completing with the result of the processor or exceptionally with an
+   *         {@link org.cache2k.processor.EntryProcessingException}
+   * @throws NullPointerException if the specified key is {@code null}
+   * @see Cache#invoke(Object, EntryProcessor)
+   */
+  <R> CompletableFuture<R> invokeAsync(K key, EntryProcessor<K, V, R> processor);
+
+  /**
+   * Insert or update the value.
+   *
+   * @return future completing when the value is stored
+   * @throws NullPointerException if the specified key is {@code null}
+   * @see Cache#put(Object, Object)
+   */
+  CompletableFuture<Void> putAsync(K key, V value);
+
+}
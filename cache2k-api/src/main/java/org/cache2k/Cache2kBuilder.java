@@ -32,6 +32,7 @@ import org.cache2k.expiry.ExpiryPolicy;
 import org.cache2k.event.CacheEntryOperationListener;
 import org.cache2k.io.AdvancedCacheLoader;
 import org.cache2k.io.AsyncCacheLoader;
+import org.cache2k.io.BulkCacheLoader;
 import org.cache2k.io.CacheLoader;
 import org.cache2k.io.CacheWriter;
 import org.cache2k.io.ExceptionInformation;
@@ -553,7 +554,8 @@ public class Cache2kBuilder<K, V> {
 
   /**
    * Enables read through operation and sets a cache loader. Different loader types
-   * are available: {@link CacheLoader}, {@link AdvancedCacheLoader}.
+   * are available: {@link CacheLoader}, {@link AdvancedCacheLoader}. If the loader
+   * is a {@link BulkCacheLoader} the bulk operations request all keys with one call.
    *
    * @see CacheLoader for general discussion on cache loaders
    */
@@ -866,6 +868,22 @@ public class Cache2kBuilder<K, V> {
     return this;
   }
 
+  /**
+   * When {@code true}, {@link Cache#getEntry(Object)} and {@link Cache#peekEntry(Object)} do not
+   * return a new entry object on each call, but reuse one mutable entry object per thread.
+   * A returned entry is only valid until the next {@code getEntry} or {@code peekEntry} call
+   * on the same cache within the same thread and must not be stored or passed to other threads.
+   * Together with {@link Cache#get}, {@link Cache#peek} and {@link Cache#containsKey} this
+   * allows cache hits without any object allocation.
+   *
+   * <p>Disabled by default. The setting has no effect for caches with writers, event listeners
+   * or a storage tier.
+   */
+  public final Cache2kBuilder<K, V> flyweightEntries(boolean f) {
+    config().setFlyweightEntries(f);
+    return this;
+  }
+
   /**
    * When {@code true} expose statistics via JMX. Disabled by default. It is possible to enable
    * JMX even there is no cache name specified with {@link #name(String)}, since a name will
@@ -0,0 +1,57 @@
+package org.cache2k;
+
+/*
+ * #%L
+ * cache2k API
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Cache with {@code long} keys. The methods with a primitive key don't box the key
+ * when the entry is present in the cache, so there is no allocation on a cache hit.
+ * The implementation also stores the key without a key object.
+ *
+ * <p>A cache with the key type {@code Long} implements this interface, if it
+ * runs without features that need a different implementation, e.g. listeners, a writer,
+ * an async loader or a weigher. Use {@code instanceof} to check.
+ *
+ * @author Jens Wilke
+ */
+public interface LongCache<V> extends Cache<Long, V> {
+
+  /**
+   * Returns the value associated with the key.
+   *
+   * @see Cache#get(Object)
+   */
+  V get(long key);
+
+  /**
+   * Returns the value associated with the key, without invoking the loader.
+   *
+   * @see Cache#peek(Object)
+   */
+  V peek(long key);
+
+  /**
+   * Inserts a new value or updates an existing value.
+   *
+   * @see Cache#put(Object, Object)
+   */
+  void put(long key, V value);
+
+}
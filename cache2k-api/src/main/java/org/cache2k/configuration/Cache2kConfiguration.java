@@ -97,6 +97,7 @@ public class Cache2kConfiguration<K, V> implements ConfigurationBean, Configurat
   private boolean permitNullValues = false;
   private boolean recordRefreshedTime = false;
   private boolean boostConcurrency = false;
+  private boolean flyweightEntries = false;
   private boolean enableJmx = false;
 
   private boolean disableStatistics = false;
@@ -763,6 +764,17 @@ public class Cache2kConfiguration<K, V> implements ConfigurationBean, Configurat
     boostConcurrency = v;
   }
 
+  public boolean isFlyweightEntries() {
+    return flyweightEntries;
+  }
+
+  /**
+   * @see Cache2kBuilder#flyweightEntries(boolean)
+   */
+  public void setFlyweightEntries(boolean v) {
+    flyweightEntries = v;
+  }
+
   public boolean isEnableJmx() {
     return enableJmx;
   }
@@ -0,0 +1,70 @@
+package org.cache2k.io;
+
+/*
+ * #%L
+ * cache2k API
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.Cache;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Loader that retrieves the values for a set of keys with one call, for example via
+ * a SQL query with {@code IN (...)} or a multi get of a key value store.
+ *
+ * <p>The bulk loader is used by {@link Cache#getAll}, {@link Cache#loadAll} and
+ * {@link Cache#reloadAll}, which request all missing keys in one call. Keys that are
+ * currently loaded by another operation are not requested again, the bulk operation
+ * waits for the running load instead. Single key operations like {@link Cache#get}
+ * call {@link #load(Object)}, which defaults to a bulk request with one key.
+ *
+ * <p>The bulk loader is configured via {@link org.cache2k.Cache2kBuilder#loader(CacheLoader)}.
+ *
+ * @author Jens Wilke
+ * @see CacheLoader
+ * @since 2
+ */
+@FunctionalInterface
+public interface BulkCacheLoader<K, V> extends CacheLoader<K, V> {
+
+  /**
+   * Retrieves the values for the requested keys.
+   *
+   * <p>From inside this method it is illegal to call methods on the same cache. This
+   * may cause a deadlock.
+   *
+   * @param keys the non-null keys to provide the values for, the set is not modifiable
+   * @return map with the loaded values. A key which is missing in the map is treated like
+   *         a {@code null} value returned by {@link CacheLoader#load(Object)}.
+   * @throws Exception Unhandled exception from the loader. The exception is propagated for
+   *                   each requested key, see {@link CacheLoader#load(Object)}
+   */
+  Map<K, V> loadAll(Set<K> keys) throws Exception;
+
+  /**
+   * Load a single value via {@link #loadAll(Set)}.
+   */
+  @Override
+  default V load(K key) throws Exception {
+    return loadAll(Collections.singleton(key)).get(key);
+  }
+
+}
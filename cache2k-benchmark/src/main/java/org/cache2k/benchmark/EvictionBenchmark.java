@@ -0,0 +1,162 @@
+package org.cache2k.benchmark;
+
+/*
+ * #%L
+ * cache2k benchmark
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.Cache;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Eviction heavy workload. The cache capacity is a fraction of the key universe,
+ * so misses lead to an insert and an eviction. The benchmark reports the throughput
+ * and as secondary results the hits and misses, which are used to compare the hit
+ * rate of the eviction algorithm in the different traces.
+ *
+ * <p>Traces: {@code zipfian} requests keys with a Zipfian distribution,
+ * {@code scan} interrupts the Zipfian requests by sequential scans of keys
+ * that are not reused.
+ *
+ * @author Jens Wilke
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EvictionBenchmark {
+
+  private static final int TRACE_LENGTH = 1 << 21;
+
+  @Param({"zipfian", "scan"})
+  public String trace;
+
+  @Param({"1000000"})
+  public int universe;
+
+  /** Cache capacity in percent of the key universe */
+  @Param({"10"})
+  public int capacityPercentage;
+
+  @Param({"int", "generic"})
+  public String keyImplementation;
+
+  Cache<Integer, Integer> cache;
+  Integer[] traceKeys;
+  final AtomicInteger threadCount = new AtomicInteger();
+
+  @Setup(Level.Trial)
+  public void setup() {
+    int capacity = (int) (universe * (long) capacityPercentage / 100);
+    cache = HeapCacheBenchmark.buildCache(keyImplementation, capacity);
+    int[] keys = Traces.of(trace, universe, TRACE_LENGTH, 1802);
+    traceKeys = new Integer[keys.length];
+    int maxKey = 0;
+    for (int k : keys) {
+      maxKey = Math.max(maxKey, k);
+    }
+    Integer[] objects = new Integer[maxKey + 1];
+    for (int i = 0; i < keys.length; i++) {
+      int k = keys[i];
+      Integer o = objects[k];
+      if (o == null) {
+        objects[k] = o = k;
+      }
+      traceKeys[i] = o;
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    cache.close();
+  }
+
+  /**
+   * Position within the trace. Each thread starts at a different offset.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class TracePosition {
+
+    int index;
+    public long hit;
+    public long miss;
+
+    @Setup(Level.Trial)
+    public void setup(EvictionBenchmark benchmark) {
+      index = (benchmark.threadCount.getAndIncrement() * 4711 * 17) % benchmark.traceKeys.length;
+    }
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      hit = miss = 0;
+    }
+
+    Integer next(Integer[] trace) {
+      int i = index++;
+      if (index >= trace.length) {
+        index = 0;
+      }
+      return trace[i];
+    }
+
+  }
+
+  /**
+   * Access via peek and put, which is the typical cache aside usage.
+   */
+  @Benchmark
+  public Integer peekAndPut(TracePosition pos) {
+    Integer k = pos.next(traceKeys);
+    Integer v = cache.peek(k);
+    if (v == null) {
+      pos.miss++;
+      cache.put(k, k);
+      return k;
+    }
+    pos.hit++;
+    return v;
+  }
+
+  /**
+   * Access via get and the cache loader, which is read through.
+   */
+  @Benchmark
+  public Integer get(TracePosition pos) {
+    return cache.get(pos.next(traceKeys));
+  }
+
+}
@@ -0,0 +1,170 @@
+package org.cache2k.benchmark;
+
+/*
+ * #%L
+ * cache2k benchmark
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.core.Entry;
+import org.cache2k.core.HeapCache;
+import org.cache2k.core.HeapCacheListener;
+import org.cache2k.core.concurrency.Job;
+import org.cache2k.core.eviction.AbstractEviction;
+import org.cache2k.core.eviction.ClockProPlusEviction;
+import org.cache2k.core.eviction.HeapCacheForEviction;
+import org.cache2k.core.eviction.RandomEviction;
+import org.cache2k.core.eviction.SampledEviction;
+import org.cache2k.core.eviction.SampledEvictionConfiguration;
+import org.cache2k.core.eviction.TinyLfuConfiguration;
+import org.cache2k.core.eviction.TinyLfuEviction;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Drives an eviction implementation directly, without the heap cache, timers or
+ * loaders. Entries are kept in a chained hash table, which the eviction sees
+ * via {@link HeapCacheForEviction}. A hit increments the hit counter of the entry,
+ * like the heap cache does, a miss inserts a new entry and evicts if needed.
+ * Not thread safe, the replay runs in a single thread.
+ *
+ * @author Jens Wilke
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class EvictionSimulator implements HeapCacheForEviction<Integer, Integer> {
+
+  /**
+   * Names of the available eviction policies, see {@link #createEviction(String)}
+   */
+  public static final String[] POLICIES = {"clockpro", "tinylfu", "sampled", "random"};
+
+  private static final Executor SYNCHRONOUS_EXECUTOR = new Executor() {
+    @Override
+    public void execute(Runnable command) {
+      command.run();
+    }
+  };
+
+  private final Entry[] table;
+  private final int mask;
+  private final AbstractEviction eviction;
+  private long hitCount;
+  private long missCount;
+
+  public EvictionSimulator(String policy, long capacity) {
+    int size = Integer.highestOneBit((int) Math.max(capacity, 2) * 2 - 1) * 2;
+    table = new Entry[size];
+    mask = size - 1;
+    eviction = createEviction(policy, capacity);
+  }
+
+  private AbstractEviction createEviction(String policy, long capacity) {
+    HeapCacheListener listener = new HeapCacheListener.NoOperation();
+    if ("clockpro".equals(policy)) {
+      return new ClockProPlusEviction(this, listener, capacity, null, -1, false);
+    }
+    if ("tinylfu".equals(policy)) {
+      TinyLfuConfiguration cfg = new TinyLfuConfiguration();
+      return new TinyLfuEviction(this, listener, capacity, null, -1, false,
+        cfg.getWindowPercentage(), cfg.getProtectedPercentage());
+    }
+    if ("sampled".equals(policy)) {
+      return new SampledEviction(this, listener, capacity, null, -1, false,
+        new SampledEvictionConfiguration().getSampleSize());
+    }
+    if ("random".equals(policy)) {
+      return new RandomEviction(this, listener, capacity, null, -1);
+    }
+    throw new IllegalArgumentException("unknown eviction policy: " + policy);
+  }
+
+  /**
+   * Request the key. Inserts the key on a miss, which may evict other entries.
+   *
+   * @return {@code true} on a hit
+   */
+  public boolean access(Integer key) {
+    int hc = HeapCache.modifiedHash(key.hashCode());
+    int idx = hc & mask;
+    for (Entry e = table[idx]; e != null; e = e.another) {
+      if (e.hashCode == hc && key.equals(e.getKey())) {
+        e.hitCnt++;
+        hitCount++;
+        return true;
+      }
+    }
+    missCount++;
+    eviction.evictEventuallyBeforeInsertOnSegment(hc);
+    Entry e = new Entry(key, hc);
+    e.another = table[idx];
+    table[idx] = e;
+    if (eviction.submitWithoutTriggeringEviction(e)) {
+      eviction.evictEventually();
+    }
+    return false;
+  }
+
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  public long getMissCount() {
+    return missCount;
+  }
+
+  public AbstractEviction getEviction() {
+    return eviction;
+  }
+
+  @Override
+  public int getHashTableCount() {
+    return 1;
+  }
+
+  @Override
+  public Entry<Integer, Integer>[] getHashEntries(int tableIndex) {
+    return table;
+  }
+
+  @Override
+  public void removeEntryForEviction(Entry<Integer, Integer> e) {
+    int idx = e.hashCode & mask;
+    Entry previous = null;
+    for (Entry x = table[idx]; x != null; previous = x, x = x.another) {
+      if (x == e) {
+        if (previous == null) {
+          table[idx] = x.another;
+        } else {
+          previous.another = x.another;
+        }
+        break;
+      }
+    }
+    e.setGone();
+  }
+
+  @Override
+  public Executor getExecutor() {
+    return SYNCHRONOUS_EXECUTOR;
+  }
+
+  @Override
+  public <T> T executeWithGlobalLock(Job<T> job) {
+    return job.call();
+  }
+
+}
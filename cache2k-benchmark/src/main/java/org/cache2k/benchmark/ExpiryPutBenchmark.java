@@ -0,0 +1,91 @@
+package org.cache2k.benchmark;
+
+/*
+ * #%L
+ * cache2k benchmark
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.Cache;
+import org.cache2k.Cache2kBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Put throughput with expire after write, which means every put schedules a timer task
+ * and cancels the previous one. With {@code boostConcurrency=true} the cache uses one
+ * timer per CPU instead of a single timer. Run with different thread counts to see the
+ * scaling, e.g. {@code -t 1}, {@code -t 8} and {@code -t 32}.
+ *
+ * @author Jens Wilke
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExpiryPutBenchmark {
+
+  @Param({"100000"})
+  public int entryCount;
+
+  @Param({"false", "true"})
+  public boolean boostConcurrency;
+
+  Cache<Integer, Integer> cache;
+  Integer[] keys;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    cache = Cache2kBuilder.of(Integer.class, Integer.class)
+      .entryCapacity(entryCount)
+      .expireAfterWrite(5, TimeUnit.MINUTES)
+      .boostConcurrency(boostConcurrency)
+      .build();
+    keys = new Integer[entryCount];
+    for (int i = 0; i < entryCount; i++) {
+      keys[i] = i;
+      cache.put(keys[i], keys[i]);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    cache.close();
+  }
+
+  @Benchmark
+  public void put(KeySequence seq) {
+    Integer k = seq.next(keys);
+    cache.put(k, k);
+  }
+
+}
@@ -0,0 +1,138 @@
+package org.cache2k.benchmark;
+
+/*
+ * #%L
+ * cache2k benchmark
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.core.Entry;
+import org.cache2k.core.Hash2;
+import org.cache2k.core.HeapCache;
+import org.cache2k.core.OpenHash2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Lookup throughput of the hash table alone, without the cache around it.
+ * Meant to be run with different thread counts, e.g. {@code -t 1}, {@code -t 8}
+ * and {@code -t 64}, to see the scalability of the read path.
+ *
+ * <p>{@code readWrite} does a mix of nine lookups and one remove and insert of
+ * the same key, to see the impact of concurrent modifications on the optimistic
+ * locking of the read path.
+ *
+ * @author Jens Wilke
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Hash2Benchmark {
+
+  @Param({"1000000"})
+  public int size;
+
+  /** {@code chained} for {@link Hash2}, {@code open} for {@link OpenHash2} */
+  @Param({"chained", "open"})
+  public String implementation;
+
+  Hash2<Integer, Integer> hash;
+  Integer[] keys;
+  Integer[] missingKeys;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    if ("open".equals(implementation)) {
+      hash = new OpenHash2<Integer, Integer>(null);
+    } else {
+      hash = new Hash2<Integer, Integer>(null);
+    }
+    keys = new Integer[size];
+    missingKeys = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      keys[i] = i;
+      missingKeys[i] = i + size;
+      insert(keys[i]);
+    }
+  }
+
+  static int hashCode(Integer key) {
+    return HeapCache.modifiedHash(key.hashCode());
+  }
+
+  private void insert(Integer key) {
+    int hc = hashCode(key);
+    StampedLock lock = hash.getSegmentLock(hc);
+    long stamp = lock.writeLock();
+    try {
+      hash.insertWithinLock(new Entry<Integer, Integer>(key, hc), hc, hc);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+    hash.checkExpand(hc);
+  }
+
+  private void remove(Integer key) {
+    Entry<Integer, Integer> e = lookup(key);
+    if (e != null) {
+      hash.remove(e);
+    }
+  }
+
+  private Entry<Integer, Integer> lookup(Integer key) {
+    int hc = hashCode(key);
+    return hash.lookup(key, hc, hc);
+  }
+
+  @Benchmark
+  public Entry<Integer, Integer> lookupHit(KeySequence seq) {
+    return lookup(seq.next(keys));
+  }
+
+  @Benchmark
+  public Entry<Integer, Integer> lookupMiss(KeySequence seq) {
+    return lookup(seq.next(missingKeys));
+  }
+
+  @Benchmark
+  public Entry<Integer, Integer> readWrite(KeySequence seq) {
+    Integer key = seq.next(keys);
+    if (seq.nextIndex(10) == 0) {
+      remove(key);
+      insert(key);
+      return null;
+    }
+    return lookup(key);
+  }
+
+}
@@ -0,0 +1,118 @@
+package org.cache2k.benchmark;
+
+/*
+ * #%L
+ * cache2k benchmark
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.Cache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Latency of inserts into a growing cache, which includes the expansion steps of the
+ * hash table. Look at the high percentiles, e.g. {@code p0.999}, of the sample time
+ * results. Every iteration starts with an empty cache.
+ *
+ * <p>The hash table variant and pre sizing are set via the tunable system properties
+ * before the cache implementation is loaded. This requires that each parameter
+ * combination runs in its own fork, so this benchmark must not run with {@code -f 0}.
+ *
+ * @author Jens Wilke
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashGrowthBenchmark {
+
+  private static final String TUNABLE_PREFIX = "org.cache2k.core.HeapCache.Tunable.";
+
+  @Param({"10000000"})
+  public int entryCapacity;
+
+  /** Maximum entry count for pre sizing of the hash table, 0 means no pre sizing */
+  @Param({"0", "10000000"})
+  public long presizeMaximum;
+
+  /** {@code chained} or {@code open} for the open addressing hash table */
+  @Param({"chained", "open"})
+  public String implementation;
+
+  @Param({"int"})
+  public String keyImplementation;
+
+  Cache<Integer, Integer> cache;
+  final AtomicInteger threadCount = new AtomicInteger();
+
+  @Setup(Level.Trial)
+  public void setupTrial() {
+    System.setProperty(TUNABLE_PREFIX + "hashTablePresizeMaximum",
+      Long.toString(presizeMaximum));
+    System.setProperty(TUNABLE_PREFIX + "openAddressingHash",
+      Boolean.toString("open".equals(implementation)));
+  }
+
+  @Setup(Level.Iteration)
+  public void setupIteration() {
+    cache = HeapCacheBenchmark.buildCache(keyImplementation, entryCapacity);
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDownIteration() {
+    cache.close();
+  }
+
+  /**
+   * Each thread inserts its own sequence of keys.
+   */
+  @State(Scope.Thread)
+  public static class InsertSequence {
+
+    int next;
+
+    @Setup(Level.Iteration)
+    public void setup(HashGrowthBenchmark benchmark) {
+      next = benchmark.threadCount.getAndIncrement() << 26;
+    }
+
+  }
+
+  @Benchmark
+  public void put(InsertSequence seq) {
+    Integer k = seq.next++;
+    cache.put(k, k);
+  }
+
+}
@@ -0,0 +1,181 @@
+package org.cache2k.benchmark;
+
+/*
+ * #%L
+ * cache2k benchmark
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.Cache;
+import org.cache2k.Cache2kBuilder;
+import org.cache2k.io.CacheLoader;
+import org.cache2k.processor.EntryProcessor;
+import org.cache2k.processor.MutableCacheEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the basic cache operations on a fully populated cache, which means
+ * all operations except for {@code put} are hits. With {@code keyImplementation=int}
+ * the builder selects the {@code IntHeapCache}, with {@code generic} the key type
+ * is {@code Object} and the standard {@code HeapCache} is used. The keys are the same
+ * {@code Integer} objects in both cases.
+ *
+ * @author Jens Wilke
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HeapCacheBenchmark {
+
+  private static final EntryProcessor<Integer, Integer, Integer> READ_PROCESSOR =
+    new EntryProcessor<Integer, Integer, Integer>() {
+      @Override
+      public Integer process(MutableCacheEntry<Integer, Integer> e) {
+        return e.getValue();
+      }
+    };
+
+  /** Only called on a miss, which does not happen, since the cache is populated */
+  private static final Callable<Integer> CONSTANT_VALUE = new Callable<Integer>() {
+    @Override
+    public Integer call() {
+      return 4711;
+    }
+  };
+
+  private static final CacheLoader<Integer, Integer> IDENTITY_LOADER =
+    new CacheLoader<Integer, Integer>() {
+      @Override
+      public Integer load(Integer key) {
+        return key;
+      }
+    };
+
+  @Param({"100000"})
+  public int entryCount;
+
+  @Param({"int", "generic"})
+  public String keyImplementation;
+
+  /** Number of keys requested by one {@code getAll} call */
+  @Param({"10"})
+  public int bulkSize;
+
+  Cache<Integer, Integer> cache;
+  Integer[] keys;
+  List<Integer>[] bulkRequests;
+
+  @Setup(Level.Trial)
+  @SuppressWarnings("unchecked")
+  public void setup() {
+    cache = buildCache(keyImplementation, entryCount);
+    keys = new Integer[entryCount];
+    for (int i = 0; i < entryCount; i++) {
+      keys[i] = i;
+      cache.put(keys[i], keys[i]);
+    }
+    Random random = new Random(1802);
+    bulkRequests = new List[1024];
+    for (int i = 0; i < bulkRequests.length; i++) {
+      List<Integer> list = new ArrayList<Integer>();
+      for (int j = 0; j < bulkSize; j++) {
+        list.add(keys[random.nextInt(entryCount)]);
+      }
+      bulkRequests[i] = list;
+    }
+  }
+
+  /**
+   * Build a cache with a loader and enough capacity to hold all entries.
+   *
+   * @param keyImplementation {@code int} for the specialized integer key cache
+   */
+  @SuppressWarnings("unchecked")
+  static Cache<Integer, Integer> buildCache(String keyImplementation, int entryCount) {
+    Cache2kBuilder b;
+    if ("int".equals(keyImplementation)) {
+      b = Cache2kBuilder.of(Integer.class, Integer.class);
+    } else if ("generic".equals(keyImplementation)) {
+      b = Cache2kBuilder.of(Object.class, Integer.class);
+    } else {
+      throw new IllegalArgumentException("unknown key implementation: " + keyImplementation);
+    }
+    return (Cache<Integer, Integer>) b
+      .entryCapacity(entryCount)
+      .loader(IDENTITY_LOADER)
+      .build();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    cache.close();
+  }
+
+  @Benchmark
+  public Integer get(KeySequence seq) {
+    return cache.get(seq.next(keys));
+  }
+
+  @Benchmark
+  public Integer peek(KeySequence seq) {
+    return cache.peek(seq.next(keys));
+  }
+
+  @Benchmark
+  public void put(KeySequence seq) {
+    Integer k = seq.next(keys);
+    cache.put(k, k);
+  }
+
+  @Benchmark
+  public Integer computeIfAbsent(KeySequence seq) {
+    return cache.computeIfAbsent(seq.next(keys), CONSTANT_VALUE);
+  }
+
+  @Benchmark
+  public Map<Integer, Integer> getAll(KeySequence seq) {
+    return cache.getAll(bulkRequests[seq.nextIndex(bulkRequests.length)]);
+  }
+
+  @Benchmark
+  public Integer invoke(KeySequence seq) {
+    return cache.invoke(seq.next(keys), READ_PROCESSOR);
+  }
+
+}
@@ -0,0 +1,59 @@
+package org.cache2k.benchmark;
+
+/*
+ * #%L
+ * cache2k benchmark
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per thread pseudo random index sequence. Cheaper than a random number generator
+ * and without allocations, so the benchmark measures the cache operation only.
+ * Each thread starts at a different seed, so threads don't access the same keys
+ * in lock step.
+ *
+ * @author Jens Wilke
+ */
+@State(Scope.Thread)
+public class KeySequence {
+
+  private static final AtomicInteger SEED = new AtomicInteger(4711);
+
+  private int state = SEED.getAndAdd(0x61c88647) | 1;
+
+  /**
+   * Next index in the range of {@code 0} to {@code limit - 1}. Xorshift.
+   */
+  public int nextIndex(int limit) {
+    int x = state;
+    x ^= x << 13;
+    x ^= x >>> 17;
+    x ^= x << 5;
+    state = x;
+    return (x & Integer.MAX_VALUE) % limit;
+  }
+
+  public <T> T next(T[] keys) {
+    return keys[nextIndex(keys.length)];
+  }
+
+}
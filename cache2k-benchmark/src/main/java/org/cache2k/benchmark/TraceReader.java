@@ -0,0 +1,141 @@
+package org.cache2k.benchmark;
+
+/*
+ * #%L
+ * cache2k benchmark
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads access traces from files. Keys are mapped to consecutive integers starting
+ * at {@code 0}, in the order of their first occurrence, so the trace is compact in
+ * memory and independent of the original key type. Files ending with {@code .gz}
+ * are decompressed.
+ *
+ * <p>Formats:
+ * <ul>
+ *   <li>{@code binary}: 32 bit big endian integers, one per request</li>
+ *   <li>{@code text}: one key per line, the first token of the line is used</li>
+ *   <li>{@code arc}: ARC traces by Megiddo and Modha, each line has the starting block
+ *     and the number of blocks requested, followed by fields that are ignored</li>
+ *   <li>{@code lirs}: LIRS traces by Jiang and Zhang, one block number per line,
+ *     lines with {@code *} are skipped</li>
+ *   <li>{@code wikipedia}: Wikipedia traces by Urdaneta et al., each line has a counter,
+ *     a timestamp, the URL and a flag, the URL is the key</li>
+ * </ul>
+ * Empty lines and lines starting with {@code #} are skipped in the text formats.
+ *
+ * @author Jens Wilke
+ */
+public class TraceReader {
+
+  public static final String[] FORMATS = {"binary", "text", "arc", "lirs", "wikipedia"};
+
+  private final Map<Object, Integer> keys = new HashMap<Object, Integer>();
+  private int[] trace = new int[1024];
+  private int length;
+
+  /**
+   * Read the trace in the given format.
+   */
+  public static int[] read(String format, File file) throws IOException {
+    TraceReader reader = new TraceReader();
+    InputStream in = new BufferedInputStream(new FileInputStream(file));
+    try {
+      if (file.getName().endsWith(".gz")) {
+        in = new GZIPInputStream(in);
+      }
+      if ("binary".equals(format)) {
+        reader.readBinary(in);
+      } else {
+        reader.readText(format, in);
+      }
+    } finally {
+      in.close();
+    }
+    return Arrays.copyOf(reader.trace, reader.length);
+  }
+
+  private void readBinary(InputStream in) throws IOException {
+    DataInputStream din = new DataInputStream(in);
+    try {
+      for (;;) {
+        add(din.readInt());
+      }
+    } catch (EOFException ex) {
+      // end of trace
+    }
+  }
+
+  private void readText(String format, InputStream in) throws IOException {
+    BufferedReader reader =
+      new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    String line;
+    while ((line = reader.readLine()) != null) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] fields = line.split("\\s+");
+      if ("text".equals(format)) {
+        add(fields[0]);
+      } else if ("lirs".equals(format)) {
+        if (!fields[0].equals("*")) {
+          add(Long.parseLong(fields[0]));
+        }
+      } else if ("arc".equals(format)) {
+        long start = Long.parseLong(fields[0]);
+        int count = Integer.parseInt(fields[1]);
+        for (int i = 0; i < count; i++) {
+          add(start + i);
+        }
+      } else if ("wikipedia".equals(format)) {
+        add(fields[2]);
+      } else {
+        throw new IllegalArgumentException("unknown trace format: " + format);
+      }
+    }
+  }
+
+  private void add(Object key) {
+    Integer id = keys.get(key);
+    if (id == null) {
+      id = keys.size();
+      keys.put(key, id);
+    }
+    if (length == trace.length) {
+      trace = Arrays.copyOf(trace, length * 2);
+    }
+    trace[length++] = id;
+  }
+
+}
@@ -0,0 +1,191 @@
+package org.cache2k.benchmark;
+
+/*
+ * #%L
+ * cache2k benchmark
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.core.eviction.AbstractEviction;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Replays an access trace against the eviction policies at several capacities and
+ * prints the hit rate, the evictions per second and the heap memory per cache entry.
+ * The memory per entry includes the entry object, the hash table and the eviction data
+ * structures, for example the Clock-Pro ghosts, but not the key objects. It is measured
+ * via the used heap, so it is only meaningful for capacities of some thousand entries.
+ * The replay runs via {@link EvictionSimulator} in a single thread.
+ *
+ * <p>Run a trace file or a synthetic trace, e.g.:
+ *
+ * <pre>
+ * java -cp cache2k-benchmark/target/benchmarks.jar org.cache2k.benchmark.TraceSimulator \
+ *   arc OLTP.lis -policy clockpro,tinylfu -capacity 1000,5000
+ * java -cp cache2k-benchmark/target/benchmarks.jar org.cache2k.benchmark.TraceSimulator scan
+ * </pre>
+ *
+ * <p>The formats are listed in {@link TraceReader}, the synthetic traces {@code zipfian}
+ * and {@code scan} are described in {@link Traces}. Without {@code -capacity} the capacities
+ * are 1%, 5%, 10% and 25% of the distinct keys in the trace.
+ *
+ * @author Jens Wilke
+ */
+public class TraceSimulator {
+
+  private static final int SYNTHETIC_UNIVERSE = 1000000;
+  private static final int SYNTHETIC_LENGTH = 1 << 22;
+  private static final int[] CAPACITY_PERCENTAGES = {1, 5, 10, 25};
+
+  public static void main(String[] args) throws Exception {
+    if (args.length == 0) {
+      System.err.println("Usage: TraceSimulator <format> <file> | zipfian | scan " +
+        "[-policy " + String.join(",", EvictionSimulator.POLICIES) + "] " +
+        "[-capacity <size>,...]");
+      System.err.println("Formats: " + String.join(", ", TraceReader.FORMATS));
+      System.exit(1);
+    }
+    List<String> positional = new ArrayList<String>();
+    String[] policies = EvictionSimulator.POLICIES;
+    long[] capacities = null;
+    for (int i = 0; i < args.length; i++) {
+      if ("-policy".equals(args[i])) {
+        policies = args[++i].split(",");
+      } else if ("-capacity".equals(args[i])) {
+        String[] values = args[++i].split(",");
+        capacities = new long[values.length];
+        for (int j = 0; j < values.length; j++) {
+          capacities[j] = Long.parseLong(values[j]);
+        }
+      } else {
+        positional.add(args[i]);
+      }
+    }
+    String name = positional.get(0);
+    int[] trace;
+    if ("zipfian".equals(name) || "scan".equals(name)) {
+      trace = Traces.of(name, SYNTHETIC_UNIVERSE, SYNTHETIC_LENGTH, 1802);
+    } else {
+      trace = TraceReader.read(name, new File(positional.get(1)));
+    }
+    Integer[] keys = toKeyObjects(trace);
+    if (capacities == null) {
+      capacities = defaultCapacities(keys.length);
+    }
+    System.out.println("Trace " + String.join(" ", positional) + ", requests=" + trace.length +
+      ", distinct keys=" + keys.length);
+    System.out.println(String.format(Locale.ROOT, "%-10s %12s %9s %14s %11s",
+      "policy", "capacity", "hitRate", "evictions/s", "bytes/entry"));
+    for (long capacity : capacities) {
+      for (String policy : policies) {
+        printResult(policy, capacity, replay(policy, capacity, trace, keys));
+      }
+    }
+  }
+
+  /**
+   * One key object per distinct key, the keys are not part of the memory per entry.
+   */
+  static Integer[] toKeyObjects(int[] trace) {
+    int maxKey = -1;
+    for (int k : trace) {
+      maxKey = Math.max(maxKey, k);
+    }
+    Integer[] keys = new Integer[maxKey + 1];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = i;
+    }
+    return keys;
+  }
+
+  static long[] defaultCapacities(int distinctKeys) {
+    long[] capacities = new long[CAPACITY_PERCENTAGES.length];
+    for (int i = 0; i < capacities.length; i++) {
+      capacities[i] = Math.max(10, (long) distinctKeys * CAPACITY_PERCENTAGES[i] / 100);
+    }
+    return capacities;
+  }
+
+  /**
+   * Replay the trace with a fresh simulator. The memory of the simulator is the
+   * difference of the used heap while it is reachable and after it was released.
+   */
+  static Result replay(String policy, long capacity, int[] trace, Integer[] keys) {
+    EvictionSimulator simulator = new EvictionSimulator(policy, capacity);
+    long t0 = System.nanoTime();
+    for (int k : trace) {
+      simulator.access(keys[k]);
+    }
+    long nanos = System.nanoTime() - t0;
+    long usedWithSimulator = usedMemory();
+    AbstractEviction eviction = simulator.getEviction();
+    Result result = new Result();
+    result.requests = trace.length;
+    result.hits = simulator.getHitCount();
+    result.evictions = eviction.getEvictedCount();
+    result.nanos = nanos;
+    result.size = eviction.getSize();
+    if (simulator.getHitCount() + simulator.getMissCount() != trace.length) {
+      throw new AssertionError("request count mismatch");
+    }
+    simulator = null;
+    eviction = null;
+    result.usedBytes = usedWithSimulator - usedMemory();
+    return result;
+  }
+
+  private static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static void printResult(String policy, long capacity, Result r) {
+    System.out.println(String.format(Locale.ROOT, "%-10s %12d %8.2f%% %14.0f %11.1f",
+      policy, capacity, r.getHitRate(), r.getEvictionsPerSecond(), r.getBytesPerEntry()));
+  }
+
+  static class Result {
+
+    long requests;
+    long hits;
+    long evictions;
+    long nanos;
+    long size;
+    long usedBytes;
+
+    double getHitRate() {
+      return requests == 0 ? 0 : hits * 100D / requests;
+    }
+
+    double getEvictionsPerSecond() {
+      return nanos == 0 ? 0 : evictions * 1E9D / nanos;
+    }
+
+    double getBytesPerEntry() {
+      return size == 0 ? 0 : usedBytes * 1D / size;
+    }
+
+  }
+
+}
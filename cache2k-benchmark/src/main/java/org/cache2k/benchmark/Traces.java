@@ -0,0 +1,87 @@
+package org.cache2k.benchmark;
+
+/*
+ * #%L
+ * cache2k benchmark
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Synthetic access traces for the eviction benchmarks. Traces are generated
+ * upfront, so the benchmark does not measure the random number generation.
+ *
+ * @author Jens Wilke
+ */
+public class Traces {
+
+  /**
+   * Zipfian distributed keys within {@code 0} to {@code universe - 1}.
+   */
+  public static int[] zipfian(int universe, int length, long seed) {
+    ZipfianGenerator generator = new ZipfianGenerator(universe, seed);
+    int[] trace = new int[length];
+    for (int i = 0; i < length; i++) {
+      trace[i] = generator.next();
+    }
+    return trace;
+  }
+
+  /**
+   * Zipfian distributed keys which are interrupted by sequential scans. A scan
+   * requests {@code scanLength} keys which are outside the Zipfian key universe and
+   * are never requested again until the scan range wraps around. An eviction
+   * algorithm which is scan resistant keeps the hot set of the Zipfian part.
+   *
+   * @param scanPercentage percentage of requests that are part of a scan
+   */
+  public static int[] scan(int universe, int length, int scanLength,
+                           int scanPercentage, long seed) {
+    ZipfianGenerator generator = new ZipfianGenerator(universe, seed);
+    int[] trace = new int[length];
+    int zipfianRun = scanLength * (100 - scanPercentage) / Math.max(1, scanPercentage);
+    int scanKey = universe;
+    int scanUniverse = Math.max(scanLength, universe) * 4;
+    int i = 0;
+    while (i < length) {
+      for (int j = 0; j < zipfianRun && i < length; j++) {
+        trace[i++] = generator.next();
+      }
+      for (int j = 0; j < scanLength && i < length; j++) {
+        trace[i++] = scanKey;
+        scanKey++;
+        if (scanKey >= universe + scanUniverse) {
+          scanKey = universe;
+        }
+      }
+    }
+    return trace;
+  }
+
+  /**
+   * Trace by name, as used in the benchmark parameters.
+   */
+  public static int[] of(String name, int universe, int length, long seed) {
+    if ("zipfian".equals(name)) {
+      return zipfian(universe, length, seed);
+    }
+    if ("scan".equals(name)) {
+      return scan(universe, length, universe / 2, 20, seed);
+    }
+    throw new IllegalArgumentException("unknown trace: " + name);
+  }
+
+}
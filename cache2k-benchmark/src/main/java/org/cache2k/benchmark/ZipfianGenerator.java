@@ -0,0 +1,94 @@
+package org.cache2k.benchmark;
+
+/*
+ * #%L
+ * cache2k benchmark
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Random;
+
+/**
+ * Generates integer keys with a Zipfian distribution in the range {@code 0} to
+ * {@code items - 1}. Low numbers are the most popular ones. The computation follows
+ * the algorithm of Gray et al., "Quickly generating billion-record synthetic databases",
+ * as also used in YCSB.
+ *
+ * <p>Not thread safe, each thread should use its own generator.
+ *
+ * @author Jens Wilke
+ */
+public class ZipfianGenerator {
+
+  public static final double DEFAULT_THETA = 0.99;
+
+  private final Random random;
+  private final int items;
+  private final double theta;
+  private final double zetaN;
+  private final double alpha;
+  private final double eta;
+  private final double halfPowTheta;
+
+  public ZipfianGenerator(int items, long seed) {
+    this(items, DEFAULT_THETA, seed);
+  }
+
+  public ZipfianGenerator(int items, double theta, long seed) {
+    if (items < 2) {
+      throw new IllegalArgumentException("at least two items expected");
+    }
+    this.random = new Random(seed);
+    this.items = items;
+    this.theta = theta;
+    double zeta2 = zeta(2, theta);
+    zetaN = zeta(items, theta);
+    alpha = 1.0 / (1.0 - theta);
+    eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta2 / zetaN);
+    halfPowTheta = 1.0 + Math.pow(0.5, theta);
+  }
+
+  private static double zeta(long n, double theta) {
+    double sum = 0;
+    for (long i = 0; i < n; i++) {
+      sum += 1 / Math.pow(i + 1, theta);
+    }
+    return sum;
+  }
+
+  public int next() {
+    double u = random.nextDouble();
+    double uz = u * zetaN;
+    if (uz < 1.0) {
+      return 0;
+    }
+    if (uz < halfPowTheta) {
+      return 1;
+    }
+    int v = (int) (items * Math.pow(eta * u - eta + 1, alpha));
+    return Math.min(v, items - 1);
+  }
+
+  public int getItems() {
+    return items;
+  }
+
+  public double getTheta() {
+    return theta;
+  }
+
+}
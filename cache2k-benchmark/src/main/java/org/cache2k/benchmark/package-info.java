@@ -0,0 +1,46 @@
+/**
+ * JMH benchmarks for the hot paths of the cache2k core implementation.
+ *
+ * <p>Build the self contained jar and run all benchmarks, including the
+ * allocation rates per operation:
+ *
+ * <pre>
+ * mvn -pl cache2k-benchmark -am package -DskipTests
+ * java -jar cache2k-benchmark/target/benchmarks.jar -prof gc
+ * </pre>
+ *
+ * <p>Run a subset with a different thread count and produce machine readable output,
+ * which can be compared against a previous run to detect regressions:
+ *
+ * <pre>
+ * java -jar cache2k-benchmark/target/benchmarks.jar Hash2Benchmark -t 64 -prof gc \
+ *   -rf json -rff hash2-t64.json
+ * </pre>
+ *
+ * <p>Latency distributions are available with the sample time mode, e.g.
+ * {@code -bm sample -tu ns}.
+ *
+ * <p>The hit rates of the eviction policies are compared with recorded access traces
+ * via the {@link org.cache2k.benchmark.TraceSimulator}, which is not a JMH benchmark.
+ */
+package org.cache2k.benchmark;
+
+/*
+ * #%L
+ * cache2k benchmark
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
@@ -0,0 +1,165 @@
+package org.cache2k.core;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.AsyncCache;
+import org.cache2k.CacheEntry;
+import org.cache2k.core.operation.Operations;
+import org.cache2k.processor.EntryProcessor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+/**
+ * Implements the non blocking operations via entry actions, which report completion
+ * through a callback. With an async loader no thread waits for a load. If a synchronous
+ * loader or writer is present, the operations that may call it are started in the loader
+ * executor instead.
+ *
+ * @author Jens Wilke
+ * @see AsyncCache
+ */
+class AsyncCacheAdapter<K, V> implements AsyncCache<K, V> {
+
+  private final BaseCache<K, V> cache;
+  private final Operations<K, V> ops = Operations.SINGLETON;
+
+  AsyncCacheAdapter(BaseCache<K, V> cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * A value in the heap is returned immediately. Otherwise the get operation is
+   * executed, which loads the value, if a loader is present.
+   */
+  @Override
+  public CompletableFuture<V> getAsync(K key) {
+    if (key == null) {
+      throw new NullPointerException();
+    }
+    Entry<K, V> e = cache.lookupQuick(key);
+    if (e != null && e.hasFreshData(cache.getClock())) {
+      CompletableFuture<V> future = new CompletableFuture<V>();
+      completeWithValue(future, e.getValueOrException());
+      return future;
+    }
+    final CompletableFuture<V> future = new CompletableFuture<V>();
+    cache.executeAsync(key, ops.get(key), cache.isBlockingLoaderPresent())
+      .whenComplete(new BiConsumer<V, Throwable>() {
+        @Override
+        public void accept(V v, Throwable t) {
+          if (t != null) {
+            future.completeExceptionally(t);
+          } else {
+            completeWithValue(future, v);
+          }
+        }
+      });
+    return future;
+  }
+
+  /**
+   * Complete with the value or the exception of the loader, in the same way
+   * as the exception is propagated by {@code get}.
+   */
+  @SuppressWarnings("unchecked")
+  private static <V> void completeWithValue(CompletableFuture<V> future, V v) {
+    if (v instanceof ExceptionWrapper) {
+      try {
+        ((ExceptionWrapper<?>) v).propagateException();
+      } catch (RuntimeException ex) {
+        future.completeExceptionally(ex);
+        return;
+      }
+    }
+    future.complete(v);
+  }
+
+  /**
+   * Start the operations for all keys, so loads run in parallel. Like {@code getAll}
+   * a loader exception is propagated when the value is accessed in the map.
+   */
+  @Override
+  public CompletableFuture<Map<K, V>> getAllAsync(Iterable<? extends K> keys) {
+    final Map<K, CompletableFuture<? extends CacheEntry<K, V>>> futures =
+      new LinkedHashMap<K, CompletableFuture<? extends CacheEntry<K, V>>>();
+    for (K k : keys) {
+      if (!futures.containsKey(k)) {
+        futures.put(k, cache.executeAsync(k, ops.getEntry(k), cache.isBlockingLoaderPresent()));
+      }
+    }
+    final CompletableFuture<Map<K, V>> future = new CompletableFuture<Map<K, V>>();
+    CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0]))
+      .whenComplete(new BiConsumer<Void, Throwable>() {
+        @Override
+        public void accept(Void ignore, Throwable t) {
+          if (t != null) {
+            future.completeExceptionally(t.getCause() != null ? t.getCause() : t);
+            return;
+          }
+          Map<K, CacheEntry<K, V>> map = new LinkedHashMap<K, CacheEntry<K, V>>();
+          for (Map.Entry<K, CompletableFuture<? extends CacheEntry<K, V>>> e :
+            futures.entrySet()) {
+            CacheEntry<K, V> entry = e.getValue().join();
+            if (entry != null) {
+              map.put(e.getKey(), entry);
+            }
+          }
+          future.complete(new MapValueConverterProxy<K, V, CacheEntry<K, V>>(map) {
+            @Override
+            protected V convert(CacheEntry<K, V> v) {
+              return v.getValue();
+            }
+          });
+        }
+      });
+    return future;
+  }
+
+  @Override
+  public <R> CompletableFuture<R> invokeAsync(K key, EntryProcessor<K, V, R> processor) {
+    if (key == null) {
+      throw new NullPointerException();
+    }
+    return cache.executeAsync(key, ops.invoke(key, processor),
+      cache.isBlockingLoaderPresent() || cache.isWriterPresent());
+  }
+
+  /**
+   * The put operation has no result, the future completes with {@code null}.
+   * The put waits for a concurrent load of the entry, so with a synchronous loader it
+   * is started in the loader executor as well.
+   */
+  @SuppressWarnings("unchecked")
+  @Override
+  public CompletableFuture<Void> putAsync(K key, V value) {
+    if (key == null) {
+      throw new NullPointerException();
+    }
+    CompletableFuture<?> future =
+      cache.executeAsync(key, ops.put(key, value),
+        cache.isBlockingLoaderPresent() || cache.isWriterPresent());
+    return (CompletableFuture<Void>) future;
+  }
+
+}
@@ -20,6 +20,7 @@ package org.cache2k.core;
  * #L%
  */
 
+import org.cache2k.AsyncCache;
 import org.cache2k.Cache;
 import org.cache2k.CacheEntry;
 import org.cache2k.CacheException;
@@ -42,6 +43,7 @@ import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Some default implementations for a cache.
@@ -155,6 +157,9 @@ public abstract class BaseCache<K, V> implements InternalCache<K, V>, CacheClose
       type.equals(Map.class)) {
       return (X) new ConcurrentMapWrapper<K, V>(this);
     }
+    if (type.equals(AsyncCache.class)) {
+      return (X) new AsyncCacheAdapter<K, V>(this);
+    }
     if (type.isAssignableFrom(this.getClass())) {
       return (X) this;
     }
@@ -222,6 +227,65 @@ public abstract class BaseCache<K, V> implements InternalCache<K, V>, CacheClose
   protected abstract <R> EntryAction<K, V, R> createEntryAction(K key, Entry<K, V> e,
                                                                 Semantic<K, V, R> op);
 
+  protected abstract <R> EntryAction<K, V, R> createEntryAction(
+    K key, Entry<K, V> e, Semantic<K, V, R> op, EntryAction.CompletedCallback<K, V, R> cb);
+
+  /**
+   * Entry from the heap, without waiting for a concurrent operation. Records a hit.
+   */
+  abstract Entry<K, V> lookupQuick(K key);
+
+  /**
+   * A loader is present that blocks the calling thread.
+   */
+  abstract boolean isBlockingLoaderPresent();
+
+  abstract boolean isWriterPresent();
+
+  abstract Executor getLoaderExecutor();
+
+  /**
+   * Execute the operation and complete the future via the completion callback of
+   * the entry action. The action starts in the calling thread, or in the loader executor,
+   * if the operation might block. If the executor rejects, the calling thread is used,
+   * like in {@link #loadAll(Iterable)}.
+   */
+  <R> CompletableFuture<R> executeAsync(K key, Semantic<K, V, R> op, boolean blocking) {
+    final CompletableFuture<R> future = new CompletableFuture<R>();
+    final EntryAction<K, V, R> action = createEntryAction(key, null, op,
+      new EntryAction.CompletedCallback<K, V, R>() {
+        @Override
+        public void entryActionCompleted(EntryAction<K, V, R> ea) {
+          RuntimeException t = ea.exceptionToPropagate;
+          if (t != null) {
+            future.completeExceptionally(t);
+          } else {
+            future.complete(ea.result);
+          }
+        }
+      });
+    Runnable start = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          action.start();
+        } catch (RuntimeException ex) {
+          future.completeExceptionally(ex);
+        }
+      }
+    };
+    if (!blocking) {
+      start.run();
+      return future;
+    }
+    try {
+      getLoaderExecutor().execute(start);
+    } catch (RejectedExecutionException ex) {
+      start.run();
+    }
+    return future;
+  }
+
   protected <R> R execute(EntryAction<K, V, R> action) {
     action.start();
     return finishExecution(action);
@@ -115,6 +115,10 @@ class CacheBaseInfo implements InternalCacheInfo {
       asyncLoadsStarted = ex.getTaskCount();
       loaderThreadsLimit = ex.getCorePoolSize();
       loaderThreadsMaxActive = ex.getLargestPoolSize();
+    } else if (heapCache.loaderExecutor instanceof VirtualThreadExecutor) {
+      VirtualThreadExecutor ex = (VirtualThreadExecutor) heapCache.loaderExecutor;
+      asyncLoadsInFlight = ex.getActiveCount();
+      loaderThreadsLimit = ex.getMaximumConcurrency();
     }
     totalLoadCnt = metrics.getReadThroughCount() + metrics.getExplicitLoadCount() +
       metrics.getRefreshCount();
@@ -207,6 +211,8 @@ class CacheBaseInfo implements InternalCacheInfo {
   @Override
   public long getTimerEventCount() { return metrics.getTimerEventCount(); }
   @Override
+  public long getExpiryLagMillis() { return heapCache.getTiming().getExpiryLagMillis(); }
+  @Override
   public double getHitRate() {
     long cnt = getGetCount();
     return cnt == 0 ? 0.0 : ((cnt - missCnt) * 100D / cnt);
@@ -319,6 +325,7 @@ class CacheBaseInfo implements InternalCacheInfo {
       .append("removeByClear=").append(getClearedEntriesCount()).append(", ")
       .append("evict=").append(getEvictedCount()).append(", ")
       .append("timer=").append(getTimerEventCount()).append(", ")
+      .append("expiryLagMillis=").append(getExpiryLagMillis()).append(", ")
       .append("goneSpin=").append(getGoneSpinCount()).append(", ")
       .append("hitRate=").append(getHitRateString()).append(", ")
       .append("msecs/load=").append(formatMillisPerLoad(getMillisPerLoad())).append(", ")
@@ -29,6 +29,7 @@ import org.cache2k.core.api.InternalCache;
 import org.cache2k.core.spi.CacheLifeCycleListener;
 import org.cache2k.core.spi.CacheManagerLifeCycleListener;
 import org.cache2k.core.log.Log;
+import org.cache2k.core.timing.SharedTimer;
 import org.cache2k.spi.Cache2kCoreProvider;
 
 import java.lang.reflect.Array;
@@ -105,6 +106,7 @@ public class CacheManagerImpl extends CacheManager {
   private boolean defaultManager;
   private Cache2kCoreProviderImpl provider;
   private boolean closing;
+  private final SharedTimer sharedTimer = new SharedTimer();
 
   public CacheManagerImpl(Cache2kCoreProviderImpl provider, ClassLoader cl, String name,
                           boolean defaultManager) {
@@ -376,6 +378,13 @@ public class CacheManagerImpl extends CacheManager {
     return closing;
   }
 
+  /**
+   * Timers shared by the caches of this manager.
+   */
+  public SharedTimer getSharedTimer() {
+    return sharedTimer;
+  }
+
   /**
    * Used for JSR107 cache manager implementation
    */
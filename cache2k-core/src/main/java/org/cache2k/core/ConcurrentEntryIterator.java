@@ -29,8 +29,8 @@ import java.util.NoSuchElementException;
 /**
  * Iterator over all cache entries.
  *
- * <p>Hash expansion: During the iteration a hash expansion may happen, which means every
- * entry is rehashed. In this case it is most likely that entries are missed.
+ * <p>Hash expansion: During the iteration a hash expansion may happen, which means
+ * entries are rehashed. In this case it is most likely that entries are missed.
  * If an expansion occurred, the iteration will restart from the beginning. To ensure that every
  * entry is only iterated once, the iterator has an internal bookkeeping, what was previously
  * iterated.
@@ -49,11 +49,15 @@ public class ConcurrentEntryIterator<K, V> implements Iterator<Entry<K, V>> {
   private long clearCount;
   private Hash2<K, V> hash;
   private Entry<K, V>[] hashArray;
+  private int tableIndex;
+  private int slotIndex;
+  private int expansionCount;
   private HashMap<K, K> seen = new HashMap<K, K>();
 
   public ConcurrentEntryIterator(HeapCache<K, V> cache) {
     this.cache = cache;
     hash = this.cache.hash;
+    expansionCount = hash.getExpansionCount() - 1;
     switchAndCheckAbort();
   }
 
@@ -111,7 +115,6 @@ public class ConcurrentEntryIterator<K, V> implements Iterator<Entry<K, V>> {
       clearOutReferences();
       return null;
     }
-    int idx = 0;
     if (lastEntry != null) {
       e = lastEntry.another;
       if (e != null) {
@@ -121,16 +124,17 @@ public class ConcurrentEntryIterator<K, V> implements Iterator<Entry<K, V>> {
           return e;
         }
       }
-      idx = (cache.extractModifiedHash(lastEntry) & (hashArray.length - 1)) + 1;
+      slotIndex++;
     }
     for (;;) {
-      if (idx >= hashArray.length) {
-        if (switchAndCheckAbort()) {
+      if (slotIndex >= hashArray.length) {
+        if (switchTableAndCheckAbort()) {
           return null;
         }
-        idx = 0;
+        slotIndex = 0;
+        continue;
       }
-      e = hashArray[idx];
+      e = hashArray[slotIndex];
       if (e != null) {
         e = checkIteratedOrNext(e);
         if (e != null) {
@@ -138,16 +142,38 @@ public class ConcurrentEntryIterator<K, V> implements Iterator<Entry<K, V>> {
           return e;
         }
       }
-      idx++;
+      slotIndex++;
     }
   }
 
+  /**
+   * Continue with the next table, or start another scan if all tables are done.
+   *
+   * @return true, if iteration should abort
+   */
+  private boolean switchTableAndCheckAbort() {
+    if (tableIndex + 1 < hash.getTableCount()) {
+      tableIndex++;
+      hashArray = hash.getEntries(tableIndex);
+      if (hashArray == null) {
+        clearOutReferences();
+        throw new CacheClosedException(cache);
+      }
+      return false;
+    }
+    return switchAndCheckAbort();
+  }
+
   private boolean needsAbort() {
     return clearCount != hash.getClearOrCloseCount();
   }
 
   private Entry<K, V> checkIteratedOrNext(Entry<K, V> e) {
     do {
+      if (e.isGone()) {
+        e = e.another;
+        continue;
+      }
       K key = cache.extractKeyObj(e);
       boolean notYetIterated = !seen.containsKey(key);
       if (notYetIterated) {
@@ -186,7 +212,10 @@ public class ConcurrentEntryIterator<K, V> implements Iterator<Entry<K, V>> {
       clearOutReferences();
       return true;
     }
-    hashArray = hash.getEntries();
+    expansionCount = hash.getExpansionCount();
+    tableIndex = 0;
+    lastEntry = null;
+    hashArray = hash.getEntries(0);
     clearCount = hash.getClearOrCloseCount();
     boolean cacheClosed = hashArray == null;
     if (cacheClosed) {
@@ -212,7 +241,7 @@ public class ConcurrentEntryIterator<K, V> implements Iterator<Entry<K, V>> {
    * scan over the hash tables. True also before first run.
    */
   private boolean hasExpansionOccurred() {
-    return hashArray != hash.getEntries();
+    return expansionCount != hash.getExpansionCount();
   }
 
 }
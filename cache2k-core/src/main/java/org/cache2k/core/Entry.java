@@ -22,6 +22,7 @@ package org.cache2k.core;
 
 import org.cache2k.CacheEntry;
 import org.cache2k.core.api.InternalClock;
+import org.cache2k.core.offheap.OffHeapValue;
 import org.cache2k.core.timing.TimerTask;
 import org.cache2k.expiry.ExpiryPolicy;
 import org.cache2k.core.operation.ExaminationEntry;
@@ -54,7 +55,8 @@ class CompactEntry<K, V> {
   private final K key;
 
   /**
-   * Holds the associated entry value or an exception via the {@link ExceptionWrapper}
+   * Holds the associated entry value or an exception via the {@link ExceptionWrapper}.
+   * If values are stored off heap, this holds the {@link OffHeapValue} handle.
    */
   @SuppressWarnings("unchecked")
   private volatile V valueOrException = (V) INITIAL_VALUE;
@@ -96,7 +98,7 @@ class CompactEntry<K, V> {
   }
 
   public boolean equalsValue(V v) {
-    V ve = valueOrException;
+    V ve = getValueOrException();
     if (ve == null) {
       return v == ve;
     }
@@ -111,13 +113,36 @@ class CompactEntry<K, V> {
    */
   @Deprecated
   public V getValue() {
-    return valueOrException;
+    return getValueOrException();
   }
 
   /**
-   * The value of the entry or an {@link ExceptionWrapper}.
+   * The value of the entry or an {@link ExceptionWrapper}. Off heap values are
+   * deserialized. If the off heap value was freed concurrently because of an update,
+   * the read is repeated with the new value. {@code null} is returned only if the
+   * off heap value was freed, because the entry was removed.
    */
+  @SuppressWarnings("unchecked")
   public V getValueOrException() {
+    V v = valueOrException;
+    while (v instanceof OffHeapValue) {
+      Object o = ((OffHeapValue) v).read();
+      if (o != null) {
+        return (V) o;
+      }
+      V current = valueOrException;
+      if (current == v) {
+        return null;
+      }
+      v = current;
+    }
+    return v;
+  }
+
+  /**
+   * The value as stored in the entry, which may be the {@link OffHeapValue} handle.
+   */
+  public Object getStoredValueOrException() {
     return valueOrException;
   }
 
@@ -188,6 +213,14 @@ public class Entry<K, V> extends CompactEntry<K, V>
   /** Entry is in refresh probation phase */
   public static final int EXPIRED_REFRESHED = 6;
 
+  /**
+   * Entry is expired, but the value is returned by a get until the time stored via
+   * {@link #setRefreshProbationNextRefreshTime(long)}.
+   *
+   * @see StaleWhileRevalidateConfiguration
+   */
+  public static final int EXPIRED_STALE = 7;
+
   /** @see #isGone() */
   public static final int GONE = 8;
   public static final int GONE_OTHER = 15;
@@ -213,7 +246,7 @@ public class Entry<K, V> extends CompactEntry<K, V>
   /** Lru list: pointer to previous element or list head */
   public Entry prev;
 
-  /** Marker for Clock-PRO clock */
+  /** Marker for Clock-PRO clock, W-TinyLFU segment and compressed weight */
   private int hotAndWeight;
 
   public Entry(K key, int hashCode) {
@@ -530,15 +563,28 @@ public class Entry<K, V> extends CompactEntry<K, V>
     }
   }
 
+  /**
+   * Entry is in the protected segment of the W-TinyLFU main region.
+   */
+  public boolean isProtected() { return (hotAndWeight & 0x40000000) != 0; }
+
+  public void setProtected(boolean f) {
+    if (f) {
+      hotAndWeight = hotAndWeight | 0x40000000;
+    } else {
+      hotAndWeight = hotAndWeight & 0xbfffffff;
+    }
+  }
+
   /**
    * Store weight as 16 bit floating point number.
    */
   public void setCompressedWeight(int v) {
-    hotAndWeight = hotAndWeight & 0x80000000 | v;
+    hotAndWeight = hotAndWeight & 0xc0000000 | v;
   }
 
   public int getCompressedWeight() {
-    return hotAndWeight & 0x7fffffff;
+    return hotAndWeight & 0x3fffffff;
   }
 
 
@@ -582,14 +628,14 @@ public class Entry<K, V> extends CompactEntry<K, V>
     sb.append(", key=");
     Object key = getKeyObj();
     if (key == null) {
-      sb.append(hashCode);
+      sb.append(getKey());
     } else {
       sb.append(key);
       if (c != null && (HeapCache.modifiedHash(key.hashCode()) != hashCode)) {
         sb.append(", keyMutation=true");
       }
     }
-    Object valueOrException = getValueOrException();
+    Object valueOrException = getStoredValueOrException();
     if (valueOrException instanceof ExceptionWrapper) {
       sb.append(", exception=")
         .append((((ExceptionWrapper) valueOrException).getException().getClass().getSimpleName()));
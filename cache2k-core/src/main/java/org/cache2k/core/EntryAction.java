@@ -286,6 +286,13 @@ public abstract class EntryAction<K, V, R> extends Entry.PiggyBack implements
 
   protected abstract Timing<K, V> timing();
 
+  /**
+   * Provide the storage, default null.
+   */
+  protected StorageAdapter storage() {
+    return null;
+  }
+
   @Override
   public K getKey() {
     return heapEntry.getKey();
@@ -554,6 +561,19 @@ public abstract class EntryAction<K, V, R> extends Entry.PiggyBack implements
         return;
       }
     }
+    if (!refresh && e.isVirgin() && storage() != null) {
+      StorageEntry se;
+      try {
+        se = storage().get(key);
+      } catch (Throwable t) {
+        onLoadFailureIntern(t);
+        return;
+      }
+      if (se != null) {
+        reviveStoredEntry(se);
+        return;
+      }
+    }
     valueDefinitelyLoaded = true;
     loaderWasCalled = true;
     AsyncCacheLoader<K, V> asyncLoader;
@@ -597,6 +617,21 @@ public abstract class EntryAction<K, V, R> extends Entry.PiggyBack implements
     expiryCalculated();
   }
 
+  /**
+   * Use the entry data from the storage instead of calling the loader. The
+   * entry is removed from the storage when the heap is updated.
+   *
+   * @see #mutationMayStore()
+   */
+  @SuppressWarnings("unchecked")
+  private void reviveStoredEntry(StorageEntry se) {
+    storageRead = true;
+    newValueOrException = (V) se.getValueOrException();
+    lastRefreshTime = se.getCreatedOrUpdated();
+    expiry = se.getValueExpiryTime();
+    expiryCalculated();
+  }
+
   /**
    * @return true, in case this is an async call and enqueued the operation
    *         in the running one
@@ -1023,6 +1058,15 @@ public abstract class EntryAction<K, V, R> extends Entry.PiggyBack implements
    * The final write in the entry is at {@link #mutationReleaseLockAndStartTimer()}
    */
   public void mutationUpdateHeap() {
+    Object storedValue = null;
+    if (!remove || expiredImmediately) {
+      try {
+        storedValue = heapCache.toStoredValue(newValueOrException);
+      } catch (CacheStorageException ex) {
+        mutationAbort(ex);
+        return;
+      }
+    }
     synchronized (heapEntry) {
       if (heapCache.isRecordRefreshTime()) {
         heapEntry.setRefreshTime(lastRefreshTime);
@@ -1030,15 +1074,17 @@ public abstract class EntryAction<K, V, R> extends Entry.PiggyBack implements
       if (remove) {
         if (expiredImmediately) {
           heapEntry.setNextRefreshTime(Entry.EXPIRED);
-          heapEntry.setValueOrException(newValueOrException);
+          heapCache.setStoredValue(heapEntry, storedValue);
         } else {
           if (!heapEntry.isVirgin()) {
             heapEntry.setNextRefreshTime(Entry.REMOVE_PENDING);
           }
         }
       } else {
-        oldValueOrException = heapEntry.getValueOrException();
-        heapEntry.setValueOrException(newValueOrException);
+        if (entryUpdatedListeners() != null) {
+          oldValueOrException = heapEntry.getValueOrException();
+        }
+        heapCache.setStoredValue(heapEntry, storedValue);
       }
     }
     if (!remove) {
@@ -1054,7 +1100,18 @@ public abstract class EntryAction<K, V, R> extends Entry.PiggyBack implements
    * Entry mutation, call storage if needed
    */
   public void mutationMayStore() {
-    skipStore();
+    if (storage() == null) {
+      skipStore();
+      return;
+    }
+    heapEntry.nextProcessingStep(STORE);
+    try {
+      storage().remove(key);
+    } catch (Throwable t) {
+      exceptionToPropagate = new StorageWriteException(t);
+    }
+    heapEntry.nextProcessingStep(STORE_COMPLETE);
+    callListeners();
   }
 
   public void skipStore() {
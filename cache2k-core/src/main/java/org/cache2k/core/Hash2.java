@@ -23,6 +23,8 @@ package org.cache2k.core;
 import org.cache2k.Cache;
 import org.cache2k.core.concurrency.Job;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.StampedLock;
 
@@ -30,6 +32,14 @@ import java.util.concurrent.locks.StampedLock;
  * Simple concurrent hash table implementation using optimistic locking
  * for the segments locks.
  *
+ * <p>Expansion: The table is doubled incrementally, similar to the transfer in
+ * {@code ConcurrentHashMap}. The thread that detects the need for expansion allocates
+ * the next table. Threads inserting entries help by claiming segments and moving
+ * their buckets in small chunks while holding only the lock of that segment.
+ * A moved bucket in the old table is replaced by a {@link ForwardEntry}, which
+ * redirects operations to the next table. After all segments are done, the next table
+ * replaces the current one.
+ *
  * @author Jens Wilke
  */
 @SuppressWarnings({"WeakerAccess", "rawtypes"})
@@ -47,8 +57,22 @@ public class Hash2<K, V> {
    */
   private static final int HASH_LOAD_PERCENT = 64;
 
-  private static final int LOCK_SEGMENTS;
-  private static final int LOCK_MASK;
+  /**
+   * Number of buckets moved to the next table while holding a segment lock
+   * during expansion.
+   */
+  private static final int TRANSFER_CHUNK_BUCKETS = 128;
+
+  private static final int MAXIMUM_TABLE_SIZE = 1 << 30;
+
+  /**
+   * Add a fraction of the expected entries when sizing the table in advance, since the
+   * expansion is triggered by the size of a single segment and segments are not filled evenly.
+   */
+  static final int PRESIZE_HEADROOM_FRACTION = 8;
+
+  static final int LOCK_SEGMENTS;
+  static final int LOCK_MASK;
 
   /* GraalVM: This runs at runtime, see native-image.properties */
   static {
@@ -63,6 +87,12 @@ public class Hash2<K, V> {
    */
   private volatile int clearOrCloseCount = 0;
 
+  /**
+   * Counts the operations that relocate entries within the hash table.
+   * Needed for the iterator to detect that it may have missed entries.
+   */
+  private final AtomicInteger expansionCount = new AtomicInteger();
+
   /**
    * Maximum size of one segment, after we expand. Although there are concurrent updates/reads
    * this field does not need to be volatile, since expansion occurs very seldom.
@@ -71,21 +101,43 @@ public class Hash2<K, V> {
    */
   private long segmentMaxFill;
 
-  private Entry<K, V>[] entries;
-  private final StampedLock[] locks;
-  private final AtomicLong[] segmentSize;
+  /**
+   * The current table. Volatile, since it is replaced after an expansion without
+   * holding all segment locks.
+   */
+  private volatile Entry<K, V>[] entries;
 
-  private final Cache cache;
+  /**
+   * Pending expansion, or {@code null}. Is started and ended while holding
+   * the lock of segment 0.
+   */
+  private volatile Transfer<K, V> transfer;
+
+  /**
+   * Only one thread allocates the next table, other threads continue inserting meanwhile.
+   */
+  private final AtomicBoolean startingTransfer = new AtomicBoolean();
+
+  final StampedLock[] locks;
+  final AtomicLong[] segmentSize;
+
+  final Cache cache;
 
   /**
    *
    * @param cache Cache reference only needed for the cache name in case of an exception
    */
   public Hash2(Cache cache) {
-    this.cache = cache;
+    this(cache, true);
   }
 
-  {
+  /**
+   * Initialize segment locks and counters.
+   *
+   * @param allocateTable false, if the subclass uses its own table structure
+   */
+  Hash2(Cache cache, boolean allocateTable) {
+    this.cache = cache;
     locks = new StampedLock[LOCK_SEGMENTS];
     for (int i = 0; i < LOCK_SEGMENTS; i++) {
       locks[i] = new StampedLock();
@@ -94,11 +146,16 @@ public class Hash2<K, V> {
     for (int i = 0; i < LOCK_SEGMENTS; i++) {
       segmentSize[i] = new AtomicLong();
     }
-    initArray();
+    if (allocateTable) {
+      initArray();
+    }
   }
 
+  /**
+   * Allocate an empty table. Called at construction time and when cleared.
+   */
   @SuppressWarnings("unchecked")
-  private void initArray() {
+  void initArray() {
     int len = Math.max(INITIAL_HASH_SIZE, LOCK_SEGMENTS * 4);
     entries = new Entry[len];
     calcMaxFill();
@@ -121,48 +178,71 @@ public class Hash2<K, V> {
    * Lookup the entry in the hash table and return it. First tries an optimistic read.
    */
   public Entry<K, V> lookup(K key, int hash, int keyValue) {
+    return lookup(key, false, 0, hash, keyValue);
+  }
+
+  /**
+   * Lookup an entry of the {@link LongHeapCache} by the primitive key. Same as
+   * {@link #lookup(Object, int, int)}, without a key object.
+   */
+  public Entry<K, V> lookupLong(long key, int hash) {
+    return lookup(null, true, key, hash, hash);
+  }
+
+  /**
+   * Common lookup for object and primitive long keys. The entry matches
+   * according to {@link #keyIsEqual(Object, boolean, long, Entry)}.
+   */
+  protected Entry<K, V> lookup(K key, boolean primitive, long longKey, int hash, int keyValue) {
     StampedLock[] locks = this.locks;
     int si = hash & LOCK_MASK;
     StampedLock l = locks[si];
     long stamp = l.tryOptimisticRead();
+    Entry<K, V> e = findInBucket(key, primitive, longKey, hash, keyValue);
+    if (e != null || l.validate(stamp)) {
+      return e;
+    }
+    stamp = l.readLock();
+    try {
+      return findInBucket(key, primitive, longKey, hash, keyValue);
+    } finally {
+      l.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Search the collision chain of the bucket, following a bucket that was moved
+   * to the next table during an expansion.
+   */
+  private Entry<K, V> findInBucket(K key, boolean primitive, long longKey, int hash,
+                                     int keyValue) {
     Entry<K, V>[] tab = entries;
     if (tab == null) {
       throw new CacheClosedException(cache);
     }
-    Entry<K, V> e;
-    int n = tab.length;
-    int mask = n - 1;
-    int idx = hash & (mask);
-    e = tab[idx];
+    Entry<K, V> e = tab[hash & (tab.length - 1)];
+    while (e instanceof ForwardEntry) {
+      tab = ((ForwardEntry) e).nextTable;
+      e = tab[hash & (tab.length - 1)];
+    }
     while (e != null) {
-      if (e.hashCode == keyValue && keyObjIsEqual(key, e)) {
+      if (e.hashCode == keyValue && keyIsEqual(key, primitive, longKey, e)) {
         return e;
       }
       e = e.another;
     }
-    if (l.validate(stamp)) {
-      return null;
-    }
-    stamp = l.readLock();
-    try {
-      tab = entries;
-      if (tab == null) {
-        throw new CacheClosedException(cache);
-      }
-      n = tab.length;
-      mask = n - 1;
-      idx = hash & (mask);
-      e = tab[idx];
-      while (e != null) {
-        if (e.hashCode == keyValue && (keyObjIsEqual(key, e))) {
-          return e;
-        }
-        e = e.another;
-      }
-      return null;
-    } finally {
-      l.unlockRead(stamp);
+    return null;
+  }
+
+  /**
+   * Compare the key of the entry. For a primitive lookup, the entry is a {@link LongEntry}
+   * and the primitive key is compared.
+   */
+  protected final boolean keyIsEqual(K key, boolean primitive, long longKey, Entry e) {
+    if (primitive) {
+      return ((LongEntry) e).longKey == longKey;
     }
+    return keyObjIsEqual(key, e);
   }
 
   protected boolean keyObjIsEqual(K key, Entry e) {
@@ -170,22 +250,39 @@ public class Hash2<K, V> {
     return (ek = e.getKeyObj()) == key || (ek.equals(key));
   }
 
+  /**
+   * True if the inserted entry has the same key as the entry in the table.
+   */
+  protected boolean entryKeyIsEqual(Entry<K, V> e, Entry f) {
+    return keyObjIsEqual(e.getKeyObj(), f);
+  }
 
+  /**
+   * The table that contains the bucket for the hash code. During an expansion the
+   * bucket may be moved to the next table already. Assumes the segment lock.
+   */
+  private Entry<K, V>[] tableWithinLock(int hash) {
+    Entry<K, V>[] tab = entries;
+    if (tab == null) {
+      throw new CacheClosedException(cache);
+    }
+    Entry<K, V> e;
+    while ((e = tab[hash & (tab.length - 1)]) instanceof ForwardEntry) {
+      tab = ((ForwardEntry) e).nextTable;
+    }
+    return tab;
+  }
 
   /**
    * Insert an entry. Checks if an entry already exists.
    */
   public Entry<K, V> insertWithinLock(Entry<K, V> e, int hash, int keyValue) {
-    K key = e.getKeyObj();
     int si = hash & LOCK_MASK;
-    Entry<K, V> f; Object ek; Entry<K, V>[] tab = entries;
-    if (tab == null) {
-      throw new CacheClosedException(cache);
-    }
+    Entry<K, V> f; Entry<K, V>[] tab = tableWithinLock(hash);
     int n = tab.length, mask = n - 1, idx = hash & (mask);
     f = tab[idx];
     while (f != null) {
-      if (f.hashCode == keyValue && ((ek = f.getKeyObj()) == key || (ek.equals(key)))) {
+      if (f.hashCode == keyValue && entryKeyIsEqual(e, f)) {
         return f;
       }
       f = f.another;
@@ -198,17 +295,25 @@ public class Hash2<K, V> {
 
   /**
    * Checks whether expansion is needed and expand when {@link #insertWithinLock(Entry, int, int)}
-   * is used. No lock may be hold when calling this method, since the table must be locked
-   * completely using the proper lock order.
+   * is used. No lock may be hold when calling this method, since segment locks are acquired
+   * while expanding.
    *
    * <p>Need for expansion is only checked by comparing whether the associated segment is
-   * full. Should be called after insert after giving up the lock.
+   * full. Should be called after insert after giving up the lock. If an expansion
+   * is running already, the calling thread helps.
    */
   public void checkExpand(int hash) {
     int si = hash & LOCK_MASK;
     long size = segmentSize[si].get();
     if (size > segmentMaxFill) {
-      eventuallyExpand(si);
+      Transfer<K, V> t = transfer;
+      if (t == null) {
+        t = startTransfer(si);
+        if (t == null) {
+          return;
+        }
+      }
+      helpTransfer(t);
     }
   }
 
@@ -228,10 +333,7 @@ public class Hash2<K, V> {
     StampedLock l = locks[si];
     long stamp = l.writeLock();
     try {
-      Entry<K, V> f; Entry<K, V>[] tab = entries;
-      if (tab == null) {
-        throw new CacheClosedException(cache);
-      }
+      Entry<K, V> f; Entry<K, V>[] tab = tableWithinLock(hash);
       int n = tab.length, mask = n - 1, idx = hash & (mask);
       f = tab[idx];
       if (f == e) {
@@ -256,10 +358,7 @@ public class Hash2<K, V> {
 
   public boolean removeWithinLock(Entry<K, V> e, int hash) {
     int si = hash & LOCK_MASK;
-    Entry<K, V> f; Entry<K, V>[] tab = entries;
-    if (tab == null) {
-      throw new CacheClosedException(cache);
-    }
+    Entry<K, V> f; Entry<K, V>[] tab = tableWithinLock(hash);
     int n = tab.length, mask = n - 1, idx = hash & (mask);
     f = tab[idx];
     if (f == e) {
@@ -281,25 +380,157 @@ public class Hash2<K, V> {
 
 
   /**
-   * Acquire all segment locks and rehash, if really needed.
+   * Allocate the next table and publish the transfer, if expansion is really needed.
+   * The allocation may take a while for big tables, so it is done without holding a lock.
+   *
+   * @return the new transfer, a running transfer or {@code null} if not needed or another
+   *         thread is allocating
    */
-  private void eventuallyExpand(int segmentIndex) {
-    long[] stamps = lockAll();
+  @SuppressWarnings("unchecked")
+  private Transfer<K, V> startTransfer(int segmentIndex) {
+    if (!startingTransfer.compareAndSet(false, true)) {
+      return transfer;
+    }
     try {
-      long size = segmentSize[segmentIndex].get();
-      if (size <= segmentMaxFill) {
-        return;
+      Entry<K, V>[] src = entries;
+      if (src == null || segmentSize[segmentIndex].get() <= segmentMaxFill) {
+        return transfer;
+      }
+      Entry<K, V>[] dst = new Entry[src.length * 2];
+      StampedLock l = locks[0];
+      long stamp = l.writeLock();
+      try {
+        if (transfer != null || entries != src) {
+          return transfer;
+        }
+        Transfer<K, V> t = new Transfer<K, V>(src, dst);
+        expansionCount.incrementAndGet();
+        transfer = t;
+        return t;
+      } finally {
+        l.unlockWrite(stamp);
       }
-      rehash();
     } finally {
-      unlockAll(stamps);
+      startingTransfer.set(false);
     }
   }
 
+  /**
+   * Claim segments and move their buckets to the next table. Returns when there is no
+   * segment left to claim, other threads may still work on their segments.
+   */
+  private void helpTransfer(Transfer<K, V> t) {
+    int si;
+    while ((si = t.nextSegment.getAndIncrement()) < LOCK_SEGMENTS) {
+      while (transferChunk(t, si)) { }
+    }
+  }
+
+  /**
+   * Move a chunk of buckets of a segment, while holding the segment lock.
+   * The thread that completes the last segment makes the next table the current one.
+   *
+   * @return true, if more buckets of this segment need to be moved
+   */
+  private boolean transferChunk(Transfer<K, V> t, int si) {
+    StampedLock l = locks[si];
+    long stamp = l.writeLock();
+    boolean segmentCompleted;
+    try {
+      if (transfer != t) {
+        return false;
+      }
+      segmentCompleted = transferBuckets(t, si, TRANSFER_CHUNK_BUCKETS);
+      if (!segmentCompleted && t.cursor[si] < t.bucketsPerSegment) {
+        return true;
+      }
+    } finally {
+      l.unlockWrite(stamp);
+    }
+    if (segmentCompleted && t.segmentsCompleted.incrementAndGet() == LOCK_SEGMENTS) {
+      completeTransfer(t);
+    }
+    return false;
+  }
+
+  /**
+   * Move buckets of one segment to the next table. A bucket with index {@code i}
+   * splits into the buckets {@code i} and {@code i + n} of the next table, which belong
+   * to the same segment. Assumes the segment lock.
+   *
+   * @return true, if the transfer of the segment completed with this call
+   */
+  private boolean transferBuckets(Transfer<K, V> t, int si, int maxBuckets) {
+    int k = t.cursor[si];
+    int count = t.bucketsPerSegment;
+    if (k >= count) {
+      return false;
+    }
+    int end = count - k <= maxBuckets ? count : k + maxBuckets;
+    Entry<K, V>[] src = t.src;
+    Entry<K, V>[] dst = t.dst;
+    int n = src.length;
+    Entry<K, V> e, next, lo, hi;
+    for (; k < end; k++) {
+      int i = si + k * LOCK_SEGMENTS;
+      e = src[i];
+      lo = hi = null;
+      while (e != null) {
+        next = e.another;
+        if ((modifiedHashCode(e.hashCode) & n) == 0) {
+          e.another = lo; lo = e;
+        } else {
+          e.another = hi; hi = e;
+        }
+        e = next;
+      }
+      dst[i] = lo;
+      dst[i + n] = hi;
+      src[i] = t.forward;
+    }
+    t.cursor[si] = k;
+    return k == count;
+  }
+
+  /**
+   * All buckets are moved, switch to the next table.
+   */
+  private void completeTransfer(Transfer<K, V> t) {
+    StampedLock l = locks[0];
+    long stamp = l.writeLock();
+    try {
+      if (transfer == t) {
+        entries = t.dst;
+        calcMaxFill();
+        transfer = null;
+        expansionCount.incrementAndGet();
+      }
+    } finally {
+      l.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Move all remaining buckets, if an expansion is running. Assumes total lock.
+   */
+  private void completeTransferWhenLocked() {
+    Transfer<K, V> t = transfer;
+    if (t == null) {
+      return;
+    }
+    for (int si = 0; si < LOCK_SEGMENTS; si++) {
+      transferBuckets(t, si, t.bucketsPerSegment);
+    }
+    entries = t.dst;
+    calcMaxFill();
+    transfer = null;
+    expansionCount.incrementAndGet();
+  }
+
   /**
    * Acquire all segment locks and return an array with the lock stamps.
    */
-  private long[] lockAll() {
+  long[] lockAll() {
     StampedLock[] locks = this.locks;
     int sn = locks.length;
     long[] stamps = new long[this.locks.length];
@@ -315,7 +546,7 @@ public class Hash2<K, V> {
    *
    * @param stamps array with the lock stamps.
    */
-  private void unlockAll(long[] stamps) {
+  void unlockAll(long[] stamps) {
     StampedLock[] locks = this.locks;
     int sn = locks.length;
     for (int i = 0; i < sn; i++) {
@@ -330,13 +561,23 @@ public class Hash2<K, V> {
   /**
    * Double the hash table size and rehash the entries. Assumes total lock.
    */
-  @SuppressWarnings("unchecked")
   void rehash() {
+    completeTransferWhenLocked();
     Entry<K, V>[] src = entries;
     if (src == null) {
       throw new CacheClosedException(cache);
     }
-    int i, sl = src.length, n = sl * 2, mask = n - 1, idx;
+    rehash(src.length * 2);
+  }
+
+  /**
+   * Rehash the entries into a table of the given size. Assumes total lock and no
+   * running transfer.
+   */
+  @SuppressWarnings("unchecked")
+  private void rehash(int n) {
+    Entry<K, V>[] src = entries;
+    int i, sl = src.length, mask = n - 1, idx;
     Entry<K, V>[] tab = new Entry[n];
     long count = 0; Entry next, e;
     for (i = 0; i < sl; i++) {
@@ -349,6 +590,7 @@ public class Hash2<K, V> {
     }
     entries = tab;
     calcMaxFill();
+    expansionCount.incrementAndGet();
   }
 
   public long getSize() {
@@ -360,11 +602,38 @@ public class Hash2<K, V> {
   }
 
   /**
-   * Lock all segments and run the job.
+   * Expand the table in advance, so it can hold the expected number of entries without
+   * further expansion.
+   */
+  public void presize(final long expectedEntries) {
+    runTotalLocked(new Job<Void>() {
+      @Override
+      public Void call() {
+        Entry<K, V>[] tab = entries;
+        if (tab == null) {
+          throw new CacheClosedException(cache);
+        }
+        long n = tab.length;
+        long limit = expectedEntries + expectedEntries / PRESIZE_HEADROOM_FRACTION;
+        while (n * HASH_LOAD_PERCENT / 100 < limit && n < MAXIMUM_TABLE_SIZE) {
+          n = n * 2;
+        }
+        if (n > tab.length) {
+          rehash((int) n);
+        }
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Lock all segments and run the job. A running expansion is completed before,
+   * so the job sees the entries in a single table.
    */
   public <T> T runTotalLocked(Job<T> j) {
     long[] stamps = lockAll();
     try {
+      completeTransferWhenLocked();
       return j.call();
     } finally {
       unlockAll(stamps);
@@ -376,6 +645,7 @@ public class Hash2<K, V> {
       aSegmentSize.set(0);
     }
     clearOrCloseCount++;
+    transfer = null;
     initArray();
   }
 
@@ -383,6 +653,18 @@ public class Hash2<K, V> {
     return clearOrCloseCount;
   }
 
+  /**
+   * Incremented after entries were relocated. An iteration that started with a different
+   * count may have missed entries.
+   */
+  public int getExpansionCount() {
+    return expansionCount.get();
+  }
+
+  void incrementExpansionCount() {
+    expansionCount.incrementAndGet();
+  }
+
   /**
    * Close the cache by discarding the entry table. Assumes total lock.
    *
@@ -392,6 +674,7 @@ public class Hash2<K, V> {
    */
   public void close() {
     clearOrCloseCount++;
+    transfer = null;
     entries = null;
   }
 
@@ -411,10 +694,70 @@ public class Hash2<K, V> {
   }
 
   /**
-   * Entry table used by the iterator.
+   * Number of entry tables, used by the iterator. While an expansion is running the
+   * entries are spread over the current and the next table, so both need to be scanned.
+   */
+  public int getTableCount() {
+    return transfer != null ? 2 : 1;
+  }
+
+  /**
+   * Entry table used by the iterator. Entries in the table may be chained via
+   * {@link Entry#another}. Entries that are marked as gone need to be skipped.
+   * The table contains all entries when retrieved within {@link #runTotalLocked(Job)}.
+   * During an expansion index 0 is the current table, whose moved buckets are forwarded,
+   * and index 1 is the next table.
+   *
+   * @return the table or {@code null} if closed
+   */
+  public Entry<K, V>[] getEntries(int tableIndex) {
+    Transfer<K, V> t = transfer;
+    if (t == null) {
+      return entries;
+    }
+    return tableIndex == 0 ? t.src : t.dst;
+  }
+
+  /**
+   * Replaces a bucket that was moved to the next table during expansion.
+   * Marked as gone, so it is skipped by iterations.
    */
-  public Entry<K, V>[] getEntries() {
-    return entries;
+  @SuppressWarnings("unchecked")
+  static final class ForwardEntry extends Entry {
+
+    final Entry[] nextTable;
+
+    ForwardEntry(Entry[] nextTable) {
+      this.nextTable = nextTable;
+      setGone();
+    }
+
+  }
+
+  /**
+   * State of a running expansion.
+   */
+  static final class Transfer<K, V> {
+
+    final Entry<K, V>[] src;
+    final Entry<K, V>[] dst;
+    final ForwardEntry forward;
+    final int bucketsPerSegment;
+
+    /**
+     * Number of moved buckets of each segment. Guarded by the segment lock.
+     */
+    final int[] cursor = new int[LOCK_SEGMENTS];
+    final AtomicInteger nextSegment = new AtomicInteger();
+    final AtomicInteger segmentsCompleted = new AtomicInteger();
+
+    Transfer(Entry<K, V>[] src, Entry<K, V>[] dst) {
+      this.src = src;
+      this.dst = dst;
+      forward = new ForwardEntry(dst);
+      bucketsPerSegment = src.length / LOCK_SEGMENTS;
+    }
+
   }
 
 }
@@ -34,10 +34,12 @@ import org.cache2k.core.api.InternalCacheInfo;
 import org.cache2k.core.eviction.Eviction;
 import org.cache2k.core.eviction.EvictionMetrics;
 import org.cache2k.core.eviction.HeapCacheForEviction;
+import org.cache2k.core.offheap.OffHeapStore;
+import org.cache2k.core.offheap.OffHeapValue;
 import org.cache2k.core.operation.ExaminationEntry;
-import org.cache2k.core.operation.ReadOnlyCacheEntry;
 import org.cache2k.core.operation.Semantic;
 import org.cache2k.core.operation.Operations;
+import org.cache2k.core.storage.CacheSnapshot;
 import org.cache2k.core.concurrency.DefaultThreadFactoryProvider;
 import org.cache2k.core.concurrency.Job;
 import org.cache2k.core.concurrency.ThreadFactoryProvider;
@@ -50,11 +52,13 @@ import org.cache2k.core.util.TunableConstants;
 import org.cache2k.core.util.TunableFactory;
 import org.cache2k.event.CacheClosedListener;
 import org.cache2k.io.AdvancedCacheLoader;
+import org.cache2k.io.BulkCacheLoader;
 import org.cache2k.io.CacheLoaderException;
 import org.cache2k.io.ExceptionPropagator;
 import org.cache2k.integration.RefreshedTimeWrapper;
 import org.cache2k.processor.EntryProcessor;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -70,6 +74,7 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -113,6 +118,11 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
   protected String name;
   public CacheManagerImpl manager;
   protected AdvancedCacheLoader<K, V> loader;
+
+  /**
+   * Set if the loader supports bulk requests, also {@link #loader} is set.
+   */
+  protected BulkCacheLoader<K, V> bulkLoader;
   protected InternalClock clock;
   @SuppressWarnings("unchecked")
   protected Timing<K, V> timing = TimeAgnosticTiming.ETERNAL;
@@ -146,6 +156,24 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
 
   Eviction eviction;
 
+  /**
+   * Store for the values in direct memory or {@code null}, if values are kept on the heap.
+   */
+  OffHeapStore offHeapStore;
+
+  /**
+   * Writes the cache contents on close, or {@code null} if not configured.
+   */
+  CacheSnapshot snapshot;
+
+  /**
+   * Reused entry per thread returned by {@link #getEntry} and {@link #peekEntry}, or
+   * {@code null} if a new entry object is created for each call.
+   *
+   * @see Cache2kConfiguration#isFlyweightEntries()
+   */
+  private ThreadLocal<FlyweightCacheEntry<K, V>> flyweightEntry;
+
   /** Number of entries removed by clear. Guarded by: lock */
   protected long clearRemovedCnt = 0;
 
@@ -197,6 +225,20 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
     }
   }
 
+  /**
+   * Queue for refreshes, or {@code null} if refreshes start directly.
+   *
+   * @see RefreshQueueConfiguration
+   */
+  RefreshQueue<K, V> refreshQueue;
+
+  /**
+   * Time after the expiry a get returns the stale value, or 0 if disabled.
+   *
+   * @see StaleWhileRevalidateConfiguration
+   */
+  long staleMillis;
+
   protected final Hash2<K, V> hash = createHashTable();
 
   private volatile boolean closing = true;
@@ -280,6 +322,14 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
     setFeatureBit(BACKGROUND_REFRESH, cfg.isRefreshAhead());
     setFeatureBit(UPDATE_TIME_NEEDED, cfg.isRecordRefreshedTime());
     setFeatureBit(RECORD_REFRESH_TIME, cfg.isRecordRefreshedTime());
+    if (cfg.isFlyweightEntries()) {
+      flyweightEntry = new ThreadLocal<FlyweightCacheEntry<K, V>>() {
+        @Override
+        protected FlyweightCacheEntry<K, V> initialValue() {
+          return new FlyweightCacheEntry<K, V>();
+        }
+      };
+    }
 
     metrics = TUNABLE.commonMetricsFactory.create(new CommonMetricsFactory.Parameters() {
       @Override
@@ -293,16 +343,56 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
       }
     });
 
+    VirtualThreadConfiguration virtualThreadConfig =
+      cfg.getSections().getSection(VirtualThreadConfiguration.class);
     if (cfg.getLoaderExecutor() != null) {
       loaderExecutor = buildContext.createCustomization(cfg.getLoaderExecutor());
     } else {
-      if (cfg.getLoaderThreadCount() > 0) {
+      Executor virtualThreadExecutor = virtualThreadConfig != null ?
+        provideVirtualThreadLoaderExecutor(virtualThreadConfig) : null;
+      if (virtualThreadExecutor != null) {
+        loaderExecutor = virtualThreadExecutor;
+      } else if (cfg.getLoaderThreadCount() > 0) {
         loaderExecutor = provideDefaultLoaderExecutor(cfg.getLoaderThreadCount());
       }
     }
     refreshExecutor =
       buildContext.createCustomization(cfg.getRefreshExecutor(), new LazyRefreshExecutor());
+    RefreshQueueConfiguration refreshQueueConfig =
+      cfg.getSections().getSection(RefreshQueueConfiguration.class);
+    if (refreshQueueConfig != null && cfg.isRefreshAhead()) {
+      refreshQueue = new RefreshQueue<K, V>(buildContext.getClock(), refreshQueueConfig,
+        new RefreshQueue.Target<K, V>() {
+          @Override
+          public void startRefresh(Entry<K, V> e) {
+            refreshExecutor.execute(createFireAndForgetAction(e, Operations.SINGLETON.refresh));
+          }
+
+          @Override
+          public void refreshRejected(Entry<K, V> e) {
+            metrics.refreshRejected();
+            expireOrScheduleFinalExpireEvent(e);
+          }
+        });
+    }
+    StaleWhileRevalidateConfiguration staleConfig =
+      cfg.getSections().getSection(StaleWhileRevalidateConfiguration.class);
+    if (staleConfig != null) {
+      if (cfg.isRefreshAhead()) {
+        throw new IllegalArgumentException(
+          "Stale while revalidate cannot be combined with refresh ahead");
+      }
+      Duration d = staleConfig.getStaleDuration();
+      if (d == null || d.isNegative() || d.isZero()) {
+        throw new IllegalArgumentException("stale duration must be positive");
+      }
+      staleMillis = d.toMillis();
+    }
     executor = buildContext.createCustomization(cfg.getExecutor(), SHARED_EXECUTOR);
+    if (TUNABLE.hashTablePresizeMaximum > 0 && cfg.getWeigher() == null &&
+      cfg.getEntryCapacity() > 0) {
+      hash.presize(Math.min(cfg.getEntryCapacity(), TUNABLE.hashTablePresizeMaximum));
+    }
     if (cfg.hasCacheClosedListeners()) {
       List<CacheClosedListener> listeners = new ArrayList<CacheClosedListener>();
       for (CustomizationSupplier<CacheClosedListener> sup : cfg.getCacheClosedListeners()) {
@@ -338,6 +428,21 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
     return new ExclusiveExecutor(threadCount, getThreadNamePrefix());
   }
 
+  /**
+   * Virtual thread per load if supported by the runtime.
+   *
+   * @return the executor or {@code null}, if not supported. The loader executor is
+   *         configured as without virtual threads then.
+   */
+  private Executor provideVirtualThreadLoaderExecutor(VirtualThreadConfiguration cfg) {
+    ThreadFactory factory = VirtualThreadExecutor.createVirtualThreadFactory(getThreadNamePrefix());
+    if (factory != null) {
+      return new VirtualThreadExecutor(cfg.getMaximumConcurrency(), factory);
+    }
+    getLog().info("Virtual threads not supported by the runtime, using loader thread pool");
+    return null;
+  }
+
   public void setTiming(Timing<K, V> rh) {
     timing = rh;
     if (!(rh instanceof TimeAgnosticTiming)) {
@@ -358,6 +463,10 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
     loader = al;
   }
 
+  public void setBulkLoader(BulkCacheLoader<K, V> l) {
+    bulkLoader = l;
+  }
+
   /**
    * Set the name and configure a logging, used within cache construction.
    */
@@ -415,6 +524,9 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
     clearCnt++;
     timing.cancelAll();
     hash.clearWhenLocked();
+    if (offHeapStore != null) {
+      offHeapStore.clear();
+    }
     clearedTime = clock.millis();
   }
 
@@ -445,6 +557,9 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
       }
     });
     closeCustomization(loaderExecutor, "loaderExecutor");
+    if (refreshQueue != null) {
+      refreshQueue.close();
+    }
     cancelTimerJobs();
   }
 
@@ -462,9 +577,15 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
     executeWithGlobalLock(new Job<Void>() {
       @Override
       public Void call() {
+        if (snapshot != null) {
+          snapshot.write(HeapCache.this);
+        }
         eviction.close();
         timing.close(HeapCache.this);
         hash.close();
+        if (offHeapStore != null) {
+          offHeapStore.close();
+        }
         closeCustomization(loader, "loader");
         for (CacheClosedListener s : cacheClosedListeners) {
           s.onCacheClosed(userCache);
@@ -626,9 +747,51 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
     }
   }
 
+  /**
+   * Mutable entry that is reused within a thread, so a hit via {@link #getEntry}
+   * or {@link #peekEntry} does not allocate.
+   */
+  static final class FlyweightCacheEntry<K, V> extends BaseCacheEntry<K, V> {
+    private K key;
+    private V value;
+
+    @Override
+    public K getKey() {
+      return key;
+    }
+
+    @Override
+    public V getValue() {
+      return value;
+    }
+  }
+
+  /**
+   * Like {@link #returnEntry(ExaminationEntry)} but uses the thread local flyweight entry
+   * if enabled. Only used for the public entry operations, internal users of
+   * {@link #returnEntry(ExaminationEntry)} may keep the entry.
+   */
+  @SuppressWarnings("unchecked")
+  private CacheEntry<K, V> returnEntryMaybeFlyweight(K key, Entry<K, V> e) {
+    if (e == null) {
+      return null;
+    }
+    if (flyweightEntry == null) {
+      return returnCacheEntry(e);
+    }
+    V v = e.getValueOrException();
+    if (v instanceof ExceptionWrapper) {
+      return (ExceptionWrapper) v;
+    }
+    FlyweightCacheEntry<K, V> fe = flyweightEntry.get();
+    fe.key = key;
+    fe.value = v;
+    return fe;
+  }
+
   @Override
   public CacheEntry<K, V> getEntry(K key) {
-    return returnEntry(getEntryInternal(key));
+    return returnEntryMaybeFlyweight(key, getEntryInternal(key));
   }
 
   protected Entry<K, V> getEntryInternal(K key) {
@@ -656,6 +819,9 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
           metrics.goneSpin();
           continue;
         }
+        if (e.getNextRefreshTime() == Entry.EXPIRED_STALE && revalidateStaleEntry(e)) {
+          return e;
+        }
         e.startProcessing(Entry.ProcessingState.LOAD, null);
         break;
       }
@@ -709,6 +875,7 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
       e.setGone();
       if (removed) {
         eviction.submitWithoutTriggeringEviction(e);
+        freeOffHeapValue(e);
       }
     } finally {
       l.unlockWrite(stamp);
@@ -865,7 +1032,7 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
 
   @Override
   public CacheEntry<K, V> peekEntry(K key) {
-    return returnEntry(peekEntryInternal(key));
+    return returnEntryMaybeFlyweight(key, peekEntryInternal(key));
   }
 
   /**
@@ -1045,11 +1212,15 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
   public void loadAll(Iterable<? extends K> keys, CacheOperationCompletionListener l) {
     checkLoaderPresent();
     final CacheOperationCompletionListener listener = l != null ? l : DUMMY_LOAD_COMPLETED_LISTENER;
-    Set<K> keysToLoad = checkAllPresent(keys);
+    final Set<K> keysToLoad = checkAllPresent(keys);
     if (keysToLoad.isEmpty()) {
       listener.onCompleted();
       return;
     }
+    if (bulkLoader != null) {
+      executeBulkLoad(keysToLoad, false, listener);
+      return;
+    }
     final AtomicInteger countDown = new AtomicInteger(keysToLoad.size());
     for (K k : keysToLoad) {
       final K key = k;
@@ -1078,6 +1249,10 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
     checkLoaderPresent();
     final CacheOperationCompletionListener listener = l != null ? l : DUMMY_LOAD_COMPLETED_LISTENER;
     Set<K> keySet = generateKeySet(keys);
+    if (bulkLoader != null) {
+      executeBulkLoad(keySet, true, listener);
+      return;
+    }
     final AtomicInteger countDown = new AtomicInteger(keySet.size());
     for (K k : keySet) {
       final K key = k;
@@ -1102,6 +1277,149 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
     }
   }
 
+  /**
+   * Run the bulk load in the loader executor or in the calling thread, if the
+   * executor rejects.
+   */
+  private void executeBulkLoad(final Set<K> keys, final boolean reload,
+                               final CacheOperationCompletionListener listener) {
+    Runnable r = new RunWithCatch(this) {
+      @Override
+      public void action() {
+        try {
+          bulkLoad(keys, reload);
+        } finally {
+          listener.onCompleted();
+        }
+      }
+    };
+    try {
+      loaderExecutor.execute(r);
+    } catch (RejectedExecutionException ex) {
+      r.run();
+    }
+  }
+
+  /**
+   * Load the keys via one call to the bulk loader. Fresh entries are not loaded again,
+   * unless {@code reload} is set. Entries that are processed by another operation, e.g.
+   * a concurrent load of the same key, are not part of the bulk request. After the bulk
+   * request we wait for these operations to complete and use their result, which
+   * coalesces concurrent loads of the same key.
+   *
+   * @return entry for each key
+   */
+  protected Map<K, Entry<K, V>> bulkLoad(Collection<K> keys, boolean reload) {
+    Map<K, Entry<K, V>> result = new HashMap<K, Entry<K, V>>();
+    Map<K, Entry<K, V>> batch = new HashMap<K, Entry<K, V>>();
+    List<K> inFlight = new ArrayList<K>();
+    for (K key : keys) {
+      for (;;) {
+        Entry<K, V> e = lookupOrNewEntry(key);
+        synchronized (e) {
+          if (e.isGone()) {
+            metrics.goneSpin();
+            continue;
+          }
+          if (e.isProcessing()) {
+            inFlight.add(key);
+          } else if (!reload && e.hasFreshData(clock)) {
+            result.put(key, e);
+          } else {
+            e.startProcessing(Entry.ProcessingState.LOAD, null);
+            batch.put(key, e);
+          }
+          break;
+        }
+      }
+    }
+    if (!batch.isEmpty()) {
+      bulkLoadBatch(batch);
+      result.putAll(batch);
+    }
+    for (K key : inFlight) {
+      Entry<K, V> e = reload ? waitForProcessingAndReload(key) : getEntryInternal(key);
+      if (e != null) {
+        result.put(key, e);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * A running operation may have started before the reload was requested, so its
+   * result is not used and the key is loaded again after it completes.
+   */
+  private Entry<K, V> waitForProcessingAndReload(K key) {
+    loadAndReplace(key);
+    return lookupEntryNoHitRecord(key);
+  }
+
+  /**
+   * Call the bulk loader for all entries, which are in processing state. If the bulk
+   * loader throws an exception, the exception is propagated for every entry.
+   */
+  @SuppressWarnings("unchecked")
+  private void bulkLoadBatch(Map<K, Entry<K, V>> batch) {
+    long t0 = !isUpdateTimeNeeded() ? 0 : clock.millis();
+    List<K> keys = new ArrayList<K>(batch.keySet());
+    List<Entry<K, V>> entries = new ArrayList<Entry<K, V>>(keys.size());
+    for (K key : keys) {
+      entries.add(batch.get(key));
+    }
+    boolean[] finished = new boolean[keys.size()];
+    try {
+      Set<K> keysToLoad = new HashSet<K>();
+      for (int i = 0; i < keys.size(); i++) {
+        Entry<K, V> e = entries.get(i);
+        if (e.getNextRefreshTime() == Entry.EXPIRED_REFRESHED &&
+          entryInRefreshProbationAccessed(e, t0)) {
+          finished[i] = true;
+          continue;
+        }
+        keysToLoad.add(keys.get(i));
+      }
+      if (keysToLoad.isEmpty()) {
+        return;
+      }
+      Map<K, V> values = null;
+      Throwable exception = null;
+      try {
+        checkLoaderPresent();
+        values = bulkLoader.loadAll(Collections.unmodifiableSet(keysToLoad));
+      } catch (Throwable ouch) {
+        exception = ouch;
+      }
+      long t = t0;
+      if (!metrics.isDisabled() && isUpdateTimeNeeded()) {
+        t = clock.millis();
+      }
+      for (int i = 0; i < keys.size(); i++) {
+        if (finished[i]) {
+          continue;
+        }
+        Entry<K, V> e = entries.get(i);
+        if (exception != null) {
+          loadGotException(e, t0, t, exception);
+        } else {
+          V v = values != null ? values.get(keys.get(i)) : null;
+          long refreshTime = t0;
+          if (v instanceof RefreshedTimeWrapper) {
+            RefreshedTimeWrapper<V> wr = (RefreshedTimeWrapper<V>) v;
+            refreshTime = wr.getRefreshTime();
+            v = wr.getValue();
+          }
+          insertOrUpdateAndCalculateExpiry(e, v, t0, t, refreshTime, INSERT_STAT_LOAD);
+        }
+        finished[i] = true;
+      }
+    } finally {
+      for (int i = 0; i < entries.size(); i++) {
+        entries.get(i).ensureAbort(finished[i]);
+      }
+    }
+  }
+
   public abstract static class RunWithCatch implements Runnable {
 
     final InternalCache cache;
@@ -1250,7 +1568,18 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
    * needs to be done under the same lock, to allow a check of the consistency.
    */
   protected Entry<K, V> insertNewEntry(K key, int hc, int val) {
-    Entry<K, V> e = new Entry<K, V>(extractIntKeyObj(key), val);
+    return insertEntry(newEntry(key, val), hc, val);
+  }
+
+  /**
+   * Create a new entry for the hash table, overridden by caches that store the key
+   * differently.
+   */
+  protected Entry<K, V> newEntry(K key, int keyValue) {
+    return new Entry<K, V>(extractIntKeyObj(key), keyValue);
+  }
+
+  private Entry<K, V> insertEntry(Entry<K, V> e, int hc, int val) {
     Entry<K, V> e2;
     eviction.evictEventuallyBeforeInsertOnSegment(hc);
     StampedLock l = hash.getSegmentLock(hc);
@@ -1267,9 +1596,53 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
     return e2;
   }
 
+  /**
+   * Insert an entry read from a snapshot. Called before the cache is used, possibly from
+   * multiple threads. Does not update statistics. The value is set before the entry
+   * is visible, the timer is started afterwards.
+   *
+   * @param expiryTime point in time when the entry expires, negative for sharp expiry,
+   *                   {@link Long#MAX_VALUE} for no expiry
+   * @param hot Clock-Pro status of the entry at the time of the snapshot
+   */
+  @SuppressWarnings("unchecked")
+  public void restoreEntry(K key, V value, long refreshTime, long expiryTime, boolean hot) {
+    int hc = modifiedHash(key.hashCode());
+    int val = extractIntKeyValue(key, hc);
+    Entry<K, V> e = newEntry(key, val);
+    if (isRecordRefreshTime()) {
+      e.setRefreshTime(refreshTime);
+    }
+    e.setValueOrException((V) toStoredValue(value));
+    e.setHot(hot);
+    if (insertEntry(e, hc, val) != e) {
+      freeOffHeapValue(e);
+      return;
+    }
+    synchronized (e) {
+      if (e.isGone()) {
+        return;
+      }
+      if (isWeigherPresent()) {
+        eviction.updateWeight(e);
+      }
+      try {
+        restartTimer(e, expiryTime);
+      } catch (IllegalArgumentException ex) {
+        // snapshot was written with a different configuration, expiry not supported any more
+        restartTimer(e, Long.MAX_VALUE);
+      }
+    }
+  }
+
+  @Override
+  public int getHashTableCount() {
+    return hash.getTableCount();
+  }
+
   @Override
-  public Entry<K, V>[] getHashEntries() {
-    return hash.getEntries();
+  public Entry<K, V>[] getHashEntries(int tableIndex) {
+    return hash.getEntries(tableIndex);
   }
 
   /**
@@ -1286,6 +1659,7 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
     checkForHashCodeChange(e);
     timing.cancelExpiryTimer(e);
     e.setGone();
+    freeOffHeapValue(e);
   }
 
   /**
@@ -1398,7 +1772,7 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
         if (isRecordRefreshTime()) {
           e.setRefreshTime(t0);
         }
-        e.setValueOrException((V) value);
+        setStoredValue(e, value);
       }
       finishLoadOrEviction(e, nextRefreshTime);
     }
@@ -1452,6 +1826,44 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
     insert(e, v, t0, t, refreshTime, updateStatistics, nextRefreshTime);
   }
 
+  /**
+   * Serialize the value to the off heap store, if configured. Exceptions and
+   * {@code null} stay on the heap.
+   *
+   * @throws CacheStorageException if the value cannot be serialized
+   */
+  Object toStoredValue(Object value) {
+    if (offHeapStore == null || value == null || value instanceof ExceptionWrapper) {
+      return value;
+    }
+    return offHeapStore.store(value);
+  }
+
+  /**
+   * Set the value from {@link #toStoredValue(Object)} and free the previous off heap value.
+   * Called while the entry is locked for processing. The new value is set before the previous
+   * is freed, so a concurrent reader of the previous value retries with the new one.
+   */
+  @SuppressWarnings("unchecked")
+  void setStoredValue(Entry<K, V> e, Object storedValue) {
+    Object previous = e.getStoredValueOrException();
+    e.setValueOrException((V) storedValue);
+    if (previous instanceof OffHeapValue) {
+      ((OffHeapValue) previous).free();
+    }
+  }
+
+  /**
+   * The entry was removed, free its off heap value. Concurrent readers of the entry will
+   * see the value as {@code null}.
+   */
+  private void freeOffHeapValue(Entry<K, V> e) {
+    Object v = e.getStoredValueOrException();
+    if (v instanceof OffHeapValue) {
+      ((OffHeapValue) v).free();
+    }
+  }
+
   static final byte INSERT_STAT_LOAD = 1;
   static final byte INSERT_STAT_PUT = 2;
 
@@ -1461,17 +1873,24 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
 
   protected final void insert(Entry<K, V> e, V value, long t0, long t, long refreshTime,
                               byte updateStatistics, long nextRefreshTime) {
+    Object storedValue;
     if (updateStatistics == INSERT_STAT_LOAD) {
       if (value == null && isRejectNullValues() && nextRefreshTime != 0) {
         loadGotException(e, t0, t, returnNullValueDetectedException());
         return;
       }
+      try {
+        storedValue = toStoredValue(value);
+      } catch (CacheStorageException ex) {
+        loadGotException(e, t0, t, ex);
+        return;
+      }
       synchronized (e) {
         if (isRecordRefreshTime()) {
           e.setRefreshTime(refreshTime);
         }
         insertUpdateStats(e, value, t0, t, updateStatistics, nextRefreshTime, false);
-        e.setValueOrException(value);
+        setStoredValue(e, storedValue);
         e.resetSuppressedLoadExceptionInformation();
         finishLoadOrEviction(e, nextRefreshTime);
       }
@@ -1479,10 +1898,11 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
       if (value == null && isRejectNullValues()) {
         throw returnNullValueDetectedException();
       }
+      storedValue = toStoredValue(value);
       if (isRecordRefreshTime()) {
         e.setRefreshTime(refreshTime);
       }
-      e.setValueOrException(value);
+      setStoredValue(e, storedValue);
       e.resetSuppressedLoadExceptionInformation();
       insertUpdateStats(e, value, t0, t, updateStatistics, nextRefreshTime, false);
       restartTimer(e, nextRefreshTime);
@@ -1521,12 +1941,20 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
   public void timerEventRefresh(Entry<K, V> e, Object task) {
     metrics.timerEvent();
     synchronized (e) {
-      if (e.getTask() != task) { return; }
+      if (e.getTask() != task || timing.skipRefresh(e, task)) { return; }
+      if (refreshQueue != null) {
+        refreshQueue.submit(e, task);
+        return;
+      }
       try {
         refreshExecutor.execute(createFireAndForgetAction(e, Operations.SINGLETON.refresh));
       } catch (RejectedExecutionException ex) {
         metrics.refreshRejected();
-        expireOrScheduleFinalExpireEvent(e);
+        if (clock.millis() < Math.abs(e.getNextRefreshTime())) {
+          timing.startExpiryTimer(e);
+        } else {
+          expireOrScheduleFinalExpireEvent(e);
+        }
       }
     }
   }
@@ -1568,6 +1996,9 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
     long nrt = e.getNextRefreshTime();
     long t = clock.millis();
     if (t >= Math.abs(nrt)) {
+      if (startStalePhase(e, Math.abs(nrt), t)) {
+        return;
+      }
       try {
         expireEntry(e);
       } catch (CacheClosedException ignore) { }
@@ -1580,6 +2011,52 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
     }
   }
 
+  /**
+   * Keep the expired value until the hard expiry time, if stale while revalidate
+   * is enabled. The entry is not visible, so the next get calls
+   * {@link #revalidateStaleEntry(Entry)}. Exceptions are not kept.
+   *
+   * @return {@code true} if the entry went into the stale phase
+   */
+  private boolean startStalePhase(Entry<K, V> e, long expiryTime, long now) {
+    if (staleMillis == 0 || expiryTime < Entry.EXPIRY_TIME_MIN ||
+      e.getException() != null) {
+      return false;
+    }
+    long hardExpiryTime = expiryTime + staleMillis;
+    if (hardExpiryTime <= now || hardExpiryTime < 0) {
+      return false;
+    }
+    e.setRefreshProbationNextRefreshTime(hardExpiryTime);
+    e.setNextRefreshTime(Entry.EXPIRED_STALE);
+    timing.startStaleTimer(e, hardExpiryTime);
+    return true;
+  }
+
+  /**
+   * A get on a stale entry. Make the entry visible until the hard expiry time and start
+   * the reload. Concurrent gets return the stale value without waiting for the reload.
+   * If the reload is rejected, the stale value stays visible until the hard expiry.
+   * Called while holding the entry lock.
+   *
+   * @return {@code false} if the hard expiry time is reached and the caller needs to load
+   */
+  private boolean revalidateStaleEntry(Entry<K, V> e) {
+    long hardExpiryTime = e.getRefreshProbationNextRefreshTime();
+    if (hardExpiryTime <= clock.millis()) {
+      return false;
+    }
+    e.setNextRefreshTime(hardExpiryTime);
+    timing.startStaleTimer(e, hardExpiryTime);
+    try {
+      refreshExecutor.execute(
+        createFireAndForgetAction(e, Operations.SINGLETON.unconditionalLoad));
+    } catch (RejectedExecutionException ex) {
+      metrics.refreshRejected();
+    }
+    return true;
+  }
+
   protected void expireEntry(Entry<K, V> e) {
     if (e.isGone() || e.isExpiredState()) {
       return;
@@ -1631,14 +2108,36 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
    * which has produced an exception is requested from the map.
    */
   public Map<K, V> getAll(Iterable<? extends K> inputKeys) {
-    Map<K, ExaminationEntry<K, V>> map = new HashMap<K, ExaminationEntry<K, V>>();
+    Map<K, V> map = new HashMap<K, V>();
+    if (bulkLoader != null) {
+      for (Entry<K, V> e : bulkLoad(generateKeySet(inputKeys), false).values()) {
+        V v = e.getValueOrException();
+        if (v != null || !isRejectNullValues()) {
+          map.put(extractKeyObj(e), v);
+        }
+      }
+      return convertValueOrExceptionMap(map);
+    }
     for (K k : inputKeys) {
       Entry<K, V> e = getEntryInternal(k);
       if (e != null) {
-        map.put(extractKeyObj(e), ReadOnlyCacheEntry.of(e));
+        map.put(extractKeyObj(e), e.getValueOrException());
       }
     }
-    return convertValueMap(map);
+    return convertValueOrExceptionMap(map);
+  }
+
+  /**
+   * Map values may be an {@link ExceptionWrapper}, which is propagated when requested.
+   * Avoids a copy of the entry per map value.
+   */
+  public Map<K, V> convertValueOrExceptionMap(Map<K, V> map) {
+    return new MapValueConverterProxy<K, V, V>(map) {
+      @Override
+      protected V convert(V v) {
+        return returnValue(v);
+      }
+    };
   }
 
   public Map<K, V> convertValueMap(Map<K, ExaminationEntry<K, V>> map) {
@@ -1684,6 +2183,32 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
     return new MyEntryAction<R>(op, key, e);
   }
 
+  @Override
+  protected <R> EntryAction<K, V, R> createEntryAction(
+    K key, Entry<K, V> e, Semantic<K, V, R> op, EntryAction.CompletedCallback<K, V, R> cb) {
+    return new MyEntryAction<R>(op, key, e, cb);
+  }
+
+  @Override
+  Entry<K, V> lookupQuick(K key) {
+    return lookupEntry(key);
+  }
+
+  @Override
+  boolean isBlockingLoaderPresent() {
+    return loader != null;
+  }
+
+  @Override
+  boolean isWriterPresent() {
+    return false;
+  }
+
+  @Override
+  Executor getLoaderExecutor() {
+    return loaderExecutor;
+  }
+
   @Override
   protected <R> MyEntryAction<R> createFireAndForgetAction(Entry<K, V> e, Semantic<K, V, R> op) {
     return new MyEntryAction<R>(op, e.getKey(), e, EntryAction.NOOP_CALLBACK);
@@ -1962,6 +2487,9 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
   public K extractKeyObj(Entry<K, V> e) { return e.getKeyObj(); }
 
   public Hash2<K, V> createHashTable() {
+    if (TUNABLE.openAddressingHash) {
+      return new OpenHash2<K, V>(this);
+    }
     return new Hash2<K, V>(this);
   }
 
@@ -2012,8 +2540,61 @@ public class HeapCache<K, V> extends BaseCache<K, V> implements HeapCacheForEvic
      */
     public int segmentCountOverride = 0;
 
+    /**
+     * Grow or shrink the eviction segment count at runtime, depending on the eviction
+     * lock contention. Not used with a weigher, strict eviction or a segment count override.
+     *
+     * @see SegmentedEviction
+     */
+    public boolean adaptiveSegmentCount = false;
+
     public long timerLagMillis = 1003;
 
+    /**
+     * Override the number of independent timers a cache uses for expiry and refresh.
+     * Rounded to the next power of two. Default is 0, which means one timer, or one
+     * timer per CPU, if boost concurrency is enabled.
+     *
+     * @see org.cache2k.core.timing.ShardedTimer
+     */
+    public int timerShardCountOverride = 0;
+
+    /**
+     * Execute due timer tasks in parallel jobs of this many tasks, instead of executing
+     * all tasks in the timer thread. Speeds up the expiry after a mass insert with the
+     * same expiry time. Default is 0, parallel execution disabled.
+     */
+    public int timerDrainChunkSize = 0;
+
+    /**
+     * Maximum number of parallel jobs executing due timer tasks per timer.
+     * Default is 0, which means the number of CPUs.
+     */
+    public int timerDrainParallelism = 0;
+
+    /**
+     * Caches of one cache manager share a timer, if the clock, timer lag,
+     * shard count and executor are identical. If false, each cache has its own timer.
+     *
+     * @see org.cache2k.core.timing.SharedTimer
+     */
+    public boolean sharedTimer = false;
+
+    /**
+     * Use the hash table with open addressing, which does not lock on reads,
+     * instead of the hash table with chaining and optimistic locking.
+     *
+     * @see OpenHash2
+     */
+    public boolean openAddressingHash = false;
+
+    /**
+     * Expand the hash table at construction time, so it can hold the configured entry
+     * capacity without expansion steps, but at most the specified number of entries.
+     * Caches with a weigher are not sized in advance. Default is 0, no pre sizing.
+     */
+    public long hashTablePresizeMaximum = 0;
+
   }
 
 }
@@ -53,6 +53,19 @@ public class IntHeapCache<V> extends HeapCache<Integer, V> {
    */
   @Override
   public Hash2<Integer, V> createHashTable() {
+    if (TUNABLE.openAddressingHash) {
+      return new OpenHash2<Integer, V>(this) {
+        @Override
+        protected int modifiedHashCode(int hc) {
+          return modifiedHash(hc);
+        }
+
+        @Override
+        protected boolean keyObjIsEqual(Integer key, Entry e) {
+          return true;
+        }
+      };
+    }
     return new Hash2<Integer, V>(this) {
       @Override
       protected int modifiedHashCode(int hc) {
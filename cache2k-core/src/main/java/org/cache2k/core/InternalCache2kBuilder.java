@@ -28,7 +28,18 @@ import org.cache2k.configuration.CustomizationSupplier;
 import org.cache2k.core.api.InternalBuildContext;
 import org.cache2k.core.api.InternalCache;
 import org.cache2k.core.eviction.EvictionFactory;
+import org.cache2k.core.loader.CoalescingBulkLoader;
+import org.cache2k.core.loader.CoalescingLoaderConfiguration;
+import org.cache2k.core.offheap.JavaValueSerializer;
+import org.cache2k.core.offheap.OffHeapConfiguration;
+import org.cache2k.core.offheap.OffHeapStore;
+import org.cache2k.core.offheap.ValueSerializer;
 import org.cache2k.core.operation.ExaminationEntry;
+import org.cache2k.core.storage.CacheSnapshot;
+import org.cache2k.core.storage.MappedLogStorage;
+import org.cache2k.core.storage.SnapshotConfiguration;
+import org.cache2k.core.storage.StorageConfiguration;
+import org.cache2k.core.storage.StorageTier;
 import org.cache2k.core.timing.Timing;
 import org.cache2k.core.util.DefaultClock;
 import org.cache2k.core.api.InternalClock;
@@ -45,10 +56,12 @@ import org.cache2k.core.event.AsyncDispatcher;
 import org.cache2k.core.event.AsyncEvent;
 import org.cache2k.io.AdvancedCacheLoader;
 import org.cache2k.io.AsyncCacheLoader;
+import org.cache2k.io.BulkCacheLoader;
 import org.cache2k.io.CacheLoader;
 import org.cache2k.io.CacheWriter;
 
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -69,6 +82,7 @@ public class InternalCache2kBuilder<K, V> implements InternalBuildContext<K, V>
   private final CacheManagerImpl manager;
   private final Cache2kConfiguration<K, V> config;
   private InternalClock clock;
+  private HeapCache<K, V> heapCache;
 
   public InternalCache2kBuilder(Cache2kConfiguration<K, V> config,
                                 CacheManager manager) {
@@ -116,6 +130,11 @@ public class InternalCache2kBuilder<K, V> implements InternalBuildContext<K, V>
     return manager;
   }
 
+  @Override
+  public Executor getExecutor() {
+    return heapCache.getExecutor();
+  }
+
   @Override
   public <T> T createCustomization(CustomizationSupplier<T> supplier) {
     if (supplier == null) { return null; }
@@ -151,6 +170,11 @@ public class InternalCache2kBuilder<K, V> implements InternalBuildContext<K, V>
   private void configureViaSettersDirect(HeapCache<K, V> c) {
     if (config.getLoader() != null) {
       Object obj =  createCustomization(config.getLoader());
+      CoalescingLoaderConfiguration coalescingConfig =
+        config.getSections().getSection(CoalescingLoaderConfiguration.class);
+      if (coalescingConfig != null) {
+        obj = createCoalescingLoader(obj, coalescingConfig);
+      }
       if (obj instanceof CacheLoader) {
         final CacheLoader<K, V> loader = (CacheLoader) obj;
         c.setAdvancedLoader(new AdvancedCacheLoader<K, V>() {
@@ -160,6 +184,9 @@ public class InternalCache2kBuilder<K, V> implements InternalBuildContext<K, V>
             return loader.load(key);
           }
         });
+        if (obj instanceof BulkCacheLoader) {
+          c.setBulkLoader((BulkCacheLoader<K, V>) obj);
+        }
       }
     }
     if (config.getAdvancedLoader() != null) {
@@ -227,14 +254,22 @@ public class InternalCache2kBuilder<K, V> implements InternalBuildContext<K, V>
     Class<?> keyType = config.getKeyType().getType();
     if (keyType == Integer.class) {
       cache = (InternalCache<K, V>) new IntHeapCache<V>();
+    } else if (keyType == Long.class) {
+      cache = (InternalCache<K, V>) new LongHeapCache<V>();
     } else {
       cache = new HeapCache<K, V>();
     }
     clock = (InternalClock) createCustomization(config.getTimeReference(), DefaultClock.INSTANCE);
     HeapCache bc = (HeapCache) cache;
+    heapCache = bc;
     bc.setCacheManager(manager);
     configureViaSettersDirect(bc);
     bc.setClock(clock);
+    OffHeapConfiguration offHeapConfig =
+      config.getSections().getSection(OffHeapConfiguration.class);
+    if (offHeapConfig != null) {
+      bc.offHeapStore = createOffHeapStore(offHeapConfig);
+    }
 
     if (config.isRefreshAhead() && !(
           config.getAsyncLoader() != null ||
@@ -242,13 +277,20 @@ public class InternalCache2kBuilder<K, V> implements InternalBuildContext<K, V>
           config.getAdvancedLoader() != null)) {
       throw new IllegalArgumentException("refresh ahead enabled, but no loader defined");
     }
+    StorageConfiguration storageConfig =
+      config.getSections().getSection(StorageConfiguration.class);
+    if (storageConfig != null) {
+      checkStorageConfiguration(storageConfig);
+    }
 
     boolean wrap =
       config.getWeigher() != null ||
       config.hasListeners() ||
       config.hasAsyncListeners() ||
       config.getWriter() != null ||
-      config.getAsyncLoader() != null;
+      config.getAsyncLoader() != null ||
+      offHeapConfig != null ||
+      storageConfig != null;
 
 
     WiredCache<K, V> wc = null;
@@ -260,6 +302,11 @@ public class InternalCache2kBuilder<K, V> implements InternalBuildContext<K, V>
 
     String name = manager.newCache(cache, bc.getName());
     bc.setName(name);
+    SnapshotConfiguration snapshotConfig =
+      config.getSections().getSection(SnapshotConfiguration.class);
+    if (snapshotConfig != null) {
+      bc.snapshot = createSnapshot(snapshotConfig, name);
+    }
     if (wrap) {
       wc.loader = bc.loader;
       wc.writer = (CacheWriter<K, V>) createCustomization(config.getWriter());
@@ -371,6 +418,9 @@ public class InternalCache2kBuilder<K, V> implements InternalBuildContext<K, V>
         this, bc, wc, config, Runtime.getRuntime().availableProcessors());
       Timing rh = Timing.of(this);
       bc.setTiming(rh);
+      if (storageConfig != null) {
+        wc.storage = new StorageTier(bc, createStorage(storageConfig, name));
+      }
       wc.init();
     } else {
       Timing rh = Timing.of(this);
@@ -380,17 +430,83 @@ public class InternalCache2kBuilder<K, V> implements InternalBuildContext<K, V>
         Runtime.getRuntime().availableProcessors());
       bc.init();
     }
+    if (bc.snapshot != null) {
+      bc.snapshot.restore(bc);
+    }
     manager.sendCreatedEvent(cache, config);
     return cache;
   }
 
   static final EvictionFactory EVICTION_FACTORY = new EvictionFactory();
 
+  /**
+   * Values stored off heap need the weight based eviction, which only
+   * works in the wired cache.
+   */
+  private OffHeapStore createOffHeapStore(OffHeapConfiguration offHeapConfig) {
+    if (offHeapConfig.getMaximumBytes() <= 0) {
+      throw new IllegalArgumentException("off heap values require maximumBytes > 0");
+    }
+    if (config.getWeigher() != null) {
+      throw new IllegalArgumentException("weigher cannot be used with off heap values");
+    }
+    ValueSerializer<?> serializer =
+      createCustomization(offHeapConfig.getSerializer(), JavaValueSerializer.INSTANCE);
+    return new OffHeapStore(serializer, offHeapConfig.getSlabSize());
+  }
+
+  /**
+   * The storage is only read on the load path, so a loader is needed.
+   */
+  private void checkStorageConfiguration(StorageConfiguration storageConfig) {
+    if (storageConfig.getDirectory() == null) {
+      throw new IllegalArgumentException("storage directory missing");
+    }
+    if (config.getAsyncLoader() == null &&
+      config.getLoader() == null &&
+      config.getAdvancedLoader() == null) {
+      throw new IllegalArgumentException("storage enabled, but no loader defined");
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Object createCoalescingLoader(Object loader,
+                                               CoalescingLoaderConfiguration cfg) {
+    if (!(loader instanceof BulkCacheLoader)) {
+      throw new IllegalArgumentException("load coalescing requires a BulkCacheLoader");
+    }
+    if (cfg.getMaxBatchSize() <= 0) {
+      throw new IllegalArgumentException("load coalescing requires maxBatchSize > 0");
+    }
+    return new CoalescingBulkLoader((BulkCacheLoader) loader, cfg);
+  }
+
+  private MappedLogStorage createStorage(StorageConfiguration storageConfig, String name) {
+    ValueSerializer<?> serializer =
+      createCustomization(storageConfig.getSerializer(), JavaValueSerializer.INSTANCE);
+    return new MappedLogStorage(new File(storageConfig.getDirectory(), name),
+      storageConfig.getSegmentSize(), storageConfig.getMaximumBytes(), serializer);
+  }
+
+  private CacheSnapshot createSnapshot(SnapshotConfiguration snapshotConfig, String name) {
+    if (snapshotConfig.getDirectory() == null) {
+      throw new IllegalArgumentException("snapshot directory missing");
+    }
+    ValueSerializer<?> serializer =
+      createCustomization(snapshotConfig.getSerializer(), JavaValueSerializer.INSTANCE);
+    return new CacheSnapshot(
+      new File(snapshotConfig.getDirectory(), name + ".snapshot"), serializer);
+  }
+
   private void checkConfiguration() {
     if (config.getExpireAfterWrite() == Cache2kConfiguration.EXPIRY_NOT_ETERNAL &&
         config.getExpiryPolicy() == null) {
       throw new IllegalArgumentException("not eternal is set, but expire value is missing");
     }
+    if (config.getSections().getSection(CoalescingLoaderConfiguration.class) != null &&
+        config.getLoader() == null) {
+      throw new IllegalArgumentException("load coalescing requires a BulkCacheLoader");
+    }
   }
 
   static class AsyncCreatedListener<K, V> implements CacheEntryCreatedListener<K, V> {
@@ -0,0 +1,121 @@
+package org.cache2k.core;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.LongCache;
+
+/**
+ * Overwrite methods so the long value is stored in a {@link LongEntry} and no key object
+ * is needed. The methods with primitive keys look up the entry without boxing the key.
+ * Only when the entry is missing or has no valid data, the generic code path is used.
+ *
+ * @author Jens Wilke
+ */
+public class LongHeapCache<V> extends HeapCache<Long, V> implements LongCache<V> {
+
+  static int longHash(long key) {
+    return modifiedHash((int) (key ^ (key >>> 32)));
+  }
+
+  @Override
+  protected Entry<Long, V> newEntry(Long key, int keyValue) {
+    return new LongEntry<V>(key, keyValue);
+  }
+
+  @Override
+  public Long extractKeyObj(Entry<Long, V> e) {
+    return e.getKey();
+  }
+
+  @Override
+  public V get(long key) {
+    Entry<Long, V> e = hash.lookupLong(key, longHash(key));
+    if (e != null && e.hasFreshData(clock)) {
+      recordHit(e);
+      return returnValue(e);
+    }
+    return get(Long.valueOf(key));
+  }
+
+  @Override
+  public V peek(long key) {
+    Entry<Long, V> e = hash.lookupLong(key, longHash(key));
+    if (e != null && e.hasFreshData(clock)) {
+      recordHit(e);
+      return returnValue(e);
+    }
+    return peek(Long.valueOf(key));
+  }
+
+  /**
+   * Update the present entry, or use the generic code path, which inserts a new entry.
+   */
+  @Override
+  public void put(long key, V value) {
+    Entry<Long, V> e = hash.lookupLong(key, longHash(key));
+    if (e != null) {
+      synchronized (e) {
+        e.waitForProcessing();
+        if (!e.isGone()) {
+          recordHit(e);
+          if (!e.isVirgin()) {
+            metrics.heapHitButNoRead();
+          }
+          putValue(e, value);
+          return;
+        }
+      }
+    }
+    put(Long.valueOf(key), value);
+  }
+
+  /**
+   * Modified hash table implementation. Compares the primitive keys.
+   */
+  @Override
+  public Hash2<Long, V> createHashTable() {
+    if (TUNABLE.openAddressingHash) {
+      return new OpenHash2<Long, V>(this) {
+        @Override
+        protected boolean keyObjIsEqual(Long key, Entry e) {
+          return ((LongEntry) e).longKey == key;
+        }
+
+        @Override
+        protected boolean entryKeyIsEqual(Entry<Long, V> e, Entry f) {
+          return ((LongEntry) e).longKey == ((LongEntry) f).longKey;
+        }
+      };
+    }
+    return new Hash2<Long, V>(this) {
+      @Override
+      protected boolean keyObjIsEqual(Long key, Entry e) {
+        return ((LongEntry) e).longKey == key;
+      }
+
+      @Override
+      protected boolean entryKeyIsEqual(Entry<Long, V> e, Entry f) {
+        return ((LongEntry) e).longKey == ((LongEntry) f).longKey;
+      }
+    };
+  }
+
+}
@@ -0,0 +1,358 @@
+package org.cache2k.core;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.Cache;
+import org.cache2k.core.concurrency.Job;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Hash table with open addressing and linear probing. Reads never lock, modifications
+ * lock the segment the same way as in {@link Hash2}.
+ *
+ * <p>Every lock segment has its own table, so the segment index is not part of the
+ * slot index and expansion only needs the lock of the affected segment. Readers
+ * continue to use the previous table while a segment is expanded.
+ * Removed entries are replaced by a tombstone, so that concurrent readers
+ * don't stop probing early. A slot is cleared if the next slot is empty,
+ * since probing ends there anyway. Tombstones are dropped when the table is rebuilt.
+ *
+ * <p>The tables never contain more entries and tombstones as {@value #LOAD_PERCENT}
+ * percent of the slots. This ensures there is always an empty slot which ends probing.
+ *
+ * @author Jens Wilke
+ */
+@SuppressWarnings({"WeakerAccess", "rawtypes", "unchecked"})
+public class OpenHash2<K, V> extends Hash2<K, V> {
+
+  /**
+   * Table size of each segment before inserting the first entry. Must be power of two.
+   */
+  private static final int INITIAL_SEGMENT_SIZE = 8;
+
+  /**
+   * Fill percentage limit for entries and tombstones. Linear probing needs
+   * a lower fill as chaining.
+   */
+  private static final int LOAD_PERCENT = 50;
+
+  private static final int MAXIMUM_SEGMENT_SIZE = 1 << 30;
+
+  /**
+   * Multiplier to spread the hash code for the slot index. Linear probing is sensitive
+   * to consecutive hash codes, e.g. of integer keys, which would form long clusters.
+   */
+  private static final int SPREAD = 0x9e3779b9;
+
+  /**
+   * Placeholder for a removed entry. Marked as gone, so it is skipped by iterations.
+   */
+  static final Entry TOMBSTONE = new Entry();
+
+  static {
+    TOMBSTONE.setGone();
+  }
+
+  /**
+   * The table of each segment. The table reference is replaced when expanding,
+   * slots are only modified while holding the segment lock.
+   */
+  private final AtomicReferenceArray<Entry<K, V>[]> tables =
+    new AtomicReferenceArray<Entry<K, V>[]>(LOCK_SEGMENTS);
+
+  /**
+   * Number of tombstones within each segment table. Guarded by the segment lock.
+   */
+  private final int[] tombstones = new int[LOCK_SEGMENTS];
+
+  /**
+   *
+   * @param cache Cache reference only needed for the cache name in case of an exception
+   */
+  public OpenHash2(Cache cache) {
+    super(cache, false);
+    initArray();
+  }
+
+  @Override
+  void initArray() {
+    for (int i = 0; i < LOCK_SEGMENTS; i++) {
+      tombstones[i] = 0;
+      tables.set(i, new Entry[INITIAL_SEGMENT_SIZE]);
+    }
+  }
+
+  /**
+   * Slot index from the upper bits of the spread hash code. The segment is selected
+   * by the lower bits of the hash code, so the slot index is independent of it.
+   */
+  private static int slotIndex(int hash, int mask) {
+    return (hash * SPREAD) >>> Integer.numberOfLeadingZeros(mask);
+  }
+
+  @Override
+  public long getEntryCapacity() {
+    long sum = 0;
+    for (int i = 0; i < LOCK_SEGMENTS; i++) {
+      sum += tables.get(i).length;
+    }
+    return sum * LOAD_PERCENT / 100;
+  }
+
+  /** For testing */
+  @Override
+  public long getSegmentMaxFill() {
+    return tables.get(0).length * LOAD_PERCENT / 100;
+  }
+
+  /**
+   * Lookup the entry in the hash table and return it. Does not lock.
+   */
+  @Override
+  protected Entry<K, V> lookup(K key, boolean primitive, long longKey, int hash, int keyValue) {
+    Entry<K, V>[] tab = tables.get(hash & LOCK_MASK);
+    if (tab == null) {
+      throw new CacheClosedException(cache);
+    }
+    int mask = tab.length - 1;
+    int idx = slotIndex(hash, mask);
+    Entry<K, V> e;
+    while ((e = tab[idx]) != null) {
+      if (e.hashCode == keyValue && e != TOMBSTONE && keyIsEqual(key, primitive, longKey, e)) {
+        return e;
+      }
+      idx = (idx + 1) & mask;
+    }
+    return null;
+  }
+
+  /**
+   * Insert an entry. Checks if an entry already exists. Expands the segment table
+   * if needed, so {@link #checkExpand(int)} has nothing to do.
+   */
+  @Override
+  public Entry<K, V> insertWithinLock(Entry<K, V> e, int hash, int keyValue) {
+    int si = hash & LOCK_MASK;
+    Entry<K, V>[] tab = tables.get(si);
+    if (tab == null) {
+      throw new CacheClosedException(cache);
+    }
+    int mask = tab.length - 1;
+    int idx = slotIndex(hash, mask);
+    int tombstoneIdx = -1;
+    Entry<K, V> f;
+    while ((f = tab[idx]) != null) {
+      if (f == TOMBSTONE) {
+        if (tombstoneIdx < 0) {
+          tombstoneIdx = idx;
+        }
+      } else if (f.hashCode == keyValue && entryKeyIsEqual(e, f)) {
+        return f;
+      }
+      idx = (idx + 1) & mask;
+    }
+    if (tombstoneIdx >= 0) {
+      tombstones[si]--;
+      tab[tombstoneIdx] = e;
+    } else {
+      long fill = segmentSize[si].get() + tombstones[si] + 1;
+      if (fill * 100 > tab.length * (long) LOAD_PERCENT) {
+        tab = rebuild(si, tab);
+        mask = tab.length - 1;
+        idx = slotIndex(hash, mask);
+        while (tab[idx] != null) {
+          idx = (idx + 1) & mask;
+        }
+      }
+      tab[idx] = e;
+    }
+    segmentSize[si].incrementAndGet();
+    return e;
+  }
+
+  /**
+   * Copy the entries of a segment to a new table without the tombstones. The table size
+   * is doubled, when the entries alone would fill more than half of the allowed load.
+   * Concurrent readers still see a consistent state in the old table.
+   */
+  private Entry<K, V>[] rebuild(int si, Entry<K, V>[] src) {
+    long size = segmentSize[si].get() + 1;
+    int n = src.length;
+    if (size * 100 * 2 > n * (long) LOAD_PERCENT) {
+      n = n * 2;
+    }
+    Entry<K, V>[] tab = copy(src, n);
+    tombstones[si] = 0;
+    tables.set(si, tab);
+    incrementExpansionCount();
+    return tab;
+  }
+
+  private Entry<K, V>[] copy(Entry<K, V>[] src, int length) {
+    Entry<K, V>[] tab = new Entry[length];
+    int mask = length - 1;
+    for (Entry<K, V> e : src) {
+      if (e == null || e == TOMBSTONE) {
+        continue;
+      }
+      int idx = slotIndex(modifiedHashCode(e.hashCode), mask);
+      while (tab[idx] != null) {
+        idx = (idx + 1) & mask;
+      }
+      tab[idx] = e;
+    }
+    return tab;
+  }
+
+  /**
+   * Nothing to do, expansion happens within {@link #insertWithinLock(Entry, int, int)}
+   */
+  @Override
+  public void checkExpand(int hash) { }
+
+  @Override
+  public boolean remove(Entry<K, V> e) {
+    int hash = modifiedHashCode(e.hashCode);
+    StampedLock l = locks[hash & LOCK_MASK];
+    long stamp = l.writeLock();
+    try {
+      return removeWithinLock(e, hash);
+    } finally {
+      l.unlockWrite(stamp);
+    }
+  }
+
+  @Override
+  public boolean removeWithinLock(Entry<K, V> e, int hash) {
+    int si = hash & LOCK_MASK;
+    Entry<K, V>[] tab = tables.get(si);
+    if (tab == null) {
+      throw new CacheClosedException(cache);
+    }
+    int mask = tab.length - 1;
+    int idx = slotIndex(hash, mask);
+    Entry<K, V> f;
+    while ((f = tab[idx]) != null) {
+      if (f == e) {
+        if (tab[(idx + 1) & mask] == null) {
+          tab[idx] = null;
+          idx = (idx - 1) & mask;
+          while (tab[idx] == TOMBSTONE) {
+            tab[idx] = null;
+            tombstones[si]--;
+            idx = (idx - 1) & mask;
+          }
+        } else {
+          tab[idx] = TOMBSTONE;
+          tombstones[si]++;
+        }
+        segmentSize[si].decrementAndGet();
+        return true;
+      }
+      idx = (idx + 1) & mask;
+    }
+    return false;
+  }
+
+  /**
+   * Double the size of all segment tables. Assumes total lock.
+   */
+  @Override
+  void rehash() {
+    for (int i = 0; i < LOCK_SEGMENTS; i++) {
+      Entry<K, V>[] src = tables.get(i);
+      if (src == null) {
+        throw new CacheClosedException(cache);
+      }
+      tombstones[i] = 0;
+      tables.set(i, copy(src, src.length * 2));
+    }
+    incrementExpansionCount();
+  }
+
+  /**
+   * Expand the segment tables in advance, so they can hold the expected number of
+   * entries without further expansion.
+   */
+  @Override
+  public void presize(final long expectedEntries) {
+    runTotalLocked(new Job<Void>() {
+      @Override
+      public Void call() {
+        long limit = expectedEntries + expectedEntries / PRESIZE_HEADROOM_FRACTION;
+        long perSegment = limit / LOCK_SEGMENTS + 1;
+        for (int i = 0; i < LOCK_SEGMENTS; i++) {
+          Entry<K, V>[] src = tables.get(i);
+          if (src == null) {
+            throw new CacheClosedException(cache);
+          }
+          long n = src.length;
+          while (n * LOAD_PERCENT / 100 < perSegment && n < MAXIMUM_SEGMENT_SIZE) {
+            n = n * 2;
+          }
+          if (n > src.length) {
+            tombstones[i] = 0;
+            tables.set(i, copy(src, (int) n));
+          }
+        }
+        incrementExpansionCount();
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Close the cache by discarding the entry tables. Assumes total lock.
+   */
+  @Override
+  public void close() {
+    super.close();
+    for (int i = 0; i < LOCK_SEGMENTS; i++) {
+      tables.set(i, null);
+    }
+  }
+
+  @Override
+  public long calcEntryCount() {
+    long count = 0;
+    for (int i = 0; i < LOCK_SEGMENTS; i++) {
+      for (Entry e : tables.get(i)) {
+        if (e != null && e != TOMBSTONE) {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public int getTableCount() {
+    return LOCK_SEGMENTS;
+  }
+
+  @Override
+  public Entry<K, V>[] getEntries(int tableIndex) {
+    return tables.get(tableIndex);
+  }
+
+}
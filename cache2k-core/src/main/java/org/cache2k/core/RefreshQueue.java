@@ -0,0 +1,311 @@
+package org.cache2k.core;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.core.api.InternalClock;
+import org.cache2k.core.timing.DefaultScheduler;
+import org.cache2k.core.timing.Scheduler;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Bounded queue for entries that need a refresh. The entries are ordered by their hit count,
+ * so heavily used entries are refreshed first. Refreshes are started at the configured
+ * maximum rate. An entry that waited longer then the maximum stale duration expires,
+ * regardless of its hits, the queue is also ordered by that deadline for this purpose.
+ * If the queue is full, the entry with the fewest hits is removed and expires.
+ *
+ * <p>Lock order is entry lock before queue lock. The queue never locks an entry while
+ * holding the queue lock, so entries removed from the queue because of overflow are
+ * expired by the drain and not by the submitting thread.
+ *
+ * @author Jens Wilke
+ * @see RefreshQueueConfiguration
+ */
+class RefreshQueue<K, V> {
+
+  /**
+   * Time to wait until the next attempt, if the refresh executor rejected a refresh.
+   */
+  static final long RETRY_MILLIS = 10;
+
+  private static final Comparator<Pending> PRIORITY = new Comparator<Pending>() {
+    @Override
+    public int compare(Pending p1, Pending p2) {
+      if (p1.hitCnt != p2.hitCnt) {
+        return p1.hitCnt > p2.hitCnt ? -1 : 1;
+      }
+      return p1.sequence < p2.sequence ? -1 : (p1.sequence == p2.sequence ? 0 : 1);
+    }
+  };
+
+  private static final Comparator<Pending> DEADLINE = new Comparator<Pending>() {
+    @Override
+    public int compare(Pending p1, Pending p2) {
+      if (p1.deadline != p2.deadline) {
+        return p1.deadline < p2.deadline ? -1 : 1;
+      }
+      return p1.sequence < p2.sequence ? -1 : (p1.sequence == p2.sequence ? 0 : 1);
+    }
+  };
+
+  private final InternalClock clock;
+  private final Scheduler scheduler;
+  private final int capacity;
+  private final long intervalMicros;
+  private final long maximumStaleMillis;
+  private final TreeSet<Pending<K, V>> queue = new TreeSet<Pending<K, V>>(PRIORITY);
+  private final TreeSet<Pending<K, V>> byDeadline = new TreeSet<Pending<K, V>>(DEADLINE);
+  private final List<Pending<K, V>> shed = new ArrayList<Pending<K, V>>();
+  private final Runnable drainTask = new Runnable() {
+    @Override
+    public void run() {
+      drain();
+    }
+  };
+
+  private volatile Target<K, V> target;
+  private long sequence;
+  private long nextPermitMicros;
+  private boolean drainScheduled;
+  private boolean closed;
+  private long shedCount;
+  private long staleExpiredCount;
+
+  RefreshQueue(InternalClock clock, RefreshQueueConfiguration cfg, Target<K, V> target) {
+    if (cfg.getCapacity() <= 0) {
+      throw new IllegalArgumentException("refresh queue capacity must be positive");
+    }
+    if (cfg.getMaximumRefreshRate() < 0) {
+      throw new IllegalArgumentException("maximum refresh rate must not be negative");
+    }
+    if (cfg.getMaximumStaleDuration() == null || cfg.getMaximumStaleDuration().isNegative()) {
+      throw new IllegalArgumentException("maximum stale duration must not be negative");
+    }
+    this.clock = clock;
+    if (clock instanceof Scheduler) {
+      scheduler = (Scheduler) clock;
+    } else {
+      scheduler = DefaultScheduler.INSTANCE;
+    }
+    this.target = target;
+    capacity = cfg.getCapacity();
+    intervalMicros =
+      cfg.getMaximumRefreshRate() == 0 ? 0 : 1000000L / cfg.getMaximumRefreshRate();
+    maximumStaleMillis = cfg.getMaximumStaleDuration().toMillis();
+  }
+
+  /**
+   * The wired cache replaces the target of the heap cache.
+   */
+  void setTarget(Target<K, V> target) {
+    this.target = target;
+  }
+
+  /**
+   * Queue the entry for refresh. Called when the refresh timer fires, while holding
+   * the entry lock.
+   *
+   * @param task the timer task, used to detect whether the entry was modified meanwhile
+   */
+  void submit(Entry<K, V> e, Object task) {
+    Pending<K, V> p = new Pending<K, V>(e, task, e.hitCnt, clock.millis() + maximumStaleMillis);
+    synchronized (queue) {
+      if (closed) {
+        return;
+      }
+      p.sequence = sequence++;
+      if (queue.size() >= capacity) {
+        shedCount++;
+        Pending<K, V> lowest = queue.last();
+        if (PRIORITY.compare(p, lowest) > 0) {
+          p = null;
+        } else {
+          remove(lowest);
+          shed.add(lowest);
+          add(p);
+        }
+      } else {
+        add(p);
+      }
+      if (!drainScheduled) {
+        drainScheduled = true;
+        scheduler.execute(drainTask);
+      }
+    }
+    if (p == null) {
+      target.refreshRejected(e);
+    }
+  }
+
+  private void add(Pending<K, V> p) {
+    queue.add(p);
+    byDeadline.add(p);
+  }
+
+  private void remove(Pending<K, V> p) {
+    queue.remove(p);
+    byDeadline.remove(p);
+  }
+
+  /**
+   * Start refreshes until the queue is empty or the rate limit is reached.
+   * Only one drain is running or scheduled at a time. Entries past their deadline
+   * are expired first. When the rate limit is reached, the drain runs again at the
+   * next permit or at the earliest deadline.
+   */
+  private void drain() {
+    for (;;) {
+      Pending<K, V> p;
+      boolean expire = false;
+      long now = clock.millis();
+      synchronized (queue) {
+        if (closed) {
+          return;
+        }
+        if (!shed.isEmpty()) {
+          p = shed.remove(shed.size() - 1);
+          expire = true;
+        } else if (!byDeadline.isEmpty() && byDeadline.first().deadline <= now) {
+          p = byDeadline.pollFirst();
+          queue.remove(p);
+          staleExpiredCount++;
+          expire = true;
+        } else {
+          p = queue.pollFirst();
+          if (p == null) {
+            drainScheduled = false;
+            return;
+          }
+          byDeadline.remove(p);
+          if (intervalMicros > 0) {
+            long nowMicros = now * 1000;
+            if (nextPermitMicros > nowMicros) {
+              add(p);
+              long next = Math.min((nextPermitMicros + 999) / 1000, byDeadline.first().deadline);
+              scheduler.schedule(drainTask, next);
+              return;
+            }
+            nextPermitMicros = Math.max(nextPermitMicros, nowMicros) + intervalMicros;
+          }
+        }
+      }
+      Entry<K, V> e = p.entry;
+      synchronized (e) {
+        if (e.getTask() != p.task) {
+          continue;
+        }
+        if (expire) {
+          target.refreshRejected(e);
+          continue;
+        }
+        try {
+          target.startRefresh(e);
+        } catch (RejectedExecutionException ex) {
+          synchronized (queue) {
+            add(p);
+            scheduler.schedule(drainTask, now + RETRY_MILLIS);
+          }
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Drop all queued entries. The entries expire via their timer or are removed by the
+   * cache close anyways.
+   */
+  void close() {
+    synchronized (queue) {
+      closed = true;
+      queue.clear();
+      byDeadline.clear();
+      shed.clear();
+    }
+  }
+
+  int getSize() {
+    synchronized (queue) {
+      return queue.size();
+    }
+  }
+
+  /**
+   * Number of entries that expired because the queue was full.
+   */
+  long getShedCount() {
+    synchronized (queue) {
+      return shedCount;
+    }
+  }
+
+  /**
+   * Number of entries that expired because the refresh did not start within the
+   * maximum stale duration.
+   */
+  long getStaleExpiredCount() {
+    synchronized (queue) {
+      return staleExpiredCount;
+    }
+  }
+
+  /**
+   * Actions of the cache. Both methods are called while holding the entry lock.
+   */
+  interface Target<K, V> {
+
+    /**
+     * Start the refresh of the entry.
+     *
+     * @throws RejectedExecutionException if no thread is available for the refresh
+     */
+    void startRefresh(Entry<K, V> e);
+
+    /**
+     * The refresh is not done, expire the entry.
+     */
+    void refreshRejected(Entry<K, V> e);
+
+  }
+
+  static class Pending<K, V> {
+
+    final Entry<K, V> entry;
+    final Object task;
+    final long hitCnt;
+    final long deadline;
+    long sequence;
+
+    Pending(Entry<K, V> entry, Object task, long hitCnt, long deadline) {
+      this.entry = entry;
+      this.task = task;
+      this.hitCnt = hitCnt;
+      this.deadline = deadline;
+    }
+
+  }
+
+}
@@ -0,0 +1,132 @@
+package org.cache2k.core;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.configuration.ConfigurationSectionBuilder;
+import org.cache2k.configuration.SingletonConfigurationSection;
+
+import java.time.Duration;
+
+/**
+ * Queue refreshes and start them at a limited rate instead of starting each refresh when
+ * its timer fires. Entries with more hits are refreshed first. While an entry waits for
+ * its refresh, the cache keeps serving the current value, but not longer than
+ * {@link Builder#maximumStaleDuration(Duration)}. If the refresh cannot be started within
+ * that time, or the queue is full and the entry has the fewest hits, the entry expires,
+ * which is the same behavior as if the refresh was rejected without the queue.
+ *
+ * <p>Used only when refresh ahead is enabled. The queue is per cache.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * Cache<Long, Data> c = Cache2kBuilder.of(Long.class, Data.class)
+ *   .expireAfterWrite(5, TimeUnit.MINUTES)
+ *   .refreshAhead(true)
+ *   .loader(...)
+ *   .with(new RefreshQueueConfiguration.Builder()
+ *     .maximumRefreshRate(200)
+ *     .maximumStaleDuration(Duration.ofMinutes(1)))
+ *   .build();
+ * }</pre>
+ *
+ * @author Jens Wilke
+ * @see RefreshQueue
+ */
+public class RefreshQueueConfiguration implements SingletonConfigurationSection {
+
+  public static final int DEFAULT_CAPACITY = 1000;
+  public static final Duration DEFAULT_MAXIMUM_STALE_DURATION = Duration.ofSeconds(30);
+
+  private int capacity = DEFAULT_CAPACITY;
+  private int maximumRefreshRate;
+  private Duration maximumStaleDuration = DEFAULT_MAXIMUM_STALE_DURATION;
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * @see Builder#capacity(int)
+   */
+  public void setCapacity(int v) {
+    capacity = v;
+  }
+
+  public int getMaximumRefreshRate() {
+    return maximumRefreshRate;
+  }
+
+  /**
+   * @see Builder#maximumRefreshRate(int)
+   */
+  public void setMaximumRefreshRate(int v) {
+    maximumRefreshRate = v;
+  }
+
+  public Duration getMaximumStaleDuration() {
+    return maximumStaleDuration;
+  }
+
+  /**
+   * @see Builder#maximumStaleDuration(Duration)
+   */
+  public void setMaximumStaleDuration(Duration v) {
+    maximumStaleDuration = v;
+  }
+
+  public static class Builder implements ConfigurationSectionBuilder<RefreshQueueConfiguration> {
+
+    private final RefreshQueueConfiguration config = new RefreshQueueConfiguration();
+
+    /**
+     * Maximum number of entries waiting for a refresh. Default: {@value #DEFAULT_CAPACITY}
+     */
+    public Builder capacity(int v) {
+      config.setCapacity(v);
+      return this;
+    }
+
+    /**
+     * Maximum number of refreshes started per second. Zero means no limit, which is
+     * the default.
+     */
+    public Builder maximumRefreshRate(int v) {
+      config.setMaximumRefreshRate(v);
+      return this;
+    }
+
+    /**
+     * Maximum time an entry waits for its refresh. The entry keeps serving its
+     * current value during that time. Default: 30 seconds
+     */
+    public Builder maximumStaleDuration(Duration v) {
+      config.setMaximumStaleDuration(v);
+      return this;
+    }
+
+    @Override
+    public RefreshQueueConfiguration buildConfigurationSection() {
+      return config;
+    }
+
+  }
+
+}
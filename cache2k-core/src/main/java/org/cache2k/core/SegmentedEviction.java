@@ -24,21 +24,236 @@ import org.cache2k.core.concurrency.Job;
 import org.cache2k.core.eviction.Eviction;
 import org.cache2k.core.eviction.EvictionFactory;
 import org.cache2k.core.eviction.EvictionMetrics;
+import org.cache2k.core.eviction.HeapCacheForEviction;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Forwards eviction operations to segments based on the hash code.
  *
+ * <p>If enabled via {@link #enableAdaptiveSegmentCount}, the segment count changes
+ * at runtime depending on the observed contention of the eviction locks. The
+ * segment count doubles when more than {@value #GROW_CONTENTION_PERMILLE} per mille
+ * of the lock acquisitions are contended and halves when less than
+ * {@value #SHRINK_CONTENTION_PERMILLE} per mille are contended, since each segment
+ * only evicts within its own part of the entries, which lowers the eviction accuracy.
+ * A change rehashes all entries within the global lock and drops the history of the
+ * eviction algorithm, so the threshold needs to be passed in
+ * {@value #CONSECUTIVE_CHECKS} consecutive checks.
+ *
  * @author Jens Wilke
  */
 @SuppressWarnings("rawtypes")
 public class SegmentedEviction implements Eviction, EvictionMetrics {
 
-  private final Eviction[] segments;
+  /**
+   * Contention is checked after this many inserts on average.
+   */
+  static final int CHECK_INTERVAL = 4096;
+  static final int GROW_CONTENTION_PERMILLE = 50;
+  static final int SHRINK_CONTENTION_PERMILLE = 5;
+  /**
+   * Number of consecutive checks past a threshold, before the segment count changes.
+   */
+  static final int CONSECUTIVE_CHECKS = 3;
+
+  private volatile Eviction[] segments;
+
+  private HeapCacheForEviction heapCache;
+  private SegmentFactory segmentFactory;
+  private long capacity;
+  private int maxSegmentCount;
+  private final AtomicBoolean resizeRunning = new AtomicBoolean();
+  private final AtomicBoolean checkRunning = new AtomicBoolean();
+
+  /**
+   * State of the contention check. Guarded by: checkRunning
+   */
+  private Eviction[] checkedSegments;
+  private long lastLockCount;
+  private long lastContentionCount;
+  private int growChecks;
+  private int shrinkChecks;
+
+  /**
+   * Counters of segments that were replaced by a segment count change.
+   */
+  private long retiredNewEntryCount;
+  private long retiredHitCount;
+  private long retiredRemovedCount;
+  private long retiredExpiredRemovedCount;
+  private long retiredVirginRemovedCount;
+  private long retiredEvictedCount;
+  private long retiredLockCount;
+  private long retiredLockContentionCount;
 
   public SegmentedEviction(Eviction[] segments) {
     this.segments = segments;
   }
 
+  /**
+   * Change the segment count depending on the eviction lock contention. Not supported
+   * with a weigher, since the entry weights are not transferred to new segments.
+   *
+   * @param capacity total entry capacity, split across the segments
+   * @param maxSegmentCount upper limit of the segment count, power of two
+   */
+  public void enableAdaptiveSegmentCount(HeapCacheForEviction heapCache,
+                                         SegmentFactory segmentFactory,
+                                         long capacity, int maxSegmentCount) {
+    this.heapCache = heapCache;
+    this.segmentFactory = segmentFactory;
+    this.capacity = capacity;
+    this.maxSegmentCount = maxSegmentCount;
+  }
+
+  public int getSegmentCount() {
+    return segments.length;
+  }
+
+  /**
+   * Check the contention, if no other thread is checking. The check state is only
+   * accessed by one thread at a time.
+   */
+  private void checkContention() {
+    if (!checkRunning.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      checkContentionExclusively();
+    } finally {
+      checkRunning.set(false);
+    }
+  }
+
+  /**
+   * Compare the lock contention since the last check and start a segment count change
+   * in the background, if the threshold was passed in consecutive checks. Counters are
+   * read without locking, which is sufficient for an estimate. After a change, the
+   * counters of the new segments are taken as the new base.
+   */
+  private void checkContentionExclusively() {
+    long lockCount = 0;
+    long contentionCount = 0;
+    Eviction[] sgs = segments;
+    for (Eviction ev : sgs) {
+      lockCount += ev.getMetrics().getLockCount();
+      contentionCount += ev.getMetrics().getLockContentionCount();
+    }
+    long locks = lockCount - lastLockCount;
+    long contended = contentionCount - lastContentionCount;
+    lastLockCount = lockCount;
+    lastContentionCount = contentionCount;
+    if (sgs != checkedSegments) {
+      checkedSegments = sgs;
+      growChecks = shrinkChecks = 0;
+      return;
+    }
+    if (locks < CHECK_INTERVAL / 2) {
+      return;
+    }
+    long permille = contended * 1000 / locks;
+    int count = sgs.length;
+    if (permille > GROW_CONTENTION_PERMILLE && count < maxSegmentCount) {
+      shrinkChecks = 0;
+      if (++growChecks >= CONSECUTIVE_CHECKS) {
+        growChecks = 0;
+        requestSegmentCount(count * 2);
+      }
+    } else if (permille < SHRINK_CONTENTION_PERMILLE && count > 1) {
+      growChecks = 0;
+      if (++shrinkChecks >= CONSECUTIVE_CHECKS) {
+        shrinkChecks = 0;
+        requestSegmentCount(count / 2);
+      }
+    } else {
+      growChecks = shrinkChecks = 0;
+    }
+  }
+
+  private void requestSegmentCount(final int count) {
+    if (!resizeRunning.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      heapCache.getExecutor().execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            heapCache.executeWithGlobalLock(new Job<Void>() {
+              @Override
+              public Void call() {
+                changeSegmentCount(count);
+                return null;
+              }
+            });
+          } catch (CacheClosedException ignore) {
+          } finally {
+            resizeRunning.set(false);
+          }
+        }
+      });
+    } catch (RuntimeException ex) {
+      resizeRunning.set(false);
+      throw ex;
+    }
+  }
+
+  /**
+   * Replace the segments and move all entries of the hash table to the new segments.
+   * Needs to be called within the global cache lock, so no entries are inserted or
+   * removed. Nothing is done while an eviction is running, because the
+   * entries selected for eviction would be removed from the old segment.
+   * The segment counters are kept, a moved entry is not counted as new entry again.
+   * Removed entries, e.g. the tombstones of the open addressing hash, are skipped.
+   *
+   * @return {@code true} if the segments were changed
+   */
+  public boolean changeSegmentCount(int count) {
+    Eviction[] old = segments;
+    if (count == old.length || getEvictionRunningCount() > 0) {
+      return false;
+    }
+    Eviction[] fresh = new Eviction[count];
+    long maxSize = EvictionFactory.determineMaxSize(capacity, count);
+    for (int i = 0; i < count; i++) {
+      fresh[i] = segmentFactory.create(maxSize);
+    }
+    for (Eviction ev : old) {
+      ev.removeAll();
+      EvictionMetrics m = ev.getMetrics();
+      retiredNewEntryCount += m.getNewEntryCount();
+      retiredHitCount += m.getHitCount();
+      retiredRemovedCount += m.getRemovedCount();
+      retiredExpiredRemovedCount += m.getExpiredRemovedCount();
+      retiredVirginRemovedCount += m.getVirginRemovedCount();
+      retiredEvictedCount += m.getEvictedCount();
+      retiredLockCount += m.getLockCount();
+      retiredLockContentionCount += m.getLockContentionCount();
+    }
+    int mask = count - 1;
+    for (int i = 0; i < heapCache.getHashTableCount(); i++) {
+      Entry[] table = heapCache.getHashEntries(i);
+      for (Entry e : table) {
+        for (; e != null; e = e.another) {
+          if (e.isGone()) {
+            continue;
+          }
+          retiredNewEntryCount--;
+          retiredHitCount -= e.hitCnt;
+          e.next = e.prev = null;
+          fresh[e.hashCode & mask].submitWithoutTriggeringEviction(e);
+        }
+      }
+    }
+    for (Eviction ev : fresh) {
+      ev.start();
+    }
+    segments = fresh;
+    return true;
+  }
+
   @Override
   public boolean updateWeight(Entry e) {
     int hc = e.hashCode;
@@ -63,6 +278,10 @@ public class SegmentedEviction implements Eviction, EvictionMetrics {
     int mask = sgs.length - 1;
     int idx = hashCodeHint & mask;
     sgs[idx].evictEventuallyBeforeInsertOnSegment(hashCodeHint);
+    if (segmentFactory != null &&
+      ThreadLocalRandom.current().nextInt(CHECK_INTERVAL) == 0) {
+      checkContention();
+    }
   }
 
   @Override
@@ -120,17 +339,17 @@ public class SegmentedEviction implements Eviction, EvictionMetrics {
 
   @Override
   public <T> T runLocked(Job<T> j) {
-    return runLocked(0, j);
+    return runLocked(segments, 0, j);
   }
 
-  private <T> T runLocked(final int idx, final Job<T> j) {
-    if (idx == segments.length) {
+  private <T> T runLocked(final Eviction[] sgs, final int idx, final Job<T> j) {
+    if (idx == sgs.length) {
       return j.call();
     }
-    return segments[idx].runLocked(new Job<T>() {
+    return sgs[idx].runLocked(new Job<T>() {
       @Override
       public T call() {
-        return runLocked(idx + 1, j);
+        return runLocked(sgs, idx + 1, j);
       }
     });
   }
@@ -162,7 +381,7 @@ public class SegmentedEviction implements Eviction, EvictionMetrics {
 
   @Override
   public long getHitCount() {
-    long sum = 0;
+    long sum = retiredHitCount;
     for (Eviction ev : segments) {
       sum += ev.getMetrics().getHitCount();
     }
@@ -171,7 +390,7 @@ public class SegmentedEviction implements Eviction, EvictionMetrics {
 
   @Override
   public long getNewEntryCount() {
-    long sum = 0;
+    long sum = retiredNewEntryCount;
     for (Eviction ev : segments) {
       sum += ev.getMetrics().getNewEntryCount();
     }
@@ -180,7 +399,7 @@ public class SegmentedEviction implements Eviction, EvictionMetrics {
 
   @Override
   public long getRemovedCount() {
-    long sum = 0;
+    long sum = retiredRemovedCount;
     for (Eviction ev : segments) {
       sum += ev.getMetrics().getRemovedCount();
     }
@@ -189,7 +408,7 @@ public class SegmentedEviction implements Eviction, EvictionMetrics {
 
   @Override
   public long getExpiredRemovedCount() {
-    long sum = 0;
+    long sum = retiredExpiredRemovedCount;
     for (Eviction ev : segments) {
       sum += ev.getMetrics().getExpiredRemovedCount();
     }
@@ -198,7 +417,7 @@ public class SegmentedEviction implements Eviction, EvictionMetrics {
 
   @Override
   public long getVirginRemovedCount() {
-    long sum = 0;
+    long sum = retiredVirginRemovedCount;
     for (Eviction ev : segments) {
       sum += ev.getMetrics().getVirginRemovedCount();
     }
@@ -207,7 +426,7 @@ public class SegmentedEviction implements Eviction, EvictionMetrics {
 
   @Override
   public long getEvictedCount() {
-    long sum = 0;
+    long sum = retiredEvictedCount;
     for (Eviction ev : segments) {
       sum += ev.getMetrics().getEvictedCount();
     }
@@ -274,6 +493,24 @@ public class SegmentedEviction implements Eviction, EvictionMetrics {
     return sum;
   }
 
+  @Override
+  public long getLockCount() {
+    long sum = retiredLockCount;
+    for (Eviction ev : segments) {
+      sum += ev.getMetrics().getLockCount();
+    }
+    return sum;
+  }
+
+  @Override
+  public long getLockContentionCount() {
+    long sum = retiredLockContentionCount;
+    for (Eviction ev : segments) {
+      sum += ev.getMetrics().getLockContentionCount();
+    }
+    return sum;
+  }
+
   @Override
   public long getEvictedWeight() {
     int sum = 0;
@@ -290,6 +527,10 @@ public class SegmentedEviction implements Eviction, EvictionMetrics {
 
   @Override
   public void changeCapacity(long entryCountOrWeight) {
+    Eviction[] segments = this.segments;
+    if (!isWeigherPresent()) {
+      capacity = entryCountOrWeight;
+    }
     long limitPerSegment = isWeigherPresent() ?
       EvictionFactory.determineMaxWeight(entryCountOrWeight, segments.length) :
       EvictionFactory.determineMaxSize(entryCountOrWeight, segments.length);
@@ -298,4 +539,13 @@ public class SegmentedEviction implements Eviction, EvictionMetrics {
     }
   }
 
+  /**
+   * Creates a new eviction segment when the segment count changes.
+   */
+  public interface SegmentFactory {
+
+    Eviction create(long maxSize);
+
+  }
+
 }
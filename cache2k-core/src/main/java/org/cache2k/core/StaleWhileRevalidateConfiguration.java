@@ -0,0 +1,90 @@
+package org.cache2k.core;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.configuration.ConfigurationSectionBuilder;
+import org.cache2k.configuration.SingletonConfigurationSection;
+
+import java.time.Duration;
+
+/**
+ * Serve expired values while reloading them in the background. After the expiry time,
+ * which acts as soft expiry, the entry is kept for the stale duration. A get within that
+ * time returns the expired value immediately and starts a reload via the refresh
+ * executor. Further gets return the expired value without waiting until the reload
+ * completes. After the stale duration, which is the hard expiry, the entry expires and
+ * a get waits for the load, as usual.
+ *
+ * <p>Only {@code get} returns stale values, {@code peek} or {@code containsKey} treat
+ * a stale entry as expired. Exceptions are not returned after the expiry time.
+ * Stale while revalidate cannot be combined with refresh ahead, sweeping expiry,
+ * a weigher, listeners, a writer, an async loader, off heap or storage.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * Cache<Long, Data> c = Cache2kBuilder.of(Long.class, Data.class)
+ *   .expireAfterWrite(5, TimeUnit.MINUTES)
+ *   .loader(...)
+ *   .with(new StaleWhileRevalidateConfiguration.Builder()
+ *     .staleDuration(Duration.ofMinutes(30)))
+ *   .build();
+ * }</pre>
+ *
+ * @author Jens Wilke
+ */
+public class StaleWhileRevalidateConfiguration implements SingletonConfigurationSection {
+
+  private Duration staleDuration;
+
+  public Duration getStaleDuration() {
+    return staleDuration;
+  }
+
+  /**
+   * @see Builder#staleDuration(Duration)
+   */
+  public void setStaleDuration(Duration v) {
+    staleDuration = v;
+  }
+
+  public static class Builder
+    implements ConfigurationSectionBuilder<StaleWhileRevalidateConfiguration> {
+
+    private final StaleWhileRevalidateConfiguration config =
+      new StaleWhileRevalidateConfiguration();
+
+    /**
+     * Time after the expiry in which a get returns the expired value and starts a reload.
+     * Mandatory.
+     */
+    public Builder staleDuration(Duration v) {
+      config.setStaleDuration(v);
+      return this;
+    }
+
+    @Override
+    public StaleWhileRevalidateConfiguration buildConfigurationSection() {
+      return config;
+    }
+
+  }
+
+}
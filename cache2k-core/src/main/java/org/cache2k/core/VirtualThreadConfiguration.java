@@ -0,0 +1,85 @@
+package org.cache2k.core;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.configuration.ConfigurationSectionBuilder;
+import org.cache2k.configuration.SingletonConfigurationSection;
+
+/**
+ * Run loads and refreshes in virtual threads instead of the thread pool that
+ * is created per cache. Each load gets its own virtual thread, so blocking loaders
+ * that wait on I/O do not exhaust the loader threads. The number of concurrent loads
+ * is limited, when the limit is reached the load runs in the calling thread.
+ * This section has no effect if a loader or refresh executor is specified.
+ *
+ * <p>Virtual threads are available in Java 21 and later. On older runtimes the
+ * cache uses the thread pool as usual.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * Cache<Long, Data> c = Cache2kBuilder.of(Long.class, Data.class)
+ *   .loader(...)
+ *   .with(new VirtualThreadConfiguration.Builder()
+ *     .maximumConcurrency(5000))
+ *   .build();
+ * }</pre>
+ *
+ * @author Jens Wilke
+ * @see VirtualThreadExecutor
+ */
+public class VirtualThreadConfiguration implements SingletonConfigurationSection {
+
+  private int maximumConcurrency = 1000;
+
+  public int getMaximumConcurrency() {
+    return maximumConcurrency;
+  }
+
+  /**
+   * @see Builder#maximumConcurrency(int)
+   */
+  public void setMaximumConcurrency(int v) {
+    if (v <= 0) {
+      throw new IllegalArgumentException("maximumConcurrency must be positive");
+    }
+    maximumConcurrency = v;
+  }
+
+  public static class Builder implements ConfigurationSectionBuilder<VirtualThreadConfiguration> {
+
+    private final VirtualThreadConfiguration config = new VirtualThreadConfiguration();
+
+    /**
+     * Maximum number of loads running concurrently in virtual threads. Default is 1000.
+     */
+    public Builder maximumConcurrency(int v) {
+      config.setMaximumConcurrency(v);
+      return this;
+    }
+
+    @Override
+    public VirtualThreadConfiguration buildConfigurationSection() {
+      return config;
+    }
+
+  }
+
+}
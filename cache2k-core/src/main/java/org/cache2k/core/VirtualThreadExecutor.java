@@ -0,0 +1,125 @@
+package org.cache2k.core;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Starts a new virtual thread for each task. The number of tasks running concurrently
+ * is limited by a semaphore. If no permit is available, the task is rejected and the
+ * cache runs the load in the calling thread, the same as with the bounded thread pool of
+ * {@link ExclusiveExecutor}.
+ *
+ * <p>Virtual threads need Java 21. The core is compiled for Java 8, so the
+ * thread builder is looked up via reflection.
+ *
+ * @author Jens Wilke
+ * @see VirtualThreadConfiguration
+ */
+public class VirtualThreadExecutor implements Executor, Closeable {
+
+  private final ThreadFactory threadFactory;
+  private final Semaphore permits;
+  private final int maximumConcurrency;
+  private volatile boolean closed;
+
+  public VirtualThreadExecutor(int maximumConcurrency, ThreadFactory threadFactory) {
+    if (maximumConcurrency <= 0) {
+      throw new IllegalArgumentException("maximumConcurrency must be positive");
+    }
+    this.maximumConcurrency = maximumConcurrency;
+    this.threadFactory = threadFactory;
+    permits = new Semaphore(maximumConcurrency);
+  }
+
+  /**
+   * Factory for virtual threads with the name prefix, or {@code null} if the runtime
+   * does not support virtual threads.
+   */
+  public static ThreadFactory createVirtualThreadFactory(String threadNamePrefix) {
+    try {
+      Method ofVirtual = Thread.class.getMethod("ofVirtual");
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = ofVirtual.invoke(null);
+      builder = builderClass.getMethod("name", String.class, long.class)
+        .invoke(builder, threadNamePrefix + "-", 0L);
+      return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+    } catch (Exception ex) {
+      return null;
+    }
+  }
+
+  public static boolean isAvailable() {
+    return createVirtualThreadFactory("probe") != null;
+  }
+
+  @Override
+  public void execute(final Runnable cmd) {
+    if (closed) {
+      throw new RejectedExecutionException("executor closed");
+    }
+    if (!permits.tryAcquire()) {
+      throw new RejectedExecutionException(
+        "maximum concurrency reached: " + maximumConcurrency);
+    }
+    Runnable r = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          cmd.run();
+        } finally {
+          permits.release();
+        }
+      }
+    };
+    try {
+      threadFactory.newThread(r).start();
+    } catch (Throwable t) {
+      permits.release();
+      throw new RejectedExecutionException(t);
+    }
+  }
+
+  public int getMaximumConcurrency() {
+    return maximumConcurrency;
+  }
+
+  /**
+   * Number of tasks currently running.
+   */
+  public int getActiveCount() {
+    return maximumConcurrency - permits.availablePermits();
+  }
+
+  /**
+   * Reject new tasks. Running tasks complete.
+   */
+  @Override
+  public void close() {
+    closed = true;
+  }
+
+}
@@ -378,6 +378,7 @@ public class WiredCache<K, V> extends BaseCache<K, V>
     return returnValue(e.getValueOrException());
   }
 
+  @Override
   Entry<K, V> lookupQuick(K key) {
     return heapCache.lookupEntry(key);
   }
@@ -527,11 +528,29 @@ public class WiredCache<K, V> extends BaseCache<K, V>
     if (storage == null  && heapCache.eviction.getMetrics().getMaxSize() == 0) {
       throw new IllegalArgumentException("maxElements must be >0");
     }
+    if (heapCache.staleMillis > 0) {
+      throw new IllegalArgumentException("Stale while revalidate is not supported " +
+        "with a weigher, listeners, writer, async loader, off heap or storage");
+    }
     if (storage != null) {
       storage.open();
     }
 
     heapCache.timing.setTarget(this);
+    if (heapCache.refreshQueue != null) {
+      heapCache.refreshQueue.setTarget(new RefreshQueue.Target<K, V>() {
+        @Override
+        public void startRefresh(Entry<K, V> e) {
+          startRefreshOrThrow(e);
+        }
+
+        @Override
+        public void refreshRejected(Entry<K, V> e) {
+          metrics().refreshRejected();
+          enqueueTimerAction(e, ops.expireEvent);
+        }
+      });
+    }
     heapCache.initWithoutTimerHandler();
   }
 
@@ -549,7 +568,6 @@ public class WiredCache<K, V> extends BaseCache<K, V>
   public void clear() {
     if (storage != null) {
       storage.clear();
-      return;
     }
     heapCache.clear();
   }
@@ -640,6 +658,9 @@ public class WiredCache<K, V> extends BaseCache<K, V>
    */
   @Override
   public void onEvictionFromHeap(Entry<K, V> e) {
+    if (storage != null) {
+      storage.evict(e);
+    }
     CacheEntry<K, V> currentEntry = heapCache.returnCacheEntry(e);
     if (syncEntryEvictedListeners != null) {
       for (CacheEntryEvictedListener<K, V> l : syncEntryEvictedListeners) {
@@ -654,6 +675,30 @@ public class WiredCache<K, V> extends BaseCache<K, V>
     return new MyEntryAction<R>(op, key, e);
   }
 
+  @Override
+  protected <R> EntryAction<K, V, R> createEntryAction(
+    K key, Entry<K, V> e, Semantic<K, V, R> op, EntryAction.CompletedCallback<K, V, R> cb) {
+    return new MyEntryAction<R>(op, key, e, cb);
+  }
+
+  /**
+   * The async loader does not block, a load is started and completes via the callback.
+   */
+  @Override
+  boolean isBlockingLoaderPresent() {
+    return asyncLoader == null && loader != null;
+  }
+
+  @Override
+  boolean isWriterPresent() {
+    return writer != null;
+  }
+
+  @Override
+  Executor getLoaderExecutor() {
+    return heapCache.loaderExecutor;
+  }
+
   @Override
   public String getEntryState(K key) {
     return heapCache.getEntryState(key);
@@ -689,7 +734,8 @@ public class WiredCache<K, V> extends BaseCache<K, V>
   }
 
   /**
-   * Starts a refresh operation or expires if no threads in the loader thread pool are available.
+   * Starts a refresh operation or expires at the expiry time if no threads in the loader
+   * thread pool are available.
    * If no async loader is available we execute the synchronous loader via the loader
    * thread pool.
    */
@@ -697,20 +743,32 @@ public class WiredCache<K, V> extends BaseCache<K, V>
   public void timerEventRefresh(Entry<K, V> e, Object task) {
     metrics().timerEvent();
     synchronized (e) {
-      if (e.getTask() != task) { return; }
-      if (asyncLoader != null) {
-        enqueueTimerAction(e, ops.refresh);
+      if (e.getTask() != task || heapCache.getTiming().skipRefresh(e, task)) { return; }
+      if (heapCache.refreshQueue != null) {
+        heapCache.refreshQueue.submit(e, task);
         return;
       }
       try {
-        heapCache.refreshExecutor.execute(createFireAndForgetAction(e, ops.refresh));
+        startRefreshOrThrow(e);
       } catch (RejectedExecutionException ex) {
         metrics().refreshRejected();
-        enqueueTimerAction(e, ops.expireEvent);
+        if (heapCache.clock.millis() < Math.abs(e.getNextRefreshTime())) {
+          heapCache.getTiming().startExpiryTimer(e);
+        } else {
+          enqueueTimerAction(e, ops.expireEvent);
+        }
       }
     }
   }
 
+  private void startRefreshOrThrow(Entry<K, V> e) {
+    if (asyncLoader != null) {
+      enqueueTimerAction(e, ops.refresh);
+      return;
+    }
+    heapCache.refreshExecutor.execute(createFireAndForgetAction(e, ops.refresh));
+  }
+
   @Override
   public void timerEventProbationTerminated(Entry<K, V> e, Object task) {
     metrics().timerEvent();
@@ -769,6 +827,11 @@ public class WiredCache<K, V> extends BaseCache<K, V>
       return heapCache.timing;
     }
 
+    @Override
+    protected StorageAdapter storage() {
+      return storage;
+    }
+
     /**
      * Provides async loader context
      *
@@ -24,6 +24,8 @@ import org.cache2k.CacheManager;
 import org.cache2k.configuration.Cache2kConfiguration;
 import org.cache2k.configuration.CustomizationSupplier;
 
+import java.util.concurrent.Executor;
+
 /**
  * Context information when a cache is build.
  *
@@ -46,6 +48,12 @@ public interface InternalBuildContext<K, V> {
    */
   CacheManager getCacheManager();
 
+  /**
+   * The executor of the cache for asynchronous work. Available after the
+   * cache configuration was applied.
+   */
+  Executor getExecutor();
+
   /**
    * Create the customization. Return fallback if supplier is null.
    */
@@ -221,6 +221,12 @@ public interface InternalCacheInfo {
    */
   long getTimerEventCount();
 
+  /**
+   * Delay of the timer in milliseconds, between the scheduled time of recently
+   * executed expiry or refresh tasks and their execution.
+   */
+  long getExpiryLagMillis();
+
   /**
    * Hit rate of the cache
    */
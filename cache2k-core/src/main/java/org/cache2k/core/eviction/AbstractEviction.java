@@ -60,6 +60,12 @@ public abstract class AbstractEviction implements Eviction, EvictionMetrics {
   private final boolean noListenerCall;
   private final boolean noChunking;
 
+  /**
+   * Count the lock acquisitions and the contention, only needed for the adaptive
+   * segment count, see {@link #getLockContentionCount()}.
+   */
+  private final boolean countLocks;
+
   /**
    * Set when size is reached.
    */
@@ -89,6 +95,14 @@ public abstract class AbstractEviction implements Eviction, EvictionMetrics {
   private Entry[] evictChunkReuse = null;
 
   private int evictionRunningCount = 0;
+
+  /**
+   * Set while an insert, removal or eviction holds the lock. Read before locking to
+   * detect contention.
+   */
+  private volatile boolean lockHeld;
+  private long lockCount;
+  private long lockContentionCount;
   private long newEntryCounter;
   private long removedCnt;
   private long expiredRemovedCnt;
@@ -100,6 +114,13 @@ public abstract class AbstractEviction implements Eviction, EvictionMetrics {
   public AbstractEviction(HeapCacheForEviction heapCache, HeapCacheListener listener,
                           long maxSize, Weigher weigher, long maxWeight,
                           boolean noChunking) {
+    this(heapCache, listener, maxSize, weigher, maxWeight, noChunking, false);
+  }
+
+  public AbstractEviction(HeapCacheForEviction heapCache, HeapCacheListener listener,
+                          long maxSize, Weigher weigher, long maxWeight,
+                          boolean noChunking, boolean countLocks) {
+    this.countLocks = countLocks;
     this.weigher = weigher;
     this.heapCache = heapCache;
     this.listener = listener;
@@ -112,14 +133,40 @@ public abstract class AbstractEviction implements Eviction, EvictionMetrics {
 
   @Override
   public boolean submitWithoutTriggeringEviction(Entry e) {
+    boolean contended = countLocks && lockHeld;
     synchronized (lock) {
-      if (e.isNotYetInsertedInReplacementList()) {
-        insertIntoReplacementList(e);
-        newEntryCounter++;
-      } else {
-        removeEventually(e);
+      countLock(contended);
+      try {
+        if (e.isNotYetInsertedInReplacementList()) {
+          insertIntoReplacementList(e);
+          newEntryCounter++;
+        } else {
+          removeEventually(e);
+        }
+        return isEvictionNeeded(1);
+      } finally {
+        releaseLock();
       }
-      return isEvictionNeeded(1);
+    }
+  }
+
+  /**
+   * Called after acquiring the lock, {@link #releaseLock()} is called before releasing it.
+   */
+  private void countLock(boolean contended) {
+    if (!countLocks) {
+      return;
+    }
+    lockHeld = true;
+    lockCount++;
+    if (contended) {
+      lockContentionCount++;
+    }
+  }
+
+  private void releaseLock() {
+    if (countLocks) {
+      lockHeld = false;
     }
   }
 
@@ -139,7 +186,7 @@ public abstract class AbstractEviction implements Eviction, EvictionMetrics {
   }
 
   /**
-   * Call weigher with the value.
+   * Call weigher with the value. For off heap values the weigher gets the handle.
    * Exceptions have the minimum weight. A weight of 0 is legal.
    */
   private int calculateWeight(Entry e, Object v) {
@@ -185,7 +232,7 @@ public abstract class AbstractEviction implements Eviction, EvictionMetrics {
    * weigher for deletion again, which may cause wrong counts.
    */
   protected void updateAccumulatedWeightInLock(Entry e) {
-    Object v = e.getValueOrException();
+    Object v = e.getStoredValueOrException();
     int requestedCompressedWeight = compressWeight(calculateWeight(e, v));
     if (e.getCompressedWeight() != requestedCompressedWeight) {
       long decompressedEntryWeight = decompressWeight(e.getCompressedWeight());
@@ -257,8 +304,14 @@ public abstract class AbstractEviction implements Eviction, EvictionMetrics {
    */
   private void evictEventually(int spaceNeeded) {
     Entry[] chunk;
+    boolean contended = countLocks && lockHeld;
     synchronized (lock) {
-      chunk = fillEvictionChunk(spaceNeeded);
+      countLock(contended);
+      try {
+        chunk = fillEvictionChunk(spaceNeeded);
+      } finally {
+        releaseLock();
+      }
     }
     if (chunk == null) { return; }
     boolean needsEviction = evictChunk(chunk, spaceNeeded);
@@ -334,11 +387,15 @@ public abstract class AbstractEviction implements Eviction, EvictionMetrics {
   /**
    * If there is concurrent processing going on, we skip that entry.
    * An entry may have been also already evicted in another task.
+   * Empty positions, when no candidate was found, are skipped as well.
    */
   private int removeFromHashWithoutListener(Entry[] chunk) {
     int processCount = 0;
     for (int i = 0; i < chunk.length; i++) {
       Entry e = chunk[i];
+      if (e == null) {
+        continue;
+      }
       synchronized (e) {
         if (e.isGone() || e.isProcessing()) {
           chunk[i] = null;
@@ -360,6 +417,9 @@ public abstract class AbstractEviction implements Eviction, EvictionMetrics {
     int processCount = 0;
     for (int i = 0; i < chunk.length; i++) {
       Entry e = chunk[i];
+      if (e == null) {
+        continue;
+      }
       synchronized (e) {
         if (e.isGone() || e.isProcessing()) {
           chunk[i] = null; continue;
@@ -441,6 +501,16 @@ public abstract class AbstractEviction implements Eviction, EvictionMetrics {
     return evictionRunningCount;
   }
 
+  @Override
+  public long getLockCount() {
+    return lockCount;
+  }
+
+  @Override
+  public long getLockContentionCount() {
+    return lockContentionCount;
+  }
+
   @Override
   public EvictionMetrics getMetrics() {
     return this;
@@ -541,7 +611,8 @@ public abstract class AbstractEviction implements Eviction, EvictionMetrics {
   /**
    * Find a candidate for eviction. The method may return the identical
    * if called many times but not sufficient more candidates are available.
-   * In any situation, subsequent calls must iterate all entries.
+   * In any situation, subsequent calls must iterate all entries. May return
+   * {@code null}, if no candidate is found.
    */
   protected abstract Entry findEvictionCandidate();
 
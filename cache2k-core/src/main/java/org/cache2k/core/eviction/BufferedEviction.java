@@ -0,0 +1,292 @@
+package org.cache2k.core.eviction;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.core.Entry;
+import org.cache2k.core.IntegrityState;
+import org.cache2k.core.concurrency.Job;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Front end for an eviction segment that records inserts and removals in striped
+ * ring buffers instead of locking the eviction data structure for each operation.
+ * The buffers are drained by the thread that wins the drain flag when a buffer is
+ * half full, or before an eviction runs. Threads that find the buffers in the
+ * process of draining just continue.
+ *
+ * <p>An insert or removal may not be lost, otherwise an entry would never
+ * be evicted or its list position would leak. If a buffer is full the thread
+ * drains it and waits for the drain to complete.
+ *
+ * <p>The stripe is selected by the entry hash code, so the records of one entry
+ * always go to the same stripe and are processed in order. The entry hash code is
+ * also used to select the eviction segment, so the stripe uses the upper bits.
+ *
+ * @author Jens Wilke
+ * @see BufferedEvictionConfiguration
+ */
+@SuppressWarnings("rawtypes")
+public class BufferedEviction implements Eviction {
+
+  private final Eviction eviction;
+  private final EvictionMetrics metrics;
+  private final Stripe[] stripes;
+  private final int drainThreshold;
+  private final AtomicBoolean draining = new AtomicBoolean();
+  private final Job<Void> drainJob = new Job<Void>() {
+    @Override
+    public Void call() {
+      drainBuffers();
+      return null;
+    }
+  };
+
+  /**
+   * @param eviction the eviction segment that is updated when the buffers are drained
+   * @param stripeCount number of buffers, rounded up to the next power of two
+   * @param bufferSize capacity of each buffer, rounded up to the next power of two
+   */
+  public BufferedEviction(Eviction eviction, int stripeCount, int bufferSize) {
+    this.eviction = eviction;
+    metrics = eviction.getMetrics();
+    stripes = new Stripe[powerOfTwo(stripeCount)];
+    int size = powerOfTwo(bufferSize);
+    for (int i = 0; i < stripes.length; i++) {
+      stripes[i] = new Stripe(size);
+    }
+    drainThreshold = size / 2;
+  }
+
+  private static int powerOfTwo(int n) {
+    return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+  }
+
+  private Stripe stripe(int hashCode) {
+    return stripes[(hashCode >>> 16) & (stripes.length - 1)];
+  }
+
+  /**
+   * Record the insert or removal. Drains if the buffer is half full and no other
+   * thread is draining.
+   *
+   * @return {@code true} if eviction is needed, estimated without locking
+   */
+  @Override
+  public boolean submitWithoutTriggeringEviction(Entry e) {
+    Stripe s = stripe(e.hashCode);
+    while (!s.offer(e)) {
+      drainLocked();
+    }
+    if (s.size() >= drainThreshold && draining.compareAndSet(false, true)) {
+      try {
+        eviction.runLocked(drainJob);
+      } finally {
+        draining.set(false);
+      }
+    }
+    return isEvictionNeededEstimate(1);
+  }
+
+  /**
+   * Checks the size limit without locking. The size of the eviction segment is read
+   * racy, the buffered records are counted as inserts. With a weigher the segment
+   * always needs to be checked.
+   */
+  private boolean isEvictionNeededEstimate(int spaceNeeded) {
+    if (eviction.isWeigherPresent()) {
+      return true;
+    }
+    return metrics.getSize() + getBufferedCount() + spaceNeeded > metrics.getMaxSize();
+  }
+
+  private long getBufferedCount() {
+    long count = 0;
+    for (Stripe s : stripes) {
+      count += s.size();
+    }
+    return count;
+  }
+
+  private void drainLocked() {
+    eviction.runLocked(drainJob);
+  }
+
+  /**
+   * Hand the buffered entries to the eviction segment. Called with the segment lock.
+   */
+  private void drainBuffers() {
+    for (Stripe s : stripes) {
+      s.drainTo(eviction);
+    }
+  }
+
+  @Override
+  public boolean updateWeight(Entry e) {
+    return eviction.updateWeight(e);
+  }
+
+  @Override
+  public void evictEventuallyBeforeInsertOnSegment(int hashCodeHint) {
+    if (isEvictionNeededEstimate(1)) {
+      drainLocked();
+      eviction.evictEventuallyBeforeInsertOnSegment(hashCodeHint);
+    }
+  }
+
+  @Override
+  public void evictEventuallyBeforeInsert() {
+    if (isEvictionNeededEstimate(1)) {
+      drainLocked();
+      eviction.evictEventuallyBeforeInsert();
+    }
+  }
+
+  @Override
+  public void evictEventually() {
+    if (isEvictionNeededEstimate(0)) {
+      drainLocked();
+      eviction.evictEventually();
+    }
+  }
+
+  /**
+   * Called within the global lock, no records are added concurrently.
+   */
+  @Override
+  public long removeAll() {
+    drainBuffers();
+    return eviction.removeAll();
+  }
+
+  @Override
+  public boolean drain() {
+    drainLocked();
+    return eviction.drain();
+  }
+
+  @Override
+  public void start() {
+    eviction.start();
+  }
+
+  @Override
+  public void stop() {
+    eviction.stop();
+  }
+
+  @Override
+  public void close() {
+    eviction.close();
+  }
+
+  /**
+   * Drain within the lock, so the job sees the eviction data structure up to date.
+   */
+  @Override
+  public <T> T runLocked(final Job<T> j) {
+    return eviction.runLocked(new Job<T>() {
+      @Override
+      public T call() {
+        drainBuffers();
+        return j.call();
+      }
+    });
+  }
+
+  @Override
+  public void checkIntegrity(IntegrityState integrityState) {
+    eviction.checkIntegrity(integrityState);
+    integrityState.checkEquals("getBufferedCount() == 0", 0, getBufferedCount());
+  }
+
+  @Override
+  public EvictionMetrics getMetrics() {
+    return metrics;
+  }
+
+  @Override
+  public boolean isWeigherPresent() {
+    return eviction.isWeigherPresent();
+  }
+
+  @Override
+  public void changeCapacity(long entryCountOrWeight) {
+    drainLocked();
+    eviction.changeCapacity(entryCountOrWeight);
+  }
+
+  /**
+   * Ring buffer with multiple producers and a single consumer that holds the
+   * eviction lock. A producer claims a slot by incrementing the write counter and
+   * stores the entry afterwards. The consumer stops at a claimed slot that is not
+   * yet written.
+   */
+  static final class Stripe {
+
+    private final AtomicReferenceArray<Entry> buffer;
+    private final int mask;
+    private final AtomicLong writeCounter = new AtomicLong();
+    private volatile long readCounter;
+
+    Stripe(int size) {
+      buffer = new AtomicReferenceArray<Entry>(size);
+      mask = size - 1;
+    }
+
+    long size() {
+      return writeCounter.get() - readCounter;
+    }
+
+    boolean offer(Entry e) {
+      for (;;) {
+        long t = writeCounter.get();
+        if (t - readCounter > mask) {
+          return false;
+        }
+        if (writeCounter.compareAndSet(t, t + 1)) {
+          buffer.lazySet((int) t & mask, e);
+          return true;
+        }
+      }
+    }
+
+    void drainTo(Eviction eviction) {
+      long h = readCounter;
+      long t = writeCounter.get();
+      while (h < t) {
+        int idx = (int) h & mask;
+        Entry e = buffer.get(idx);
+        if (e == null) {
+          break;
+        }
+        buffer.lazySet(idx, null);
+        eviction.submitWithoutTriggeringEviction(e);
+        h++;
+      }
+      readCounter = h;
+    }
+
+  }
+
+}
@@ -0,0 +1,106 @@
+package org.cache2k.core.eviction;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.configuration.ConfigurationSectionBuilder;
+import org.cache2k.configuration.SingletonConfigurationSection;
+
+/**
+ * Configuration section to record inserts and removals in buffers, instead of
+ * updating the eviction data structure within the eviction lock for every operation.
+ * Improves throughput for insert heavy workloads with many threads. The eviction
+ * size limit is still honored, since the buffers are drained before an eviction.
+ * Cannot be combined with strict eviction.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * Cache<Long, Data> c = Cache2kBuilder.of(Long.class, Data.class)
+ *   .entryCapacity(100_000)
+ *   .with(new BufferedEvictionConfiguration.Builder())
+ *   .build();
+ * }</pre>
+ *
+ * @author Jens Wilke
+ * @see BufferedEviction
+ */
+public class BufferedEvictionConfiguration implements SingletonConfigurationSection {
+
+  public static final int DEFAULT_BUFFER_SIZE = 64;
+
+  private int stripeCount = 0;
+  private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+  public int getStripeCount() {
+    return stripeCount;
+  }
+
+  /**
+   * @see Builder#stripeCount(int)
+   */
+  public void setStripeCount(int v) {
+    stripeCount = v;
+  }
+
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  /**
+   * @see Builder#bufferSize(int)
+   */
+  public void setBufferSize(int v) {
+    if (v < 2) {
+      throw new IllegalArgumentException("bufferSize of at least 2 expected");
+    }
+    bufferSize = v;
+  }
+
+  public static class Builder
+    implements ConfigurationSectionBuilder<BufferedEvictionConfiguration> {
+
+    private final BufferedEvictionConfiguration config = new BufferedEvictionConfiguration();
+
+    /**
+     * Number of buffers per eviction segment, rounded up to the next power of two.
+     * Default: 0, which means the number of available processors.
+     */
+    public Builder stripeCount(int v) {
+      config.setStripeCount(v);
+      return this;
+    }
+
+    /**
+     * Number of records each buffer holds, rounded up to the next power of two.
+     * Default: {@value #DEFAULT_BUFFER_SIZE}
+     */
+    public Builder bufferSize(int v) {
+      config.setBufferSize(v);
+      return this;
+    }
+
+    @Override
+    public BufferedEvictionConfiguration buildConfigurationSection() {
+      return config;
+    }
+
+  }
+
+}
@@ -65,9 +65,7 @@ public class ClockProPlusEviction extends AbstractEviction {
   private Entry handCold;
   private Entry handHot;
 
-  private Ghost[] ghosts;
-  private final Ghost ghostHead = new Ghost().shortCircuit();
-  private int ghostSize = 0;
+  private final GhostTable ghosts = new GhostTable(GHOST_LOAD_PERCENT);
   private long hotMax = Long.MAX_VALUE;
   private long ghostMax = Long.MAX_VALUE;
 
@@ -87,13 +85,18 @@ public class ClockProPlusEviction extends AbstractEviction {
   public ClockProPlusEviction(HeapCacheForEviction heapCache, HeapCacheListener listener,
                               long maxSize, Weigher weigher, long maxWeight,
                               boolean noChunking) {
-    super(heapCache, listener, maxSize, weigher, maxWeight, noChunking);
+    this(heapCache, listener, maxSize, weigher, maxWeight, noChunking, false);
+  }
+
+  public ClockProPlusEviction(HeapCacheForEviction heapCache, HeapCacheListener listener,
+                              long maxSize, Weigher weigher, long maxWeight,
+                              boolean noChunking, boolean countLocks) {
+    super(heapCache, listener, maxSize, weigher, maxWeight, noChunking, countLocks);
 
     coldSize = 0;
     hotSize = 0;
     handCold = null;
     handHot = null;
-    ghosts = new Ghost[4];
   }
 
   private long sumUpListHits(Entry e) {
@@ -124,7 +127,7 @@ public class ClockProPlusEviction extends AbstractEviction {
   protected void updateHotMax() {
     hotMax = getSize() * HOT_MAX_PERCENTAGE / 100;
     ghostMax = getSize() * GHOST_MAX_PERCENTAGE / 100 + 1;
-    trimGhostSize();
+    ghosts.trim(ghostMax);
   }
 
   @Override
@@ -199,52 +202,29 @@ public class ClockProPlusEviction extends AbstractEviction {
     }
   }
 
-  private void insertCopyIntoGhosts(Entry e) {
-    int hc = e.hashCode;
-    Ghost g = lookupGhost(hc);
-    if (g != null) {
-      Ghost.moveToFront(ghostHead, g);
-      return;
-    }
-    g = trimGhostSize();
-    if (g == null) {
-      g = new Ghost();
-    }
-    g.hash = hc;
-    insertGhost(g, hc);
-    Ghost.insertInList(ghostHead, g);
-  }
-
   /**
-   * Reduce ghost size to fit maximum size.
-   *
-   * @return A removed ghost to reuse the object for insert
+   * Remember the hash of the evicted entry. The ghosts are kept in insertion order,
+   * if the hash is present already, its position is not updated.
    */
-  private Ghost trimGhostSize() {
-    Ghost g = null;
-    while (ghostSize >= getGhostMax()) {
-      g = ghostHead.prev;
-      Ghost.removeFromList(g);
-      boolean f = removeGhost(g, g.hash);
-    }
-    return g;
+  private void insertCopyIntoGhosts(Entry e) {
+    ghosts.add(e.hashCode, getGhostMax());
   }
 
   public long getSize() {
     return hotSize + coldSize;
   }
 
+  /**
+   * Insert a new entry as cold, or as hot if there is a ghost. Entries restored
+   * from a snapshot keep their hot status.
+   */
   @Override
   protected void insertIntoReplacementList(Entry e) {
-    Ghost g = lookupGhost(e.hashCode);
-    if (g != null) {
-      /*
-       * don't remove ghosts here, save object allocations.
-       * removeGhost(g, g.hash);  Ghost.removeFromList(g);
-       */
+    boolean ghost = ghosts.contains(e.hashCode);
+    if (ghost) {
       ghostHits++;
     }
-    if (g != null || (coldSize == 0 && hotSize < getHotMax())) {
+    if (e.isHot() || ghost || (coldSize == 0 && hotSize < getHotMax())) {
       e.setHot(true);
       hotSize++;
       handHot = Entry.insertIntoTailCyclicList(handHot, e);
@@ -334,15 +314,15 @@ public class ClockProPlusEviction extends AbstractEviction {
 
   @Override
   public void checkIntegrity(IntegrityState integrityState) {
-    integrityState.checkEquals("ghostSize == countGhostsInHash()", ghostSize, countGhostsInHash())
+    integrityState.checkEquals("ghosts.size() == ghosts.countInTable()",
+      ghosts.size(), ghosts.countInTable())
+      .check("ghosts.checkRingInTable()", ghosts.checkRingInTable())
       .check("checkCyclicListIntegrity(handHot)", Entry.checkCyclicListIntegrity(handHot))
       .check("checkCyclicListIntegrity(handCold)", Entry.checkCyclicListIntegrity(handCold))
       .checkEquals("getCyclicListEntryCount(handHot) == hotSize",
         Entry.getCyclicListEntryCount(handHot), hotSize)
       .checkEquals("getCyclicListEntryCount(handCold) == coldSize",
-        Entry.getCyclicListEntryCount(handCold), coldSize)
-      .checkEquals("Ghost.listSize(ghostHead) == ghostSize",
-        Ghost.listSize(ghostHead), ghostSize);
+        Entry.getCyclicListEntryCount(handCold), coldSize);
   }
 
   @Override
@@ -351,7 +331,7 @@ public class ClockProPlusEviction extends AbstractEviction {
       ", coldSize=" + coldSize +
       ", hotSize=" + hotSize +
       ", hotMaxSize=" + getHotMax() +
-      ", ghostSize=" + ghostSize +
+      ", ghostSize=" + ghosts.size() +
       ", ghostMaxSize=" + getGhostMax() +
       ", coldHits=" + (coldHits + sumUpListHits(handCold)) +
       ", hotHits=" + (hotHits + sumUpListHits(handHot)) +
@@ -362,136 +342,6 @@ public class ClockProPlusEviction extends AbstractEviction {
       ", hotScanCnt=" + hotScanCnt;
   }
 
-  private Ghost lookupGhost(int hash) {
-    Ghost[] tab = ghosts;
-    int n = tab.length;
-    int mask = n - 1;
-    int idx = hash & (mask);
-    Ghost e = tab[idx];
-    while (e != null) {
-      if (e.hash == hash) {
-        return e;
-      }
-      e = e.another;
-    }
-    return null;
-  }
-
-  private void insertGhost(Ghost e2, int hash) {
-    Ghost[] tab = ghosts;
-    int n = tab.length;
-    int mask = n - 1;
-    int idx = hash & (mask);
-    e2.another = tab[idx];
-    tab[idx] = e2;
-    ghostSize++;
-    int maxFill = n * GHOST_LOAD_PERCENT / 100;
-    if (ghostSize > maxFill) {
-      expand();
-    }
-  }
-
-  private void expand() {
-    Ghost[] tab = ghosts;
-    int n = tab.length;
-    int mask;
-    int idx;
-    Ghost[] newTab = new Ghost[n * 2];
-    mask = newTab.length - 1;
-    for (Ghost g : tab) {
-      while (g != null) {
-        idx = g.hash & mask;
-        Ghost next = g.another;
-        g.another = newTab[idx];
-        newTab[idx] = g;
-        g = next;
-      }
-    }
-    ghosts = newTab;
-  }
-
-
-  private boolean removeGhost(Ghost g, int hash) {
-    Ghost[] tab = ghosts;
-    int n = tab.length;
-    int mask = n - 1;
-    int idx = hash & (mask);
-    Ghost e = tab[idx];
-    if (e == g) {
-      tab[idx] = e.another;
-      ghostSize--;
-      return true;
-    } else {
-      while (e != null) {
-        Ghost another = e.another;
-        if (another == g) {
-          e.another = another.another;
-          ghostSize--;
-          return true;
-        }
-        e = another;
-      }
-    }
-    return false;
-  }
-
-  private int countGhostsInHash() {
-    int entryCount = 0;
-    for (Ghost e : ghosts) {
-      while (e != null) {
-        entryCount++;
-        e = e.another;
-      }
-    }
-    return entryCount;
-  }
-
-  /**
-   * Ghost representing a entry we have seen and evicted from the cache. We only store
-   * the hash to save memory, since holding the key references may cause a size overhead.
-   */
-  private static class Ghost {
-
-    /** Modified hashcode of the key */
-    int hash;
-    /** Hash table chain */
-    Ghost another;
-    /** LRU double linked list */
-    Ghost next;
-    /** LRU double linked list */
-    Ghost prev;
-
-    Ghost shortCircuit() {
-      return next = prev = this;
-    }
-
-    static void removeFromList(Ghost e) {
-      e.prev.next = e.next;
-      e.next.prev = e.prev;
-      e.next = e.prev = null;
-    }
-
-    static void insertInList(Ghost head, Ghost e) {
-      e.prev = head;
-      e.next = head.next;
-      e.next.prev = e;
-      head.next = e;
-    }
-
-    static void moveToFront(Ghost head, Ghost e) {
-      removeFromList(e);
-      insertInList(head, e);
-    }
-
-    static int listSize(Ghost head) {
-      int count = 0;
-      Ghost e = head;
-      while ((e = e.next) != head) { count++; }
-      return count;
-    }
-
-  }
-
   public static class Tunable extends TunableConstants {
 
     public int hotMaxPercentage = 97;
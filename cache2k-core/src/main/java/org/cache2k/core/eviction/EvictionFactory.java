@@ -26,6 +26,8 @@ import org.cache2k.core.api.InternalBuildContext;
 import org.cache2k.core.HeapCache;
 import org.cache2k.core.HeapCacheListener;
 import org.cache2k.core.SegmentedEviction;
+import org.cache2k.core.offheap.OffHeapConfiguration;
+import org.cache2k.core.offheap.OffHeapStore;
 
 /**
  * @author Jens Wilke
@@ -33,19 +35,27 @@ import org.cache2k.core.SegmentedEviction;
 public class EvictionFactory {
 
   /**
-   * Construct segmented or queued eviction. For the moment hard coded.
+   * Construct segmented or queued eviction. The algorithm is Clock-Pro, W-TinyLFU
+   * if a {@link TinyLfuConfiguration} is present or the unsegmented sampled eviction if
+   * a {@link SampledEvictionConfiguration} is present. Each segment is wrapped by a
+   * {@link BufferedEviction} if a {@link BufferedEvictionConfiguration} is present.
    * If capacity is at least 1000 we use 2 segments if 2 or more CPUs are available.
    * Segmenting the eviction only improves for lots of concurrent inserts or evictions,
-   * there is no effect on read performance.
+   * there is no effect on read performance. If enabled via
+   * {@link HeapCache.Tunable#adaptiveSegmentCount} and without a weigher, the segment count
+   * adapts to the lock contention at runtime, see {@link SegmentedEviction}.
    */
   public Eviction constructEviction(InternalBuildContext customizationContext,
-                                    HeapCacheForEviction hc, HeapCacheListener l,
-                                    Cache2kConfiguration config, int availableProcessors) {
+                                    final HeapCacheForEviction hc, final HeapCacheListener l,
+                                    Cache2kConfiguration config,
+                                    final int availableProcessors) {
     boolean strictEviction = config.isStrictEviction();
     boolean boostConcurrency = config.isBoostConcurrency();
     long maximumWeight = config.getMaximumWeight();
     long entryCapacity = config.getEntryCapacity();
     Weigher weigher = null;
+    OffHeapConfiguration offHeapConfig =
+      (OffHeapConfiguration) config.getSections().getSection(OffHeapConfiguration.class);
     if (config.getWeigher() != null) {
       weigher = (Weigher) customizationContext.createCustomization(config.getWeigher());
       if (maximumWeight <= 0) {
@@ -53,6 +63,10 @@ public class EvictionFactory {
           "maximumWeight > 0 expected. Weigher requires to set maximumWeight");
       }
       entryCapacity = -1;
+    } else if (offHeapConfig != null) {
+      weigher = OffHeapStore.WEIGHER;
+      maximumWeight = offHeapConfig.getMaximumBytes();
+      entryCapacity = -1;
     } else {
       if (entryCapacity < 0) {
         entryCapacity = 2000;
@@ -61,17 +75,48 @@ public class EvictionFactory {
         throw new IllegalArgumentException("entryCapacity of 0 is not supported.");
       }
     }
+    final TinyLfuConfiguration tinyLfuConfig =
+      (TinyLfuConfiguration) config.getSections().getSection(TinyLfuConfiguration.class);
+    final SampledEvictionConfiguration sampledConfig = (SampledEvictionConfiguration)
+      config.getSections().getSection(SampledEvictionConfiguration.class);
+    if (tinyLfuConfig != null && sampledConfig != null) {
+      throw new IllegalArgumentException(
+        "Only one of TinyLfuConfiguration and SampledEvictionConfiguration expected");
+    }
+    boolean singleSegment = strictEviction || sampledConfig != null;
     int segmentCountOverride = HeapCache.TUNABLE.segmentCountOverride;
     int segmentCount =
       EvictionFactory.determineSegmentCount(
-        strictEviction, availableProcessors,
+        singleSegment, availableProcessors,
         boostConcurrency, entryCapacity, maximumWeight, segmentCountOverride);
     Eviction[] segments = new Eviction[segmentCount];
     long maxSize = EvictionFactory.determineMaxSize(entryCapacity, segmentCount);
     long maxWeight = EvictionFactory.determineMaxWeight(maximumWeight, segmentCount);
+    final BufferedEvictionConfiguration bufferConfig = (BufferedEvictionConfiguration)
+      config.getSections().getSection(BufferedEvictionConfiguration.class);
+    if (bufferConfig != null && strictEviction) {
+      throw new IllegalArgumentException(
+        "Buffered eviction cannot be combined with strict eviction");
+    }
+    int maxSegmentCount = determineMaxAdaptiveSegmentCount(
+      availableProcessors, entryCapacity, segmentCount);
+    boolean adaptive = HeapCache.TUNABLE.adaptiveSegmentCount && !singleSegment &&
+      weigher == null && segmentCountOverride <= 0 && maxSegmentCount > 1;
     for (int i = 0; i < segments.length; i++) {
-      Eviction ev = new ClockProPlusEviction(hc, l, maxSize, weigher, maxWeight, strictEviction);
-      segments[i] = ev;
+      segments[i] = createSegment(hc, l, maxSize, weigher, maxWeight, strictEviction,
+        tinyLfuConfig, sampledConfig, bufferConfig, availableProcessors, adaptive);
+    }
+    if (adaptive) {
+      SegmentedEviction segmentedEviction = new SegmentedEviction(segments);
+      segmentedEviction.enableAdaptiveSegmentCount(hc,
+        new SegmentedEviction.SegmentFactory() {
+          @Override
+          public Eviction create(long maxSize) {
+            return createSegment(hc, l, maxSize, null, -1, false,
+              tinyLfuConfig, null, bufferConfig, availableProcessors, true);
+          }
+        }, entryCapacity, maxSegmentCount);
+      return segmentedEviction;
     }
     if (segmentCount == 1) {
       return segments[0];
@@ -79,6 +124,52 @@ public class EvictionFactory {
     return new SegmentedEviction(segments);
   }
 
+  /**
+   * @param countLocks count the lock contention, needed for the adaptive segment count
+   */
+  private static Eviction createSegment(HeapCacheForEviction hc, HeapCacheListener l,
+                                        long maxSize, Weigher weigher, long maxWeight,
+                                        boolean strictEviction,
+                                        TinyLfuConfiguration tinyLfuConfig,
+                                        SampledEvictionConfiguration sampledConfig,
+                                        BufferedEvictionConfiguration bufferConfig,
+                                        int availableProcessors, boolean countLocks) {
+    Eviction ev;
+    if (tinyLfuConfig != null) {
+      ev = new TinyLfuEviction(hc, l, maxSize, weigher, maxWeight, strictEviction,
+        tinyLfuConfig.getWindowPercentage(), tinyLfuConfig.getProtectedPercentage(),
+        countLocks);
+    } else if (sampledConfig != null) {
+      ev = new SampledEviction(hc, l, maxSize, weigher, maxWeight, strictEviction,
+        sampledConfig.getSampleSize(), countLocks);
+    } else {
+      ev = new ClockProPlusEviction(hc, l, maxSize, weigher, maxWeight, strictEviction,
+        countLocks);
+    }
+    if (bufferConfig != null) {
+      int stripeCount = bufferConfig.getStripeCount();
+      if (stripeCount <= 0) {
+        stripeCount = availableProcessors;
+      }
+      ev = new BufferedEviction(ev, stripeCount, bufferConfig.getBufferSize());
+    }
+    return ev;
+  }
+
+  /**
+   * Upper limit for an adaptive segment count. At most two segments per CPU and
+   * each segment should hold at least {@value AbstractEviction#MINIMUM_CAPACITY_FOR_CHUNKING}
+   * entries. Not below the initial segment count.
+   */
+  public static int determineMaxAdaptiveSegmentCount(int availableProcessors,
+                                                     long entryCapacity,
+                                                     int segmentCount) {
+    long limit = Math.min(availableProcessors * 2L,
+      entryCapacity / AbstractEviction.MINIMUM_CAPACITY_FOR_CHUNKING);
+    int count = limit < 1 ? 1 : Integer.highestOneBit((int) Math.min(limit, 1 << 30));
+    return Math.max(count, segmentCount);
+  }
+
   public static long determineMaxSize(long entryCapacity, int segmentCount) {
     if (entryCapacity < 0) {
       return -1;
@@ -79,4 +79,17 @@ public interface EvictionMetrics {
   /** Accumulated weight of evicted or deleted entries */
   long getEvictedWeight();
 
+  /**
+   * Number of times the eviction lock was acquired for an insert, removal or eviction.
+   * Only counted with the adaptive segment count, otherwise 0.
+   */
+  long getLockCount();
+
+  /**
+   * Number of times the eviction lock was already held by another thread, when
+   * acquired for an insert, removal or eviction. Detected without blocking, so
+   * this is an estimate.
+   */
+  long getLockContentionCount();
+
 }
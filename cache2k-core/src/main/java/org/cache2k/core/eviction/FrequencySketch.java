@@ -0,0 +1,134 @@
+package org.cache2k.core.eviction;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Count-min sketch with 4 bit counters to estimate the access frequency of a hash code.
+ * Sixteen counters are packed into one long. Each hash selects four counters in
+ * different table positions, the estimate is the minimum of these. To let the
+ * history fade, all counters are halved after a sample period of ten times the capacity.
+ *
+ * <p>Not thread safe, used within the eviction lock.
+ *
+ * @author Jens Wilke
+ * @see TinyLfuEviction
+ */
+public class FrequencySketch {
+
+  private static final long[] SEEDS = {
+    0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private static final long ONE_MASK = 0x1111111111111111L;
+  private static final int MAXIMUM_COUNT = 15;
+
+  private long[] table;
+  private int tableMask;
+  private int sampleSize;
+  private int additions;
+
+  public FrequencySketch(long capacity) {
+    ensureCapacity(capacity);
+  }
+
+  /**
+   * Enlarge the table if needed, which drops the frequency history.
+   */
+  public void ensureCapacity(long capacity) {
+    int maximum = (int) Math.max(16, Math.min(capacity, 1 << 30));
+    int size = Integer.highestOneBit(maximum - 1) << 1;
+    if (table != null && table.length >= size) {
+      return;
+    }
+    table = new long[size];
+    tableMask = size - 1;
+    sampleSize = 10 * maximum;
+    additions = 0;
+  }
+
+  /**
+   * Estimated frequency, from 0 to 15.
+   */
+  public int frequency(int hash) {
+    int start = (spread(hash) & 3) << 2;
+    int frequency = MAXIMUM_COUNT;
+    for (int i = 0; i < 4; i++) {
+      int idx = indexOf(hash, i);
+      int count = (int) ((table[idx] >>> ((start + i) << 2)) & 0xfL);
+      frequency = Math.min(frequency, count);
+    }
+    return frequency;
+  }
+
+  public void increment(int hash) {
+    int start = (spread(hash) & 3) << 2;
+    boolean added = false;
+    for (int i = 0; i < 4; i++) {
+      added |= incrementAt(indexOf(hash, i), start + i);
+    }
+    if (added && ++additions == sampleSize) {
+      reset();
+    }
+  }
+
+  /**
+   * Add multiple accesses, the counters saturate at 15.
+   */
+  public void increment(int hash, long count) {
+    count = Math.min(count, MAXIMUM_COUNT);
+    for (long i = 0; i < count; i++) {
+      increment(hash);
+    }
+  }
+
+  private boolean incrementAt(int i, int j) {
+    int offset = j << 2;
+    long mask = 0xfL << offset;
+    if ((table[i] & mask) != mask) {
+      table[i] += 1L << offset;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Halve all counters. The additions are reduced by the truncated remainders.
+   */
+  private void reset() {
+    int oddCount = 0;
+    for (int i = 0; i < table.length; i++) {
+      oddCount += Long.bitCount(table[i] & ONE_MASK);
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    additions = (additions >>> 1) - (oddCount >>> 2);
+  }
+
+  private int indexOf(int hash, int i) {
+    long h = (hash + SEEDS[i]) * SEEDS[i];
+    h += h >>> 32;
+    return ((int) h) & tableMask;
+  }
+
+  private static int spread(int x) {
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    return (x >>> 16) ^ x;
+  }
+
+}
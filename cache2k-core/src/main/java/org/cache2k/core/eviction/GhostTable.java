@@ -0,0 +1,207 @@
+package org.cache2k.core.eviction;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Hash codes of evicted entries, used by {@link ClockProPlusEviction}. The hashes are
+ * kept in primitive arrays: a ring in insertion order and an open addressed hash set
+ * with linear probing for the lookup. There is no object per ghost. When the maximum size
+ * is reached, the oldest ghost is removed.
+ *
+ * <p>Zero marks an empty slot in the hash set. The hash code zero is stored as one,
+ * which is okay, since a ghost is only a hint.
+ *
+ * @author Jens Wilke
+ */
+final class GhostTable {
+
+  private final int loadPercent;
+  private int[] ring = new int[4];
+  private int ringHead;
+  private int size;
+  private int[] table;
+  private int maxFill;
+
+  GhostTable(int loadPercent) {
+    this.loadPercent = loadPercent;
+    allocateTable(8);
+  }
+
+  private void allocateTable(int capacity) {
+    table = new int[capacity];
+    maxFill = capacity * loadPercent / 100;
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean contains(int hash) {
+    return indexOf(nonZero(hash)) >= 0;
+  }
+
+  /**
+   * Add the hash and remove the oldest ghosts, so the size stays within the maximum.
+   * Nothing happens if the hash is present already.
+   */
+  void add(int hash, long maxSize) {
+    hash = nonZero(hash);
+    if (indexOf(hash) >= 0) {
+      return;
+    }
+    trim(maxSize - 1);
+    if (size == ring.length) {
+      expandRing();
+    }
+    ring[(ringHead + size) & (ring.length - 1)] = hash;
+    size++;
+    insertIntoTable(hash);
+    if (size > maxFill) {
+      expandTable();
+    }
+  }
+
+  /**
+   * Remove the oldest ghosts until the size is within the maximum.
+   */
+  void trim(long maxSize) {
+    int mask = ring.length - 1;
+    while (size > maxSize && size > 0) {
+      int hash = ring[ringHead];
+      ringHead = (ringHead + 1) & mask;
+      size--;
+      removeFromTable(hash);
+    }
+  }
+
+  private static int nonZero(int hash) {
+    return hash == 0 ? 1 : hash;
+  }
+
+  /**
+   * Start index in the hash set. Keys with consecutive hash codes are common, the
+   * multiplication spreads them, so linear probing does not run into long clusters.
+   */
+  private static int home(int hash, int mask) {
+    int h = hash * 0x9e3779b9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+
+  private int indexOf(int hash) {
+    int[] tab = table;
+    int mask = tab.length - 1;
+    int idx = home(hash, mask);
+    int v;
+    while ((v = tab[idx]) != 0) {
+      if (v == hash) {
+        return idx;
+      }
+      idx = (idx + 1) & mask;
+    }
+    return -1;
+  }
+
+  private void insertIntoTable(int hash) {
+    int[] tab = table;
+    int mask = tab.length - 1;
+    int idx = home(hash, mask);
+    while (tab[idx] != 0) {
+      idx = (idx + 1) & mask;
+    }
+    tab[idx] = hash;
+  }
+
+  /**
+   * Remove and move following hashes of the probe sequence back into the gap,
+   * so no deletion markers are needed.
+   */
+  private void removeFromTable(int hash) {
+    int i = indexOf(hash);
+    if (i < 0) {
+      return;
+    }
+    int[] tab = table;
+    int mask = tab.length - 1;
+    tab[i] = 0;
+    int j = i;
+    for (;;) {
+      j = (j + 1) & mask;
+      int v = tab[j];
+      if (v == 0) {
+        return;
+      }
+      int home = home(v, mask);
+      boolean stays = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+      if (!stays) {
+        tab[i] = v;
+        tab[j] = 0;
+        i = j;
+      }
+    }
+  }
+
+  private void expandRing() {
+    int[] newRing = new int[ring.length * 2];
+    int mask = ring.length - 1;
+    for (int i = 0; i < size; i++) {
+      newRing[i] = ring[(ringHead + i) & mask];
+    }
+    ring = newRing;
+    ringHead = 0;
+  }
+
+  private void expandTable() {
+    int[] tab = table;
+    allocateTable(tab.length * 2);
+    for (int v : tab) {
+      if (v != 0) {
+        insertIntoTable(v);
+      }
+    }
+  }
+
+  /**
+   * Count of hashes in the hash set, for the integrity check.
+   */
+  int countInTable() {
+    int count = 0;
+    for (int v : table) {
+      if (v != 0) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Check that every ghost in the ring can be found.
+   */
+  boolean checkRingInTable() {
+    int mask = ring.length - 1;
+    for (int i = 0; i < size; i++) {
+      if (indexOf(ring[(ringHead + i) & mask]) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
@@ -21,6 +21,9 @@ package org.cache2k.core.eviction;
  */
 
 import org.cache2k.core.Entry;
+import org.cache2k.core.concurrency.Job;
+
+import java.util.concurrent.Executor;
 
 /**
  * Interface for the eviction to the heap cache hash. By separating this, the
@@ -32,9 +35,14 @@ import org.cache2k.core.Entry;
 public interface HeapCacheForEviction<K, V> {
 
   /**
-   * Hash table entry array, used reaa only by random eviction.
+   * Number of hash table entry arrays, used read only by random eviction.
    */
-  Entry<K, V>[] getHashEntries();
+  int getHashTableCount();
+
+  /**
+   * Hash table entry array, used read only by random eviction.
+   */
+  Entry<K, V>[] getHashEntries(int tableIndex);
 
   /**
    * After removing the entry from the eviction data structure,
@@ -42,4 +50,14 @@ public interface HeapCacheForEviction<K, V> {
    */
   void removeEntryForEviction(Entry<K, V> e);
 
+  /**
+   * Executor for background jobs, used to change the eviction segment count.
+   */
+  Executor getExecutor();
+
+  /**
+   * Run the job while no other cache operation is going on.
+   */
+  <T> T executeWithGlobalLock(Job<T> job);
+
 }
@@ -25,13 +25,17 @@ import org.cache2k.core.Entry;
 import org.cache2k.core.HeapCacheListener;
 import org.cache2k.core.IntegrityState;
 
+import java.util.concurrent.ThreadLocalRandom;
+
 /**
+ * Evicts the first entry found at a random hash table position. Used to compare
+ * the hit rates of the other algorithms against.
+ *
  * @author Jens Wilke
  */
 @SuppressWarnings("rawtypes")
 public class RandomEviction extends AbstractEviction {
 
-  private int evictionIndex = 0;
   private long size = 0;
   private final Entry head = new Entry().shortCircuit();
 
@@ -48,6 +52,7 @@ public class RandomEviction extends AbstractEviction {
   @Override
   protected void removeFromReplacementList(Entry e) {
     Entry.removeFromList(e);
+    size--;
   }
 
   @Override
@@ -58,19 +63,20 @@ public class RandomEviction extends AbstractEviction {
 
   @Override
   protected Entry findEvictionCandidate() {
-    Entry[] h0 = heapCache.getHashEntries();
-    int idx = evictionIndex % (h0.length);
+    int tableCount = heapCache.getHashTableCount();
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int tableIdx = random.nextInt(tableCount);
+    Entry[] h0 = heapCache.getHashEntries(tableIdx);
+    int idx = random.nextInt(h0.length);
     Entry e;
-    while ((e = h0[idx]) == null) {
+    while ((e = h0[idx]) == null || e.isGone()) {
       idx++;
       if (idx >= h0.length) {
         idx = 0;
+        tableIdx = (tableIdx + 1) % tableCount;
+        h0 = heapCache.getHashEntries(tableIdx);
       }
     }
-    evictionIndex += e.hashCode;
-    if (evictionIndex < 0) {
-      evictionIndex = -evictionIndex;
-    }
     return e;
   }
 
@@ -89,6 +95,8 @@ public class RandomEviction extends AbstractEviction {
       count++;
       e = next;
     }
+    head.shortCircuit();
+    size = 0;
     return count;
   }
 
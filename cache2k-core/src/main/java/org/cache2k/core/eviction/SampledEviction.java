@@ -0,0 +1,260 @@
+package org.cache2k.core.eviction;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.Weigher;
+import org.cache2k.core.Entry;
+import org.cache2k.core.HeapCacheListener;
+import org.cache2k.core.IntegrityState;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Eviction without a replacement list, intended for very large caches. For each
+ * eviction a number of entries is sampled at random positions of the hash table and
+ * the entry with the lowest hit count is evicted. On equal hit counts the entry with the
+ * oldest modification time is evicted. The hit count of a sampled entry that stays in
+ * the cache is halved with a probability of one in four times the sample size. Since an
+ * entry is sampled about sample size times while the cache contents are replaced once,
+ * the hit counts are halved about every fourth replacement, so past accesses lose weight.
+ *
+ * <p>Insert and removal only count the entries, the entry is marked as inserted by a
+ * reference to itself. There is no list maintenance and there are no ghost entries.
+ *
+ * @author Jens Wilke
+ * @see SampledEvictionConfiguration
+ */
+@SuppressWarnings("rawtypes")
+public class SampledEviction extends AbstractEviction {
+
+  private static final int SAMPLE_RETRIES = 16;
+
+  private final int sampleSize;
+  private final int agingMask;
+  private long size;
+  private long hits;
+  private long sampledCount;
+
+  public SampledEviction(HeapCacheForEviction heapCache, HeapCacheListener listener,
+                         long maxSize, Weigher weigher, long maxWeight, boolean noChunking,
+                         int sampleSize) {
+    this(heapCache, listener, maxSize, weigher, maxWeight, noChunking, sampleSize, false);
+  }
+
+  public SampledEviction(HeapCacheForEviction heapCache, HeapCacheListener listener,
+                         long maxSize, Weigher weigher, long maxWeight, boolean noChunking,
+                         int sampleSize, boolean countLocks) {
+    super(heapCache, listener, maxSize, weigher, maxWeight, noChunking, countLocks);
+    this.sampleSize = sampleSize;
+    agingMask = Integer.highestOneBit(sampleSize * 4) - 1;
+  }
+
+  @Override
+  protected void insertIntoReplacementList(Entry e) {
+    size++;
+    e.shortCircuit();
+  }
+
+  @Override
+  protected void removeFromReplacementList(Entry e) {
+    size--;
+    hits += e.hitCnt;
+    e.removedFromList();
+  }
+
+  /**
+   * Mark all entries of the hash table as removed. Called within the global lock,
+   * so all inserted entries are in the hash table.
+   */
+  @Override
+  protected long removeAllFromReplacementList() {
+    for (int i = 0; i < heapCache.getHashTableCount(); i++) {
+      for (Entry e : heapCache.getHashEntries(i)) {
+        for (; e != null; e = e.another) {
+          if (isInserted(e)) {
+            hits += e.hitCnt;
+            e.removedFromList();
+          }
+        }
+      }
+    }
+    long count = size;
+    size = 0;
+    return count;
+  }
+
+  /**
+   * An entry may be visible in the hash table before it is inserted here, or
+   * after it was removed.
+   */
+  private static boolean isInserted(Entry e) {
+    return !e.isNotYetInsertedInReplacementList() && !e.isRemovedFromReplacementList();
+  }
+
+  /**
+   * Best of the sampled entries, or {@code null} if no entry was found in the hash table.
+   */
+  @Override
+  protected Entry findEvictionCandidate() {
+    Entry candidate = null;
+    int tableCount = heapCache.getHashTableCount();
+    for (int i = 0; i < sampleSize; i++) {
+      Entry e = sample(tableCount);
+      if (e == null) {
+        break;
+      }
+      sampledCount++;
+      if (candidate == null) {
+        candidate = e;
+      } else if (isBetterCandidate(e, candidate)) {
+        age(candidate);
+        candidate = e;
+      } else {
+        age(e);
+      }
+    }
+    return candidate;
+  }
+
+  private static boolean isBetterCandidate(Entry e, Entry candidate) {
+    if (e == candidate) {
+      return false;
+    }
+    long hitCnt = e.hitCnt;
+    long candidateHitCnt = candidate.hitCnt;
+    return hitCnt < candidateHitCnt ||
+      (hitCnt == candidateHitCnt && e.getRefreshTime() < candidate.getRefreshTime());
+  }
+
+  /**
+   * Eventually halve the hit counter, the hits are kept for the statistics.
+   */
+  private void age(Entry e) {
+    if ((nextRandom() & agingMask) != 0) {
+      return;
+    }
+    long hitCnt = e.hitCnt;
+    long decrease = hitCnt - (hitCnt >> 1);
+    e.hitCnt = hitCnt - decrease;
+    hits += decrease;
+  }
+
+  /**
+   * Random position in the hash table. An empty position is retried with another
+   * random position, since scanning to the next entry would prefer entries behind
+   * empty slots. After {@value #SAMPLE_RETRIES} tries the table is scanned, at most one
+   * full pass. The position within the collision chain is random as well.
+   *
+   * @return sampled entry or {@code null}, if the scan found no entry
+   */
+  private Entry sample(int tableCount) {
+    int tries = SAMPLE_RETRIES;
+    for (;;) {
+      int r = nextRandom();
+      int tableIdx = (r >>> 1) % tableCount;
+      Entry[] table = heapCache.getHashEntries(tableIdx);
+      int idx = nextRandom() & (table.length - 1);
+      Entry e = sampleChain(table[idx], r & 1);
+      if (e != null) {
+        return e;
+      }
+      if (--tries > 0) {
+        continue;
+      }
+      int startIdx = idx;
+      int wraps = 0;
+      for (;;) {
+        idx++;
+        if (idx >= table.length) {
+          idx = 0;
+          tableIdx = (tableIdx + 1) % tableCount;
+          table = heapCache.getHashEntries(tableIdx);
+          wraps++;
+        }
+        if (wraps > tableCount || (wraps == tableCount && idx >= startIdx)) {
+          return null;
+        }
+        e = sampleChain(table[idx], 0);
+        if (e != null) {
+          return e;
+        }
+      }
+    }
+  }
+
+  private static Entry sampleChain(Entry e, int chainSkip) {
+    Entry found = null;
+    for (; e != null; e = e.another) {
+      if (isInserted(e) && !e.isGone()) {
+        found = e;
+        if (chainSkip-- <= 0) {
+          break;
+        }
+      }
+    }
+    return found;
+  }
+
+  /**
+   * The random numbers for the sample position and the aging need to be independent.
+   * A simple xorshift generator makes the aging hit the same entries again.
+   */
+  private static int nextRandom() {
+    return ThreadLocalRandom.current().nextInt();
+  }
+
+  @Override
+  public void checkIntegrity(IntegrityState integrityState) {
+    integrityState.check("size >= 0", size >= 0);
+  }
+
+  @Override
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * Sum up the counters of all entries in the hash table. Only consistent within
+   * the global lock.
+   */
+  @Override
+  public long getHitCount() {
+    long cnt = hits;
+    for (int i = 0; i < heapCache.getHashTableCount(); i++) {
+      for (Entry e : heapCache.getHashEntries(i)) {
+        for (; e != null; e = e.another) {
+          if (isInserted(e)) {
+            cnt += e.hitCnt;
+          }
+        }
+      }
+    }
+    return cnt;
+  }
+
+  @Override
+  public String getExtraStatistics() {
+    return super.getExtraStatistics() +
+      ", sampleSize=" + sampleSize +
+      ", sampled=" + sampledCount;
+  }
+
+}
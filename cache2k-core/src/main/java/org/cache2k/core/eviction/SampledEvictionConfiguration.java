@@ -0,0 +1,87 @@
+package org.cache2k.core.eviction;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.configuration.ConfigurationSectionBuilder;
+import org.cache2k.configuration.SingletonConfigurationSection;
+
+/**
+ * Configuration section to use the sampled eviction, which keeps no replacement list
+ * and no history of evicted entries. This saves the list maintenance on every insert
+ * and removal and the memory for the eviction history, which is useful for caches with
+ * many millions of entries. The eviction is less accurate than the default eviction.
+ * The eviction is not segmented.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * Cache<Long, Data> c = Cache2kBuilder.of(Long.class, Data.class)
+ *   .entryCapacity(50_000_000)
+ *   .with(new SampledEvictionConfiguration.Builder()
+ *     .sampleSize(10))
+ *   .build();
+ * }</pre>
+ *
+ * @author Jens Wilke
+ * @see SampledEviction
+ */
+public class SampledEvictionConfiguration implements SingletonConfigurationSection {
+
+  public static final int DEFAULT_SAMPLE_SIZE = 8;
+
+  private int sampleSize = DEFAULT_SAMPLE_SIZE;
+
+  public int getSampleSize() {
+    return sampleSize;
+  }
+
+  /**
+   * @see Builder#sampleSize(int)
+   */
+  public void setSampleSize(int v) {
+    if (v < 1) {
+      throw new IllegalArgumentException("sampleSize of at least 1 expected");
+    }
+    sampleSize = v;
+  }
+
+  public static class Builder
+    implements ConfigurationSectionBuilder<SampledEvictionConfiguration> {
+
+    private final SampledEvictionConfiguration config = new SampledEvictionConfiguration();
+
+    /**
+     * Number of entries compared to select one entry for eviction. A higher number
+     * improves the eviction accuracy but makes each eviction more expensive.
+     * Default: {@value #DEFAULT_SAMPLE_SIZE}
+     */
+    public Builder sampleSize(int v) {
+      config.setSampleSize(v);
+      return this;
+    }
+
+    @Override
+    public SampledEvictionConfiguration buildConfigurationSection() {
+      return config;
+    }
+
+  }
+
+}
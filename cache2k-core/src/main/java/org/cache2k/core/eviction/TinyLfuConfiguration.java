@@ -0,0 +1,119 @@
+package org.cache2k.core.eviction;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.configuration.ConfigurationSectionBuilder;
+import org.cache2k.configuration.SingletonConfigurationSection;
+
+/**
+ * Configuration section to use the W-TinyLFU eviction instead of the default
+ * Clock-Pro eviction. W-TinyLFU keeps entries with a higher access frequency and
+ * is resistant against scans, at the cost of a frequency sketch with 8 bytes
+ * per 16 entries of capacity.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * Cache<Long, Data> c = Cache2kBuilder.of(Long.class, Data.class)
+ *   .entryCapacity(100_000)
+ *   .with(new TinyLfuConfiguration.Builder())
+ *   .build();
+ * }</pre>
+ *
+ * <p>In the XML configuration:
+ * <pre>{@code
+ * <sections>
+ *   <section>
+ *     <type>org.cache2k.core.eviction.TinyLfuConfiguration</type>
+ *     <windowPercentage>2</windowPercentage>
+ *   </section>
+ * </sections>
+ * }</pre>
+ *
+ * @author Jens Wilke
+ * @see TinyLfuEviction
+ */
+public class TinyLfuConfiguration implements SingletonConfigurationSection {
+
+  public static final int DEFAULT_WINDOW_PERCENTAGE = 1;
+  public static final int DEFAULT_PROTECTED_PERCENTAGE = 80;
+
+  private int windowPercentage = DEFAULT_WINDOW_PERCENTAGE;
+  private int protectedPercentage = DEFAULT_PROTECTED_PERCENTAGE;
+
+  public int getWindowPercentage() {
+    return windowPercentage;
+  }
+
+  /**
+   * @see Builder#windowPercentage(int)
+   */
+  public void setWindowPercentage(int v) {
+    if (v < 0 || v > 100) {
+      throw new IllegalArgumentException("windowPercentage between 0 and 100 expected");
+    }
+    windowPercentage = v;
+  }
+
+  public int getProtectedPercentage() {
+    return protectedPercentage;
+  }
+
+  /**
+   * @see Builder#protectedPercentage(int)
+   */
+  public void setProtectedPercentage(int v) {
+    if (v < 0 || v > 100) {
+      throw new IllegalArgumentException("protectedPercentage between 0 and 100 expected");
+    }
+    protectedPercentage = v;
+  }
+
+  public static class Builder implements ConfigurationSectionBuilder<TinyLfuConfiguration> {
+
+    private final TinyLfuConfiguration config = new TinyLfuConfiguration();
+
+    /**
+     * Size of the admission window in percent of the cache size. New entries
+     * stay in the window before they compete for a place in the main region.
+     * Default: {@value #DEFAULT_WINDOW_PERCENTAGE}
+     */
+    public Builder windowPercentage(int v) {
+      config.setWindowPercentage(v);
+      return this;
+    }
+
+    /**
+     * Size of the protected segment in percent of the main region.
+     * Default: {@value #DEFAULT_PROTECTED_PERCENTAGE}
+     */
+    public Builder protectedPercentage(int v) {
+      config.setProtectedPercentage(v);
+      return this;
+    }
+
+    @Override
+    public TinyLfuConfiguration buildConfigurationSection() {
+      return config;
+    }
+
+  }
+
+}
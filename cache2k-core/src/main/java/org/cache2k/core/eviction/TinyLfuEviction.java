@@ -0,0 +1,347 @@
+package org.cache2k.core.eviction;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.Weigher;
+import org.cache2k.core.Entry;
+import org.cache2k.core.HeapCacheListener;
+import org.cache2k.core.IntegrityState;
+
+/**
+ * W-TinyLFU eviction. New entries go into a small admission window. An entry leaving the
+ * window competes with the eviction candidate of the main region: the entry with the
+ * higher estimated access frequency stays in the cache. The main region is segmented
+ * into a probation and a protected part. An entry in probation that was accessed moves
+ * to the protected part. Frequencies are kept in a {@link FrequencySketch}, which also
+ * remembers keys that are not in the cache any more.
+ *
+ * <p>Cache hits only increment the hit counter of the entry, so they need no lock.
+ * The hits are added to the frequency sketch when the eviction visits the entry.
+ *
+ * <p>The three segments are clocks of cyclic lists. Which list the entry belongs
+ * to is marked via {@link Entry#isHot()} for the main region and {@link Entry#isProtected()}.
+ *
+ * <p>The algorithm is explained in
+ * <a href="https://arxiv.org/abs/1512.00727">TinyLFU: A Highly Efficient Cache
+ * Admission Policy</a>.
+ *
+ * @author Jens Wilke
+ * @see TinyLfuConfiguration
+ */
+@SuppressWarnings("WeakerAccess")
+public class TinyLfuEviction extends AbstractEviction {
+
+  private final int windowPercentage;
+  private final int protectedPercentage;
+  private final FrequencySketch sketch;
+
+  private Entry handWindow;
+  private Entry handProbation;
+  private Entry handProtected;
+  private int windowSize;
+  private int probationSize;
+  private int protectedSize;
+  private long windowMax = Long.MAX_VALUE;
+  private long mainMax = 0;
+  /**
+   * Entries that can move from the window into the main region without competition.
+   * Set when the limit is reached and increased when main region entries are removed,
+   * but not when evicted.
+   */
+  private long mainRoom = 0;
+  private long protectedMax = Long.MAX_VALUE;
+
+  private long hits;
+  private long admittedCount;
+  private long rejectedCount;
+
+  public TinyLfuEviction(HeapCacheForEviction heapCache, HeapCacheListener listener,
+                         long maxSize, Weigher weigher, long maxWeight, boolean noChunking,
+                         int windowPercentage, int protectedPercentage) {
+    this(heapCache, listener, maxSize, weigher, maxWeight, noChunking,
+      windowPercentage, protectedPercentage, false);
+  }
+
+  public TinyLfuEviction(HeapCacheForEviction heapCache, HeapCacheListener listener,
+                         long maxSize, Weigher weigher, long maxWeight, boolean noChunking,
+                         int windowPercentage, int protectedPercentage, boolean countLocks) {
+    super(heapCache, listener, maxSize, weigher, maxWeight, noChunking, countLocks);
+    this.windowPercentage = windowPercentage;
+    this.protectedPercentage = protectedPercentage;
+    sketch = new FrequencySketch(maxSize > 0 ? maxSize : 0);
+  }
+
+  /**
+   * Called when the size limit is reached. Calculate segment sizes from the current
+   * size, which works with a weigher as well.
+   */
+  @Override
+  protected void updateHotMax() {
+    long size = getSize();
+    windowMax = Math.max(1, size * windowPercentage / 100);
+    mainMax = Math.max(0, size - windowMax);
+    protectedMax = mainMax * protectedPercentage / 100;
+    mainRoom = Math.max(0, mainMax - probationSize - protectedSize);
+    sketch.ensureCapacity(size);
+  }
+
+  @Override
+  public long getSize() {
+    return windowSize + probationSize + protectedSize;
+  }
+
+  @Override
+  public long getHitCount() {
+    return hits + sumUpListHits(handWindow) + sumUpListHits(handProbation) +
+      sumUpListHits(handProtected);
+  }
+
+  private static long sumUpListHits(Entry e) {
+    if (e == null) { return 0; }
+    long cnt = 0;
+    Entry head = e;
+    do {
+      cnt += e.hitCnt;
+      e = e.next;
+    } while (e != head);
+    return cnt;
+  }
+
+  /**
+   * New entries count as access and go into the window. Entries restored from a
+   * snapshot and marked as hot go directly into probation.
+   */
+  @Override
+  protected void insertIntoReplacementList(Entry e) {
+    sketch.increment(e.hashCode);
+    e.setProtected(false);
+    if (e.isHot()) {
+      insertIntoProbation(e);
+      return;
+    }
+    windowSize++;
+    handWindow = Entry.insertIntoTailCyclicList(handWindow, e);
+  }
+
+  private void insertIntoProbation(Entry e) {
+    e.setHot(true);
+    e.setProtected(false);
+    probationSize++;
+    handProbation = Entry.insertIntoTailCyclicList(handProbation, e);
+  }
+
+  @Override
+  protected void removeFromReplacementList(Entry e) {
+    if (e.isHot()) {
+      mainRoom++;
+    }
+    removeFromSegment(e);
+  }
+
+  @Override
+  protected void removeFromReplacementListOnEvict(Entry e) {
+    removeFromSegment(e);
+  }
+
+  private void removeFromSegment(Entry e) {
+    hits += e.hitCnt;
+    if (!e.isHot()) {
+      handWindow = Entry.removeFromCyclicList(handWindow, e);
+      windowSize--;
+    } else if (e.isProtected()) {
+      handProtected = Entry.removeFromCyclicList(handProtected, e);
+      protectedSize--;
+    } else {
+      handProbation = Entry.removeFromCyclicList(handProbation, e);
+      probationSize--;
+    }
+  }
+
+  @Override
+  protected long removeAllFromReplacementList() {
+    long count = removeAll(handWindow) + removeAll(handProbation) + removeAll(handProtected);
+    handWindow = handProbation = handProtected = null;
+    windowSize = probationSize = protectedSize = 0;
+    mainRoom = mainMax;
+    return count;
+  }
+
+  private long removeAll(Entry head) {
+    if (head == null) {
+      return 0;
+    }
+    long count = 0;
+    Entry e = head;
+    do {
+      hits += e.hitCnt;
+      Entry next = e.prev;
+      e.removedFromList();
+      count++;
+      e = next;
+    } while (e != head);
+    return count;
+  }
+
+  /**
+   * Move the hits since the last visit into the frequency sketch.
+   */
+  private void recordHits(Entry e) {
+    long hitCnt = e.hitCnt;
+    if (hitCnt > 0) {
+      hits += hitCnt;
+      e.hitCnt = 0;
+      sketch.increment(e.hashCode, hitCnt);
+    }
+  }
+
+  /**
+   * Let the oldest entries of an oversized window compete with the main region
+   * candidate. An admitted entry moves into probation. As long as the main region
+   * is not filled, entries move from the window without competition. If the window
+   * is within its size, evict from the main region.
+   */
+  @Override
+  protected Entry findEvictionCandidate() {
+    while (windowSize > windowMax) {
+      Entry candidate = handWindow;
+      recordHits(candidate);
+      Entry victim = null;
+      if (mainRoom > 0) {
+        mainRoom--;
+      } else {
+        victim = findMainCandidate();
+      }
+      if (victim == null) {
+        handWindow = Entry.removeFromCyclicList(handWindow, candidate);
+        windowSize--;
+        insertIntoProbation(candidate);
+        continue;
+      }
+      if (sketch.frequency(candidate.hashCode) > sketch.frequency(victim.hashCode)) {
+        admittedCount++;
+        handWindow = Entry.removeFromCyclicList(handWindow, candidate);
+        windowSize--;
+        insertIntoProbation(candidate);
+        return advanceMainHand(victim);
+      }
+      rejectedCount++;
+      handWindow = candidate.next;
+      return candidate;
+    }
+    Entry victim = findMainCandidate();
+    if (victim != null) {
+      return advanceMainHand(victim);
+    }
+    Entry e = handWindow;
+    handWindow = e.next;
+    return e;
+  }
+
+  private Entry advanceMainHand(Entry victim) {
+    if (victim.isProtected()) {
+      handProtected = victim.next;
+    } else {
+      handProbation = victim.next;
+    }
+    return victim;
+  }
+
+  /**
+   * Eviction candidate of the main region. Accessed entries in probation move to the
+   * protected part, the probation hand stops at the first entry without hits.
+   * The hand is not moved past the candidate, since the candidate may stay in the
+   * cache if the window entry is rejected.
+   *
+   * @return the candidate or {@code null} if the main region is empty
+   */
+  private Entry findMainCandidate() {
+    long maxScan = probationSize + protectedSize;
+    while (handProbation != null) {
+      Entry e = handProbation;
+      if (e.hitCnt == 0 || maxScan-- <= 0) {
+        return e;
+      }
+      recordHits(e);
+      handProbation = Entry.removeFromCyclicList(handProbation, e);
+      probationSize--;
+      e.setProtected(true);
+      protectedSize++;
+      handProtected = Entry.insertIntoTailCyclicList(handProtected, e);
+      if (protectedSize > protectedMax) {
+        insertIntoProbation(demoteFromProtected());
+      }
+    }
+    if (handProtected == null) {
+      return null;
+    }
+    return runHandProtected();
+  }
+
+  private Entry demoteFromProtected() {
+    Entry e = runHandProtected();
+    handProtected = Entry.removeFromCyclicList(handProtected, e);
+    protectedSize--;
+    return e;
+  }
+
+  /**
+   * Clock over the protected entries. Entries with hits get a second chance.
+   */
+  private Entry runHandProtected() {
+    Entry hand = handProtected;
+    int maxScan = protectedSize;
+    while (hand.hitCnt > 0 && maxScan-- > 0) {
+      recordHits(hand);
+      hand = hand.next;
+    }
+    handProtected = hand;
+    return hand;
+  }
+
+  @Override
+  public void checkIntegrity(IntegrityState integrityState) {
+    integrityState
+      .check("checkCyclicListIntegrity(handWindow)", Entry.checkCyclicListIntegrity(handWindow))
+      .check("checkCyclicListIntegrity(handProbation)",
+        Entry.checkCyclicListIntegrity(handProbation))
+      .check("checkCyclicListIntegrity(handProtected)",
+        Entry.checkCyclicListIntegrity(handProtected))
+      .checkEquals("getCyclicListEntryCount(handWindow) == windowSize",
+        Entry.getCyclicListEntryCount(handWindow), windowSize)
+      .checkEquals("getCyclicListEntryCount(handProbation) == probationSize",
+        Entry.getCyclicListEntryCount(handProbation), probationSize)
+      .checkEquals("getCyclicListEntryCount(handProtected) == protectedSize",
+        Entry.getCyclicListEntryCount(handProtected), protectedSize);
+  }
+
+  @Override
+  public String getExtraStatistics() {
+    return super.getExtraStatistics() +
+      ", windowSize=" + windowSize +
+      ", windowMaxSize=" + windowMax +
+      ", probationSize=" + probationSize +
+      ", protectedSize=" + protectedSize +
+      ", protectedMaxSize=" + protectedMax +
+      ", admitted=" + admittedCount +
+      ", rejected=" + rejectedCount;
+  }
+
+}
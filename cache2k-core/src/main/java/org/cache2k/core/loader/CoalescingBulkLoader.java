@@ -0,0 +1,195 @@
+package org.cache2k.core.loader;
+
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.io.BulkCacheLoader;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loader front that collects single key loads of concurrent threads and sends them
+ * to the bulk loader as one request. The first thread requesting a key starts a new
+ * batch and waits for the window time or until the batch is full. It then calls the
+ * bulk loader and passes the result to all waiting threads. No additional threads
+ * are used. If no other load is in progress when the batch starts, there is nobody to
+ * coalesce with and the batch is loaded without waiting.
+ *
+ * <p>Bulk requests from the cache are passed to the bulk loader directly, since they
+ * are batched already.
+ *
+ * @author Jens Wilke
+ * @see CoalescingLoaderConfiguration
+ */
+public class CoalescingBulkLoader<K, V> implements BulkCacheLoader<K, V> {
+
+  private final BulkCacheLoader<K, V> forward;
+  private final long windowNanos;
+  private final int maxBatchSize;
+
+  /** Batch collecting keys, or {@code null}. Guarded by: this */
+  private Batch<K, V> current;
+
+  /** Threads within {@link #load(Object)}. Guarded by: this */
+  private int loadsInProgress;
+
+  public CoalescingBulkLoader(BulkCacheLoader<K, V> forward, long windowNanos,
+                              int maxBatchSize) {
+    this.forward = forward;
+    this.windowNanos = windowNanos;
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  public CoalescingBulkLoader(BulkCacheLoader<K, V> forward, CoalescingLoaderConfiguration cfg) {
+    this(forward, cfg.getWindow().toNanos(), cfg.getMaxBatchSize());
+  }
+
+  @Override
+  public Map<K, V> loadAll(Set<K> keys) throws Exception {
+    return forward.loadAll(keys);
+  }
+
+  /**
+   * Add the key to the current batch and wait for its completion. If there is no current
+   * batch, a new one is started and the calling thread is responsible for loading it.
+   */
+  @Override
+  public V load(K key) throws Exception {
+    Batch<K, V> batch;
+    boolean leader = false;
+    boolean alone = false;
+    boolean full = false;
+    synchronized (this) {
+      loadsInProgress++;
+      batch = current;
+      if (batch == null) {
+        batch = new Batch<K, V>();
+        leader = true;
+        alone = loadsInProgress == 1;
+        if (!alone) {
+          current = batch;
+        }
+      }
+      batch.keys.add(key);
+      if (batch.keys.size() >= maxBatchSize && current == batch) {
+        current = null;
+        full = true;
+      }
+    }
+    try {
+      if (full) {
+        batch.signalFull();
+      }
+      if (leader) {
+        if (!alone) {
+          batch.awaitWindow(windowNanos);
+          synchronized (this) {
+            if (current == batch) {
+              current = null;
+            }
+          }
+        }
+        batch.load(forward);
+      } else {
+        batch.awaitCompletion();
+      }
+    } finally {
+      synchronized (this) {
+        loadsInProgress--;
+      }
+    }
+    return batch.getResult(key);
+  }
+
+  private static class Batch<K, V> {
+
+    /** Guarded by the coalescing loader instance, not modified after the batch is closed */
+    final Set<K> keys = new HashSet<K>();
+    private boolean full;
+    private boolean done;
+    private Map<K, V> result;
+    private Throwable exception;
+
+    synchronized void signalFull() {
+      full = true;
+      notifyAll();
+    }
+
+    /**
+     * Wait until the batch is full or the window time passed. An interrupt ends
+     * the waiting, the interrupt is kept for the caller.
+     */
+    synchronized void awaitWindow(long nanos) {
+      long deadline = System.nanoTime() + nanos;
+      long remaining = nanos;
+      try {
+        while (!full && remaining > 0) {
+          TimeUnit.NANOSECONDS.timedWait(this, remaining);
+          remaining = deadline - System.nanoTime();
+        }
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    /**
+     * Call the loader and wake up the waiting threads. The key set is complete, since
+     * the batch was removed from the loader before.
+     */
+    void load(BulkCacheLoader<K, V> loader) {
+      Map<K, V> map = null;
+      Throwable t = null;
+      try {
+        map = loader.loadAll(Collections.unmodifiableSet(keys));
+      } catch (Throwable ouch) {
+        t = ouch;
+      }
+      synchronized (this) {
+        result = map;
+        exception = t;
+        done = true;
+        notifyAll();
+      }
+    }
+
+    synchronized void awaitCompletion() throws InterruptedException {
+      while (!done) {
+        wait();
+      }
+    }
+
+    synchronized V getResult(K key) throws Exception {
+      if (exception instanceof Exception) {
+        throw (Exception) exception;
+      }
+      if (exception instanceof Error) {
+        throw (Error) exception;
+      }
+      return result != null ? result.get(key) : null;
+    }
+
+  }
+
+}
@@ -0,0 +1,109 @@
+package org.cache2k.core.loader;
+
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.configuration.ConfigurationSectionBuilder;
+import org.cache2k.configuration.SingletonConfigurationSection;
+
+import java.time.Duration;
+
+/**
+ * Configuration section to collect the load requests of concurrent cache misses and
+ * pass them to the loader as one bulk request. A load request waits until the
+ * window time passed or the maximum batch size is reached. A load request without other
+ * loads in progress does not wait. The configured loader must
+ * be a {@link org.cache2k.io.BulkCacheLoader}.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * Cache<Long, Data> c = Cache2kBuilder.of(Long.class, Data.class)
+ *   .loader(bulkLoader)
+ *   .with(new CoalescingLoaderConfiguration.Builder()
+ *     .window(Duration.ofMillis(1))
+ *     .maxBatchSize(100))
+ *   .build();
+ * }</pre>
+ *
+ * @author Jens Wilke
+ * @see CoalescingBulkLoader
+ */
+public class CoalescingLoaderConfiguration implements SingletonConfigurationSection {
+
+  public static final Duration DEFAULT_WINDOW = Duration.ofMillis(1);
+  public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+  private Duration window = DEFAULT_WINDOW;
+  private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+  public Duration getWindow() {
+    return window;
+  }
+
+  /**
+   * @see Builder#window(Duration)
+   */
+  public void setWindow(Duration v) {
+    window = v;
+  }
+
+  public int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  /**
+   * @see Builder#maxBatchSize(int)
+   */
+  public void setMaxBatchSize(int v) {
+    maxBatchSize = v;
+  }
+
+  public static class Builder
+    implements ConfigurationSectionBuilder<CoalescingLoaderConfiguration> {
+
+    private final CoalescingLoaderConfiguration config = new CoalescingLoaderConfiguration();
+
+    /**
+     * Maximum time a load request waits for other requests before the batch is sent
+     * to the loader. Default: 1 millisecond
+     */
+    public Builder window(Duration v) {
+      config.setWindow(v);
+      return this;
+    }
+
+    /**
+     * The batch is sent to the loader immediately when this number of keys is
+     * reached. Default: {@value #DEFAULT_MAX_BATCH_SIZE}
+     */
+    public Builder maxBatchSize(int v) {
+      config.setMaxBatchSize(v);
+      return this;
+    }
+
+    @Override
+    public CoalescingLoaderConfiguration buildConfigurationSection() {
+      return config;
+    }
+
+  }
+
+}
@@ -0,0 +1,128 @@
+package org.cache2k.core.offheap;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.configuration.ConfigurationSectionBuilder;
+import org.cache2k.configuration.CustomizationReferenceSupplier;
+import org.cache2k.configuration.CustomizationSupplier;
+import org.cache2k.configuration.SingletonConfigurationSection;
+
+/**
+ * Configuration section to keep the cache values serialized in direct memory
+ * outside the Java heap. The heap entry only holds a small handle to the serialized data,
+ * values are deserialized on each read. This reduces the heap size and the work of the
+ * garbage collector for big caches, for the price of serialization.
+ *
+ * <p>The eviction is based on the bytes used in direct memory, which means a configured
+ * entry capacity is ignored. A weigher cannot be used together with off heap values.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * Cache<Long, Data> c = Cache2kBuilder.of(Long.class, Data.class)
+ *   .with(new OffHeapConfiguration.Builder()
+ *     .maximumBytes(20L * 1024 * 1024 * 1024))
+ *   .build();
+ * }</pre>
+ *
+ * @author Jens Wilke
+ */
+public class OffHeapConfiguration implements SingletonConfigurationSection {
+
+  public static final int DEFAULT_SLAB_SIZE = 1024 * 1024;
+
+  private long maximumBytes = -1;
+  private int slabSize = DEFAULT_SLAB_SIZE;
+  private CustomizationSupplier<ValueSerializer<?>> serializer;
+
+  public long getMaximumBytes() {
+    return maximumBytes;
+  }
+
+  /**
+   * @see Builder#maximumBytes(long)
+   */
+  public void setMaximumBytes(long v) {
+    maximumBytes = v;
+  }
+
+  public int getSlabSize() {
+    return slabSize;
+  }
+
+  /**
+   * @see Builder#slabSize(int)
+   */
+  public void setSlabSize(int v) {
+    slabSize = v;
+  }
+
+  public CustomizationSupplier<ValueSerializer<?>> getSerializer() {
+    return serializer;
+  }
+
+  /**
+   * @see Builder#serializer(ValueSerializer)
+   */
+  public void setSerializer(CustomizationSupplier<ValueSerializer<?>> v) {
+    serializer = v;
+  }
+
+  public static class Builder implements ConfigurationSectionBuilder<OffHeapConfiguration> {
+
+    private final OffHeapConfiguration config = new OffHeapConfiguration();
+
+    /**
+     * Maximum number of bytes used by the serialized values. The cache evicts entries
+     * when the limit is reached. The direct memory allocated can be higher, since slots
+     * are rounded to the next power of two and slabs are allocated as a whole.
+     * Mandatory.
+     */
+    public Builder maximumBytes(long v) {
+      config.setMaximumBytes(v);
+      return this;
+    }
+
+    /**
+     * Size of one block of direct memory that is allocated at once. Each slab
+     * holds values of the same size class. A serialized value cannot be bigger than
+     * the slab size. Default: {@value #DEFAULT_SLAB_SIZE}
+     */
+    public Builder slabSize(int v) {
+      config.setSlabSize(v);
+      return this;
+    }
+
+    /**
+     * Serializer for the values. Default is the Java serialization.
+     */
+    public Builder serializer(ValueSerializer<?> v) {
+      config.setSerializer(new CustomizationReferenceSupplier<ValueSerializer<?>>(v));
+      return this;
+    }
+
+    @Override
+    public OffHeapConfiguration buildConfigurationSection() {
+      return config;
+    }
+
+  }
+
+}
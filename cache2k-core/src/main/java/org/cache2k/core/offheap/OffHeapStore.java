@@ -0,0 +1,305 @@
+package org.cache2k.core.offheap;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.Weigher;
+import org.cache2k.core.CacheStorageException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Keeps serialized values in direct memory. The memory is allocated in slabs of
+ * equal size. Each slab is divided into slots of one size class. Size classes are powers of
+ * two, starting with {@value #MINIMUM_SLOT_SIZE} bytes, up to the slab size.
+ *
+ * <p>Reads don't lock. The data is copied optimistically and validated against the slab
+ * lock and the generation of the slot afterwards. The generation is incremented when a slot
+ * is freed, so a reader with an outdated handle never returns data of another value.
+ *
+ * <p>The store does not limit the allocated memory. The eviction of the cache
+ * keeps the occupied slot bytes within the configured maximum, via {@link #WEIGHER}.
+ *
+ * @author Jens Wilke
+ */
+@SuppressWarnings("unchecked")
+public class OffHeapStore {
+
+  static final int MINIMUM_SLOT_SIZE = 16;
+
+  /**
+   * Weight of an entry with an off heap value is the size of its slot.
+   * A value that is kept on the heap, which is only {@code null}, has the weight 1.
+   * The weigher is called with the stored value and not with the deserialized value.
+   */
+  public static final Weigher<Object, Object> WEIGHER = new Weigher<Object, Object>() {
+    @Override
+    public int weigh(Object key, Object value) {
+      if (value instanceof OffHeapValue) {
+        return ((OffHeapValue) value).getSlotSize();
+      }
+      return 1;
+    }
+  };
+
+  private final ValueSerializer<Object> serializer;
+  private final int slabSize;
+  private final SizeClass[] sizeClasses;
+
+  public OffHeapStore(ValueSerializer<?> serializer, int slabSize) {
+    if (slabSize < MINIMUM_SLOT_SIZE) {
+      throw new IllegalArgumentException("slab size of at least " + MINIMUM_SLOT_SIZE +
+        " bytes expected");
+    }
+    this.serializer = (ValueSerializer<Object>) serializer;
+    this.slabSize = slabSize;
+    int maximumSlotSize = Integer.highestOneBit(slabSize);
+    int count = Integer.numberOfTrailingZeros(maximumSlotSize) -
+      Integer.numberOfTrailingZeros(MINIMUM_SLOT_SIZE) + 1;
+    sizeClasses = new SizeClass[count];
+    for (int i = 0; i < count; i++) {
+      sizeClasses[i] = new SizeClass(MINIMUM_SLOT_SIZE << i);
+    }
+  }
+
+  /**
+   * Serialize the value and copy it to a free slot.
+   *
+   * @throws CacheStorageException if serialization fails or the value is bigger than a slab
+   */
+  public OffHeapValue store(Object value) {
+    byte[] data;
+    try {
+      data = serializer.serialize(value);
+    } catch (Exception ex) {
+      throw new CacheStorageException("serialization failed", ex);
+    }
+    int length = data.length;
+    SizeClass sc = sizeClassFor(length);
+    Slab slab;
+    int slot;
+    int generation;
+    synchronized (sc) {
+      slab = sc.available.peekFirst();
+      if (slab == null) {
+        slab = new Slab(this, sc.slotSize, slabSize / sc.slotSize);
+        sc.slabs.add(slab);
+        sc.available.addFirst(slab);
+      }
+      slot = slab.takeSlot();
+      if (slab.isFull()) {
+        sc.available.removeFirst();
+      }
+      generation = slab.generations[slot];
+      sc.usedBytes += sc.slotSize;
+    }
+    ByteBuffer buf = slab.buffer.duplicate();
+    buf.position(slot * slab.slotSize);
+    buf.put(data);
+    return new OffHeapValue(slab, slot, length, generation);
+  }
+
+  private SizeClass sizeClassFor(int length) {
+    int idx = 0;
+    if (length > MINIMUM_SLOT_SIZE) {
+      idx = 32 - Integer.numberOfLeadingZeros(length - 1) -
+        Integer.numberOfTrailingZeros(MINIMUM_SLOT_SIZE);
+    }
+    if (idx >= sizeClasses.length) {
+      throw new CacheStorageException(
+        "serialized value of " + length + " bytes exceeds slab size of " + slabSize + " bytes");
+    }
+    return sizeClasses[idx];
+  }
+
+  Object read(OffHeapValue v) {
+    Slab slab = v.slab;
+    byte[] data = new byte[v.length];
+    StampedLock lock = slab.lock;
+    long stamp = lock.tryOptimisticRead();
+    copy(v, data);
+    boolean valid = slab.generations[v.slot] == v.generation;
+    if (!lock.validate(stamp)) {
+      stamp = lock.readLock();
+      try {
+        valid = slab.generations[v.slot] == v.generation;
+        if (valid) {
+          copy(v, data);
+        }
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+    if (!valid) {
+      return null;
+    }
+    try {
+      return serializer.deserialize(data);
+    } catch (Exception ex) {
+      throw new CacheStorageException("deserialization failed", ex);
+    }
+  }
+
+  private static void copy(OffHeapValue v, byte[] data) {
+    ByteBuffer buf = v.slab.buffer.duplicate();
+    buf.position(v.slot * v.slab.slotSize);
+    buf.get(data);
+  }
+
+  void free(OffHeapValue v) {
+    Slab slab = v.slab;
+    SizeClass sc = sizeClasses[Integer.numberOfTrailingZeros(slab.slotSize) -
+      Integer.numberOfTrailingZeros(MINIMUM_SLOT_SIZE)];
+    synchronized (sc) {
+      if (slab.generations[v.slot] != v.generation) {
+        return;
+      }
+      long stamp = slab.lock.writeLock();
+      slab.generations[v.slot]++;
+      slab.lock.unlockWrite(stamp);
+      if (slab.isFull()) {
+        sc.available.addLast(slab);
+      }
+      slab.returnSlot(v.slot);
+      sc.usedBytes -= sc.slotSize;
+    }
+  }
+
+  /**
+   * Invalidate all handles and drop the slabs. The direct memory is reclaimed
+   * by the garbage collector, when no handle references a slab any more.
+   */
+  public void clear() {
+    for (SizeClass sc : sizeClasses) {
+      synchronized (sc) {
+        for (Slab slab : sc.slabs) {
+          slab.invalidate();
+        }
+        sc.slabs.clear();
+        sc.available.clear();
+        sc.usedBytes = 0;
+      }
+    }
+  }
+
+  public void close() {
+    clear();
+  }
+
+  /**
+   * Bytes occupied by slots in use.
+   */
+  public long getUsedBytes() {
+    long sum = 0;
+    for (SizeClass sc : sizeClasses) {
+      synchronized (sc) {
+        sum += sc.usedBytes;
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * Direct memory allocated for slabs.
+   */
+  public long getAllocatedBytes() {
+    long count = 0;
+    for (SizeClass sc : sizeClasses) {
+      synchronized (sc) {
+        count += sc.slabs.size();
+      }
+    }
+    return count * slabSize;
+  }
+
+  public int getSlabSize() {
+    return slabSize;
+  }
+
+  /**
+   * All slabs of one slot size. Slab lists and counters are guarded by the monitor.
+   */
+  static final class SizeClass {
+
+    final int slotSize;
+    final List<Slab> slabs = new ArrayList<Slab>();
+    final ArrayDeque<Slab> available = new ArrayDeque<Slab>();
+    long usedBytes;
+
+    SizeClass(int slotSize) {
+      this.slotSize = slotSize;
+    }
+
+  }
+
+  /**
+   * Block of direct memory divided into slots of the same size. Free slot management
+   * is guarded by the monitor of the size class. The generations are modified within
+   * the write lock, so optimistic readers can validate.
+   */
+  static final class Slab {
+
+    final OffHeapStore store;
+    final int slotSize;
+    final ByteBuffer buffer;
+    final int[] generations;
+    final StampedLock lock = new StampedLock();
+    private final int[] freeSlots;
+    private int freeCount;
+    private int unusedStart;
+
+    Slab(OffHeapStore store, int slotSize, int slotCount) {
+      this.store = store;
+      this.slotSize = slotSize;
+      buffer = ByteBuffer.allocateDirect(slotSize * slotCount);
+      generations = new int[slotCount];
+      freeSlots = new int[slotCount];
+    }
+
+    boolean isFull() {
+      return freeCount == 0 && unusedStart == generations.length;
+    }
+
+    int takeSlot() {
+      if (freeCount > 0) {
+        return freeSlots[--freeCount];
+      }
+      return unusedStart++;
+    }
+
+    void returnSlot(int slot) {
+      freeSlots[freeCount++] = slot;
+    }
+
+    void invalidate() {
+      long stamp = lock.writeLock();
+      for (int i = 0; i < generations.length; i++) {
+        generations[i]++;
+      }
+      lock.unlockWrite(stamp);
+    }
+
+  }
+
+}
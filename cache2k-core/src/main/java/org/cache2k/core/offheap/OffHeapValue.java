@@ -0,0 +1,83 @@
+package org.cache2k.core.offheap;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Handle to a serialized value in a slab of the {@link OffHeapStore}. Held
+ * in the heap entry instead of the value object.
+ *
+ * <p>The handle is invalid after it was freed. A freed slot may be used
+ * for another value, so the handle remembers the generation of its slot, to detect
+ * that the data was replaced.
+ *
+ * @author Jens Wilke
+ */
+public final class OffHeapValue {
+
+  final OffHeapStore.Slab slab;
+  final int slot;
+  final int length;
+  final int generation;
+
+  OffHeapValue(OffHeapStore.Slab slab, int slot, int length, int generation) {
+    this.slab = slab;
+    this.slot = slot;
+    this.length = length;
+    this.generation = generation;
+  }
+
+  /**
+   * Deserialize the value.
+   *
+   * @return the value or {@code null}, if the handle was freed concurrently
+   */
+  public Object read() {
+    return slab.store.read(this);
+  }
+
+  /**
+   * Free the slot. Freeing twice, or after the store was cleared has no effect.
+   */
+  public void free() {
+    slab.store.free(this);
+  }
+
+  /**
+   * Length of the serialized data.
+   */
+  public int getLength() {
+    return length;
+  }
+
+  /**
+   * Bytes occupied in the slab. Used as weight for the eviction.
+   */
+  public int getSlotSize() {
+    return slab.slotSize;
+  }
+
+  @Override
+  public String toString() {
+    return "OffHeapValue(slotSize=" + slab.slotSize + ", slot=" + slot +
+      ", length=" + length + ", generation=" + generation + ")";
+  }
+
+}
@@ -0,0 +1,270 @@
+package org.cache2k.core.storage;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.core.Entry;
+import org.cache2k.core.ExceptionWrapper;
+import org.cache2k.core.HeapCache;
+import org.cache2k.core.offheap.ValueSerializer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+
+/**
+ * Writes the heap contents to a snapshot file on close and inserts them again when
+ * the cache is built. The file consists of blocks of entries, each protected by a
+ * checksum. Blocks are decoded and inserted in parallel via the cache executor.
+ * A damaged or incompatible snapshot is ignored with a warning, since the cache
+ * works correctly without it.
+ *
+ * @author Jens Wilke
+ * @see SnapshotConfiguration
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class CacheSnapshot {
+
+  private static final int MAGIC = 0x63326b53;
+  private static final int VERSION = 1;
+  static final int ENTRIES_PER_BLOCK = 1000;
+
+  private final File file;
+  private final ValueSerializer<Object> serializer;
+
+  public CacheSnapshot(File file, ValueSerializer<?> serializer) {
+    this.file = file;
+    this.serializer = (ValueSerializer<Object>) serializer;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Write all entries with valid data. Called during close while holding the cache
+   * lock. Exceptions are not written.
+   */
+  public void write(HeapCache cache) {
+    File tmp = new File(file.getPath() + ".tmp");
+    int count = 0;
+    try {
+      File dir = file.getParentFile();
+      if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+        throw new IOException("Cannot create directory: " + dir);
+      }
+      DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        DataOutputStream blockOut = new DataOutputStream(block);
+        int blockCount = 0;
+        Iterator<Entry> it = cache.iterateAllHeapEntries();
+        while (it.hasNext()) {
+          Entry e = it.next();
+          if (!e.hasFreshData(cache.getClock())) {
+            continue;
+          }
+          Object value = e.getValueOrException();
+          if (value instanceof ExceptionWrapper) {
+            continue;
+          }
+          writeEntry(blockOut, e, value);
+          count++;
+          if (++blockCount == ENTRIES_PER_BLOCK) {
+            writeBlock(out, blockCount, block);
+            blockCount = 0;
+          }
+        }
+        if (blockCount > 0) {
+          writeBlock(out, blockCount, block);
+        }
+        out.writeInt(0);
+      } finally {
+        out.close();
+      }
+      if (count == 0) {
+        deleteFile(tmp);
+        deleteFile(file);
+        return;
+      }
+      if (!tmp.renameTo(file)) {
+        deleteFile(file);
+        if (!tmp.renameTo(file)) {
+          throw new IOException("Cannot rename snapshot to: " + file);
+        }
+      }
+    } catch (Exception ex) {
+      deleteFile(tmp);
+      cache.getLog().warn("Writing snapshot failed: " + file, ex);
+    }
+  }
+
+  private void writeEntry(DataOutputStream out, Entry e, Object value) throws Exception {
+    long nrt = e.getNextRefreshTime();
+    long expiryTime = nrt == Entry.DATA_VALID ? Long.MAX_VALUE : nrt;
+    byte[] key = serializer.serialize(e.getKey());
+    byte[] data = serializer.serialize(value);
+    out.writeBoolean(e.isHot());
+    out.writeLong(e.getRefreshTime());
+    out.writeLong(expiryTime);
+    out.writeInt(key.length);
+    out.write(key);
+    out.writeInt(data.length);
+    out.write(data);
+  }
+
+  private static void writeBlock(DataOutputStream out, int count, ByteArrayOutputStream block)
+    throws IOException {
+    byte[] bytes = block.toByteArray();
+    block.reset();
+    out.writeInt(count);
+    out.writeInt(bytes.length);
+    out.writeInt(checksum(bytes));
+    out.write(bytes);
+  }
+
+  private static int checksum(byte[] bytes) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes, 0, bytes.length);
+    return (int) crc.getValue();
+  }
+
+  /**
+   * Insert the snapshot contents into the cache and delete the snapshot file,
+   * so it is not used twice. Reading stops at the first damaged block.
+   *
+   * @return number of entries read from the snapshot
+   */
+  public int restore(HeapCache cache) {
+    if (!file.exists()) {
+      return 0;
+    }
+    List<FutureTask<Integer>> tasks = new ArrayList<FutureTask<Integer>>();
+    Executor executor = cache.getExecutor();
+    try {
+      DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      try {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+          throw new IOException("Unknown snapshot format");
+        }
+        for (;;) {
+          int count = in.readInt();
+          if (count == 0) {
+            break;
+          }
+          byte[] bytes = new byte[in.readInt()];
+          int crc = in.readInt();
+          in.readFully(bytes);
+          if (crc != checksum(bytes)) {
+            throw new IOException("Checksum error");
+          }
+          FutureTask<Integer> task = new FutureTask<Integer>(new RestoreBlock(cache, count, bytes));
+          tasks.add(task);
+          executor.execute(task);
+        }
+      } finally {
+        in.close();
+      }
+    } catch (EOFException ex) {
+      cache.getLog().warn("Snapshot incomplete: " + file);
+    } catch (Exception ex) {
+      cache.getLog().warn("Reading snapshot failed: " + file, ex);
+    }
+    int restored = 0;
+    for (FutureTask<Integer> task : tasks) {
+      try {
+        restored += task.get();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException ex) {
+        cache.getLog().warn("Restoring snapshot failed: " + file, ex.getCause());
+      }
+    }
+    deleteFile(file);
+    return restored;
+  }
+
+  private static void deleteFile(File f) {
+    if (f.exists()) {
+      f.delete();
+    }
+  }
+
+  /**
+   * Decode one block and insert its entries. Expired entries are skipped.
+   */
+  private class RestoreBlock implements Callable<Integer> {
+
+    private final HeapCache cache;
+    private final int count;
+    private final byte[] bytes;
+
+    RestoreBlock(HeapCache cache, int count, byte[] bytes) {
+      this.cache = cache;
+      this.count = count;
+      this.bytes = bytes;
+    }
+
+    @Override
+    public Integer call() throws Exception {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+      long now = cache.getClock().millis();
+      int restored = 0;
+      for (int i = 0; i < count; i++) {
+        boolean hot = in.readBoolean();
+        long refreshTime = in.readLong();
+        long expiryTime = in.readLong();
+        byte[] key = new byte[in.readInt()];
+        in.readFully(key);
+        byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+        if (Math.abs(expiryTime) <= now) {
+          continue;
+        }
+        cache.restoreEntry(serializer.deserialize(key), serializer.deserialize(data),
+          refreshTime, expiryTime, hot);
+        restored++;
+      }
+      return restored;
+    }
+
+  }
+
+}
@@ -0,0 +1,425 @@
+package org.cache2k.core.storage;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.core.CacheStorageException;
+import org.cache2k.core.offheap.ValueSerializer;
+import org.cache2k.core.storageApi.CacheStorage;
+import org.cache2k.core.storageApi.StorageEntry;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Log structured storage in memory mapped segment files. Each put or remove appends
+ * a record to the current segment. An index on the heap maps the keys to the position of
+ * the latest record. When the current segment is full, a new segment is started. When
+ * the maximum number of segments is reached, the oldest segment is dropped together
+ * with the entries that are still referenced in it, like a FIFO eviction.
+ *
+ * <p>When opened, the index is rebuilt by reading all segments in order. Each record
+ * has a checksum, so an incomplete write at the end of a segment is ignored.
+ *
+ * <p>Record layout: length of the body (int), CRC32 of the body (int), body. The body
+ * consists of type (byte), created or updated time (long), value expiry time (long),
+ * key length (int), key data and value data.
+ *
+ * <p>Reads don't lock. Modifications are serialized via the storage monitor.
+ *
+ * @author Jens Wilke
+ */
+@SuppressWarnings("unchecked")
+public class MappedLogStorage implements CacheStorage {
+
+  private static final String SEGMENT_FILE_SUFFIX = ".log";
+  private static final byte TYPE_PUT = 1;
+  private static final byte TYPE_REMOVE = 2;
+  private static final int RECORD_HEADER_SIZE = 4 + 4;
+  private static final int BODY_HEADER_SIZE = 1 + 8 + 8 + 4;
+
+  private final File directory;
+  private final int segmentSize;
+  private final int maximumSegments;
+  private final ValueSerializer<Object> serializer;
+
+  /**
+   * Maps the key to the segment id in the upper and the offset in the lower 32 bits.
+   */
+  private final ConcurrentHashMap<Object, Long> index = new ConcurrentHashMap<Object, Long>();
+  private final ConcurrentHashMap<Integer, Segment> segments =
+    new ConcurrentHashMap<Integer, Segment>();
+
+  /** Segments from oldest to newest. Guarded by this */
+  private final ArrayDeque<Segment> segmentQueue = new ArrayDeque<Segment>();
+
+  /** Segment receiving new records. Guarded by this */
+  private Segment head;
+
+  public MappedLogStorage(File directory, int segmentSize, long maximumBytes,
+                          ValueSerializer<?> serializer) {
+    if (segmentSize < RECORD_HEADER_SIZE + BODY_HEADER_SIZE) {
+      throw new IllegalArgumentException("segment size too small");
+    }
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.maximumSegments =
+      (int) Math.max(2, Math.min(Integer.MAX_VALUE, maximumBytes / segmentSize));
+    this.serializer = (ValueSerializer<Object>) serializer;
+  }
+
+  /**
+   * Open existing segment files and rebuild the index, or start with an empty storage.
+   */
+  public synchronized void open() throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create directory: " + directory);
+    }
+    File[] files = directory.listFiles();
+    int[] ids = new int[files == null ? 0 : files.length];
+    int count = 0;
+    for (int i = 0; i < ids.length; i++) {
+      String name = files[i].getName();
+      if (name.endsWith(SEGMENT_FILE_SUFFIX)) {
+        try {
+          ids[count++] =
+            Integer.parseInt(name.substring(0, name.length() - SEGMENT_FILE_SUFFIX.length()));
+        } catch (NumberFormatException ignore) {
+        }
+      }
+    }
+    ids = Arrays.copyOf(ids, count);
+    Arrays.sort(ids);
+    for (int id : ids) {
+      Segment s = mapSegment(id);
+      segmentQueue.add(s);
+      segments.put(id, s);
+      scan(s);
+      head = s;
+    }
+    if (head == null) {
+      startSegment(0);
+    }
+    while (segmentQueue.size() > maximumSegments) {
+      dropOldestSegment();
+    }
+  }
+
+  private File segmentFile(int id) {
+    return new File(directory, String.format("%08d", id) + SEGMENT_FILE_SUFFIX);
+  }
+
+  private Segment mapSegment(int id) throws IOException {
+    File f = segmentFile(id);
+    RandomAccessFile raf = new RandomAccessFile(f, "rw");
+    FileChannel channel = raf.getChannel();
+    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    return new Segment(id, f, channel, buffer);
+  }
+
+  private void startSegment(int id) {
+    try {
+      Segment s = mapSegment(id);
+      segmentQueue.add(s);
+      segments.put(id, s);
+      head = s;
+    } catch (IOException ex) {
+      throw new CacheStorageException("Cannot create segment file", ex);
+    }
+  }
+
+  /**
+   * Read all valid records of a segment and update the index. Stops at the first
+   * record that is empty or has a wrong checksum.
+   */
+  private void scan(Segment s) {
+    ByteBuffer buf = s.buffer.duplicate();
+    int pos = 0;
+    while (pos + RECORD_HEADER_SIZE + BODY_HEADER_SIZE <= segmentSize) {
+      int length = buf.getInt(pos);
+      if (length < BODY_HEADER_SIZE || pos + RECORD_HEADER_SIZE + length > segmentSize) {
+        break;
+      }
+      int crc = buf.getInt(pos + 4);
+      byte[] body = new byte[length];
+      buf.position(pos + RECORD_HEADER_SIZE);
+      buf.get(body);
+      if (crc != checksum(body)) {
+        break;
+      }
+      ByteBuffer b = ByteBuffer.wrap(body);
+      byte type = b.get();
+      int keyLength = b.getInt(1 + 8 + 8);
+      Object key;
+      try {
+        key = serializer.deserialize(Arrays.copyOfRange(body, BODY_HEADER_SIZE,
+          BODY_HEADER_SIZE + keyLength));
+      } catch (Exception ex) {
+        key = null;
+      }
+      if (key != null) {
+        if (type == TYPE_PUT) {
+          index.put(key, address(s.id, pos));
+        } else {
+          index.remove(key);
+        }
+      }
+      pos += RECORD_HEADER_SIZE + length;
+    }
+    s.writePosition = pos;
+  }
+
+  private static int checksum(byte[] body) {
+    CRC32 crc = new CRC32();
+    crc.update(body, 0, body.length);
+    return (int) crc.getValue();
+  }
+
+  private static long address(int segmentId, int offset) {
+    return ((long) segmentId << 32) | (offset & 0xffffffffL);
+  }
+
+  private byte[] serialize(Object obj) {
+    try {
+      return serializer.serialize(obj);
+    } catch (Exception ex) {
+      throw new CacheStorageException("serialization failed", ex);
+    }
+  }
+
+  @Override
+  public StorageEntry get(Object key) throws Exception {
+    Long address = index.get(key);
+    if (address == null) {
+      return null;
+    }
+    Segment s = segments.get((int) (address >>> 32));
+    if (s == null) {
+      return null;
+    }
+    int pos = (int) (long) address;
+    ByteBuffer buf = s.buffer.duplicate();
+    int length = buf.getInt(pos);
+    byte[] body = new byte[length];
+    buf.position(pos + RECORD_HEADER_SIZE);
+    buf.get(body);
+    ByteBuffer b = ByteBuffer.wrap(body);
+    b.get();
+    long createdOrUpdated = b.getLong();
+    long valueExpiryTime = b.getLong();
+    int keyLength = b.getInt();
+    int valueOffset = BODY_HEADER_SIZE + keyLength;
+    Object value = serializer.deserialize(Arrays.copyOfRange(body, valueOffset, length));
+    return new StoredEntry(key, value, createdOrUpdated, valueExpiryTime);
+  }
+
+  @Override
+  public void put(StorageEntry e) {
+    byte[] key = serialize(e.getKey());
+    byte[] value = serialize(e.getValueOrException());
+    synchronized (this) {
+      long address =
+        append(TYPE_PUT, key, value, e.getCreatedOrUpdated(), e.getValueExpiryTime());
+      index.put(e.getKey(), address);
+    }
+  }
+
+  @Override
+  public boolean remove(Object key) {
+    if (!index.containsKey(key)) {
+      return false;
+    }
+    byte[] keyData = serialize(key);
+    synchronized (this) {
+      if (index.remove(key) == null) {
+        return false;
+      }
+      append(TYPE_REMOVE, keyData, new byte[0], 0, 0);
+      return true;
+    }
+  }
+
+  /**
+   * Append a record to the head segment. Starts a new segment if the record does not fit.
+   * Called within the monitor.
+   *
+   * @return address of the written record
+   */
+  private long append(byte type, byte[] key, byte[] value, long createdOrUpdated,
+                      long valueExpiryTime) {
+    int length = BODY_HEADER_SIZE + key.length + value.length;
+    int recordSize = RECORD_HEADER_SIZE + length;
+    if (recordSize > segmentSize) {
+      throw new CacheStorageException(
+        "Entry of " + recordSize + " bytes exceeds segment size of " + segmentSize + " bytes");
+    }
+    if (head.writePosition + recordSize > segmentSize) {
+      startSegment(head.id + 1);
+      while (segmentQueue.size() > maximumSegments) {
+        dropOldestSegment();
+      }
+    }
+    byte[] body = new byte[length];
+    ByteBuffer b = ByteBuffer.wrap(body);
+    b.put(type);
+    b.putLong(createdOrUpdated);
+    b.putLong(valueExpiryTime);
+    b.putInt(key.length);
+    b.put(key);
+    b.put(value);
+    int pos = head.writePosition;
+    ByteBuffer buf = head.buffer.duplicate();
+    buf.position(pos);
+    buf.putInt(length);
+    buf.putInt(checksum(body));
+    buf.put(body);
+    head.writePosition = pos + recordSize;
+    return address(head.id, pos);
+  }
+
+  /**
+   * Remove the oldest segment and all index entries that still point to it.
+   * Called within the monitor.
+   */
+  private void dropOldestSegment() {
+    Segment s = segmentQueue.poll();
+    segments.remove(s.id);
+    ByteBuffer buf = s.buffer.duplicate();
+    int pos = 0;
+    while (pos < s.writePosition) {
+      int length = buf.getInt(pos);
+      if (buf.get(pos + RECORD_HEADER_SIZE) == TYPE_PUT) {
+        int keyLength = buf.getInt(pos + RECORD_HEADER_SIZE + 1 + 8 + 8);
+        byte[] key = new byte[keyLength];
+        buf.position(pos + RECORD_HEADER_SIZE + BODY_HEADER_SIZE);
+        buf.get(key);
+        try {
+          index.remove(serializer.deserialize(key), address(s.id, pos));
+        } catch (Exception ignore) {
+        }
+      }
+      pos += RECORD_HEADER_SIZE + length;
+    }
+    closeAndDelete(s);
+  }
+
+  private static void closeAndDelete(Segment s) {
+    try {
+      s.channel.close();
+    } catch (IOException ignore) {
+    }
+    s.file.delete();
+  }
+
+  @Override
+  public boolean contains(Object key) {
+    return index.containsKey(key);
+  }
+
+  @Override
+  public synchronized void clear() {
+    int nextId = head.id + 1;
+    for (Segment s : segmentQueue) {
+      closeAndDelete(s);
+    }
+    segmentQueue.clear();
+    segments.clear();
+    index.clear();
+    startSegment(nextId);
+  }
+
+  /**
+   * Write modified data of the segments to the file system.
+   */
+  public synchronized void flush() {
+    for (Segment s : segmentQueue) {
+      s.buffer.force();
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    flush();
+    for (Segment s : segmentQueue) {
+      s.channel.close();
+    }
+    segmentQueue.clear();
+    segments.clear();
+    index.clear();
+  }
+
+  /**
+   * Visit all entries in the calling thread. The executor of the context is not used.
+   */
+  @Override
+  public void visit(VisitContext ctx, EntryFilter f, EntryVisitor v) throws Exception {
+    for (Object key : index.keySet()) {
+      if (ctx != null && ctx.shouldStop()) {
+        return;
+      }
+      if (f != null && !f.shouldInclude(key)) {
+        continue;
+      }
+      StorageEntry e = get(key);
+      if (e != null) {
+        v.visit(e);
+      }
+    }
+  }
+
+  @Override
+  public int getEntryCount() {
+    return index.size();
+  }
+
+  /**
+   * Number of segment files in use.
+   */
+  public synchronized int getSegmentCount() {
+    return segmentQueue.size();
+  }
+
+  static final class Segment {
+
+    final int id;
+    final File file;
+    final FileChannel channel;
+    final MappedByteBuffer buffer;
+    /** Guarded by the storage monitor */
+    int writePosition;
+
+    Segment(int id, File file, FileChannel channel, MappedByteBuffer buffer) {
+      this.id = id;
+      this.file = file;
+      this.channel = channel;
+      this.buffer = buffer;
+    }
+
+  }
+
+}
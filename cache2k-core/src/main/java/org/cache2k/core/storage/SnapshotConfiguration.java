@@ -0,0 +1,99 @@
+package org.cache2k.core.storage;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.configuration.ConfigurationSectionBuilder;
+import org.cache2k.configuration.CustomizationReferenceSupplier;
+import org.cache2k.configuration.CustomizationSupplier;
+import org.cache2k.configuration.SingletonConfigurationSection;
+import org.cache2k.core.offheap.ValueSerializer;
+
+/**
+ * Configuration section for a warm restart. On close, the cache writes its
+ * contents to a snapshot file. When a cache with the same name is built again,
+ * the snapshot is read and the entries are inserted before the cache is returned
+ * from the builder. The snapshot is deleted after it was read.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * Cache<Long, Data> c = Cache2kBuilder.of(Long.class, Data.class)
+ *   .with(new SnapshotConfiguration.Builder()
+ *     .directory("/var/cache/myapp"))
+ *   .build();
+ * }</pre>
+ *
+ * @author Jens Wilke
+ */
+public class SnapshotConfiguration implements SingletonConfigurationSection {
+
+  private String directory;
+  private CustomizationSupplier<ValueSerializer<?>> serializer;
+
+  public String getDirectory() {
+    return directory;
+  }
+
+  /**
+   * @see Builder#directory(String)
+   */
+  public void setDirectory(String v) {
+    directory = v;
+  }
+
+  public CustomizationSupplier<ValueSerializer<?>> getSerializer() {
+    return serializer;
+  }
+
+  /**
+   * @see Builder#serializer(ValueSerializer)
+   */
+  public void setSerializer(CustomizationSupplier<ValueSerializer<?>> v) {
+    serializer = v;
+  }
+
+  public static class Builder implements ConfigurationSectionBuilder<SnapshotConfiguration> {
+
+    private final SnapshotConfiguration config = new SnapshotConfiguration();
+
+    /**
+     * Directory for the snapshot file. The file name is the cache name. Mandatory.
+     */
+    public Builder directory(String v) {
+      config.setDirectory(v);
+      return this;
+    }
+
+    /**
+     * Serializer for the keys and values. Default is the Java serialization.
+     */
+    public Builder serializer(ValueSerializer<?> v) {
+      config.setSerializer(new CustomizationReferenceSupplier<ValueSerializer<?>>(v));
+      return this;
+    }
+
+    @Override
+    public SnapshotConfiguration buildConfigurationSection() {
+      return config;
+    }
+
+  }
+
+}
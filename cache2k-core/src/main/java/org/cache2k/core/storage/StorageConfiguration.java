@@ -0,0 +1,151 @@
+package org.cache2k.core.storage;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.configuration.ConfigurationSectionBuilder;
+import org.cache2k.configuration.CustomizationReferenceSupplier;
+import org.cache2k.configuration.CustomizationSupplier;
+import org.cache2k.configuration.SingletonConfigurationSection;
+import org.cache2k.core.offheap.ValueSerializer;
+
+/**
+ * Configuration section for a persistent second level storage of the cache.
+ * Entries evicted from the heap are written to a log structured file store and
+ * read back when requested again, before the loader is called. After a restart the
+ * storage contents are available again. The storage is only read via the loader path,
+ * so a loader needs to be present.
+ *
+ * <p>The storage files are kept in a sub directory with the cache name. Only one cache
+ * instance may use the directory at a time.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * Cache<Long, Data> c = Cache2kBuilder.of(Long.class, Data.class)
+ *   .loader(dataLoader)
+ *   .with(new StorageConfiguration.Builder()
+ *     .directory("/var/cache/myapp")
+ *     .maximumBytes(10L * 1024 * 1024 * 1024))
+ *   .build();
+ * }</pre>
+ *
+ * @author Jens Wilke
+ */
+public class StorageConfiguration implements SingletonConfigurationSection {
+
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+  public static final long DEFAULT_MAXIMUM_BYTES = 1024L * 1024 * 1024;
+
+  private String directory;
+  private long maximumBytes = DEFAULT_MAXIMUM_BYTES;
+  private int segmentSize = DEFAULT_SEGMENT_SIZE;
+  private CustomizationSupplier<ValueSerializer<?>> serializer;
+
+  public String getDirectory() {
+    return directory;
+  }
+
+  /**
+   * @see Builder#directory(String)
+   */
+  public void setDirectory(String v) {
+    directory = v;
+  }
+
+  public long getMaximumBytes() {
+    return maximumBytes;
+  }
+
+  /**
+   * @see Builder#maximumBytes(long)
+   */
+  public void setMaximumBytes(long v) {
+    maximumBytes = v;
+  }
+
+  public int getSegmentSize() {
+    return segmentSize;
+  }
+
+  /**
+   * @see Builder#segmentSize(int)
+   */
+  public void setSegmentSize(int v) {
+    segmentSize = v;
+  }
+
+  public CustomizationSupplier<ValueSerializer<?>> getSerializer() {
+    return serializer;
+  }
+
+  /**
+   * @see Builder#serializer(ValueSerializer)
+   */
+  public void setSerializer(CustomizationSupplier<ValueSerializer<?>> v) {
+    serializer = v;
+  }
+
+  public static class Builder implements ConfigurationSectionBuilder<StorageConfiguration> {
+
+    private final StorageConfiguration config = new StorageConfiguration();
+
+    /**
+     * Directory for the storage files. Mandatory.
+     */
+    public Builder directory(String v) {
+      config.setDirectory(v);
+      return this;
+    }
+
+    /**
+     * Maximum size of the storage files. When reached, the oldest segment file
+     * is dropped together with the entries in it.
+     * Default: {@value #DEFAULT_MAXIMUM_BYTES}
+     */
+    public Builder maximumBytes(long v) {
+      config.setMaximumBytes(v);
+      return this;
+    }
+
+    /**
+     * Size of one segment file, which is memory mapped as a whole. A stored entry
+     * cannot be bigger than a segment. Default: {@value #DEFAULT_SEGMENT_SIZE}
+     */
+    public Builder segmentSize(int v) {
+      config.setSegmentSize(v);
+      return this;
+    }
+
+    /**
+     * Serializer for the keys and values. Default is the Java serialization.
+     */
+    public Builder serializer(ValueSerializer<?> v) {
+      config.setSerializer(new CustomizationReferenceSupplier<ValueSerializer<?>>(v));
+      return this;
+    }
+
+    @Override
+    public StorageConfiguration buildConfigurationSection() {
+      return config;
+    }
+
+  }
+
+}
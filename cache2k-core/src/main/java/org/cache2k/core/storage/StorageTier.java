@@ -0,0 +1,289 @@
+package org.cache2k.core.storage;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.core.Entry;
+import org.cache2k.core.ExceptionWrapper;
+import org.cache2k.core.HeapCache;
+import org.cache2k.core.storageApi.CacheStorage;
+import org.cache2k.core.storageApi.StorageAdapter;
+import org.cache2k.core.storageApi.StorageEntry;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Connects the heap cache with a {@link MappedLogStorage} as second level. The heap and the
+ * storage hold different entries: evicted entries are written to the storage, and an
+ * entry is removed from the storage when it is read back or modified in the heap.
+ * On shutdown, all valid heap entries are written to the storage, so the storage
+ * contains the complete cache contents after a restart.
+ *
+ * <p>All operations run synchronously in the calling thread, the returned futures
+ * are already completed.
+ *
+ * @author Jens Wilke
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class StorageTier extends StorageAdapter {
+
+  private final HeapCache heapCache;
+  private final MappedLogStorage storage;
+
+  public StorageTier(HeapCache heapCache, MappedLogStorage storage) {
+    this.heapCache = heapCache;
+    this.storage = storage;
+  }
+
+  private static Future<Void> run(Callable<Void> job) {
+    FutureTask<Void> f = new FutureTask<Void>(job);
+    f.run();
+    return f;
+  }
+
+  private static Future<Void> completed() {
+    return run(new Callable<Void>() {
+      @Override
+      public Void call() {
+        return null;
+      }
+    });
+  }
+
+  @Override
+  public void open() {
+    try {
+      storage.open();
+    } catch (IOException ex) {
+      rethrow("open", ex);
+    }
+  }
+
+  @Override
+  public Future<Void> cancelTimerJobs() {
+    return completed();
+  }
+
+  /**
+   * Write all heap entries with valid data to the storage and close it.
+   * The cache is already marked as closed at this point, holding the cache lock
+   * allows the iteration of the heap entries.
+   */
+  @Override
+  public Future<Void> shutdown() {
+    return run(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        try {
+          synchronized (heapCache.lock) {
+            Iterator<Entry> it = heapCache.iterateAllHeapEntries();
+            while (it.hasNext()) {
+              Entry e = it.next();
+              if (e.hasFreshData(heapCache.getClock())) {
+                put(e, e.getNextRefreshTime());
+              }
+            }
+          }
+        } finally {
+          storage.close();
+        }
+        return null;
+      }
+    });
+  }
+
+  @Override
+  public void flush() {
+    storage.flush();
+  }
+
+  /**
+   * Nothing to do. Expired entries are ignored when read and disappear when
+   * the segments are dropped.
+   */
+  @Override
+  public void purge() { }
+
+  @Override
+  public void clear() {
+    storage.clear();
+  }
+
+  @Override
+  public boolean checkStorageStillDisconnectedForClear() {
+    return false;
+  }
+
+  @Override
+  public void disconnectStorageForClear() { }
+
+  @Override
+  public Future<Void> clearAndReconnect() {
+    clear();
+    return completed();
+  }
+
+  /**
+   * Store the entry data, exceptions are not stored.
+   */
+  @Override
+  public void put(Entry e, long nextRefreshTime) {
+    Object value = e.getValueOrException();
+    if (value instanceof ExceptionWrapper) {
+      return;
+    }
+    long expiryTime = Math.abs(nextRefreshTime);
+    if (expiryTime < Entry.EXPIRY_TIME_MIN) {
+      expiryTime = Long.MAX_VALUE;
+    }
+    storage.put(new StoredEntry(e.getKey(), value, e.getRefreshTime(), expiryTime));
+  }
+
+  /**
+   * Read the entry from the storage.
+   *
+   * @return the entry or {@code null} if not present or expired
+   */
+  @Override
+  public StorageEntry get(Object key) {
+    StorageEntry e = null;
+    try {
+      e = storage.get(key);
+    } catch (Exception ex) {
+      rethrow("get", ex);
+    }
+    if (e == null || e.getValueExpiryTime() <= heapCache.getClock().millis()) {
+      return null;
+    }
+    return e;
+  }
+
+  @Override
+  public boolean remove(Object key) {
+    return storage.remove(key);
+  }
+
+  /**
+   * Write an entry that is evicted from the heap. A failure is logged, but does
+   * not stop the eviction.
+   */
+  @Override
+  public void evict(Entry e) {
+    if (!e.hasFreshData(heapCache.getClock())) {
+      return;
+    }
+    try {
+      put(e, e.getNextRefreshTime());
+    } catch (Throwable t) {
+      heapCache.getLog().warn("Storage write failed on eviction", t);
+    }
+  }
+
+  @Override
+  public void expire(Entry e) {
+    remove(e.getKey());
+  }
+
+  /**
+   * Iterate the heap entries with valid data first and then the storage contents.
+   * The storage contents are read when the iterator is created, expired contents
+   * are skipped, like in {@link #get(Object)}.
+   */
+  @Override
+  public Iterator<Entry> iterateAll() {
+    final List<Entry> stored = new ArrayList<Entry>();
+    final long now = heapCache.getClock().millis();
+    try {
+      storage.visit(null, null, new CacheStorage.EntryVisitor() {
+        @Override
+        public void visit(StorageEntry se) {
+          if (se.getValueExpiryTime() <= now) {
+            return;
+          }
+          Entry e = new Entry(se.getKey(), HeapCache.modifiedHash(se.getKey().hashCode()));
+          e.setValueOrException(se.getValueOrException());
+          e.setRefreshTime(se.getCreatedOrUpdated());
+          e.setNextRefreshTime(se.getValueExpiryTime());
+          stored.add(e);
+        }
+      });
+    } catch (Exception ex) {
+      rethrow("iterate", ex);
+    }
+    final Iterator<Entry> heapIterator = heapCache.iterateAllHeapEntries();
+    final Iterator<Entry> storageIterator = stored.iterator();
+    return new Iterator<Entry>() {
+      Entry next;
+
+      @Override
+      public boolean hasNext() {
+        while (next == null && heapIterator.hasNext()) {
+          Entry e = heapIterator.next();
+          if (e.hasFreshData(heapCache.getClock())) {
+            next = e;
+          }
+        }
+        if (next == null && storageIterator.hasNext()) {
+          next = storageIterator.next();
+        }
+        return next != null;
+      }
+
+      @Override
+      public Entry next() {
+        hasNext();
+        Entry e = next;
+        next = null;
+        return e;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /**
+   * Heap entries plus storage entries. Since an entry is either in the heap or in the
+   * storage, this is correct most of the time.
+   */
+  @Override
+  public long getTotalEntryCount() {
+    return heapCache.getLocalSize() + storage.getEntryCount();
+  }
+
+  @Override
+  public int getAlert() {
+    return 0;
+  }
+
+  @Override
+  public void disable(Throwable t) {
+    heapCache.getLog().warn("Storage disabled", t);
+  }
+
+}
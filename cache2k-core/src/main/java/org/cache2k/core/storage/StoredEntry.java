@@ -0,0 +1,69 @@
+package org.cache2k.core.storage;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.core.storageApi.StorageEntry;
+
+/**
+ * Entry data read from the storage.
+ *
+ * @author Jens Wilke
+ */
+class StoredEntry implements StorageEntry {
+
+  private final Object key;
+  private final Object value;
+  private final long createdOrUpdated;
+  private final long valueExpiryTime;
+
+  StoredEntry(Object key, Object value, long createdOrUpdated, long valueExpiryTime) {
+    this.key = key;
+    this.value = value;
+    this.createdOrUpdated = createdOrUpdated;
+    this.valueExpiryTime = valueExpiryTime;
+  }
+
+  @Override
+  public Object getKey() {
+    return key;
+  }
+
+  @Override
+  public Object getValueOrException() {
+    return value;
+  }
+
+  @Override
+  public long getCreatedOrUpdated() {
+    return createdOrUpdated;
+  }
+
+  @Override
+  public long getValueExpiryTime() {
+    return valueExpiryTime;
+  }
+
+  @Override
+  public long getEntryExpiryTime() {
+    return 0;
+  }
+
+}
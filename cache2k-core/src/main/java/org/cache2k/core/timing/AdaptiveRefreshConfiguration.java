@@ -0,0 +1,118 @@
+package org.cache2k.core.timing;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.configuration.ConfigurationSectionBuilder;
+import org.cache2k.configuration.SingletonConfigurationSection;
+
+/**
+ * Refresh ahead only for entries that are still in use. With plain refresh ahead every
+ * entry is reloaded when its expiry time is reached, whether it was accessed or not.
+ * With this section an entry is only refreshed if it was accessed at least
+ * {@link Builder#minimumHits(int)} times since it was loaded, otherwise it expires.
+ * The refresh is started at a random point up to {@link Builder#jitterPercent(int)} of
+ * the expiry duration before the expiry time, so that entries loaded at the same time
+ * do not cause a burst of loads when they are refreshed.
+ *
+ * <p>Used only when refresh ahead is enabled.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * Cache<Long, Data> c = Cache2kBuilder.of(Long.class, Data.class)
+ *   .expireAfterWrite(5, TimeUnit.MINUTES)
+ *   .refreshAhead(true)
+ *   .loader(...)
+ *   .with(new AdaptiveRefreshConfiguration.Builder()
+ *     .minimumHits(2)
+ *     .jitterPercent(20))
+ *   .build();
+ * }</pre>
+ *
+ * @author Jens Wilke
+ */
+public class AdaptiveRefreshConfiguration implements SingletonConfigurationSection {
+
+  public static final int DEFAULT_MINIMUM_HITS = 1;
+  public static final int DEFAULT_JITTER_PERCENT = 10;
+
+  private int minimumHits = DEFAULT_MINIMUM_HITS;
+  private int jitterPercent = DEFAULT_JITTER_PERCENT;
+
+  public int getMinimumHits() {
+    return minimumHits;
+  }
+
+  /**
+   * @see Builder#minimumHits(int)
+   */
+  public void setMinimumHits(int v) {
+    if (v < 0) {
+      throw new IllegalArgumentException("minimumHits must not be negative");
+    }
+    minimumHits = v;
+  }
+
+  public int getJitterPercent() {
+    return jitterPercent;
+  }
+
+  /**
+   * @see Builder#jitterPercent(int)
+   */
+  public void setJitterPercent(int v) {
+    if (v < 0 || v > 100) {
+      throw new IllegalArgumentException("jitterPercent must be between 0 and 100");
+    }
+    jitterPercent = v;
+  }
+
+  public static class Builder
+    implements ConfigurationSectionBuilder<AdaptiveRefreshConfiguration> {
+
+    private final AdaptiveRefreshConfiguration config = new AdaptiveRefreshConfiguration();
+
+    /**
+     * Number of accesses since the last load needed to refresh an entry.
+     * Zero refreshes every entry. Default: {@value #DEFAULT_MINIMUM_HITS}
+     */
+    public Builder minimumHits(int v) {
+      config.setMinimumHits(v);
+      return this;
+    }
+
+    /**
+     * Maximum time the refresh is started before the expiry time, in percent of the
+     * remaining time until expiry. Zero starts the refresh exactly at the
+     * expiry time. Default: {@value #DEFAULT_JITTER_PERCENT}
+     */
+    public Builder jitterPercent(int v) {
+      config.setJitterPercent(v);
+      return this;
+    }
+
+    @Override
+    public AdaptiveRefreshConfiguration buildConfigurationSection() {
+      return config;
+    }
+
+  }
+
+}
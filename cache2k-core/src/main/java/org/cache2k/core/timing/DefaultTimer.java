@@ -22,6 +22,9 @@ package org.cache2k.core.timing;
 
 import org.cache2k.core.api.InternalClock;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -30,15 +33,40 @@ import java.util.concurrent.locks.ReentrantLock;
  * that runs approx. every second (lag time, configurable). There always only
  * one pending scheduler job per timer.
  *
+ * <p>If a drain chunk size is set, due tasks are removed from the timer structure in
+ * chunks and the chunks are executed in parallel via the cache executor. The number of
+ * chunks executing in parallel is limited. If the limit is reached, the timer thread
+ * executes the next chunk itself, which slows down the removal of further tasks.
+ *
  * @author Jens Wilke
  */
 public class DefaultTimer implements Timer {
 
+  /**
+   * Default number of slots of the timer wheels.
+   */
+  public static final int DEFAULT_SLOTS = 876;
+
   private final Lock lock = new ReentrantLock();
   private final InternalClock clock;
   private final Scheduler scheduler;
   private final TimerStructure structure;
   private long nextScheduled = Long.MAX_VALUE;
+  /**
+   * Number of tasks executed by one parallel job, or 0 if all tasks are executed by
+   * the timer thread.
+   */
+  private final int drainChunkSize;
+  private final Semaphore drainPermits;
+  /**
+   * Executes the chunks in parallel. The scheduler, if the clock is simulated.
+   */
+  private final Executor drainExecutor;
+  /**
+   * Difference between the scheduled time and the execution of the latest
+   * executed task.
+   */
+  private volatile long expiryLagMillis;
   /**
    * Lag time to gather timer tasks for more efficient execution.
    * Default timer lag defined at {@link org.cache2k.core.HeapCache.Tunable#timerLagMillis}
@@ -53,18 +81,38 @@ public class DefaultTimer implements Timer {
   };
 
   public DefaultTimer(InternalClock c, long lagMillis) {
-    this(c, lagMillis, 876);
+    this(c, lagMillis, DEFAULT_SLOTS);
   }
 
   public DefaultTimer(InternalClock c, long lagMillis, int steps) {
+    this(c, lagMillis, steps, null, 0, 0);
+  }
+
+  /**
+   * @param executor executor of the cache, running the parallel jobs
+   * @param drainChunkSize number of due tasks executed by one parallel job, or 0 to
+   *                       execute all due tasks by the timer thread
+   * @param drainParallelism maximum number of parallel jobs
+   */
+  public DefaultTimer(InternalClock c, long lagMillis, Executor executor, int drainChunkSize,
+                      int drainParallelism) {
+    this(c, lagMillis, DEFAULT_SLOTS, executor, drainChunkSize, drainParallelism);
+  }
+
+  private DefaultTimer(InternalClock c, long lagMillis, int steps, Executor executor,
+                       int drainChunkSize, int drainParallelism) {
     structure = new TimerWheels(c.millis() + 1, lagMillis + 1, steps);
     this.lagMillis = lagMillis;
     this.clock = c;
     if (c instanceof Scheduler) {
       scheduler = (Scheduler) clock;
+      drainExecutor = scheduler;
     } else {
       scheduler = DefaultScheduler.INSTANCE;
+      drainExecutor = executor != null ? executor : scheduler;
     }
+    this.drainChunkSize = drainChunkSize;
+    drainPermits = drainChunkSize > 0 ? new Semaphore(Math.max(1, drainParallelism)) : null;
   }
 
   /**
@@ -125,6 +173,11 @@ public class DefaultTimer implements Timer {
     return lagMillis;
   }
 
+  @Override
+  public long getExpiryLagMillis() {
+    return expiryLagMillis;
+  }
+
   /**
    * Terminates all timer tasks current pending.
    */
@@ -138,6 +191,16 @@ public class DefaultTimer implements Timer {
     }
   }
 
+  @Override
+  public int cancelAll(Object owner) {
+    lock.lock();
+    try {
+      return structure.cancel(owner);
+    } finally {
+      lock.unlock();
+    }
+  }
+
   /**
    * Called from the schedule when a scheduled time was reached.
    * Its expected that the time is increasing constantly.
@@ -145,6 +208,10 @@ public class DefaultTimer implements Timer {
    * the method only runs once at any time.
    */
   private void timeReachedEvent(long currentTime) {
+    if (drainChunkSize > 0) {
+      timeReachedEventParallel(currentTime);
+      return;
+    }
     while (true) {
       TimerTask task;
       lock.lock();
@@ -154,6 +221,7 @@ public class DefaultTimer implements Timer {
         lock.unlock();
       }
       if (task != null) {
+        expiryLagMillis = Math.max(0, currentTime - task.time);
         task.execute();
         task.action();
       } else {
@@ -170,6 +238,83 @@ public class DefaultTimer implements Timer {
     }
   }
 
+  /**
+   * Remove due tasks in chunks with one lock operation per chunk and pass the chunks
+   * to the executor. When no more tasks are due, the next processing is scheduled.
+   * A chunk array is only allocated again, if the previous one was passed to a parallel job.
+   */
+  private void timeReachedEventParallel(long currentTime) {
+    TimerTask[] chunk = null;
+    while (true) {
+      if (chunk == null) {
+        chunk = new TimerTask[drainChunkSize];
+      }
+      int count = 0;
+      lock.lock();
+      try {
+        TimerTask task;
+        while (count < chunk.length &&
+          (task = structure.removeNextToRun(currentTime)) != null) {
+          task.execute();
+          chunk[count++] = task;
+        }
+        if (count < chunk.length) {
+          schedule(currentTime, structure.nextRun());
+        }
+      } finally {
+        lock.unlock();
+      }
+      boolean full = count == chunk.length;
+      if (count > 0 && executeChunk(chunk, count)) {
+        chunk = null;
+      }
+      if (!full) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Execute the chunk in parallel, if the limit of parallel jobs is not reached.
+   * Otherwise execute the chunk in the timer thread, which holds back the removal
+   * of more tasks.
+   *
+   * @return true, if the chunk was passed to a parallel job and cannot be reused
+   */
+  private boolean executeChunk(final TimerTask[] chunk, final int count) {
+    if (drainPermits.tryAcquire()) {
+      Runnable job = new Runnable() {
+        @Override
+        public void run() {
+          try {
+            runTasks(chunk, count);
+          } finally {
+            drainPermits.release();
+          }
+        }
+      };
+      try {
+        drainExecutor.execute(job);
+        return true;
+      } catch (RejectedExecutionException ex) {
+        drainPermits.release();
+      }
+    }
+    runTasks(chunk, count);
+    return false;
+  }
+
+  private void runTasks(TimerTask[] chunk, int count) {
+    long now = clock.millis();
+    long lag = 0;
+    for (int i = 0; i < count; i++) {
+      TimerTask task = chunk[i];
+      lag = Math.max(lag, now - task.time);
+      task.action();
+    }
+    expiryLagMillis = lag;
+  }
+
   /**
    * Schedule the next time we process expired times. At least wait {@link #lagMillis}.
    * Also marks that no timer job is scheduled if run with -1 as time parameter.
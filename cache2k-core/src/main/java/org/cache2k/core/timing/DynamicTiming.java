@@ -70,7 +70,7 @@ class DynamicTiming<K, V> extends StaticTiming<K, V> {
 
   @Override
   public synchronized void close(CacheCloseContext closeContext) {
-    super.cancelAll();
+    super.close(closeContext);
     closeContext.closeCustomization(expiryPolicy, "expiryPolicy");
   }
 
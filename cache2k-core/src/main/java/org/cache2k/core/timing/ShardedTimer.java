@@ -0,0 +1,130 @@
+package org.cache2k.core.timing;
+
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.core.api.InternalClock;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Timer that distributes the tasks by the entry hash to independent timers. Each shard has
+ * its own lock, timer wheels and expiry processing, so concurrent scheduling and cancelling
+ * of tasks does not contend on a single lock.
+ *
+ * @author Jens Wilke
+ * @see DefaultTimer
+ */
+public class ShardedTimer implements Timer {
+
+  private final Timer[] shards;
+  private final int mask;
+
+  /**
+   * @param shardCount number of shards, must be a power of two
+   */
+  public ShardedTimer(InternalClock c, long lagMillis, int shardCount) {
+    this(c, lagMillis, shardCount, null, 0, 0);
+  }
+
+  /**
+   * @param shardCount number of shards, must be a power of two
+   * @see DefaultTimer#DefaultTimer(InternalClock, long, Executor, int, int)
+   */
+  public ShardedTimer(InternalClock c, long lagMillis, int shardCount, Executor executor,
+                      int drainChunkSize, int drainParallelism) {
+    if (Integer.bitCount(shardCount) != 1) {
+      throw new IllegalArgumentException("shard count must be a power of two");
+    }
+    shards = new Timer[shardCount];
+    for (int i = 0; i < shardCount; i++) {
+      shards[i] = new DefaultTimer(c, lagMillis, executor, drainChunkSize, drainParallelism);
+    }
+    mask = shardCount - 1;
+  }
+
+  /**
+   * One shard, if not boosting concurrency. Otherwise the number of available processors
+   * rounded to the next power of two. An override is rounded to the next power of two as well.
+   */
+  public static int determineShardCount(boolean boostConcurrency, int availableProcessors,
+                                        int shardCountOverride) {
+    if (shardCountOverride > 0) {
+      return 1 << (32 - Integer.numberOfLeadingZeros(shardCountOverride - 1));
+    }
+    if (!boostConcurrency || availableProcessors <= 1) {
+      return 1;
+    }
+    return 1 << (32 - Integer.numberOfLeadingZeros(availableProcessors - 1));
+  }
+
+  private Timer shard(TimerTask task) {
+    return shards[task.getShardHash() & mask];
+  }
+
+  @Override
+  public void schedule(TimerTask task, long time) {
+    shard(task).schedule(task, time);
+  }
+
+  @Override
+  public void cancel(TimerTask t) {
+    shard(t).cancel(t);
+  }
+
+  @Override
+  public void cancelAll() {
+    for (Timer t : shards) {
+      t.cancelAll();
+    }
+  }
+
+  @Override
+  public int cancelAll(Object owner) {
+    int count = 0;
+    for (Timer t : shards) {
+      count += t.cancelAll(owner);
+    }
+    return count;
+  }
+
+  @Override
+  public long getLagMillis() {
+    return shards[0].getLagMillis();
+  }
+
+  /**
+   * Maximum lag of all shards.
+   */
+  @Override
+  public long getExpiryLagMillis() {
+    long lag = 0;
+    for (Timer t : shards) {
+      lag = Math.max(lag, t.getExpiryLagMillis());
+    }
+    return lag;
+  }
+
+  public int getShardCount() {
+    return shards.length;
+  }
+
+}
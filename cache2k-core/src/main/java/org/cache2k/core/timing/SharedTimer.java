@@ -0,0 +1,220 @@
+package org.cache2k.core.timing;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.core.api.InternalClock;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timers shared by all caches of a cache manager. Caches with the same clock, timer lag,
+ * shard count and executor use one timer, so the number of timer wheels and scheduler wake ups
+ * does not grow with the number of caches. Each cache gets a {@link Client} which marks
+ * its tasks, to cancel them when the cache is cleared or closed. The timer is discarded
+ * when the last client is closed. Sharing is enabled via
+ * {@link org.cache2k.core.HeapCache.Tunable#sharedTimer}.
+ *
+ * <p>Scheduling and cancelling a task costs the same as with a timer per cache. Clearing
+ * or closing a cache visits the tasks of all caches sharing the timer, while holding the
+ * timer lock.
+ *
+ * <p>Since all caches share the timer thread, a slow expiry listener delays the
+ * expiry of other caches. Parallel execution of due tasks is controlled via
+ * {@link org.cache2k.core.HeapCache.Tunable#timerDrainChunkSize}.
+ *
+ * @author Jens Wilke
+ */
+public class SharedTimer {
+
+  private final Map<Key, Shared> timers = new HashMap<Key, Shared>();
+
+  /**
+   * Timer for a cache, which uses the shared timer for the given parameters.
+   *
+   * @see StaticTiming#createTimer(InternalClock, long, int, Executor, int, int)
+   */
+  public synchronized Client createClient(InternalClock clock, long lagMillis, int shardCount,
+                                          Executor executor, int drainChunkSize,
+                                          int drainParallelism) {
+    Key key = new Key(clock, lagMillis, shardCount, executor);
+    Shared shared = timers.get(key);
+    if (shared == null) {
+      shared = new Shared(key, StaticTiming.createTimer(
+        clock, lagMillis, shardCount, executor, drainChunkSize, drainParallelism));
+      timers.put(key, shared);
+    }
+    shared.clientCount++;
+    return new Client(this, shared);
+  }
+
+  /**
+   * Number of timers in use.
+   */
+  public synchronized int getTimerCount() {
+    return timers.size();
+  }
+
+  private synchronized void release(Shared shared) {
+    if (--shared.clientCount == 0) {
+      timers.remove(shared.key);
+      shared.timer.cancelAll();
+    }
+  }
+
+  private static class Key {
+
+    private final InternalClock clock;
+    private final long lagMillis;
+    private final int shardCount;
+    private final Executor executor;
+
+    Key(InternalClock clock, long lagMillis, int shardCount, Executor executor) {
+      this.clock = clock;
+      this.lagMillis = lagMillis;
+      this.shardCount = shardCount;
+      this.executor = executor;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return clock == other.clock && lagMillis == other.lagMillis
+        && shardCount == other.shardCount && executor == other.executor;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = System.identityHashCode(clock);
+      result = 31 * result + (int) (lagMillis ^ (lagMillis >>> 32));
+      result = 31 * result + shardCount;
+      return 31 * result + System.identityHashCode(executor);
+    }
+
+  }
+
+  private static class Shared {
+
+    private final Key key;
+    private final Timer timer;
+    private int clientCount;
+
+    Shared(Key key, Timer timer) {
+      this.key = key;
+      this.timer = timer;
+    }
+
+  }
+
+  /**
+   * Timer of one cache. Counts the scheduled and cancelled tasks of the cache.
+   */
+  public static class Client implements Timer {
+
+    private final SharedTimer sharedTimer;
+    private final Shared shared;
+    private final AtomicLong scheduledCount = new AtomicLong();
+    private final AtomicLong cancelledCount = new AtomicLong();
+    private boolean closed;
+
+    Client(SharedTimer sharedTimer, Shared shared) {
+      this.sharedTimer = sharedTimer;
+      this.shared = shared;
+    }
+
+    @Override
+    public void schedule(TimerTask task, long time) {
+      task.owner = this;
+      scheduledCount.incrementAndGet();
+      shared.timer.schedule(task, time);
+    }
+
+    @Override
+    public void cancel(TimerTask t) {
+      if (t.isScheduled() && !t.isExecuted()) {
+        cancelledCount.incrementAndGet();
+      }
+      shared.timer.cancel(t);
+    }
+
+    /**
+     * Cancel the tasks of this cache. This visits all tasks in the shared timer, so no
+     * bookkeeping per task is needed when scheduling.
+     */
+    @Override
+    public void cancelAll() {
+      cancelledCount.addAndGet(shared.timer.cancelAll(this));
+    }
+
+    @Override
+    public int cancelAll(Object owner) {
+      return shared.timer.cancelAll(owner);
+    }
+
+    @Override
+    public synchronized void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      cancelAll();
+      sharedTimer.release(shared);
+    }
+
+    @Override
+    public long getLagMillis() {
+      return shared.timer.getLagMillis();
+    }
+
+    @Override
+    public long getExpiryLagMillis() {
+      return shared.timer.getExpiryLagMillis();
+    }
+
+    /**
+     * Number of tasks scheduled by this cache.
+     */
+    public long getScheduledCount() {
+      return scheduledCount.get();
+    }
+
+    /**
+     * Number of tasks of this cache that were cancelled before execution.
+     */
+    public long getCancelledCount() {
+      return cancelledCount.get();
+    }
+
+    /**
+     * The timer used by this client, shared with other caches.
+     */
+    public Timer getSharedTimer() {
+      return shared.timer;
+    }
+
+  }
+
+}
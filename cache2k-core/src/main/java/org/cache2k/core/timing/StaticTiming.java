@@ -21,7 +21,9 @@ package org.cache2k.core.timing;
  */
 
 import org.cache2k.CacheEntry;
+import org.cache2k.CacheManager;
 import org.cache2k.configuration.Cache2kConfiguration;
+import org.cache2k.core.CacheManagerImpl;
 import org.cache2k.core.api.InternalBuildContext;
 import org.cache2k.core.api.CacheCloseContext;
 import org.cache2k.core.DefaultResiliencePolicy;
@@ -35,6 +37,9 @@ import org.cache2k.expiry.ExpiryTimeValues;
 import org.cache2k.io.ExceptionInformation;
 import org.cache2k.io.ResiliencePolicy;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+
 /**
  * Expiry time is constant
  *
@@ -50,6 +55,7 @@ public class StaticTiming<K, V> extends Timing<K, V> {
   protected final boolean refreshAhead;
   protected final long expiryMillis;
   protected final long lagMillis;
+  protected final AdaptiveRefreshConfiguration adaptiveRefresh;
 
   private Timer timer;
   private TimerEventListener<K, V> target;
@@ -63,16 +69,42 @@ public class StaticTiming<K, V> extends Timing<K, V> {
       this.expiryMillis = c.getExpireAfterWrite().toMillis();
     }
     refreshAhead = c.isRefreshAhead();
+    adaptiveRefresh = refreshAhead ?
+      c.getSections().getSection(AdaptiveRefreshConfiguration.class) : null;
     sharpExpiry = c.isSharpExpiry();
     if (c.getTimerLag() == null) {
       lagMillis = HeapCache.TUNABLE.timerLagMillis;
     } else {
       lagMillis = c.getTimerLag().toMillis();
     }
-    timer = new DefaultTimer(clock, lagMillis);
+    int shardCount = ShardedTimer.determineShardCount(c.isBoostConcurrency(),
+      Runtime.getRuntime().availableProcessors(), HeapCache.TUNABLE.timerShardCountOverride);
+    int drainChunkSize = HeapCache.TUNABLE.timerDrainChunkSize;
+    int drainParallelism = HeapCache.TUNABLE.timerDrainParallelism;
+    if (drainParallelism <= 0) {
+      drainParallelism = Runtime.getRuntime().availableProcessors();
+    }
+    Executor executor = buildContext.getExecutor();
+    CacheManager manager = buildContext.getCacheManager();
+    if (HeapCache.TUNABLE.sharedTimer && manager instanceof CacheManagerImpl) {
+      timer = ((CacheManagerImpl) manager).getSharedTimer().createClient(
+        clock, lagMillis, shardCount, executor, drainChunkSize, drainParallelism);
+    } else {
+      timer = createTimer(
+        clock, lagMillis, shardCount, executor, drainChunkSize, drainParallelism);
+    }
     resiliencePolicy = provideResiliencePolicy(buildContext);
   }
 
+  static Timer createTimer(InternalClock clock, long lagMillis, int shardCount,
+                           Executor executor, int drainChunkSize, int drainParallelism) {
+    if (shardCount == 1) {
+      return new DefaultTimer(clock, lagMillis, executor, drainChunkSize, drainParallelism);
+    }
+    return new ShardedTimer(
+      clock, lagMillis, shardCount, executor, drainChunkSize, drainParallelism);
+  }
+
   @SuppressWarnings("unchecked")
   ResiliencePolicy<K, V> provideResiliencePolicy(InternalBuildContext<K, V> buildContext) {
     ResiliencePolicy<K, V> policy =
@@ -87,6 +119,12 @@ public class StaticTiming<K, V> extends Timing<K, V> {
     this.target = target;
   }
 
+  @Override
+  public long getExpiryLagMillis() {
+    Timer timer = this.timer;
+    return timer != null ? timer.getExpiryLagMillis() : 0;
+  }
+
   @Override
   public void cancelAll() {
     Timer timer = this.timer;
@@ -99,7 +137,7 @@ public class StaticTiming<K, V> extends Timing<K, V> {
   public void close(CacheCloseContext closeContext) {
     Timer timer = this.timer;
     if (timer != null) {
-      timer.cancelAll();
+      timer.close();
       closeContext.closeCustomization(resiliencePolicy, "resiliencePolicy");
     }
     this.timer = null;
@@ -176,14 +214,63 @@ public class StaticTiming<K, V> extends Timing<K, V> {
         scheduleTask(timerTime, e);
         expiryTime = -expiryTime;
       } else {
-        scheduleFinalExpireWithOptionalRefresh(e, -expiryTime);
+        scheduleFinalExpireWithOptionalRefresh(e, jitterRefreshTime(now, -expiryTime));
       }
     } else {
-      scheduleFinalExpireWithOptionalRefresh(e, expiryTime);
+      scheduleFinalExpireWithOptionalRefresh(e, jitterRefreshTime(now, expiryTime));
     }
     return expiryTime;
   }
 
+  /**
+   * Move the refresh by a random amount before the expiry time, to spread the
+   * refreshes of entries loaded at the same time.
+   */
+  long jitterRefreshTime(long now, long expiryTime) {
+    if (adaptiveRefresh == null || adaptiveRefresh.getJitterPercent() == 0) {
+      return expiryTime;
+    }
+    long maxJitter = (expiryTime - now) / 100 * adaptiveRefresh.getJitterPercent();
+    if (maxJitter <= 0) {
+      return expiryTime;
+    }
+    return expiryTime - ThreadLocalRandom.current().nextLong(maxJitter + 1);
+  }
+
+  /**
+   * Skip the refresh if the entry had not enough hits since the refresh timer was
+   * scheduled, which is when the value was loaded. The eviction may reset or decrease
+   * the hit counter, in this case only the hits after that are counted. The expiry timer
+   * is started for the remaining time, since the refresh may be started before the
+   * expiry time.
+   */
+  @Override
+  public boolean skipRefresh(Entry<K, V> e, Object task) {
+    if (!(task instanceof Tasks.RefreshTimerTask)) {
+      return false;
+    }
+    long hitCntAtSchedule = ((Tasks.RefreshTimerTask<?, ?>) task).hitCntAtSchedule;
+    if (hitCntAtSchedule < 0) {
+      return false;
+    }
+    long hitCnt = e.hitCnt;
+    long hits = hitCnt >= hitCntAtSchedule ? hitCnt - hitCntAtSchedule : hitCnt;
+    if (hits >= adaptiveRefresh.getMinimumHits()) {
+      return false;
+    }
+    startExpiryTimer(e);
+    return true;
+  }
+
+  /**
+   * The refresh timer may fire before the expiry time, because of the jitter.
+   */
+  @Override
+  public void startExpiryTimer(Entry<K, V> e) {
+    e.setTask(new Tasks.ExpireTimerTask<K, V>().to(target, e));
+    scheduleTask(Math.abs(e.getNextRefreshTime()), e);
+  }
+
   @Override
   public boolean startRefreshProbationTimer(Entry<K, V> e, long nextRefreshTime) {
     cancelExpiryTimer(e);
@@ -203,6 +290,17 @@ public class StaticTiming<K, V> extends Timing<K, V> {
     return false;
   }
 
+  /**
+   * The task is the same as for the refresh probation, both expire the entry when the
+   * timer fires.
+   */
+  @Override
+  public void startStaleTimer(Entry<K, V> e, long hardExpiryTime) {
+    cancelExpiryTimer(e);
+    e.setTask(new Tasks.RefreshExpireTimerTask<K, V>().to(target, e));
+    scheduleTask(hardExpiryTime, e);
+  }
+
   @Override
   public void scheduleFinalTimerForSharpExpiry(Entry<K, V> e) {
     cancelExpiryTimer(e);
@@ -214,7 +312,11 @@ public class StaticTiming<K, V> extends Timing<K, V> {
    */
   void scheduleFinalExpireWithOptionalRefresh(Entry<K, V> e, long t) {
     if (refreshAhead) {
-      e.setTask(new Tasks.RefreshTimerTask<K, V>().to(target, e));
+      Tasks.RefreshTimerTask<K, V> task = new Tasks.RefreshTimerTask<K, V>();
+      if (adaptiveRefresh != null) {
+        task.hitCntAtSchedule = e.hitCnt;
+      }
+      e.setTask(task.to(target, e));
     } else {
       e.setTask(new Tasks.ExpireTimerTask<K, V>().to(target, e));
     }
@@ -0,0 +1,110 @@
+package org.cache2k.core.timing;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.configuration.ConfigurationSectionBuilder;
+import org.cache2k.configuration.SingletonConfigurationSection;
+
+import java.time.Duration;
+
+/**
+ * Configuration section to switch to an expiry mode that does not use timer tasks.
+ * Only the expiry time stored in the entry is used: an expired entry is not visible
+ * any more when accessed and is removed from the cache by a background sweep over the
+ * hash table. This saves the timer task per entry and the timer maintenance on every
+ * update. Expiry events are sent when the sweeper removes an entry, which may happen
+ * up to the sweep interval after the expiry time.
+ *
+ * <p>Refresh ahead and custom expiry policies are not supported in this mode.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * Cache<Long, Data> c = Cache2kBuilder.of(Long.class, Data.class)
+ *   .expireAfterWrite(5, TimeUnit.MINUTES)
+ *   .with(new SweepingExpiryConfiguration.Builder()
+ *     .sweepInterval(Duration.ofSeconds(10)))
+ *   .build();
+ * }</pre>
+ *
+ * @author Jens Wilke
+ * @see SweepingTiming
+ */
+public class SweepingExpiryConfiguration implements SingletonConfigurationSection {
+
+  public static final Duration DEFAULT_SWEEP_INTERVAL = Duration.ofSeconds(1);
+  public static final int DEFAULT_SWEEP_BATCH_SIZE = 1000;
+
+  private Duration sweepInterval = DEFAULT_SWEEP_INTERVAL;
+  private int sweepBatchSize = DEFAULT_SWEEP_BATCH_SIZE;
+
+  public Duration getSweepInterval() {
+    return sweepInterval;
+  }
+
+  /**
+   * @see Builder#sweepInterval(Duration)
+   */
+  public void setSweepInterval(Duration v) {
+    sweepInterval = v;
+  }
+
+  public int getSweepBatchSize() {
+    return sweepBatchSize;
+  }
+
+  /**
+   * @see Builder#sweepBatchSize(int)
+   */
+  public void setSweepBatchSize(int v) {
+    sweepBatchSize = v;
+  }
+
+  public static class Builder
+    implements ConfigurationSectionBuilder<SweepingExpiryConfiguration> {
+
+    private final SweepingExpiryConfiguration config = new SweepingExpiryConfiguration();
+
+    /**
+     * Time between the start of two sweeps over the hash table. Default: 1 second
+     */
+    public Builder sweepInterval(Duration v) {
+      config.setSweepInterval(v);
+      return this;
+    }
+
+    /**
+     * Number of hash table slots examined in one step of the sweep. After each step
+     * the sweeper yields and continues via the executor. Default:
+     * {@value #DEFAULT_SWEEP_BATCH_SIZE}
+     */
+    public Builder sweepBatchSize(int v) {
+      config.setSweepBatchSize(v);
+      return this;
+    }
+
+    @Override
+    public SweepingExpiryConfiguration buildConfigurationSection() {
+      return config;
+    }
+
+  }
+
+}
@@ -0,0 +1,230 @@
+package org.cache2k.core.timing;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.configuration.Cache2kConfiguration;
+import org.cache2k.core.DefaultResiliencePolicy;
+import org.cache2k.core.Entry;
+import org.cache2k.core.WiredCache;
+import org.cache2k.core.api.CacheCloseContext;
+import org.cache2k.core.api.InternalBuildContext;
+import org.cache2k.core.api.InternalClock;
+import org.cache2k.core.eviction.HeapCacheForEviction;
+import org.cache2k.expiry.ExpiryPolicy;
+import org.cache2k.expiry.ExpiryTimeValues;
+import org.cache2k.io.ExceptionInformation;
+import org.cache2k.io.ResiliencePolicy;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Expiry without timer tasks. The expiry time is stored as negative value in
+ * {@link Entry#getNextRefreshTime()}, so every access checks the time, like with
+ * sharp expiry. Expired entries are removed by a sweeper, that walks the hash table
+ * like a clock hand in steps of {@link SweepingExpiryConfiguration#getSweepBatchSize()}
+ * slots. A complete sweep is started every sweep interval. The sweeper is started with
+ * the first entry that gets an expiry time.
+ *
+ * @author Jens Wilke
+ * @see SweepingExpiryConfiguration
+ */
+public class SweepingTiming<K, V> extends Timing<K, V> {
+
+  private final InternalClock clock;
+  private final Scheduler scheduler;
+  private final ResiliencePolicy<K, V> resiliencePolicy;
+  private final long expiryMillis;
+  private final long sweepIntervalMillis;
+  private final int sweepBatchSize;
+  private final AtomicBoolean sweeperStarted = new AtomicBoolean();
+  private final Runnable sweepAction = new Runnable() {
+    @Override
+    public void run() {
+      sweep();
+    }
+  };
+
+  private TimerEventListener<K, V> target;
+  private HeapCacheForEviction<K, V> hash;
+  private volatile boolean closed;
+  private int tableIndex;
+  private int slotIndex;
+  private long sweepStartTime;
+
+  SweepingTiming(InternalBuildContext<K, V> buildContext, SweepingExpiryConfiguration cfg) {
+    clock = buildContext.getClock();
+    if (clock instanceof Scheduler) {
+      scheduler = (Scheduler) clock;
+    } else {
+      scheduler = DefaultScheduler.INSTANCE;
+    }
+    Cache2kConfiguration<K, V> c = buildContext.getConfiguration();
+    if (realDuration(c.getExpireAfterWrite())) {
+      expiryMillis = c.getExpireAfterWrite().toMillis();
+    } else {
+      expiryMillis = ExpiryPolicy.ETERNAL;
+    }
+    if (cfg.getSweepInterval() == null || cfg.getSweepInterval().toMillis() <= 0) {
+      throw new IllegalArgumentException("sweep interval must be positive");
+    }
+    if (cfg.getSweepBatchSize() <= 0) {
+      throw new IllegalArgumentException("sweep batch size must be positive");
+    }
+    sweepIntervalMillis = cfg.getSweepInterval().toMillis();
+    sweepBatchSize = cfg.getSweepBatchSize();
+    resiliencePolicy = buildContext.createCustomization(c.getResiliencePolicy(),
+      DefaultResiliencePolicy.SUPPLIER);
+  }
+
+  /**
+   * The target is the heap cache or the wired cache. The sweeper needs the hash table
+   * of the heap cache in both cases.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public void setTarget(TimerEventListener<K, V> target) {
+    this.target = target;
+    if (target instanceof WiredCache) {
+      hash = ((WiredCache<K, V>) target).getHeapCache();
+    } else if (target instanceof HeapCacheForEviction) {
+      hash = (HeapCacheForEviction<K, V>) target;
+    }
+  }
+
+  /**
+   * There are no timer tasks to cancel. The sweeper keeps running after a clear,
+   * since entries inserted afterwards need to expire as well. Only closing stops it.
+   */
+  @Override
+  public void cancelAll() { }
+
+  @Override
+  public void close(CacheCloseContext closeContext) {
+    closed = true;
+    closeContext.closeCustomization(resiliencePolicy, "resiliencePolicy");
+  }
+
+  @Override
+  public long calculateNextRefreshTime(Entry<K, V> e, V v, long loadTime) {
+    return StaticTiming.calcNextRefreshTime(e.getKey(), v, loadTime, e, null, expiryMillis,
+      false);
+  }
+
+  @Override
+  public long suppressExceptionUntil(Entry<K, V> e, ExceptionInformation inf) {
+    return resiliencePolicy.suppressExceptionUntil(e.getKey(), inf, e.getTempCacheEntry());
+  }
+
+  @Override
+  public long cacheExceptionUntil(Entry<K, V> e, ExceptionInformation inf) {
+    return resiliencePolicy.retryLoadAfter(e.getKey(), inf);
+  }
+
+  /**
+   * No timer is started. A point in time is always stored as negative value, which
+   * means the time is checked on each access.
+   */
+  @Override
+  public long stopStartTimer(long expiryTime, Entry<K, V> e) {
+    if (expiryTime == ExpiryTimeValues.NOW || expiryTime == ExpiryTimeValues.REFRESH) {
+      return Entry.EXPIRED;
+    }
+    if (expiryTime == ExpiryTimeValues.NEUTRAL) {
+      long nrt = e.getNextRefreshTime();
+      if (nrt == 0) {
+        throw new IllegalArgumentException("neutral expiry not allowed for creation");
+      }
+      return nrt;
+    }
+    if (expiryTime == ExpiryTimeValues.ETERNAL) {
+      return expiryTime;
+    }
+    long t = Math.abs(expiryTime);
+    if (t <= clock.millis()) {
+      return Entry.EXPIRED;
+    }
+    startSweeperEventually();
+    return -t;
+  }
+
+  private void startSweeperEventually() {
+    if (!sweeperStarted.get() && sweeperStarted.compareAndSet(false, true)) {
+      sweepStartTime = clock.millis();
+      scheduler.schedule(sweepAction, sweepStartTime + sweepIntervalMillis);
+    }
+  }
+
+  /**
+   * Examine the next batch of hash table slots and expire entries whose time has passed.
+   * Continues immediately via the executor until the whole table is swept, then waits
+   * for the next interval. Runs in one thread at a time, so the position needs no
+   * synchronization.
+   */
+  void sweep() {
+    HeapCacheForEviction<K, V> hash = this.hash;
+    if (closed || hash == null) {
+      return;
+    }
+    if (tableIndex == 0 && slotIndex == 0) {
+      sweepStartTime = clock.millis();
+    }
+    long now = clock.millis();
+    int remaining = sweepBatchSize;
+    while (remaining > 0) {
+      int tableCount = hash.getHashTableCount();
+      Entry<K, V>[] table = tableIndex < tableCount ? hash.getHashEntries(tableIndex) : null;
+      if (table == null) {
+        break;
+      }
+      while (remaining > 0 && slotIndex < table.length) {
+        expireChain(table[slotIndex++], now);
+        remaining--;
+      }
+      if (slotIndex >= table.length) {
+        slotIndex = 0;
+        tableIndex++;
+      }
+    }
+    if (closed) {
+      return;
+    }
+    if (remaining == 0) {
+      scheduler.execute(sweepAction);
+      return;
+    }
+    tableIndex = 0;
+    slotIndex = 0;
+    scheduler.schedule(sweepAction, Math.max(now, sweepStartTime + sweepIntervalMillis));
+  }
+
+  private void expireChain(Entry<K, V> e, long now) {
+    for (; e != null; e = e.another) {
+      if (e.isGone()) {
+        continue;
+      }
+      long nrt = e.getNextRefreshTime();
+      if (nrt < 0 && -nrt <= now) {
+        target.timerEventExpireEntry(e, null);
+      }
+    }
+  }
+
+}
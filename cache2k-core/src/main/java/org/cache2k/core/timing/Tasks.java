@@ -29,13 +29,23 @@ import org.cache2k.core.Entry;
 abstract class Tasks<K, V> extends TimerTask {
   private Entry<K, V> entry;
   private TimerEventListener<K, V> target;
+  private int shardHash;
 
   Tasks<K, V> to(TimerEventListener<K, V> target, Entry<K, V> e) {
     this.target = target;
     entry = e;
+    shardHash = e.hashCode;
     return this;
   }
 
+  /**
+   * Hash of the entry, which is kept after the entry reference is cleared by a cancel.
+   */
+  @Override
+  protected int getShardHash() {
+    return shardHash;
+  }
+
   /**
    * Null out references to avoid mem leaks, when timer is cancelled.
    */
@@ -66,6 +76,15 @@ abstract class Tasks<K, V> extends TimerTask {
   }
 
   static class RefreshTimerTask<K, V> extends Tasks<K, V> {
+
+    /**
+     * Hit count of the entry when the task was scheduled, or -1 if the refresh
+     * is unconditional.
+     *
+     * @see AdaptiveRefreshConfiguration
+     */
+    long hitCntAtSchedule = -1;
+
     public void fire() {
       getTarget().timerEventRefresh(getEntry(), this);
     }
@@ -46,9 +46,31 @@ public interface Timer {
    */
   void cancelAll();
 
+  /**
+   * Terminates all pending timer tasks of the owner.
+   *
+   * @return number of cancelled tasks
+   * @see SharedTimer
+   */
+  int cancelAll(Object owner);
+
+  /**
+   * The timer is not used any more. Terminates all pending tasks.
+   */
+  default void close() {
+    cancelAll();
+  }
+
   /**
    * The lag time tasks may lag behind.
    */
   long getLagMillis();
 
+  /**
+   * Delay between the scheduled time and the execution of recently executed tasks,
+   * in milliseconds. A steadily increasing value means that task execution cannot
+   * keep up.
+   */
+  long getExpiryLagMillis();
+
 }
@@ -53,6 +53,13 @@ public interface TimerStructure {
    */
   void cancel();
 
+  /**
+   * Cancel all tasks of the owner. This needs to visit all scheduled tasks.
+   *
+   * @return number of cancelled tasks
+   */
+  int cancel(Object owner);
+
   /**
    * Return a task that is supposed to execute at the given time or earlier.
    * This also moves the clock hand of the timer structure.
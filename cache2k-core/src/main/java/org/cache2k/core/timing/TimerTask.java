@@ -30,6 +30,12 @@ public abstract class TimerTask implements Runnable {
   private static final long UNSCHEDULED = -1;
   long time = UNSCHEDULED;
   TimerTask next, prev = null;
+  /**
+   * Set when scheduled via a shared timer to cancel all tasks of one cache.
+   *
+   * @see SharedTimer
+   */
+  Object owner;
   void insert(TimerTask t) { t.next = next; t.prev = this; next.prev = t; next = t; }
   void remove() { prev.next = next; next.prev = prev; next = prev = null; }
   void execute() { prev = this; }
@@ -64,6 +70,15 @@ public abstract class TimerTask implements Runnable {
     }
   }
 
+  /**
+   * Selects the timer shard. The value must not change while the task is scheduled.
+   *
+   * @see ShardedTimer
+   */
+  protected int getShardHash() {
+    return System.identityHashCode(this);
+  }
+
   public boolean isUnscheduled() {
     return time == UNSCHEDULED;
   }
@@ -52,6 +52,10 @@ public class TimerWheels implements TimerStructure {
     wheel.cancel();
   }
 
+  public int cancel(Object owner) {
+    return wheel.cancel(owner);
+  }
+
   public TimerTask removeNextToRun(long time) {
     TimerTask t = wheel.removeNextToRun(time);
     return t;
@@ -102,6 +106,29 @@ public class TimerWheels implements TimerStructure {
       initArray(slots.length);
     }
 
+    /**
+     * Remove the tasks of the owner from all slots of this and the upper hierarchies.
+     */
+    private int cancel(Object owner) {
+      int count = 0;
+      for (TimerTask head : slots) {
+        TimerTask t = head.next;
+        while (t != head) {
+          TimerTask next = t.next;
+          if (t.owner == owner) {
+            t.remove();
+            count++;
+          }
+          t = next;
+        }
+      }
+      Wheel up = this.up;
+      if (up != null) {
+        count += up.cancel(owner);
+      }
+      return count;
+    }
+
     /**
      * Time, when all tasks for the given slot index can be executed.
      */
@@ -26,6 +26,7 @@ import org.cache2k.core.api.InternalBuildContext;
 import org.cache2k.core.api.CacheCloseContext;
 import org.cache2k.core.Entry;
 import org.cache2k.core.ExceptionWrapper;
+import org.cache2k.core.StaleWhileRevalidateConfiguration;
 import org.cache2k.expiry.ExpiryPolicy;
 import org.cache2k.expiry.ValueWithExpiryTime;
 import org.cache2k.io.ExceptionInformation;
@@ -76,6 +77,11 @@ public abstract class Timing<K, V>  {
       && zeroOrUnspecified(cfg.getRetryInterval())) {
       return TimeAgnosticTiming.IMMEDIATE;
     }
+    SweepingExpiryConfiguration sweepingConfig =
+      cfg.getSections().getSection(SweepingExpiryConfiguration.class);
+    if (sweepingConfig != null) {
+      return sweepingTiming(buildContext, sweepingConfig);
+    }
     if (cfg.getExpiryPolicy() != null
       || (cfg.getValueType() != null
         && ValueWithExpiryTime.class.isAssignableFrom(cfg.getValueType().getType()))
@@ -105,6 +111,20 @@ public abstract class Timing<K, V>  {
     throw new IllegalArgumentException("expiry time ambiguous");
   }
 
+  private static <K, V> Timing<K, V> sweepingTiming(InternalBuildContext<K, V> buildContext,
+                                                     SweepingExpiryConfiguration sweepingConfig) {
+    Cache2kConfiguration<K, V> cfg = buildContext.getConfiguration();
+    if (cfg.getExpiryPolicy() != null || cfg.isRefreshAhead()
+      || cfg.getSections().getSection(StaleWhileRevalidateConfiguration.class) != null
+      || (cfg.getValueType() != null
+        && ValueWithExpiryTime.class.isAssignableFrom(cfg.getValueType().getType()))) {
+      throw new IllegalArgumentException(
+        "Sweeping expiry does not support refresh ahead, stale while revalidate " +
+          "or a custom expiry policy");
+    }
+    return new SweepingTiming<K, V>(buildContext, sweepingConfig);
+  }
+
   /**
    * Set the target for timer events. Called during cache build before any timer
    * tasks are created. For each cache instance there is a timing instance and both
@@ -117,6 +137,13 @@ public abstract class Timing<K, V>  {
    */
   public void cancelAll() { }
 
+  /**
+   * @see Timer#getExpiryLagMillis()
+   */
+  public long getExpiryLagMillis() {
+    return 0;
+  }
+
   public void close(CacheCloseContext closeContext) { }
 
   /**
@@ -175,4 +202,29 @@ public abstract class Timing<K, V>  {
    */
   public void scheduleFinalTimerForSharpExpiry(Entry<K, V> e) { }
 
+  /**
+   * Start the timer that expires a stale entry, which is not refreshed before the
+   * hard expiry time.
+   *
+   * @see StaleWhileRevalidateConfiguration
+   */
+  public void startStaleTimer(Entry<K, V> e, long hardExpiryTime) { }
+
+  /**
+   * Start the timer that expires the entry at its expiry time, which is used instead
+   * of the refresh, if a refresh is not started.
+   */
+  public void startExpiryTimer(Entry<K, V> e) { }
+
+  /**
+   * Called when the refresh timer fires, before the refresh is started.
+   * If the refresh does not pay off, the timer to expire the entry is started instead.
+   *
+   * @return {@code true} if the refresh should not be done
+   * @see AdaptiveRefreshConfiguration
+   */
+  public boolean skipRefresh(Entry<K, V> e, Object task) {
+    return false;
+  }
+
 }
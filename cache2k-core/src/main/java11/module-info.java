@@ -25,8 +25,13 @@ module org.cache2k.core {
   requires static java.logging;
   requires static org.slf4j;
   exports org.cache2k.core.api;
+  exports org.cache2k.core.eviction;
   exports org.cache2k.core.spi;
+  exports org.cache2k.core.loader;
   exports org.cache2k.core.log;
+  exports org.cache2k.core.offheap;
+  exports org.cache2k.core.storage;
+  exports org.cache2k.core.timing;
   uses org.cache2k.core.log.LogFactory;
   uses org.cache2k.core.spi.CacheConfigurationProvider;
   uses org.cache2k.core.spi.CacheLifeCycleListener;
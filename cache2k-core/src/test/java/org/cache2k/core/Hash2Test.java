@@ -27,6 +27,14 @@ import org.cache2k.testing.category.FastTests;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+
 /**
  * @author Jens Wilke
  */
@@ -54,4 +62,183 @@ public class Hash2Test {
     }
   }
 
+  static int hashCode(int key) {
+    return HeapCache.modifiedHash(Integer.valueOf(key).hashCode());
+  }
+
+  static Entry<Integer, Integer> insert(Hash2<Integer, Integer> hash, int key) {
+    int hc = hashCode(key);
+    StampedLock l = hash.getSegmentLock(hc);
+    long stamp = l.writeLock();
+    Entry<Integer, Integer> e;
+    try {
+      e = hash.insertWithinLock(new Entry<Integer, Integer>(key, hc), hc, hc);
+    } finally {
+      l.unlockWrite(stamp);
+    }
+    hash.checkExpand(hc);
+    return e;
+  }
+
+  static Entry<Integer, Integer> lookup(Hash2<Integer, Integer> hash, int key) {
+    int hc = hashCode(key);
+    return hash.lookup(key, hc, hc);
+  }
+
+  @Test
+  public void incrementalExpansion() {
+    Hash2<Integer, Integer> hash = new Hash2<Integer, Integer>(null);
+    final int count = 100000;
+    for (int i = 0; i < count; i++) {
+      insert(hash, i);
+    }
+    assertTrue(hash.getExpansionCount() > 0);
+    assertEquals(count, hash.getSize());
+    assertEquals(count, hash.calcEntryCount());
+    assertTrue(hash.getEntryCapacity() >= count);
+    for (int i = 0; i < count; i++) {
+      assertEquals((Integer) i, lookup(hash, i).getKey());
+    }
+    for (int i = 0; i < count; i += 2) {
+      assertTrue(hash.remove(lookup(hash, i)));
+    }
+    assertEquals(count / 2, hash.calcEntryCount());
+  }
+
+  /**
+   * Readers always find existing entries and writers don't lose entries
+   * while the table expands concurrently.
+   */
+  @Test
+  public void concurrentExpansion() throws Exception {
+    final Hash2<Integer, Integer> hash = new Hash2<Integer, Integer>(null);
+    final int existing = 1000;
+    for (int i = 0; i < existing; i++) {
+      insert(hash, i);
+    }
+    final AtomicBoolean stop = new AtomicBoolean();
+    final AtomicInteger misses = new AtomicInteger();
+    Thread[] readers = new Thread[2];
+    for (int t = 0; t < readers.length; t++) {
+      readers[t] = new Thread() {
+        @Override
+        public void run() {
+          while (!stop.get()) {
+            for (int i = 0; i < existing; i++) {
+              if (lookup(hash, i) == null) {
+                misses.incrementAndGet();
+              }
+            }
+          }
+        }
+      };
+      readers[t].start();
+    }
+    final int writerCount = 4;
+    final int perWriter = 50000;
+    Thread[] writers = new Thread[writerCount];
+    for (int t = 0; t < writers.length; t++) {
+      final int offset = existing + t * perWriter;
+      writers[t] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = offset; i < offset + perWriter; i++) {
+            insert(hash, i);
+          }
+        }
+      };
+      writers[t].start();
+    }
+    for (Thread t : writers) {
+      t.join();
+    }
+    stop.set(true);
+    for (Thread t : readers) {
+      t.join();
+    }
+    assertEquals(0, misses.get());
+    int total = existing + writerCount * perWriter;
+    assertEquals(total, hash.getSize());
+    for (int i = 0; i < total; i++) {
+      assertNotNull(lookup(hash, i));
+    }
+    hash.runTotalLocked(new Job<Void>() {
+      @Override
+      public Void call() {
+        assertEquals(hash.getSize(), hash.calcEntryCount());
+        return null;
+      }
+    });
+  }
+
+  /**
+   * While buckets are moved to the next table, scanning all tables returned by
+   * {@link Hash2#getTableCount()} finds all entries. The transfer is held in the middle
+   * by blocking one segment lock.
+   */
+  @Test
+  public void scanTablesDuringExpansion() throws Exception {
+    final Hash2<Integer, Integer> hash = new Hash2<Integer, Integer>(null);
+    final StampedLock blocked = hash.getSegmentLock(1);
+    final Set<Integer> inserted =
+      Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+    long stamp = blocked.writeLock();
+    Thread writer = new Thread() {
+      @Override
+      public void run() {
+        for (int i = 0; i < 1000000; i++) {
+          int hc = Hash2Test.hashCode(i);
+          StampedLock l = hash.getSegmentLock(hc);
+          if (l == blocked) {
+            continue;
+          }
+          long stamp = l.writeLock();
+          try {
+            hash.insertWithinLock(new Entry<Integer, Integer>(i, hc), hc, hc);
+          } finally {
+            l.unlockWrite(stamp);
+          }
+          inserted.add(i);
+          hash.checkExpand(hc);
+        }
+      }
+    };
+    writer.start();
+    try {
+      while (writer.getState() != Thread.State.WAITING) {
+        assertTrue("writer blocked in expansion", writer.isAlive());
+        Thread.sleep(1);
+      }
+      Set<Integer> seen = new HashSet<Integer>();
+      for (int i = 0; i < hash.getTableCount(); i++) {
+        for (Entry<Integer, Integer> e : hash.getEntries(i)) {
+          for (; e != null; e = e.another) {
+            if (!e.isGone()) {
+              seen.add(e.getKey());
+            }
+          }
+        }
+      }
+      assertEquals(inserted, seen);
+    } finally {
+      blocked.unlockWrite(stamp);
+      writer.join();
+    }
+    assertEquals(inserted.size(), hash.getSize());
+  }
+
+  @Test
+  public void presize() {
+    Hash2<Integer, Integer> hash = new Hash2<Integer, Integer>(null);
+    final int count = 100000;
+    hash.presize(count);
+    assertTrue(hash.getEntryCapacity() >= count);
+    int expansionCount = hash.getExpansionCount();
+    for (int i = 0; i < count; i++) {
+      insert(hash, i);
+    }
+    assertEquals(expansionCount, hash.getExpansionCount());
+    assertEquals(count, hash.calcEntryCount());
+  }
+
 }
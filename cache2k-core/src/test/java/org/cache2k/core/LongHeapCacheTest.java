@@ -0,0 +1,139 @@
+package org.cache2k.core;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.Cache;
+import org.cache2k.CacheEntry;
+import org.cache2k.LongCache;
+import org.cache2k.event.CacheEntryCreatedListener;
+import org.cache2k.io.CacheLoader;
+import org.cache2k.test.util.TestingBase;
+import org.cache2k.testing.category.FastTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the cache with primitive long keys.
+ *
+ * @author Jens Wilke
+ */
+@Category(FastTests.class)
+public class LongHeapCacheTest extends TestingBase {
+
+  /** Same hash code as {@code 0L} */
+  static final long COLLIDING_KEY = 0x100000001L;
+
+  LongCache<String> longCache() {
+    Cache<Long, String> c = builder(Long.class, String.class).build();
+    cache = c;
+    assertTrue(c instanceof LongHeapCache);
+    return (LongCache<String>) c;
+  }
+
+  @Test
+  public void putGetPeek() {
+    LongCache<String> c = longCache();
+    assertNull(c.peek(4711L));
+    c.put(4711L, "a");
+    assertEquals("a", c.peek(4711L));
+    assertEquals("a", c.get(4711L));
+    assertEquals("a", c.get(Long.valueOf(4711L)));
+    c.put(Long.valueOf(4711L), "b");
+    assertEquals("b", c.peek(4711L));
+    c.put(4711L, "c");
+    assertEquals("c", c.peek(Long.valueOf(4711L)));
+    assertEquals(1, getInfo().getSize());
+    assertEquals(3, getInfo().getPutCount());
+  }
+
+  @Test
+  public void collidingKeys() {
+    assertEquals(Long.valueOf(0L).hashCode(), Long.valueOf(COLLIDING_KEY).hashCode());
+    LongCache<String> c = longCache();
+    c.put(0L, "zero");
+    c.put(COLLIDING_KEY, "other");
+    assertEquals("zero", c.peek(0L));
+    assertEquals("other", c.peek(COLLIDING_KEY));
+    assertEquals(2, getInfo().getSize());
+    c.remove(0L);
+    assertNull(c.peek(0L));
+    assertEquals("other", c.get(COLLIDING_KEY));
+    assertTrue(c.containsKey(COLLIDING_KEY));
+  }
+
+  @Test
+  public void iterationReturnsKeys() {
+    LongCache<String> c = longCache();
+    Set<Long> keys = new HashSet<Long>();
+    for (long k = Long.MAX_VALUE - 100; k < Long.MAX_VALUE; k++) {
+      c.put(k, "v");
+      keys.add(k);
+    }
+    Set<Long> seen = new HashSet<Long>();
+    for (CacheEntry<Long, String> e : c.entries()) {
+      seen.add(e.getKey());
+    }
+    assertEquals(keys, seen);
+  }
+
+  @Test
+  public void loaderGetsKey() {
+    Cache<Long, String> c = builder(Long.class, String.class)
+      .loader(new CacheLoader<Long, String>() {
+        @Override
+        public String load(Long key) {
+          return "loaded" + key;
+        }
+      })
+      .build();
+    cache = c;
+    LongCache<String> lc = (LongCache<String>) c;
+    assertEquals("loaded" + COLLIDING_KEY, lc.get(COLLIDING_KEY));
+    assertEquals("loaded0", lc.get(0L));
+    assertEquals(2, getInfo().getLoadCount());
+    assertEquals("loaded0", lc.get(0L));
+    assertEquals(2, getInfo().getLoadCount());
+  }
+
+  /**
+   * Listeners need the wired cache, which does not implement the long cache.
+   */
+  @Test
+  public void wiredCacheIsNoLongCache() {
+    Cache<Long, String> c = builder(Long.class, String.class)
+      .addListener(new CacheEntryCreatedListener<Long, String>() {
+        @Override
+        public void onEntryCreated(Cache<Long, String> cache, CacheEntry<Long, String> entry) {
+        }
+      })
+      .build();
+    cache = c;
+    assertFalse(c instanceof LongCache);
+    c.put(1L, "one");
+    assertEquals("one", c.peek(1L));
+  }
+
+}
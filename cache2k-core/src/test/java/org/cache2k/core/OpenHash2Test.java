@@ -0,0 +1,203 @@
+package org.cache2k.core;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.core.concurrency.Job;
+import org.cache2k.testing.category.FastTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Jens Wilke
+ */
+@SuppressWarnings("rawtypes")
+@Category(FastTests.class)
+public class OpenHash2Test {
+
+  final OpenHash2<Integer, Integer> hash = new OpenHash2<Integer, Integer>(null);
+
+  static int hashCode(int key) {
+    return HeapCache.modifiedHash(Integer.valueOf(key).hashCode());
+  }
+
+  Entry<Integer, Integer> insert(int key) {
+    int hc = hashCode(key);
+    StampedLock l = hash.getSegmentLock(hc);
+    long stamp = l.writeLock();
+    try {
+      return hash.insertWithinLock(new Entry<Integer, Integer>(key, hc), hc, hc);
+    } finally {
+      l.unlockWrite(stamp);
+    }
+  }
+
+  Entry<Integer, Integer> lookup(int key) {
+    int hc = hashCode(key);
+    return hash.lookup(key, hc, hc);
+  }
+
+  @Test
+  public void insertLookupRemove() {
+    final int count = 10000;
+    for (int i = 0; i < count; i++) {
+      Entry<Integer, Integer> e = insert(i);
+      assertSame(e, insert(i));
+    }
+    assertEquals(count, hash.getSize());
+    assertEquals(count, hash.calcEntryCount());
+    assertTrue(hash.getExpansionCount() > 0);
+    for (int i = 0; i < count; i++) {
+      assertEquals((Integer) i, lookup(i).getKey());
+    }
+    assertNull(lookup(count));
+    for (int i = 0; i < count; i += 2) {
+      assertTrue(hash.remove(lookup(i)));
+    }
+    assertEquals(count / 2, hash.getSize());
+    assertEquals(count / 2, hash.calcEntryCount());
+    for (int i = 0; i < count; i++) {
+      if (i % 2 == 0) {
+        assertNull(lookup(i));
+      } else {
+        assertEquals((Integer) i, lookup(i).getKey());
+      }
+    }
+  }
+
+  /**
+   * Tombstones get reused or purged, so a constant number of entries
+   * does not need more space after the table had its final size.
+   */
+  @Test
+  public void removeAndInsertDoesNotGrow() {
+    for (int i = 0; i < 1000; i++) {
+      insert(i);
+    }
+    long capacity = hash.getEntryCapacity();
+    for (int i = 1000; i < 100000; i++) {
+      assertTrue(hash.remove(lookup(i - 1000)));
+      insert(i);
+    }
+    assertEquals(1000, hash.getSize());
+    assertEquals(1000, hash.calcEntryCount());
+    assertTrue(hash.getEntryCapacity() <= capacity * 2);
+  }
+
+  @Test
+  public void presize() {
+    final int count = 100000;
+    hash.presize(count);
+    assertTrue(hash.getEntryCapacity() >= count);
+    int expansionCount = hash.getExpansionCount();
+    for (int i = 0; i < count; i++) {
+      insert(i);
+    }
+    assertEquals(expansionCount, hash.getExpansionCount());
+    assertEquals(count, hash.calcEntryCount());
+  }
+
+  @Test
+  public void rehash() {
+    for (int i = 0; i < 100; i++) {
+      insert(i);
+    }
+    for (int i = 0; i < 10; i++) {
+      hash.runTotalLocked(new Job() {
+        @Override
+        public Object call() {
+          hash.rehash();
+          return null;
+        }
+      });
+      assertTrue(hash.getSegmentMaxFill() >= 0);
+    }
+    for (int i = 0; i < 100; i++) {
+      assertNotNull(lookup(i));
+    }
+  }
+
+  @Test
+  public void clearAndClose() {
+    insert(1);
+    hash.runTotalLocked(new Job() {
+      @Override
+      public Object call() {
+        hash.clearWhenLocked();
+        return null;
+      }
+    });
+    assertEquals(0, hash.getSize());
+    assertNull(lookup(1));
+    hash.close();
+    for (int i = 0; i < hash.getTableCount(); i++) {
+      assertNull(hash.getEntries(i));
+    }
+  }
+
+  /**
+   * Readers always find existing entries, while a writer inserts and
+   * removes other entries and the tables expand.
+   */
+  @Test
+  public void concurrentReadWhileExpanding() throws Exception {
+    final int existing = 1000;
+    for (int i = 0; i < existing; i++) {
+      insert(i);
+    }
+    final AtomicBoolean stop = new AtomicBoolean();
+    final AtomicInteger misses = new AtomicInteger();
+    Thread[] readers = new Thread[4];
+    for (int t = 0; t < readers.length; t++) {
+      readers[t] = new Thread() {
+        @Override
+        public void run() {
+          while (!stop.get()) {
+            for (int i = 0; i < existing; i++) {
+              if (lookup(i) == null) {
+                misses.incrementAndGet();
+              }
+            }
+          }
+        }
+      };
+      readers[t].start();
+    }
+    for (int i = existing; i < 200000; i++) {
+      insert(i);
+      if (i % 3 == 0) {
+        hash.remove(lookup(i));
+      }
+    }
+    stop.set(true);
+    for (Thread t : readers) {
+      t.join();
+    }
+    assertEquals(0, misses.get());
+    assertEquals(hash.getSize(), hash.calcEntryCount());
+  }
+
+}
@@ -0,0 +1,291 @@
+package org.cache2k.core;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.Cache;
+import org.cache2k.Cache2kBuilder;
+import org.cache2k.core.api.InternalClock;
+import org.cache2k.core.timing.Scheduler;
+import org.cache2k.core.timing.TimerTask;
+import org.cache2k.io.CacheLoader;
+import org.cache2k.test.core.TestingParameters;
+import org.cache2k.testing.category.FastTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the refresh queue with a manual clock, the drain runs only when triggered
+ * by the test.
+ *
+ * @author Jens Wilke
+ */
+@Category(FastTests.class)
+public class RefreshQueueTest {
+
+  static final long START_TIME = 100000;
+
+  final ManualClock clock = new ManualClock();
+  final List<Integer> started = new ArrayList<Integer>();
+  final List<Integer> rejected = new ArrayList<Integer>();
+  int rejectCount;
+
+  final RefreshQueue.Target<Integer, Integer> target =
+    new RefreshQueue.Target<Integer, Integer>() {
+      @Override
+      public void startRefresh(Entry<Integer, Integer> e) {
+        if (rejectCount > 0) {
+          rejectCount--;
+          throw new RejectedExecutionException();
+        }
+        started.add(e.getKey());
+      }
+
+      @Override
+      public void refreshRejected(Entry<Integer, Integer> e) {
+        rejected.add(e.getKey());
+      }
+    };
+
+  RefreshQueue<Integer, Integer> queue(RefreshQueueConfiguration.Builder b) {
+    return new RefreshQueue<Integer, Integer>(clock, b.buildConfigurationSection(), target);
+  }
+
+  static Entry<Integer, Integer> entry(int key, long hits) {
+    Entry<Integer, Integer> e = new Entry<Integer, Integer>(key, key);
+    e.hitCnt = hits;
+    e.setTask(new TimerTask() {
+      @Override
+      protected void action() { }
+    });
+    return e;
+  }
+
+  static void submit(RefreshQueue<Integer, Integer> q, Entry<Integer, Integer> e) {
+    q.submit(e, e.getTask());
+  }
+
+  @Test
+  public void mostHitsFirst() {
+    RefreshQueue<Integer, Integer> q = queue(new RefreshQueueConfiguration.Builder());
+    submit(q, entry(1, 1));
+    submit(q, entry(2, 5));
+    submit(q, entry(3, 3));
+    clock.runPending();
+    assertEquals(Arrays.asList(2, 3, 1), started);
+    assertEquals(0, q.getSize());
+  }
+
+  @Test
+  public void rateLimit() {
+    RefreshQueue<Integer, Integer> q =
+      queue(new RefreshQueueConfiguration.Builder().maximumRefreshRate(10));
+    submit(q, entry(1, 2));
+    submit(q, entry(2, 1));
+    clock.runPending();
+    assertEquals(Arrays.asList(1), started);
+    assertEquals(START_TIME + 100, clock.scheduledTime);
+    clock.advanceAndRun(50);
+    assertEquals(Arrays.asList(1), started);
+    clock.advanceAndRun(50);
+    assertEquals(Arrays.asList(1, 2), started);
+  }
+
+  @Test
+  public void overflowExpiresFewestHits() {
+    RefreshQueue<Integer, Integer> q =
+      queue(new RefreshQueueConfiguration.Builder().capacity(2));
+    submit(q, entry(1, 2));
+    submit(q, entry(2, 1));
+    submit(q, entry(3, 3));
+    submit(q, entry(4, 0));
+    assertEquals(Arrays.asList(4), rejected);
+    clock.runPending();
+    assertEquals(Arrays.asList(4, 2), rejected);
+    assertEquals(Arrays.asList(3, 1), started);
+    assertEquals(2, q.getShedCount());
+  }
+
+  @Test
+  public void expireWhenStaleTooLong() {
+    RefreshQueue<Integer, Integer> q = queue(new RefreshQueueConfiguration.Builder()
+      .maximumRefreshRate(1)
+      .maximumStaleDuration(Duration.ofMillis(500)));
+    submit(q, entry(1, 1));
+    submit(q, entry(2, 1));
+    clock.runPending();
+    assertEquals(Arrays.asList(1), started);
+    assertEquals(START_TIME + 500, clock.scheduledTime);
+    clock.advanceAndRun(499);
+    assertTrue(rejected.isEmpty());
+    clock.advanceAndRun(1);
+    assertEquals(Arrays.asList(2), rejected);
+    assertEquals(Arrays.asList(1), started);
+    assertEquals(1, q.getStaleExpiredCount());
+  }
+
+  /**
+   * Entries with more hits are always started first, but an entry with fewer hits
+   * still expires at its deadline.
+   */
+  @Test
+  public void expireLowPriorityWhenStale() {
+    RefreshQueue<Integer, Integer> q = queue(new RefreshQueueConfiguration.Builder()
+      .maximumRefreshRate(1)
+      .maximumStaleDuration(Duration.ofMillis(1500)));
+    submit(q, entry(1, 1));
+    submit(q, entry(2, 10));
+    clock.runPending();
+    submit(q, entry(3, 10));
+    clock.advanceAndRun(1000);
+    submit(q, entry(4, 10));
+    clock.advanceAndRun(500);
+    assertEquals(Arrays.asList(2, 3), started);
+    assertEquals(Arrays.asList(1), rejected);
+    assertEquals(1, q.getStaleExpiredCount());
+    clock.advanceAndRun(500);
+    assertEquals(Arrays.asList(2, 3, 4), started);
+    assertEquals(0, q.getSize());
+  }
+
+  @Test
+  public void retryAfterReject() {
+    RefreshQueue<Integer, Integer> q = queue(new RefreshQueueConfiguration.Builder());
+    rejectCount = 1;
+    submit(q, entry(1, 1));
+    clock.runPending();
+    assertTrue(started.isEmpty());
+    assertEquals(START_TIME + RefreshQueue.RETRY_MILLIS, clock.scheduledTime);
+    clock.advanceAndRun(RefreshQueue.RETRY_MILLIS);
+    assertEquals(Arrays.asList(1), started);
+  }
+
+  @Test
+  public void ignoreModifiedEntry() {
+    RefreshQueue<Integer, Integer> q = queue(new RefreshQueueConfiguration.Builder());
+    Entry<Integer, Integer> e = entry(1, 1);
+    submit(q, e);
+    e.setTask(null);
+    clock.runPending();
+    assertTrue(started.isEmpty());
+    assertTrue(rejected.isEmpty());
+  }
+
+  @Test
+  public void closeDropsQueued() {
+    RefreshQueue<Integer, Integer> q = queue(new RefreshQueueConfiguration.Builder());
+    submit(q, entry(1, 1));
+    q.close();
+    clock.runPending();
+    submit(q, entry(2, 1));
+    assertTrue(started.isEmpty());
+    assertEquals(0, q.getSize());
+  }
+
+  @Test
+  public void refreshViaCache() throws Exception {
+    final AtomicInteger loads = new AtomicInteger();
+    Cache<Integer, Integer> c = Cache2kBuilder.of(Integer.class, Integer.class)
+      .expireAfterWrite(50, TimeUnit.MILLISECONDS)
+      .refreshAhead(true)
+      .loader(new CacheLoader<Integer, Integer>() {
+        @Override
+        public Integer load(Integer key) {
+          return loads.incrementAndGet();
+        }
+      })
+      .with(new RefreshQueueConfiguration.Builder().maximumRefreshRate(100))
+      .build();
+    assertNotNull(c.requestInterface(HeapCache.class).refreshQueue);
+    c.get(1);
+    long deadline = System.currentTimeMillis() + TestingParameters.MAX_FINISH_WAIT_MILLIS;
+    while (loads.get() < 2 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertTrue(loads.get() >= 2);
+    c.close();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void illegalCapacity() {
+    queue(new RefreshQueueConfiguration.Builder().capacity(0));
+  }
+
+  /**
+   * Keeps the executed and the scheduled task until the test runs them.
+   */
+  static class ManualClock implements InternalClock, Scheduler {
+
+    long time = START_TIME;
+    final List<Runnable> pending = new ArrayList<Runnable>();
+    Runnable scheduled;
+    long scheduledTime = Long.MAX_VALUE;
+
+    void runPending() {
+      while (!pending.isEmpty()) {
+        pending.remove(0).run();
+      }
+    }
+
+    void advanceAndRun(long millis) {
+      time += millis;
+      if (scheduled != null && scheduledTime <= time) {
+        Runnable r = scheduled;
+        scheduled = null;
+        scheduledTime = Long.MAX_VALUE;
+        r.run();
+      }
+      runPending();
+    }
+
+    @Override
+    public long millis() {
+      return time;
+    }
+
+    @Override
+    public void sleep(long millis) {
+      time += millis;
+    }
+
+    @Override
+    public void schedule(Runnable runnable, long millis) {
+      scheduled = runnable;
+      scheduledTime = millis;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+      pending.add(command);
+    }
+
+  }
+
+}
@@ -0,0 +1,168 @@
+package org.cache2k.core;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.Cache;
+import org.cache2k.core.api.InternalCache;
+import org.cache2k.core.api.InternalCacheInfo;
+import org.cache2k.core.concurrency.Job;
+import org.cache2k.test.util.Condition;
+import org.cache2k.test.util.TestingBase;
+import org.cache2k.testing.category.FastTests;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the segment count change of the eviction.
+ *
+ * @author Jens Wilke
+ */
+@Category(FastTests.class)
+public class SegmentedEvictionTest extends TestingBase {
+
+  private static final int CAPACITY = 10000;
+
+  private boolean adaptiveSegmentCount;
+
+  /**
+   * The adaptive segment count is opt-in.
+   */
+  @Before
+  public void enableAdaptiveSegmentCount() {
+    adaptiveSegmentCount = HeapCache.TUNABLE.adaptiveSegmentCount;
+    HeapCache.TUNABLE.adaptiveSegmentCount = true;
+  }
+
+  @After
+  public void restoreAdaptiveSegmentCount() {
+    HeapCache.TUNABLE.adaptiveSegmentCount = adaptiveSegmentCount;
+  }
+
+  private Cache<Integer, Integer> buildCache() {
+    return builder(Integer.class, Integer.class)
+      .eternal(true)
+      .entryCapacity(CAPACITY)
+      .build();
+  }
+
+  private static SegmentedEviction eviction(Cache<Integer, Integer> c) {
+    return (SegmentedEviction) c.requestInterface(InternalCache.class).getEviction();
+  }
+
+  private static boolean changeSegmentCount(Cache<Integer, Integer> c, final int count) {
+    final SegmentedEviction eviction = eviction(c);
+    return ((HeapCache<?, ?>) c.requestInterface(HeapCache.class)).executeWithGlobalLock(new Job<Boolean>() {
+      @Override
+      public Boolean call() {
+        return eviction.changeSegmentCount(count);
+      }
+    });
+  }
+
+  /**
+   * Entries move to the new segments, the counters stay consistent. The segment
+   * count may shrink in the background, so only counts above the initial count are
+   * requested.
+   */
+  @Test
+  public void changeSegmentCountKeepsEntries() {
+    Cache<Integer, Integer> c = buildCache();
+    for (int i = 0; i < CAPACITY * 2; i++) {
+      c.put(i, i);
+    }
+    InternalCacheInfo info = getInfo();
+    assertTrue(changeSegmentCount(c, 4));
+    assertEquals(4, eviction(c).getSegmentCount());
+    InternalCacheInfo info2 = getInfo();
+    assertEquals(info.getNewEntryCount(), info2.getNewEntryCount());
+    assertEquals(info.getEvictedCount(), info2.getEvictedCount());
+    assertEquals(CAPACITY, info2.getSize());
+    assertEquals(CAPACITY, eviction(c).getMaxSize());
+    for (int i = CAPACITY * 2; i < CAPACITY * 3; i++) {
+      c.put(i, i);
+    }
+    assertEquals(CAPACITY, countEntriesViaIteration());
+    assertTrue(changeSegmentCount(c, 8));
+    assertFalse(changeSegmentCount(c, 8));
+    c.remove(CAPACITY * 3 - 1);
+    assertEquals(CAPACITY - 1, countEntriesViaIteration());
+    assertEquals(1, getInfo().getRemoveCount());
+  }
+
+  /**
+   * The open addressing hash table contains tombstones of removed entries, which
+   * must not be moved to the new segments.
+   */
+  @Test
+  public void changeSegmentCountWithTombstones() {
+    boolean openAddressingHash = HeapCache.TUNABLE.openAddressingHash;
+    HeapCache.TUNABLE.openAddressingHash = true;
+    Cache<Integer, Integer> c;
+    try {
+      c = buildCache();
+    } finally {
+      HeapCache.TUNABLE.openAddressingHash = openAddressingHash;
+    }
+    for (int i = 0; i < CAPACITY / 2; i++) {
+      c.put(i, i);
+    }
+    for (int i = 0; i < CAPACITY / 2; i += 2) {
+      c.remove(i);
+    }
+    InternalCacheInfo info = getInfo();
+    assertTrue(changeSegmentCount(c, 4));
+    assertNull("tombstone not inserted", OpenHash2.TOMBSTONE.next);
+    InternalCacheInfo info2 = getInfo();
+    assertEquals(info.getNewEntryCount(), info2.getNewEntryCount());
+    assertEquals(CAPACITY / 4, info2.getSize());
+    assertTrue(changeSegmentCount(c, 8));
+    assertNull(OpenHash2.TOMBSTONE.next);
+    for (int i = CAPACITY; i < CAPACITY * 3; i++) {
+      c.put(i, i);
+    }
+    assertEquals(getInfo().getSize(), countEntriesViaIteration());
+    assertTrue(getInfo().getSize() <= CAPACITY);
+  }
+
+  /**
+   * A single thread has no lock contention, the segment count goes down to one.
+   * Each halving needs several consecutive checks.
+   */
+  @Test
+  public void shrinkWithoutContention() {
+    final Cache<Integer, Integer> c = buildCache();
+    int max = SegmentedEviction.CHECK_INTERVAL * 1000;
+    for (int i = 0; i < max && eviction(c).getSegmentCount() > 1; i++) {
+      c.put(i, i);
+    }
+    await(new Condition() {
+      @Override
+      public boolean check() {
+        return eviction(c).getSegmentCount() == 1;
+      }
+    });
+  }
+
+}
@@ -0,0 +1,135 @@
+package org.cache2k.core;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.Cache;
+import org.cache2k.Cache2kBuilder;
+import org.cache2k.io.CacheLoader;
+import org.cache2k.testing.category.FastTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the concurrency limit of {@link VirtualThreadExecutor} with platform threads
+ * and the cache configuration, which works on every runtime.
+ *
+ * @author Jens Wilke
+ */
+@Category(FastTests.class)
+public class VirtualThreadExecutorTest {
+
+  @Test
+  public void rejectWhenLimitReached() throws Exception {
+    VirtualThreadExecutor ex = new VirtualThreadExecutor(2, Executors.defaultThreadFactory());
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(2);
+    Runnable blocking = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          release.await();
+        } catch (InterruptedException ignore) {
+          Thread.currentThread().interrupt();
+        }
+        done.countDown();
+      }
+    };
+    ex.execute(blocking);
+    ex.execute(blocking);
+    assertEquals(2, ex.getActiveCount());
+    try {
+      ex.execute(blocking);
+      fail("exception expected");
+    } catch (RejectedExecutionException expected) {
+    }
+    release.countDown();
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    final CountDownLatch again = new CountDownLatch(1);
+    for (;;) {
+      try {
+        ex.execute(new Runnable() {
+          @Override
+          public void run() {
+            again.countDown();
+          }
+        });
+        break;
+      } catch (RejectedExecutionException ignore) {
+        Thread.yield();
+      }
+    }
+    assertTrue(again.await(5, TimeUnit.SECONDS));
+  }
+
+  @Test(expected = RejectedExecutionException.class)
+  public void rejectWhenClosed() {
+    VirtualThreadExecutor ex = new VirtualThreadExecutor(1, Executors.defaultThreadFactory());
+    ex.close();
+    ex.execute(new Runnable() {
+      @Override
+      public void run() { }
+    });
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void illegalConcurrency() {
+    new VirtualThreadConfiguration.Builder().maximumConcurrency(0);
+  }
+
+  /**
+   * Uses virtual threads on Java 21, otherwise falls back to the loader thread pool,
+   * which is created lazily, as without the configuration.
+   */
+  @Test
+  public void loadWithConfiguration() throws Exception {
+    Cache<Integer, Integer> c = Cache2kBuilder.of(Integer.class, Integer.class)
+      .loader(new CacheLoader<Integer, Integer>() {
+        @Override
+        public Integer load(Integer key) {
+          return key * 2;
+        }
+      })
+      .with(new VirtualThreadConfiguration.Builder().maximumConcurrency(10))
+      .build();
+    HeapCache<?, ?> hc = c.requestInterface(HeapCache.class);
+    boolean available = VirtualThreadExecutor.isAvailable();
+    if (available) {
+      assertTrue(hc.loaderExecutor instanceof VirtualThreadExecutor);
+    } else {
+      assertFalse(hc.loaderExecutor instanceof ExclusiveExecutor);
+    }
+    c.loadAll(Arrays.asList(1, 2, 3)).get();
+    assertEquals((Integer) 6, c.peek(3));
+    if (!available) {
+      assertTrue(hc.loaderExecutor instanceof ExclusiveExecutor);
+    }
+    c.close();
+  }
+
+}
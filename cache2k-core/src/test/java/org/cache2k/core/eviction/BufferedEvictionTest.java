@@ -0,0 +1,96 @@
+package org.cache2k.core.eviction;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.Cache;
+import org.cache2k.testing.category.FastTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.*;
+
+/**
+ * Run the eviction access patterns with buffered inserts and removals and check
+ * that the buffers are drained correctly with concurrent inserts.
+ *
+ * @author Jens Wilke
+ */
+@Category(FastTests.class)
+public class BufferedEvictionTest extends ClockProEvictionTest {
+
+  @Override
+  protected Cache<Integer, Integer> provideCache(long size) {
+    return builder(Integer.class, Integer.class)
+      .eternal(true)
+      .entryCapacity(size)
+      .with(new BufferedEvictionConfiguration.Builder()
+        .stripeCount(2)
+        .bufferSize(4))
+      .build();
+  }
+
+  @Test
+  public void removeAndInsert() {
+    final int size = 100;
+    Cache<Integer, Integer> c = provideCache(size);
+    for (int i = 0; i < size; i++) {
+      c.put(i, i);
+    }
+    for (int i = 0; i < size; i += 2) {
+      c.remove(i);
+    }
+    for (int i = size; i < size * 2; i++) {
+      c.put(i, i);
+    }
+    assertEquals(size, countEntriesViaIteration());
+    assertEquals(size * 2, getInfo().getNewEntryCount());
+    assertEquals(size / 2, getInfo().getRemoveCount());
+  }
+
+  @Test
+  public void concurrentInserts() throws Exception {
+    final int size = 1000;
+    final int threadCount = 4;
+    final int insertsPerThread = 10000;
+    final Cache<Integer, Integer> c = provideCache(size);
+    Thread[] threads = new Thread[threadCount];
+    for (int i = 0; i < threadCount; i++) {
+      final int offset = i * insertsPerThread;
+      threads[i] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int k = offset; k < offset + insertsPerThread; k++) {
+            c.put(k, k);
+            if (k % 7 == 0) {
+              c.remove(k - 3);
+            }
+          }
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertTrue(countEntriesViaIteration() <= size + threadCount);
+  }
+
+}
@@ -0,0 +1,93 @@
+package org.cache2k.core.eviction;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.testing.category.FastTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Jens Wilke
+ */
+@Category(FastTests.class)
+public class GhostTableTest {
+
+  private final GhostTable ghosts = new GhostTable(63);
+
+  private void checkIntegrity() {
+    assertEquals(ghosts.size(), ghosts.countInTable());
+    assertTrue(ghosts.checkRingInTable());
+  }
+
+  @Test
+  public void oldestIsRemoved() {
+    for (int i = 1; i <= 100; i++) {
+      ghosts.add(i * 7, 50);
+    }
+    checkIntegrity();
+    assertEquals(50, ghosts.size());
+    for (int i = 1; i <= 50; i++) {
+      assertFalse(ghosts.contains(i * 7));
+    }
+    for (int i = 51; i <= 100; i++) {
+      assertTrue(ghosts.contains(i * 7));
+    }
+  }
+
+  @Test
+  public void duplicateIsIgnored() {
+    ghosts.add(123, 10);
+    ghosts.add(123, 10);
+    assertEquals(1, ghosts.size());
+    checkIntegrity();
+  }
+
+  @Test
+  public void hashZero() {
+    ghosts.add(0, 10);
+    assertTrue(ghosts.contains(0));
+    ghosts.trim(0);
+    assertFalse(ghosts.contains(0));
+    assertEquals(0, ghosts.size());
+  }
+
+  /**
+   * Hashes with identical low bits collide in the table. Removal needs to
+   * keep the remaining hashes reachable.
+   */
+  @Test
+  public void collisionsAndTrim() {
+    for (int i = 0; i < 1000; i++) {
+      ghosts.add(i << 16 | 5, 100);
+      ghosts.add(i * 31, 100);
+    }
+    checkIntegrity();
+    assertEquals(100, ghosts.size());
+    ghosts.trim(10);
+    checkIntegrity();
+    assertEquals(10, ghosts.size());
+    assertTrue(ghosts.contains(999 * 31));
+    assertTrue(ghosts.contains(999 << 16 | 5));
+  }
+
+}
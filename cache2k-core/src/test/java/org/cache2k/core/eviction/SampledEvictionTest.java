@@ -0,0 +1,132 @@
+package org.cache2k.core.eviction;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.Cache;
+import org.cache2k.core.Entry;
+import org.cache2k.core.HeapCacheListener;
+import org.cache2k.core.api.InternalCacheInfo;
+import org.cache2k.core.concurrency.Job;
+import org.cache2k.testing.category.FastTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.concurrent.Executor;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.*;
+
+/**
+ * Run the eviction access patterns with the sampled eviction and check that
+ * entries with hits are preferred.
+ *
+ * @author Jens Wilke
+ */
+@Category(FastTests.class)
+public class SampledEvictionTest extends ClockProEvictionTest {
+
+  @Override
+  protected Cache<Integer, Integer> provideCache(long size) {
+    return builder(Integer.class, Integer.class)
+      .eternal(true)
+      .entryCapacity(size)
+      .with(new SampledEvictionConfiguration.Builder())
+      .build();
+  }
+
+  @Test
+  public void keepEntriesWithHits() {
+    final int size = 500;
+    final int hotCount = size / 10;
+    Cache<Integer, Integer> c = provideCache(size);
+    for (int i = 0; i < hotCount; i++) {
+      c.put(i, i);
+    }
+    int key = size;
+    for (int j = 0; j < 20; j++) {
+      for (int k = 0; k < 3; k++) {
+        for (int i = 0; i < hotCount; i++) {
+          c.get(i);
+        }
+      }
+      for (int i = 0; i < size; i++) {
+        c.put(key++, 1);
+      }
+    }
+    InternalCacheInfo info = getInfo();
+    assertEquals(info.getGetCount() - info.getMissCount(), info.getHeapHitCount());
+    int hotPresent = 0;
+    for (int i = 0; i < hotCount; i++) {
+      if (c.containsKey(i)) {
+        hotPresent++;
+      }
+    }
+    assertThat(hotPresent, greaterThan(hotCount * 8 / 10));
+    assertEquals(size, countEntriesViaIteration());
+  }
+
+  @Test
+  public void clear() {
+    Cache<Integer, Integer> c = provideCache(100);
+    for (int i = 0; i < 200; i++) {
+      c.put(i, i);
+    }
+    c.clear();
+    assertEquals(0, countEntriesViaIteration());
+    for (int i = 0; i < 200; i++) {
+      c.put(i, i);
+    }
+    assertEquals(100, countEntriesViaIteration());
+  }
+
+  /**
+   * Entries known to the eviction but not present in the hash table cannot be
+   * sampled. The scan stops after one pass and the eviction finishes without a candidate.
+   */
+  @Test
+  public void noCandidateInHashTable() {
+    final Entry[] table = new Entry[64];
+    HeapCacheForEviction heapCache = new HeapCacheForEviction() {
+      @Override
+      public int getHashTableCount() { return 2; }
+      @Override
+      public Entry[] getHashEntries(int tableIndex) { return table; }
+      @Override
+      public void removeEntryForEviction(Entry e) { fail("no entry to remove"); }
+      @Override
+      public Executor getExecutor() { throw new UnsupportedOperationException(); }
+      @Override
+      public Object executeWithGlobalLock(Job job) {
+        throw new UnsupportedOperationException();
+      }
+    };
+    SampledEviction eviction = new SampledEviction(heapCache, HeapCacheListener.NO_OPERATION,
+      1, null, 0, true, 8);
+    for (int i = 0; i < 3; i++) {
+      Entry e = new Entry(i, i);
+      eviction.submitWithoutTriggeringEviction(e);
+    }
+    eviction.evictEventually();
+    assertEquals(3, eviction.getSize());
+    assertEquals(0, eviction.getEvictedCount());
+  }
+
+}
@@ -0,0 +1,103 @@
+package org.cache2k.core.eviction;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.Cache;
+import org.cache2k.testing.category.FastTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.*;
+
+/**
+ * Run the eviction access patterns with W-TinyLFU eviction and check scan resistance.
+ *
+ * @author Jens Wilke
+ */
+@Category(FastTests.class)
+public class TinyLfuEvictionTest extends ClockProEvictionTest {
+
+  @Override
+  protected Cache<Integer, Integer> provideCache(long size) {
+    return builder(Integer.class, Integer.class)
+      .eternal(true)
+      .entryCapacity(size)
+      .with(new TinyLfuConfiguration.Builder())
+      .build();
+  }
+
+  /**
+   * A working set stays in the cache while a long scan of keys that are accessed
+   * only once passes through. The working set is accessed during the scan, but with
+   * a reuse distance above the capacity, so recency alone would not keep it.
+   */
+  @Test
+  public void scanResistance() {
+    final int size = 1000;
+    final int hotCount = size / 2;
+    Cache<Integer, Integer> c = provideCache(size);
+    int scanKey = size;
+    for (int j = 0; j < 40; j++) {
+      for (int i = 0; i < hotCount; i++) {
+        if (c.peek(i) == null) {
+          c.put(i, i);
+        }
+        for (int k = 0; k < 4; k++) {
+          c.put(scanKey++, 1);
+        }
+      }
+    }
+    int hotPresent = 0;
+    for (int i = 0; i < hotCount; i++) {
+      if (c.containsKey(i)) {
+        hotPresent++;
+      }
+    }
+    assertThat(hotPresent, greaterThan(hotCount * 9 / 10));
+    assertEquals(size, countEntriesViaIteration());
+  }
+
+  @Test
+  public void sketchFrequency() {
+    FrequencySketch sketch = new FrequencySketch(100);
+    assertEquals(0, sketch.frequency(4711));
+    sketch.increment(4711);
+    sketch.increment(4711, 3);
+    assertEquals(4, sketch.frequency(4711));
+    sketch.increment(4711, 100);
+    assertEquals(15, sketch.frequency(4711));
+  }
+
+  /**
+   * Counters are halved after the sample period, so old accesses lose weight.
+   */
+  @Test
+  public void sketchAging() {
+    FrequencySketch sketch = new FrequencySketch(16);
+    sketch.increment(4711, 8);
+    for (int i = 0; i < 1000; i++) {
+      sketch.increment(i * 31 + 100000);
+    }
+    assertThat(8, greaterThan(sketch.frequency(4711)));
+  }
+
+}
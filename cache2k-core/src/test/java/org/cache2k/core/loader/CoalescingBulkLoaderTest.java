@@ -0,0 +1,197 @@
+package org.cache2k.core.loader;
+
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.Cache;
+import org.cache2k.io.BulkCacheLoader;
+import org.cache2k.io.CacheLoader;
+import org.cache2k.io.CacheLoaderException;
+import org.cache2k.test.util.TestingBase;
+import org.cache2k.testing.category.FastTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+/**
+ * Test coalescing of concurrent loads into bulk requests.
+ *
+ * @author Jens Wilke
+ */
+@Category(FastTests.class)
+public class CoalescingBulkLoaderTest extends TestingBase {
+
+  private final List<Set<Integer>> requests =
+    Collections.synchronizedList(new ArrayList<Set<Integer>>());
+
+  private final BulkCacheLoader<Integer, Integer> doubling =
+    new BulkCacheLoader<Integer, Integer>() {
+      @Override
+      public Map<Integer, Integer> loadAll(Set<Integer> keys) {
+        requests.add(new HashSet<Integer>(keys));
+        Map<Integer, Integer> map = new HashMap<Integer, Integer>();
+        for (Integer k : keys) {
+          map.put(k, k * 2);
+        }
+        return map;
+      }
+    };
+
+  private Cache<Integer, Integer> coalescingCache(CacheLoader<Integer, Integer> loader,
+                                                  Duration window, int maxBatchSize) {
+    Cache<Integer, Integer> c = builder(Integer.class, Integer.class)
+      .loader(loader)
+      .with(new CoalescingLoaderConfiguration.Builder()
+        .window(window)
+        .maxBatchSize(maxBatchSize))
+      .build();
+    cache = c;
+    return c;
+  }
+
+  private static List<FutureTask<Integer>> startGets(final Cache<Integer, Integer> c,
+                                                     int count) {
+    List<FutureTask<Integer>> tasks = new ArrayList<FutureTask<Integer>>();
+    for (int i = 0; i < count; i++) {
+      final int key = i;
+      FutureTask<Integer> task = new FutureTask<Integer>(new Callable<Integer>() {
+        @Override
+        public Integer call() {
+          return c.get(key);
+        }
+      });
+      tasks.add(task);
+      new Thread(task).start();
+    }
+    return tasks;
+  }
+
+  /**
+   * The window is much longer than the test timeout, so the batch is only sent
+   * because the maximum size is reached. A blocked load of another key is in progress,
+   * so the batch waits for other loads to join.
+   */
+  @Test
+  public void fullBatchIsLoadedAtOnce() throws Exception {
+    final CountDownLatch blockedLoadStarted = new CountDownLatch(1);
+    final CountDownLatch releaseBlockedLoad = new CountDownLatch(1);
+    final Cache<Integer, Integer> c =
+      coalescingCache(new BulkCacheLoader<Integer, Integer>() {
+        @Override
+        public Map<Integer, Integer> loadAll(Set<Integer> keys) throws Exception {
+          if (keys.contains(-1)) {
+            blockedLoadStarted.countDown();
+            releaseBlockedLoad.await();
+          }
+          return doubling.loadAll(keys);
+        }
+      }, Duration.ofMinutes(5), 10);
+    FutureTask<Integer> blocked = new FutureTask<Integer>(new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        return c.get(-1);
+      }
+    });
+    new Thread(blocked).start();
+    blockedLoadStarted.await();
+    List<FutureTask<Integer>> tasks = startGets(c, 10);
+    for (int i = 0; i < tasks.size(); i++) {
+      assertEquals((Integer) (i * 2), tasks.get(i).get());
+    }
+    releaseBlockedLoad.countDown();
+    assertEquals((Integer) (-2), blocked.get());
+    assertEquals(2, requests.size());
+    assertEquals(10, requests.get(0).size());
+  }
+
+  /**
+   * The window is much longer than the test timeout. A load without other loads in
+   * progress is sent without waiting.
+   */
+  @Test
+  public void singleLoadNotDelayed() {
+    Cache<Integer, Integer> c = coalescingCache(doubling, Duration.ofMinutes(5), 100);
+    assertEquals((Integer) 14, c.get(7));
+    assertEquals((Integer) 16, c.get(8));
+    assertEquals(2, requests.size());
+  }
+
+  @Test
+  public void loadAfterWindow() {
+    Cache<Integer, Integer> c = coalescingCache(doubling, Duration.ofMillis(5), 100);
+    assertEquals((Integer) 14, c.get(7));
+    assertEquals(1, requests.size());
+    assertEquals(Collections.singleton(7), requests.get(0));
+  }
+
+  @Test
+  public void getAllNotDelayed() {
+    Cache<Integer, Integer> c = coalescingCache(doubling, Duration.ofMinutes(5), 100);
+    Map<Integer, Integer> map = c.getAll(asList(1, 2, 3));
+    assertEquals(3, map.size());
+    assertEquals(1, requests.size());
+  }
+
+  @Test
+  public void exceptionForAllKeys() throws Exception {
+    Cache<Integer, Integer> c = coalescingCache(new BulkCacheLoader<Integer, Integer>() {
+      @Override
+      public Map<Integer, Integer> loadAll(Set<Integer> keys) {
+        throw new IllegalStateException("bulk failed");
+      }
+    }, Duration.ofMillis(5), 3);
+    for (FutureTask<Integer> task : startGets(c, 3)) {
+      try {
+        task.get();
+        fail("exception expected");
+      } catch (ExecutionException ex) {
+        assertTrue(ex.getCause() instanceof CacheLoaderException);
+        assertTrue(ex.getCause().getCause() instanceof IllegalStateException);
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void bulkLoaderRequired() {
+    coalescingCache(new CacheLoader<Integer, Integer>() {
+      @Override
+      public Integer load(Integer key) {
+        return key;
+      }
+    }, Duration.ofMillis(1), 100);
+  }
+
+}
@@ -0,0 +1,254 @@
+package org.cache2k.core.offheap;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.Cache;
+import org.cache2k.Weigher;
+import org.cache2k.core.CacheStorageException;
+import org.cache2k.io.CacheLoader;
+import org.cache2k.test.util.TestingBase;
+import org.cache2k.testing.category.FastTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the off heap store and caches with off heap values.
+ *
+ * @author Jens Wilke
+ */
+@Category(FastTests.class)
+public class OffHeapTest extends TestingBase {
+
+  final OffHeapStore store = new OffHeapStore(JavaValueSerializer.INSTANCE, 4096);
+
+  @Test
+  public void storeReadFree() {
+    OffHeapValue v = store.store("hello");
+    assertEquals("hello", v.read());
+    assertEquals(Integer.highestOneBit(v.getLength() - 1) * 2, v.getSlotSize());
+    assertEquals(v.getSlotSize(), store.getUsedBytes());
+    assertEquals(4096, store.getAllocatedBytes());
+    v.free();
+    assertNull(v.read());
+    assertEquals(0, store.getUsedBytes());
+    v.free();
+    assertEquals(0, store.getUsedBytes());
+  }
+
+  /**
+   * A freed slot is reused. The old handle must not see the new value.
+   */
+  @Test
+  public void reusedSlotInvalidatesHandle() {
+    OffHeapValue v1 = store.store("abc");
+    v1.free();
+    OffHeapValue v2 = store.store("xyz");
+    assertSame(v1.slab, v2.slab);
+    assertEquals(v1.slot, v2.slot);
+    assertNull(v1.read());
+    v1.free();
+    assertEquals("xyz", v2.read());
+  }
+
+  @Test
+  public void manyValuesInMultipleSlabs() {
+    OffHeapValue[] values = new OffHeapValue[1000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = store.store(i);
+    }
+    assertTrue(store.getAllocatedBytes() > 4096);
+    for (int i = 0; i < values.length; i++) {
+      assertEquals(i, values[i].read());
+    }
+  }
+
+  @Test
+  public void clearInvalidates() {
+    OffHeapValue v = store.store("hello");
+    store.clear();
+    assertNull(v.read());
+    assertEquals(0, store.getAllocatedBytes());
+    v.free();
+    assertEquals(0, store.getUsedBytes());
+  }
+
+  @Test(expected = CacheStorageException.class)
+  public void valueExceedsSlabSize() {
+    store.store(new byte[5000]);
+  }
+
+  @Test(expected = CacheStorageException.class)
+  public void notSerializable() {
+    store.store(new Object());
+  }
+
+  Cache<Integer, String> offHeapCache(long maximumBytes) {
+    Cache<Integer, String> c = builder(Integer.class, String.class)
+      .with(new OffHeapConfiguration.Builder()
+        .maximumBytes(maximumBytes)
+        .slabSize(4096))
+      .strictEviction(true)
+      .eternal(true)
+      .build();
+    cache = c;
+    return c;
+  }
+
+  @Test
+  public void putGetRemove() {
+    Cache<Integer, String> c = offHeapCache(1000000);
+    c.put(1, "one");
+    assertEquals("one", c.get(1));
+    assertEquals("one", c.peekEntry(1).getValue());
+    assertTrue(getInfo().getTotalWeight() > 0);
+    c.put(1, "eins");
+    assertEquals("eins", c.peek(1));
+    assertTrue(c.replaceIfEquals(1, "eins", "uno"));
+    assertEquals("uno", c.peek(1));
+    c.remove(1);
+    assertNull(c.peek(1));
+    assertEquals(0, getInfo().getTotalWeight());
+  }
+
+  /**
+   * An update frees the previous off heap value while readers may still hold its handle.
+   * A reader must see the new value and never {@code null}.
+   */
+  @Test
+  public void concurrentPutGetNeverNull() throws Exception {
+    final Cache<Integer, String> c = offHeapCache(1000000);
+    c.put(1, "value-0");
+    final AtomicBoolean stop = new AtomicBoolean();
+    final AtomicInteger nullReads = new AtomicInteger();
+    Thread[] readers = new Thread[2];
+    for (int t = 0; t < readers.length; t++) {
+      readers[t] = new Thread() {
+        @Override
+        public void run() {
+          while (!stop.get()) {
+            if (c.get(1) == null) {
+              nullReads.incrementAndGet();
+            }
+          }
+        }
+      };
+      readers[t].start();
+    }
+    try {
+      for (int i = 1; i < 100000; i++) {
+        c.put(1, "value-" + i);
+      }
+    } finally {
+      stop.set(true);
+      for (Thread t : readers) {
+        t.join();
+      }
+    }
+    assertEquals(0, nullReads.get());
+  }
+
+  @Test
+  public void evictionByBytes() {
+    long maximumBytes = 100 * 128;
+    Cache<Integer, String> c = offHeapCache(maximumBytes);
+    for (int i = 0; i < 1000; i++) {
+      c.put(i, "value" + i);
+    }
+    assertTrue(getInfo().getTotalWeight() <= maximumBytes);
+    assertTrue(getInfo().getSize() < 1000);
+    assertEquals("value999", c.peek(999));
+  }
+
+  @Test
+  public void loadAndClear() {
+    Cache<Integer, String> c = builder(Integer.class, String.class)
+      .with(new OffHeapConfiguration.Builder().maximumBytes(1000000))
+      .loader(new CacheLoader<Integer, String>() {
+        @Override
+        public String load(Integer key) {
+          return "loaded" + key;
+        }
+      })
+      .eternal(true)
+      .build();
+    cache = c;
+    assertEquals("loaded1", c.get(1));
+    c.clear();
+    assertNull(c.peek(1));
+    assertEquals("loaded1", c.get(1));
+  }
+
+  /**
+   * The loaded value is not stored and the exception is propagated.
+   */
+  @Test(expected = CacheStorageException.class)
+  public void loadedValueNotSerializable() {
+    Cache<Integer, Object> c = builder(Integer.class, Object.class)
+      .with(new OffHeapConfiguration.Builder().maximumBytes(1000000))
+      .loader(new CacheLoader<Integer, Object>() {
+        @Override
+        public Object load(Integer key) {
+          return new Object();
+        }
+      })
+      .eternal(true)
+      .build();
+    cache = c;
+    c.get(1);
+  }
+
+  @Test(expected = CacheStorageException.class)
+  public void putNotSerializable() {
+    Cache<Integer, Object> c = builder(Integer.class, Object.class)
+      .with(new OffHeapConfiguration.Builder().maximumBytes(1000000))
+      .eternal(true)
+      .build();
+    cache = c;
+    c.put(1, new Object());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void weigherNotSupported() {
+    cache = builder(Integer.class, String.class)
+      .with(new OffHeapConfiguration.Builder().maximumBytes(1000000))
+      .weigher(new Weigher<Integer, String>() {
+        @Override
+        public int weigh(Integer key, String value) {
+          return 1;
+        }
+      })
+      .maximumWeight(1000)
+      .build();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void maximumBytesMissing() {
+    cache = builder(Integer.class, String.class)
+      .with(new OffHeapConfiguration.Builder())
+      .build();
+  }
+
+}
@@ -0,0 +1,128 @@
+package org.cache2k.core.storage;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.Cache;
+import org.cache2k.core.Entry;
+import org.cache2k.core.HeapCache;
+import org.cache2k.test.util.TestingBase;
+import org.cache2k.testing.category.FastTests;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test writing and restoring cache snapshots.
+ *
+ * @author Jens Wilke
+ */
+@Category(FastTests.class)
+public class SnapshotTest extends TestingBase {
+
+  /**
+   * Outer rule, so the files are removed after the cache cleanup.
+   */
+  @Rule(order = Integer.MIN_VALUE)
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  Cache<Integer, String> snapshotCache(String name, File dir) {
+    Cache<Integer, String> c = builder(name, Integer.class, String.class)
+      .with(new SnapshotConfiguration.Builder().directory(dir.getPath()))
+      .expireAfterWrite(5, TimeUnit.MINUTES)
+      .build();
+    cache = c;
+    return c;
+  }
+
+  int countHot() {
+    int count = 0;
+    Iterator<Entry> it = ((HeapCache) cache).iterateAllHeapEntries();
+    while (it.hasNext()) {
+      if (it.next().isHot()) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Test
+  public void restoreAfterClose() throws Exception {
+    String name = generateUniqueCacheName(this);
+    File dir = folder.newFolder();
+    Cache<Integer, String> c = snapshotCache(name, dir);
+    int count = CacheSnapshot.ENTRIES_PER_BLOCK * 3 / 2;
+    for (int i = 0; i < count; i++) {
+      c.put(i, "value" + i);
+    }
+    long size = getInfo().getSize();
+    int hot = countHot();
+    assertTrue(hot > 0);
+    closeCache();
+    File file = new File(dir, name + ".snapshot");
+    assertTrue(file.exists());
+    c = snapshotCache(name, dir);
+    assertFalse(file.exists());
+    assertEquals(size, getInfo().getSize());
+    assertTrue("hot entries stay hot", countHot() >= hot);
+    assertEquals("value" + (count - 1), c.peek(count - 1));
+    assertEquals(0, getInfo().getPutCount());
+  }
+
+  @Test
+  public void emptyCacheWritesNoSnapshot() throws Exception {
+    String name = generateUniqueCacheName(this);
+    File dir = folder.newFolder();
+    snapshotCache(name, dir);
+    closeCache();
+    assertFalse(new File(dir, name + ".snapshot").exists());
+  }
+
+  @Test
+  public void damagedSnapshotIgnored() throws Exception {
+    String name = generateUniqueCacheName(this);
+    File dir = folder.newFolder();
+    File file = new File(dir, name + ".snapshot");
+    FileOutputStream out = new FileOutputStream(file);
+    out.write(new byte[]{1, 2, 3, 4, 5});
+    out.close();
+    Cache<Integer, String> c = snapshotCache(name, dir);
+    assertFalse(file.exists());
+    assertEquals(0, getInfo().getSize());
+    c.put(1, "one");
+    assertEquals("one", c.peek(1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void directoryMissing() {
+    cache = builder(Integer.class, String.class)
+      .with(new SnapshotConfiguration.Builder())
+      .build();
+  }
+
+}
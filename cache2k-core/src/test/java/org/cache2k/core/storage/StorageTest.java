@@ -0,0 +1,255 @@
+package org.cache2k.core.storage;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.Cache;
+import org.cache2k.Cache2kBuilder;
+import org.cache2k.core.offheap.JavaValueSerializer;
+import org.cache2k.io.CacheLoader;
+import org.cache2k.test.util.TestingBase;
+import org.cache2k.testing.category.FastTests;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the mapped log storage and caches with a storage tier.
+ *
+ * @author Jens Wilke
+ */
+@Category(FastTests.class)
+public class StorageTest extends TestingBase {
+
+  /**
+   * Outer rule, so the files are removed after the cache cleanup.
+   */
+  @Rule(order = Integer.MIN_VALUE)
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  static final long EXPIRY_MILLIS = 100;
+
+  final AtomicInteger loaderCalls = new AtomicInteger();
+
+  MappedLogStorage openStorage(File dir, int segmentSize, long maximumBytes) throws Exception {
+    MappedLogStorage s =
+      new MappedLogStorage(dir, segmentSize, maximumBytes, JavaValueSerializer.INSTANCE);
+    s.open();
+    return s;
+  }
+
+  @Test
+  public void putGetRemoveReopen() throws Exception {
+    File dir = folder.newFolder();
+    MappedLogStorage s = openStorage(dir, 4096, 100000);
+    s.put(new StoredEntry(1, "one", 123, Long.MAX_VALUE));
+    s.put(new StoredEntry(2, "two", 123, 4711));
+    s.put(new StoredEntry(1, "eins", 124, Long.MAX_VALUE));
+    assertEquals("eins", s.get(1).getValueOrException());
+    assertEquals(124, s.get(1).getCreatedOrUpdated());
+    assertEquals(4711, s.get(2).getValueExpiryTime());
+    assertTrue(s.remove(2));
+    assertFalse(s.remove(2));
+    assertNull(s.get(2));
+    s.close();
+    s = openStorage(dir, 4096, 100000);
+    assertEquals(1, s.getEntryCount());
+    assertEquals("eins", s.get(1).getValueOrException());
+    assertNull(s.get(2));
+    s.close();
+  }
+
+  /**
+   * A corrupted record stops the scan of the segment, records before it are kept.
+   */
+  @Test
+  public void corruptedRecordIgnored() throws Exception {
+    File dir = folder.newFolder();
+    MappedLogStorage s = openStorage(dir, 4096, 100000);
+    s.put(new StoredEntry(1, "one", 0, Long.MAX_VALUE));
+    s.put(new StoredEntry(2, "two", 0, Long.MAX_VALUE));
+    s.close();
+    File[] files = dir.listFiles();
+    assertEquals(1, files.length);
+    RandomAccessFile f = new RandomAccessFile(files[0], "rw");
+    f.seek(f.length() - 1);
+    long pos = f.length() - 1;
+    while (pos > 0) {
+      f.seek(pos);
+      if (f.read() != 0) {
+        f.seek(pos);
+        f.write(0x55);
+        break;
+      }
+      pos--;
+    }
+    f.close();
+    s = openStorage(dir, 4096, 100000);
+    assertEquals(1, s.getEntryCount());
+    assertEquals("one", s.get(1).getValueOrException());
+    s.close();
+  }
+
+  @Test
+  public void oldestSegmentDropped() throws Exception {
+    MappedLogStorage s = openStorage(folder.newFolder(), 1024, 4096);
+    for (int i = 0; i < 1000; i++) {
+      s.put(new StoredEntry(i, "value" + i, 0, Long.MAX_VALUE));
+    }
+    assertTrue(s.getSegmentCount() <= 4);
+    assertTrue(s.getEntryCount() < 1000);
+    assertNull(s.get(0));
+    assertEquals("value999", s.get(999).getValueOrException());
+    s.clear();
+    assertEquals(0, s.getEntryCount());
+    assertNull(s.get(999));
+    s.close();
+  }
+
+  Cache<Integer, String> storageCache(String name, File dir) {
+    return storageCache(name, dir, false);
+  }
+
+  Cache<Integer, String> storageCache(String name, File dir, boolean expiring) {
+    Cache2kBuilder<Integer, String> b = builder(name, Integer.class, String.class)
+      .with(new StorageConfiguration.Builder()
+        .directory(dir.getPath())
+        .segmentSize(64 * 1024))
+      .loader(new CacheLoader<Integer, String>() {
+        @Override
+        public String load(Integer key) {
+          loaderCalls.incrementAndGet();
+          return "loaded" + key;
+        }
+      })
+      .entryCapacity(10);
+    if (expiring) {
+      b.expireAfterWrite(EXPIRY_MILLIS, TimeUnit.MILLISECONDS);
+    } else {
+      b.eternal(true);
+    }
+    Cache<Integer, String> c = b.build();
+    cache = c;
+    return c;
+  }
+
+  @Test
+  public void evictedEntriesReadFromStorage() throws Exception {
+    Cache<Integer, String> c = storageCache(generateUniqueCacheName(this), folder.newFolder());
+    for (int i = 0; i < 100; i++) {
+      c.put(i, "value" + i);
+    }
+    assertNull(c.peek(0));
+    assertEquals("value0", c.get(0));
+    assertEquals(0, loaderCalls.get());
+    assertEquals("value0", c.peek(0));
+    assertEquals(100, getInternalCache().getTotalEntryCount());
+    assertEquals("loaded4711", c.get(4711));
+    assertEquals(1, loaderCalls.get());
+  }
+
+  /**
+   * A removed entry must not be read back from the storage.
+   */
+  @Test
+  public void removeRemovesFromStorage() throws Exception {
+    Cache<Integer, String> c = storageCache(generateUniqueCacheName(this), folder.newFolder());
+    for (int i = 0; i < 100; i++) {
+      c.put(i, "value" + i);
+    }
+    c.remove(0);
+    assertEquals("loaded0", c.get(0));
+    assertEquals(1, loaderCalls.get());
+    c.put(1, "updated");
+    assertEquals("updated", c.get(1));
+  }
+
+  /**
+   * Expired entries in the storage are not returned by the iteration.
+   */
+  @Test
+  public void iterateSkipsExpired() throws Exception {
+    Cache<Integer, String> c =
+      storageCache(generateUniqueCacheName(this), folder.newFolder(), true);
+    for (int i = 0; i < 100; i++) {
+      c.put(i, "value" + i);
+    }
+    assertEquals(100, countEntriesViaIteration());
+    sleep(EXPIRY_MILLIS * 2);
+    assertEquals(0, countEntriesViaIteration());
+    assertFalse(c.keys().iterator().hasNext());
+  }
+
+  @Test
+  public void clearClearsStorage() throws Exception {
+    Cache<Integer, String> c = storageCache(generateUniqueCacheName(this), folder.newFolder());
+    for (int i = 0; i < 100; i++) {
+      c.put(i, "value" + i);
+    }
+    c.clear();
+    assertEquals("loaded0", c.get(0));
+    assertEquals(1, loaderCalls.get());
+  }
+
+  @Test
+  public void contentAvailableAfterReopen() throws Exception {
+    String name = generateUniqueCacheName(this);
+    File dir = folder.newFolder();
+    Cache<Integer, String> c = storageCache(name, dir);
+    for (int i = 0; i < 100; i++) {
+      c.put(i, "value" + i);
+    }
+    closeCache();
+    c = storageCache(name, dir);
+    for (int i = 0; i < 100; i++) {
+      assertEquals("value" + i, c.get(i));
+    }
+    assertEquals(0, loaderCalls.get());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void directoryMissing() {
+    cache = builder(Integer.class, String.class)
+      .with(new StorageConfiguration.Builder())
+      .loader(new CacheLoader<Integer, String>() {
+        @Override
+        public String load(Integer key) {
+          return null;
+        }
+      })
+      .build();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void loaderMissing() throws Exception {
+    cache = builder(Integer.class, String.class)
+      .with(new StorageConfiguration.Builder().directory(folder.newFolder().getPath()))
+      .build();
+  }
+
+}
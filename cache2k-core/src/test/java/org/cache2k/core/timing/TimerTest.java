@@ -23,6 +23,7 @@ package org.cache2k.core.timing;
 import org.assertj.core.api.Condition;
 import org.cache2k.Cache2kBuilder;
 import org.cache2k.configuration.Cache2kConfiguration;
+import org.cache2k.core.HeapCache;
 import org.cache2k.core.api.InternalClock;
 import org.cache2k.core.util.SimulatedClock;
 import org.cache2k.testing.category.FastTests;
@@ -311,6 +312,100 @@ public class TimerTest {
 
   static long taskIdCounter = 0;
 
+  @Test
+  public void determineShardCount() {
+    assertEquals(1, ShardedTimer.determineShardCount(false, 8, 0));
+    assertEquals(1, ShardedTimer.determineShardCount(true, 1, 0));
+    assertEquals(8, ShardedTimer.determineShardCount(true, 8, 0));
+    assertEquals(8, ShardedTimer.determineShardCount(true, 6, 0));
+    assertEquals(4, ShardedTimer.determineShardCount(false, 8, 3));
+  }
+
+  /**
+   * Tasks in all shards are executed, cancelled tasks are removed from their shard.
+   */
+  @Test
+  public void shardedTimer() throws Exception {
+    SimulatedClock c = new SimulatedClock(100);
+    ShardedTimer st = new ShardedTimer(c, 1, 4);
+    assertEquals(4, st.getShardCount());
+    List<MyTimerTask> tasks = new ArrayList<MyTimerTask>();
+    for (int i = 0; i < 100; i++) {
+      MyTimerTask t = new MyTimerTask();
+      st.schedule(t, 200 + i);
+      tasks.add(t);
+    }
+    for (int i = 0; i < tasks.size(); i += 2) {
+      st.cancel(tasks.get(i));
+    }
+    c.sleep(1000);
+    for (int i = 0; i < tasks.size(); i++) {
+      assertEquals(i % 2 == 1, tasks.get(i).executed);
+    }
+    assertEquals(50, executed.size());
+  }
+
+  /**
+   * Clients with identical parameters share a timer. Cancelling affects only the tasks
+   * of one client. Executed tasks are not tracked by the client any more.
+   */
+  @Test
+  public void sharedTimer() throws Exception {
+    SimulatedClock c = new SimulatedClock(100);
+    SharedTimer shared = new SharedTimer();
+    SharedTimer.Client c1 = shared.createClient(c, 1, 1, null, 0, 0);
+    SharedTimer.Client c2 = shared.createClient(c, 1, 1, null, 0, 0);
+    SharedTimer.Client c3 = shared.createClient(c, 2, 1, null, 0, 0);
+    assertSame(c1.getSharedTimer(), c2.getSharedTimer());
+    assertNotSame(c1.getSharedTimer(), c3.getSharedTimer());
+    assertEquals(2, shared.getTimerCount());
+    List<MyTimerTask> tasks1 = new ArrayList<MyTimerTask>();
+    List<MyTimerTask> tasks2 = new ArrayList<MyTimerTask>();
+    for (int i = 0; i < 50; i++) {
+      MyTimerTask t = new MyTimerTask();
+      c1.schedule(t, 200 + i * 1000);
+      tasks1.add(t);
+      t = new MyTimerTask();
+      c2.schedule(t, 200 + i * 1000);
+      tasks2.add(t);
+    }
+    c2.cancel(tasks2.get(0));
+    c1.cancelAll();
+    assertEquals(50, c1.getScheduledCount());
+    assertEquals(50, c1.getCancelledCount());
+    assertEquals(1, c2.getCancelledCount());
+    c.sleep(100000);
+    for (int i = 0; i < 50; i++) {
+      assertFalse(tasks1.get(i).executed);
+      assertEquals(i > 0, tasks2.get(i).executed);
+    }
+    c2.cancelAll();
+    assertEquals(1, c2.getCancelledCount());
+    c1.close();
+    c3.close();
+    assertEquals(1, shared.getTimerCount());
+    c2.close();
+    assertEquals(0, shared.getTimerCount());
+  }
+
+  @Test
+  public void parallelDrain() throws Exception {
+    SimulatedClock c = new SimulatedClock(100);
+    Timer t = new DefaultTimer(c, 1, HeapCache.SHARED_EXECUTOR, 10, 2);
+    List<MyTimerTask> tasks = new ArrayList<MyTimerTask>();
+    for (int i = 0; i < 1000; i++) {
+      MyTimerTask task = new MyTimerTask();
+      t.schedule(task, 200);
+      tasks.add(task);
+    }
+    t.cancel(tasks.get(0));
+    c.sleep(1000);
+    c.sleep(0);
+    assertEquals(999, executed.size());
+    assertFalse(tasks.get(0).executed);
+    assertThat(t.getExpiryLagMillis()).isGreaterThanOrEqualTo(0);
+  }
+
   class MyTimerTask extends TimerTask implements Comparable<MyTimerTask> {
     long id = taskIdCounter++;
     long scheduleTime;
@@ -35,6 +35,7 @@ import org.cache2k.testing.category.FastTests;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
@@ -69,6 +70,12 @@ public class TimingUnitTest {
       public CacheManager getCacheManager() {
         return null;
       }
+
+      @Override
+      public Executor getExecutor() {
+        return HeapCache.SHARED_EXECUTOR;
+      }
+
       @Override
       public <T> T createCustomization(CustomizationSupplier<T> supplier) {
         try {
@@ -300,4 +307,40 @@ public class TimingUnitTest {
     assertTrue(Math.abs(t) < sharpPointInTime);
   }
 
+  @Test
+  public void adaptiveRefreshJitter() {
+    StaticTiming h = (StaticTiming) create(
+      CLOCK,
+      Cache2kBuilder.forUnknownTypes()
+        .expireAfterWrite(1000, TimeUnit.MILLISECONDS)
+        .refreshAhead(true)
+        .with(new AdaptiveRefreshConfiguration.Builder().jitterPercent(50))
+        .toConfiguration()
+    );
+    long min = Long.MAX_VALUE;
+    long max = Long.MIN_VALUE;
+    for (int i = 0; i < 1000; i++) {
+      long t = h.jitterRefreshTime(NOW, NOW + 1000);
+      min = Math.min(min, t);
+      max = Math.max(max, t);
+    }
+    assertTrue(min >= NOW + 500);
+    assertTrue(max <= NOW + 1000);
+    assertTrue("refresh times spread", max - min > 100);
+    h.cancelAll();
+  }
+
+  @Test
+  public void adaptiveRefreshIgnoredWithoutRefreshAhead() {
+    StaticTiming h = (StaticTiming) create(
+      CLOCK,
+      Cache2kBuilder.forUnknownTypes()
+        .expireAfterWrite(1000, TimeUnit.MILLISECONDS)
+        .with(new AdaptiveRefreshConfiguration.Builder().jitterPercent(50))
+        .toConfiguration()
+    );
+    assertEquals(NOW + 1000, h.jitterRefreshTime(NOW, NOW + 1000));
+    h.cancelAll();
+  }
+
 }
@@ -0,0 +1,208 @@
+package org.cache2k.test.core;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.AsyncCache;
+import org.cache2k.Cache;
+import org.cache2k.io.AsyncCacheLoader;
+import org.cache2k.io.CacheLoader;
+import org.cache2k.io.CacheLoaderException;
+import org.cache2k.processor.EntryProcessor;
+import org.cache2k.processor.MutableCacheEntry;
+import org.cache2k.test.util.TestingBase;
+import org.cache2k.testing.category.FastTests;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.Timeout;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the non blocking operations of {@link AsyncCache}.
+ *
+ * @author Jens Wilke
+ */
+@Category(FastTests.class)
+public class AsyncCacheTest extends TestingBase {
+
+  @Rule
+  public Timeout globalTimeout = new Timeout((int) TestingParameters.MAX_FINISH_WAIT_MILLIS * 2);
+
+  final List<AsyncCacheLoader.Callback<Integer>> callbacks =
+    new CopyOnWriteArrayList<AsyncCacheLoader.Callback<Integer>>();
+  final AtomicInteger loaderCalls = new AtomicInteger();
+
+  /**
+   * Async loader that completes only when the test calls back.
+   */
+  AsyncCache<Integer, Integer> deferredLoaderCache() {
+    Cache<Integer, Integer> c = builder(Integer.class, Integer.class)
+      .loader(new AsyncCacheLoader<Integer, Integer>() {
+        @Override
+        public void load(Integer key, Context<Integer, Integer> context,
+                         Callback<Integer> callback) {
+          loaderCalls.incrementAndGet();
+          callbacks.add(callback);
+        }
+      })
+      .build();
+    return c.requestInterface(AsyncCache.class);
+  }
+
+  @Test
+  public void getAsyncCompletesViaCallback() throws Exception {
+    AsyncCache<Integer, Integer> c = deferredLoaderCache();
+    CompletableFuture<Integer> f1 = c.getAsync(1);
+    CompletableFuture<Integer> f2 = c.getAsync(1);
+    assertFalse(f1.isDone());
+    assertFalse(f2.isDone());
+    assertEquals(1, callbacks.size());
+    callbacks.get(0).onLoadSuccess(4711);
+    assertEquals((Integer) 4711, f1.get());
+    assertEquals((Integer) 4711, f2.get());
+    assertEquals(1, loaderCalls.get());
+    CompletableFuture<Integer> f3 = c.getAsync(1);
+    assertTrue("present value is returned immediately", f3.isDone());
+    assertEquals((Integer) 4711, f3.get());
+  }
+
+  @Test
+  public void getAsyncLoaderException() throws Exception {
+    AsyncCache<Integer, Integer> c = deferredLoaderCache();
+    CompletableFuture<Integer> f = c.getAsync(1);
+    callbacks.get(0).onLoadFailure(new IOException("test"));
+    try {
+      f.get();
+      fail("exception expected");
+    } catch (ExecutionException ex) {
+      assertTrue(ex.getCause() instanceof CacheLoaderException);
+      assertTrue(ex.getCause().getCause() instanceof IOException);
+    }
+  }
+
+  @Test
+  public void getAllAsync() throws Exception {
+    AsyncCache<Integer, Integer> c = deferredLoaderCache();
+    CompletableFuture<Map<Integer, Integer>> f = c.getAllAsync(Arrays.asList(1, 2, 3, 1));
+    assertFalse(f.isDone());
+    assertEquals("loads started in parallel", 3, callbacks.size());
+    for (AsyncCacheLoader.Callback<Integer> cb : callbacks) {
+      cb.onLoadSuccess(123);
+    }
+    Map<Integer, Integer> map = f.get();
+    assertEquals(3, map.size());
+    assertEquals((Integer) 123, map.get(2));
+  }
+
+  @Test
+  public void invokeAsyncWithLoad() throws Exception {
+    AsyncCache<Integer, Integer> c = deferredLoaderCache();
+    CompletableFuture<Integer> f = c.invokeAsync(1,
+      new EntryProcessor<Integer, Integer, Integer>() {
+        @Override
+        public Integer process(MutableCacheEntry<Integer, Integer> e) {
+          return e.getValue() + 1;
+        }
+      });
+    assertFalse(f.isDone());
+    callbacks.get(0).onLoadSuccess(1);
+    assertEquals((Integer) 2, f.get());
+  }
+
+  @Test
+  public void putAsync() throws Exception {
+    Cache<Integer, Integer> cache = builder(Integer.class, Integer.class).build();
+    AsyncCache<Integer, Integer> c = cache.requestInterface(AsyncCache.class);
+    assertNull(c.getAsync(1).get());
+    CompletableFuture<Void> f = c.putAsync(1, 2);
+    assertTrue(f.isDone());
+    assertNull(f.get());
+    assertEquals((Integer) 2, cache.peek(1));
+    assertEquals((Integer) 2, c.getAsync(1).get());
+  }
+
+  /**
+   * A synchronous loader is called via the loader executor.
+   */
+  @Test
+  public void syncLoaderRunsInLoaderExecutor() throws Exception {
+    final Thread caller = Thread.currentThread();
+    Cache<Integer, Integer> cache = builder(Integer.class, Integer.class)
+      .loader(new CacheLoader<Integer, Integer>() {
+        @Override
+        public Integer load(Integer key) {
+          assertNotSame(caller, Thread.currentThread());
+          return key * 2;
+        }
+      })
+      .build();
+    AsyncCache<Integer, Integer> c = cache.requestInterface(AsyncCache.class);
+    assertEquals((Integer) 6, c.getAsync(3).get());
+    assertEquals((Integer) 6, cache.peek(3));
+  }
+
+  /**
+   * A put waits for a concurrent load of the same entry. With a synchronous loader
+   * the caller of {@code putAsync} must not be blocked.
+   */
+  @Test
+  public void putAsyncDuringSyncLoadReturnsPromptly() throws Exception {
+    final CountDownLatch loadStarted = new CountDownLatch(1);
+    final CountDownLatch releaseLoad = new CountDownLatch(1);
+    final Cache<Integer, Integer> cache = builder(Integer.class, Integer.class)
+      .loader(new CacheLoader<Integer, Integer>() {
+        @Override
+        public Integer load(Integer key) throws Exception {
+          loadStarted.countDown();
+          releaseLoad.await();
+          return 1;
+        }
+      })
+      .build();
+    AsyncCache<Integer, Integer> c = cache.requestInterface(AsyncCache.class);
+    Thread loader = new Thread() {
+      @Override
+      public void run() {
+        cache.get(1);
+      }
+    };
+    loader.start();
+    loadStarted.await();
+    CompletableFuture<Void> f = c.putAsync(1, 2);
+    assertFalse("put waits for the load", f.isDone());
+    releaseLoad.countDown();
+    assertNull(f.get());
+    loader.join();
+    assertEquals((Integer) 2, cache.peek(1));
+  }
+
+}
@@ -0,0 +1,205 @@
+package org.cache2k.test.core;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.Cache;
+import org.cache2k.io.BulkCacheLoader;
+import org.cache2k.io.CacheLoaderException;
+import org.cache2k.test.util.TestingBase;
+import org.cache2k.testing.category.FastTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+/**
+ * Test the bulk loader with the bulk operations.
+ *
+ * @author Jens Wilke
+ * @see BulkCacheLoader
+ */
+@Category(FastTests.class)
+public class BulkCacheLoaderTest extends TestingBase {
+
+  private final List<Set<Integer>> requests =
+    Collections.synchronizedList(new ArrayList<Set<Integer>>());
+
+  private Cache<Integer, Integer> bulkCache(final BulkCacheLoader<Integer, Integer> loader) {
+    Cache<Integer, Integer> c = builder(Integer.class, Integer.class)
+      .loader(new BulkCacheLoader<Integer, Integer>() {
+        @Override
+        public Map<Integer, Integer> loadAll(Set<Integer> keys) throws Exception {
+          requests.add(new HashSet<Integer>(keys));
+          return loader.loadAll(keys);
+        }
+      })
+      .build();
+    cache = c;
+    return c;
+  }
+
+  private Cache<Integer, Integer> bulkCache() {
+    return bulkCache(new BulkCacheLoader<Integer, Integer>() {
+      @Override
+      public Map<Integer, Integer> loadAll(Set<Integer> keys) {
+        Map<Integer, Integer> map = new HashMap<Integer, Integer>();
+        for (Integer k : keys) {
+          map.put(k, k * 2);
+        }
+        return map;
+      }
+    });
+  }
+
+  private static Set<Integer> setOf(Integer... keys) {
+    return new HashSet<Integer>(asList(keys));
+  }
+
+  @Test
+  public void getAll_oneRequestForMissingKeys() {
+    Cache<Integer, Integer> c = bulkCache();
+    c.put(1, 4711);
+    Map<Integer, Integer> map = c.getAll(asList(1, 2, 3, 4));
+    assertEquals(4, map.size());
+    assertEquals((Integer) 4711, map.get(1));
+    assertEquals((Integer) 6, map.get(3));
+    assertEquals(1, requests.size());
+    assertEquals(setOf(2, 3, 4), requests.get(0));
+    assertEquals(3, getInfo().getLoadCount());
+    c.getAll(asList(1, 2, 3, 4));
+    assertEquals("all fresh, no request", 1, requests.size());
+  }
+
+  @Test
+  public void get_singleKeyRequest() {
+    Cache<Integer, Integer> c = bulkCache();
+    assertEquals((Integer) 14, c.get(7));
+    assertEquals(setOf(7), requests.get(0));
+  }
+
+  @Test
+  public void loadAll_reloadAll() throws Exception {
+    Cache<Integer, Integer> c = bulkCache();
+    c.put(1, 4711);
+    c.loadAll(asList(1, 2, 3)).get();
+    assertEquals(1, requests.size());
+    assertEquals(setOf(2, 3), requests.get(0));
+    assertEquals((Integer) 4711, c.peek(1));
+    c.reloadAll(asList(1, 2, 3)).get();
+    assertEquals(2, requests.size());
+    assertEquals(setOf(1, 2, 3), requests.get(1));
+    assertEquals((Integer) 2, c.peek(1));
+  }
+
+  /**
+   * A missing key is a {@code null} value, which is rejected by default.
+   */
+  @Test
+  public void missingKeyIsNull() {
+    Cache<Integer, Integer> c = bulkCache(new BulkCacheLoader<Integer, Integer>() {
+      @Override
+      public Map<Integer, Integer> loadAll(Set<Integer> keys) {
+        return Collections.singletonMap(1, 1);
+      }
+    });
+    Map<Integer, Integer> map = c.getAll(asList(1, 2));
+    assertEquals((Integer) 1, map.get(1));
+    try {
+      map.get(2);
+      fail("exception expected");
+    } catch (CacheLoaderException expected) { }
+  }
+
+  @Test
+  public void exceptionPropagatedForEachKey() {
+    Cache<Integer, Integer> c = bulkCache(new BulkCacheLoader<Integer, Integer>() {
+      @Override
+      public Map<Integer, Integer> loadAll(Set<Integer> keys) {
+        throw new IllegalStateException("bulk failed");
+      }
+    });
+    Map<Integer, Integer> map = c.getAll(asList(1, 2));
+    assertEquals(2, map.size());
+    for (Integer k : asList(1, 2)) {
+      try {
+        map.get(k);
+        fail("exception expected");
+      } catch (CacheLoaderException ex) {
+        assertTrue(ex.getCause() instanceof IllegalStateException);
+      }
+    }
+    assertEquals(2, getInfo().getLoadExceptionCount());
+  }
+
+  /**
+   * A key which is loaded by a concurrent get is not requested again by the bulk
+   * operation, instead the result of the running load is used.
+   */
+  @Test
+  public void concurrentLoadIsCoalesced() throws Exception {
+    final CountDownLatch singleLoadStarted = new CountDownLatch(1);
+    final CountDownLatch bulkRequested = new CountDownLatch(1);
+    final Cache<Integer, Integer> c = bulkCache(new BulkCacheLoader<Integer, Integer>() {
+      @Override
+      public Map<Integer, Integer> loadAll(Set<Integer> keys) throws Exception {
+        if (keys.contains(1)) {
+          singleLoadStarted.countDown();
+          bulkRequested.await();
+        } else {
+          bulkRequested.countDown();
+        }
+        Map<Integer, Integer> map = new HashMap<Integer, Integer>();
+        for (Integer k : keys) {
+          map.put(k, k * 2);
+        }
+        return map;
+      }
+    });
+    FutureTask<Integer> singleGet = new FutureTask<Integer>(new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        return c.get(1);
+      }
+    });
+    new Thread(singleGet).start();
+    singleLoadStarted.await();
+    Map<Integer, Integer> map = c.getAll(asList(1, 2, 3));
+    assertEquals((Integer) 2, singleGet.get());
+    assertEquals(3, map.size());
+    assertEquals((Integer) 2, map.get(1));
+    assertEquals(2, requests.size());
+    assertEquals(setOf(1), requests.get(0));
+    assertEquals(setOf(2, 3), requests.get(1));
+  }
+
+}
@@ -33,6 +33,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.*;
 
@@ -76,6 +77,47 @@ public class IteratorTest {
     assertTrue(_keysSeen.contains(19));
   }
 
+  /**
+   * Entries present before the iteration starts are returned while the hash table
+   * expands concurrently and buckets are moved to the next table.
+   */
+  @Test
+  public void iterateDuringConcurrentExpansion() throws Exception {
+    final Cache<Integer, Integer> c = cache = Cache2kBuilder
+      .of(Integer.class, Integer.class)
+      .eternal(true)
+      .entryCapacity(Long.MAX_VALUE)
+      .build();
+    final int existing = 20000;
+    for (int i = 0; i < existing; i++) {
+      c.put(i, i);
+    }
+    final AtomicBoolean stop = new AtomicBoolean();
+    Thread writer = new Thread() {
+      @Override
+      public void run() {
+        for (int i = existing; !stop.get() && i < existing + 500000; i++) {
+          c.put(i, i);
+        }
+      }
+    };
+    writer.start();
+    try {
+      for (int round = 0; round < 50 && writer.isAlive(); round++) {
+        Set<Integer> keysSeen = new HashSet<Integer>();
+        for (Integer k : c.keys()) {
+          keysSeen.add(k);
+        }
+        for (int i = 0; i < existing; i++) {
+          assertTrue("key " + i + " iterated", keysSeen.contains(i));
+        }
+      }
+    } finally {
+      stop.set(true);
+      writer.join();
+    }
+  }
+
   @Test
   public void testIterateEmpty_hasNext() {
     Cache<Integer, Integer> c = createEmptyCache();
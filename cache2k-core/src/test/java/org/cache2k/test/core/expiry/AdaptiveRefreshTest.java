@@ -0,0 +1,193 @@
+package org.cache2k.test.core.expiry;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.Cache;
+import org.cache2k.Cache2kBuilder;
+import org.cache2k.CacheEntry;
+import org.cache2k.event.CacheEntryExpiredListener;
+import org.cache2k.core.timing.AdaptiveRefreshConfiguration;
+import org.cache2k.io.CacheLoader;
+import org.cache2k.test.util.Condition;
+import org.cache2k.test.util.TestingBase;
+import org.cache2k.testing.category.FastTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Refresh ahead only for entries with hits since the last load.
+ *
+ * @author Jens Wilke
+ * @see AdaptiveRefreshConfiguration
+ */
+@Category(FastTests.class)
+public class AdaptiveRefreshTest extends TestingBase {
+
+  static final long EXPIRY_MILLIS = 100;
+
+  private final ConcurrentHashMap<Integer, AtomicInteger> loads =
+    new ConcurrentHashMap<Integer, AtomicInteger>();
+  private final AtomicInteger rejectedRefreshes = new AtomicInteger();
+
+  private int loadCount(int key) {
+    AtomicInteger cnt = loads.get(key);
+    return cnt == null ? 0 : cnt.get();
+  }
+
+  private Cache<Integer, Integer> adaptiveCache(int minimumHits) {
+    Cache<Integer, Integer> c = builder(Integer.class, Integer.class)
+      .expireAfterWrite(EXPIRY_MILLIS, TimeUnit.MILLISECONDS)
+      .refreshAhead(true)
+      .keepDataAfterExpired(false)
+      .loader(new CacheLoader<Integer, Integer>() {
+        @Override
+        public Integer load(Integer key) {
+          AtomicInteger cnt = loads.get(key);
+          if (cnt == null) {
+            loads.putIfAbsent(key, new AtomicInteger());
+            cnt = loads.get(key);
+          }
+          cnt.incrementAndGet();
+          return key;
+        }
+      })
+      .with(new AdaptiveRefreshConfiguration.Builder()
+        .minimumHits(minimumHits)
+        .jitterPercent(20))
+      .build();
+    cache = c;
+    return c;
+  }
+
+  /**
+   * Checks the cache size, since {@code containsKey} or {@code peek} count as a hit.
+   */
+  @Test
+  public void refreshOnlyAccessedEntries() {
+    Cache<Integer, Integer> c = adaptiveCache(1);
+    c.get(1);
+    c.get(2);
+    c.get(1);
+    await(new Condition() {
+      @Override
+      public boolean check() {
+        return loadCount(1) >= 2;
+      }
+    });
+    await(new Condition() {
+      @Override
+      public boolean check() {
+        return getInfo().getSize() == 1;
+      }
+    });
+    assertEquals(1, loadCount(2));
+  }
+
+  @Test
+  public void minimumHitsZeroRefreshesAll() {
+    Cache<Integer, Integer> c = adaptiveCache(0);
+    c.get(1);
+    await(new Condition() {
+      @Override
+      public boolean check() {
+        return loadCount(1) >= 2;
+      }
+    });
+  }
+
+  @Test
+  public void notEnoughHits() {
+    Cache<Integer, Integer> c = adaptiveCache(3);
+    c.get(1);
+    c.get(1);
+    c.get(1);
+    await(new Condition() {
+      @Override
+      public boolean check() {
+        return getInfo().getSize() == 0;
+      }
+    });
+    assertEquals(1, loadCount(1));
+  }
+
+  /**
+   * The refresh timer fires before the expiry time because of the jitter. If the
+   * refresh is rejected, the entry must stay until it expires.
+   */
+  @Test
+  public void rejectedRefreshExpiresNotEarly() {
+    rejectedRefreshExpiresNotEarly(refreshRejectingBuilder());
+  }
+
+  /**
+   * Same with the wired cache, which is used with a listener.
+   */
+  @Test
+  public void rejectedRefreshExpiresNotEarlyWired() {
+    rejectedRefreshExpiresNotEarly(refreshRejectingBuilder()
+      .addListener(new CacheEntryExpiredListener<Integer, Integer>() {
+        @Override
+        public void onEntryExpired(Cache<Integer, Integer> cache,
+                                   CacheEntry<Integer, Integer> entry) { }
+      }));
+  }
+
+  private Cache2kBuilder<Integer, Integer> refreshRejectingBuilder() {
+    return builder(Integer.class, Integer.class)
+      .expireAfterWrite(EXPIRY_MILLIS, TimeUnit.MILLISECONDS)
+      .refreshAhead(true)
+      .keepDataAfterExpired(false)
+      .loader(new IdentIntSource())
+      .refreshExecutor(new Executor() {
+        @Override
+        public void execute(Runnable command) {
+          rejectedRefreshes.incrementAndGet();
+          throw new RejectedExecutionException();
+        }
+      })
+      .with(new AdaptiveRefreshConfiguration.Builder()
+        .minimumHits(0)
+        .jitterPercent(90));
+  }
+
+  private void rejectedRefreshExpiresNotEarly(Cache2kBuilder<Integer, Integer> builder) {
+    final Cache<Integer, Integer> c = cache = builder.build();
+    long loadTime = millis();
+    c.get(1);
+    await(new Condition() {
+      @Override
+      public boolean check() {
+        return !c.containsKey(1);
+      }
+    });
+    assertTrue("expired not before expiry time", millis() >= loadTime + EXPIRY_MILLIS);
+    assertEquals(1, rejectedRefreshes.get());
+  }
+
+}
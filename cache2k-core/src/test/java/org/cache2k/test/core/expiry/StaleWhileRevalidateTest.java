@@ -0,0 +1,145 @@
+package org.cache2k.test.core.expiry;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.Cache;
+import org.cache2k.Cache2kBuilder;
+import org.cache2k.CacheEntry;
+import org.cache2k.core.StaleWhileRevalidateConfiguration;
+import org.cache2k.event.CacheEntryCreatedListener;
+import org.cache2k.io.CacheLoader;
+import org.cache2k.test.core.TestingParameters;
+import org.cache2k.test.util.Condition;
+import org.cache2k.test.util.TestingBase;
+import org.cache2k.testing.category.FastTests;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.Timeout;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Get returns the expired value and reloads it in the background.
+ *
+ * @author Jens Wilke
+ * @see StaleWhileRevalidateConfiguration
+ */
+@Category(FastTests.class)
+public class StaleWhileRevalidateTest extends TestingBase {
+
+  static final long EXPIRY_MILLIS = 100;
+
+  @Rule
+  public Timeout globalTimeout = new Timeout((int) TestingParameters.MAX_FINISH_WAIT_MILLIS * 2);
+
+  private final AtomicInteger loads = new AtomicInteger();
+  private volatile CountDownLatch reloadLatch = new CountDownLatch(0);
+
+  private Cache2kBuilder<Integer, Integer> staleBuilder(Duration staleDuration) {
+    return builder(Integer.class, Integer.class)
+      .expireAfterWrite(EXPIRY_MILLIS, TimeUnit.MILLISECONDS)
+      .loader(new CacheLoader<Integer, Integer>() {
+        @Override
+        public Integer load(Integer key) throws Exception {
+          int cnt = loads.incrementAndGet();
+          if (cnt > 1) {
+            reloadLatch.await();
+          }
+          return cnt;
+        }
+      })
+      .with(new StaleWhileRevalidateConfiguration.Builder().staleDuration(staleDuration));
+  }
+
+  private void awaitSoftExpiry(final Cache<Integer, Integer> c) {
+    await(new Condition() {
+      @Override
+      public boolean check() {
+        return !c.containsKey(1);
+      }
+    });
+  }
+
+  @Test
+  public void staleValueWhileReloading() {
+    final Cache<Integer, Integer> c = cache = staleBuilder(Duration.ofMinutes(5)).build();
+    reloadLatch = new CountDownLatch(1);
+    assertEquals((Integer) 1, c.get(1));
+    awaitSoftExpiry(c);
+    assertEquals("stale value", (Integer) 1, c.get(1));
+    assertEquals("reload does not block", (Integer) 1, c.get(1));
+    await(new Condition() {
+      @Override
+      public boolean check() {
+        return loads.get() == 2;
+      }
+    });
+    reloadLatch.countDown();
+    await(new Condition() {
+      @Override
+      public boolean check() {
+        return c.get(1) == 2;
+      }
+    });
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void loadAfterHardExpiry() {
+    final Cache<Integer, Integer> c = cache = staleBuilder(Duration.ofMillis(1)).build();
+    assertEquals((Integer) 1, c.get(1));
+    await(new Condition() {
+      @Override
+      public boolean check() {
+        return getInfo().getSize() == 0;
+      }
+    });
+    assertEquals((Integer) 2, c.get(1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void refreshAheadNotSupported() {
+    cache = staleBuilder(Duration.ofMinutes(5)).refreshAhead(true).build();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void listenerNotSupported() {
+    cache = staleBuilder(Duration.ofMinutes(5))
+      .addListener(new CacheEntryCreatedListener<Integer, Integer>() {
+        @Override
+        public void onEntryCreated(Cache<Integer, Integer> cache,
+                                   CacheEntry<Integer, Integer> entry) { }
+      })
+      .build();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void staleDurationMandatory() {
+    cache = staleBuilder(null).build();
+  }
+
+}
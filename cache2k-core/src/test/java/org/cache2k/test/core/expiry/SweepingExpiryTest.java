@@ -0,0 +1,178 @@
+package org.cache2k.test.core.expiry;
+
+/*
+ * #%L
+ * cache2k core implementation
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.Cache;
+import org.cache2k.Cache2kBuilder;
+import org.cache2k.CacheEntry;
+import org.cache2k.core.timing.SweepingExpiryConfiguration;
+import org.cache2k.event.CacheEntryExpiredListener;
+import org.cache2k.expiry.ExpiryPolicy;
+import org.cache2k.io.CacheLoader;
+import org.cache2k.test.util.Condition;
+import org.cache2k.test.util.TestingBase;
+import org.cache2k.testing.category.FastTests;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test expiry without timer tasks with the simulated clock.
+ *
+ * @author Jens Wilke
+ * @see SweepingExpiryConfiguration
+ */
+@Category(FastTests.class)
+public class SweepingExpiryTest extends TestingBase {
+
+  static final long EXPIRY_MILLIS = 100;
+  static final long SWEEP_MILLIS = 1000;
+
+  private final AtomicInteger expiredCount = new AtomicInteger();
+
+  @Before
+  public void setUp() {
+    enableFastClock();
+  }
+
+  private Cache<Integer, Integer> sweepingCache(int batchSize) {
+    return sweepingCache(builder(Integer.class, Integer.class), batchSize);
+  }
+
+  private Cache<Integer, Integer> sweepingCache(Cache2kBuilder<Integer, Integer> b,
+                                                int batchSize) {
+    Cache<Integer, Integer> c = b
+      .expireAfterWrite(EXPIRY_MILLIS, TimeUnit.MILLISECONDS)
+      .with(new SweepingExpiryConfiguration.Builder()
+        .sweepInterval(Duration.ofMillis(SWEEP_MILLIS))
+        .sweepBatchSize(batchSize))
+      .build();
+    cache = c;
+    return c;
+  }
+
+  private void putAndAwaitSweep(Cache<Integer, Integer> c, int count) {
+    for (int i = 0; i < count; i++) {
+      c.put(i, i);
+    }
+    assertEquals(count, getInfo().getSize());
+    sleep(EXPIRY_MILLIS * 2);
+    await(new Condition() {
+      @Override
+      public boolean check() {
+        return getInfo().getSize() == 0;
+      }
+    });
+  }
+
+  @Test
+  public void expiredNotVisibleBeforeSweep() {
+    Cache<Integer, Integer> c = sweepingCache(100);
+    c.put(1, 1);
+    assertTrue(c.containsKey(1));
+    sleep(EXPIRY_MILLIS * 2);
+    assertFalse(c.containsKey(1));
+    assertNull(c.peek(1));
+    assertNull(c.peekEntry(1));
+  }
+
+  @Test
+  public void sweeperRemovesExpired() {
+    Cache<Integer, Integer> c = sweepingCache(7);
+    putAndAwaitSweep(c, 100);
+    assertEquals(100, getInfo().getExpiredCount());
+    assertEquals(100, getInfo().getTimerEventCount());
+  }
+
+  @Test
+  public void sweeperSendsExpiryEvents() {
+    Cache<Integer, Integer> c = sweepingCache(builder(Integer.class, Integer.class)
+      .addListener(new CacheEntryExpiredListener<Integer, Integer>() {
+        @Override
+        public void onEntryExpired(Cache<Integer, Integer> cache,
+                                   CacheEntry<Integer, Integer> entry) {
+          expiredCount.incrementAndGet();
+        }
+      }), 7);
+    putAndAwaitSweep(c, 100);
+    await(new Condition() {
+      @Override
+      public boolean check() {
+        return expiredCount.get() == 100;
+      }
+    });
+  }
+
+  /**
+   * A clear does not stop the sweeper, entries inserted afterwards are removed as well.
+   */
+  @Test
+  public void expireAfterClear() {
+    Cache<Integer, Integer> c = sweepingCache(7);
+    putAndAwaitSweep(c, 10);
+    c.clear();
+    putAndAwaitSweep(c, 10);
+    assertEquals(20, getInfo().getExpiredCount());
+  }
+
+  @Test
+  public void updateExtendsExpiry() {
+    Cache<Integer, Integer> c = sweepingCache(100);
+    c.put(1, 1);
+    sleep(EXPIRY_MILLIS / 2);
+    c.put(1, 2);
+    sleep(EXPIRY_MILLIS * 3 / 4);
+    assertEquals((Integer) 2, c.peek(1));
+  }
+
+  @Test
+  public void eternalEntryKept() {
+    Cache<Integer, Integer> c = sweepingCache(100);
+    c.put(1, 1);
+    c.put(2, 2);
+    c.expireAt(2, ExpiryPolicy.ETERNAL);
+    sleep(SWEEP_MILLIS * 3);
+    assertFalse(c.containsKey(1));
+    assertEquals((Integer) 2, c.peek(2));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void refreshAheadNotSupported() {
+    cache = builder(Integer.class, Integer.class)
+      .expireAfterWrite(EXPIRY_MILLIS, TimeUnit.MILLISECONDS)
+      .refreshAhead(true)
+      .loader(new CacheLoader<Integer, Integer>() {
+        @Override
+        public Integer load(Integer key) {
+          return key;
+        }
+      })
+      .with(new SweepingExpiryConfiguration.Builder())
+      .build();
+  }
+
+}
@@ -0,0 +1,184 @@
+package org.cache2k.tests.api;
+
+/*
+ * #%L
+ * cache2k tests on public API
+ * %%
+ * Copyright (C) 2000 - 2020 headissue GmbH, Munich
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.cache2k.Cache;
+import org.cache2k.Cache2kBuilder;
+import org.cache2k.CacheEntry;
+import org.cache2k.testing.category.FastTests;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Cache hits via {@code get}, {@code peek}, {@code containsKey} and, with flyweight entries
+ * enabled, {@code getEntry} and {@code peekEntry} must not allocate. The allocated bytes
+ * are measured with the thread allocation counter of the HotSpot JVM.
+ *
+ * @author Jens Wilke
+ * @see Cache2kBuilder#flyweightEntries(boolean)
+ */
+@Category(FastTests.class)
+public class HitAllocationTest {
+
+  private static final int KEY_COUNT = 100;
+  private static final int ITERATIONS = 100000;
+
+  /**
+   * Tolerate a few bytes from the measurement itself or a JIT deoptimization.
+   * Any allocation per operation would amount to megabytes.
+   */
+  private static final long TOLERATED_BYTES = 4096;
+
+  private com.sun.management.ThreadMXBean threadBean;
+  private Cache<String, String> cache;
+  private String[] keys;
+
+  @Before
+  public void setUp() {
+    Assume.assumeTrue(
+      ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+    threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+    threadBean.setThreadAllocatedMemoryEnabled(true);
+    cache = Cache2kBuilder.of(String.class, String.class)
+      .entryCapacity(KEY_COUNT * 2)
+      .flyweightEntries(true)
+      .build();
+    keys = new String[KEY_COUNT];
+    for (int i = 0; i < KEY_COUNT; i++) {
+      keys[i] = "key" + i;
+      cache.put(keys[i], "value" + i);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    if (cache != null) {
+      cache.close();
+    }
+  }
+
+  @Test
+  public void get() {
+    assertNoAllocation(new Operation() {
+      @Override
+      public int run(String key) {
+        return cache.get(key).length();
+      }
+    });
+  }
+
+  @Test
+  public void peek() {
+    assertNoAllocation(new Operation() {
+      @Override
+      public int run(String key) {
+        return cache.peek(key).length();
+      }
+    });
+  }
+
+  @Test
+  public void containsKey() {
+    assertNoAllocation(new Operation() {
+      @Override
+      public int run(String key) {
+        return cache.containsKey(key) ? 1 : 0;
+      }
+    });
+  }
+
+  @Test
+  public void getEntry() {
+    assertNoAllocation(new Operation() {
+      @Override
+      public int run(String key) {
+        return cache.getEntry(key).getValue().length();
+      }
+    });
+  }
+
+  @Test
+  public void peekEntry() {
+    assertNoAllocation(new Operation() {
+      @Override
+      public int run(String key) {
+        return cache.peekEntry(key).getValue().length();
+      }
+    });
+  }
+
+  /**
+   * The flyweight entry is reused, the previous entry reflects the latest call.
+   */
+  @Test
+  public void getEntry_reused() {
+    CacheEntry<String, String> e1 = cache.getEntry(keys[1]);
+    assertEquals("value1", e1.getValue());
+    CacheEntry<String, String> e2 = cache.getEntry(keys[2]);
+    assertSame(e1, e2);
+    assertEquals(keys[2], e1.getKey());
+    assertEquals("value2", e1.getValue());
+  }
+
+  @Test
+  public void getEntry_notReusedByDefault() {
+    Cache<String, String> c = Cache2kBuilder.of(String.class, String.class).build();
+    c.put("a", "1");
+    c.put("b", "2");
+    CacheEntry<String, String> e1 = c.getEntry("a");
+    CacheEntry<String, String> e2 = c.getEntry("b");
+    assertNotSame(e1, e2);
+    assertEquals("1", e1.getValue());
+    c.close();
+  }
+
+  private void assertNoAllocation(Operation op) {
+    long threadId = Thread.currentThread().getId();
+    int sum = runLoop(op);
+    long start = threadBean.getThreadAllocatedBytes(threadId);
+    sum += runLoop(op);
+    long allocated = threadBean.getThreadAllocatedBytes(threadId) - start;
+    assertTrue(sum > 0);
+    assertTrue("bytes allocated for " + ITERATIONS + " hits: " + allocated,
+      allocated < TOLERATED_BYTES);
+  }
+
+  private int runLoop(Operation op) {
+    int sum = 0;
+    for (int i = 0; i < ITERATIONS; i++) {
+      sum += op.run(keys[i % KEY_COUNT]);
+    }
+    return sum;
+  }
+
+  interface Operation {
+    int run(String key);
+  }
+
+}